@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the allocation profiler always on, so that the
+ * allocation regressions show up next to the time.  The command line
+ * options are the same as the JMH ones.
+ *
+ * @author	Heng Yuan
+ */
+public class BenchmarkMain
+{
+	public static void main (String[] args) throws Exception
+	{
+		CommandLineOptions cmdOptions = new CommandLineOptions (args);
+		if (cmdOptions.shouldHelp ())
+		{
+			cmdOptions.showHelp ();
+			return;
+		}
+
+		Options options = new OptionsBuilder ()
+			.parent (cmdOptions)
+			.addProfiler (GCProfiler.class)
+			.build ();
+		Runner runner = new Runner (options);
+		if (cmdOptions.shouldList ())
+		{
+			runner.list ();
+			return;
+		}
+		runner.run ();
+	}
+}
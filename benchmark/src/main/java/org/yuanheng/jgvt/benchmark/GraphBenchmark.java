@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.yuanheng.jgvt.export.DotExporter;
+import org.yuanheng.jgvt.export.DotOptions;
+import org.yuanheng.jgvt.gui.graph.GVTGraph;
+import org.yuanheng.jgvt.gui.graph.GVTGraphFactory;
+import org.yuanheng.jgvt.relation.BranchDiscoveryAlgorithm;
+import org.yuanheng.jgvt.relation.BranchLayoutAlgorithm;
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.RelationEditList;
+import org.yuanheng.jgvt.relation.RelationTree;
+
+/**
+ * Benchmarks of the graph model construction and the dot export of a tree
+ * that is already laid out.
+ *
+ * @author	Heng Yuan
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3)
+@Measurement (iterations = 5)
+@Fork (value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class GraphBenchmark
+{
+	@State (Scope.Thread)
+	public static class LaidOutTree
+	{
+		public RelationTree tree;
+		public File file;
+
+		@Setup (Level.Trial)
+		public void setup (RepoState repo) throws IOException
+		{
+			tree = repo.createTree ();
+			BranchDiscoveryAlgorithm.inferBranches (tree, new RelationEditList (), new BranchLog ());
+			BranchLayoutAlgorithm.layoutBranches (tree);
+			file = File.createTempFile ("jgvt", ".dot");
+			file.deleteOnExit ();
+		}
+
+		@TearDown (Level.Trial)
+		public void tearDown ()
+		{
+			file.delete ();
+		}
+	}
+
+	@Benchmark
+	public GVTGraph updateGraphModel (LaidOutTree state)
+	{
+		GVTGraph graph = new GVTGraph ();
+		graph.setStylesheet (GVTGraphFactory.GRAPH_STYLE);
+		new GVTGraphFactory (graph).updateGraphModel (state.tree);
+		return graph;
+	}
+
+	@Benchmark
+	public File dotExport (LaidOutTree state) throws IOException
+	{
+		new DotExporter (new DotOptions ()).save (state.file, "jgvt", state.tree);
+		return state.file;
+	}
+}
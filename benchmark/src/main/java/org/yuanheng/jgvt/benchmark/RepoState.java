@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.benchmark;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.*;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RefSnapshot;
+import org.yuanheng.jgvt.relation.CommitGraphCache;
+import org.yuanheng.jgvt.relation.RelationTree;
+
+/**
+ * A synthetic repository with its commit graph loaded.
+ *
+ * @author	Heng Yuan
+ */
+@State (Scope.Benchmark)
+public class RepoState
+{
+	@Param ({ "LINEAR", "PULL_REQUEST", "RELEASE", "CRISS_CROSS", "DISCONNECTED", "WIDE" })
+	public SyntheticRepo.Shape shape;
+
+	@Param ({ "10000", "100000", "1000000" })
+	public int commits;
+
+	public GitRepo gitRepo;
+	public RefSnapshot refs;
+	public RevWalk revWalk;
+	public CommitGraphCache graph;
+
+	@Setup (Level.Trial)
+	public void setup () throws IOException
+	{
+		gitRepo = new GitRepo (SyntheticRepo.get (shape, commits));
+		refs = gitRepo.getRefSnapshot ();
+		revWalk = gitRepo.createRevWalk ();
+		graph = CommitGraphCache.load (gitRepo, refs, revWalk, NullProgressMonitor.INSTANCE);
+	}
+
+	@TearDown (Level.Trial)
+	public void tearDown () throws Exception
+	{
+		revWalk.close ();
+		gitRepo.close ();
+	}
+
+	/**
+	 * Create a tree of all the commits, with master as the start node.
+	 *
+	 * @return	a tree whose branches are not discovered yet.
+	 */
+	public RelationTree createTree ()
+	{
+		RelationTree tree = new RelationTree ();
+		tree.addNodes (graph, revWalk, refs);
+		tree.setStartNode (tree.getNode (refs.getTips ().get (Constants.R_HEADS + Constants.MASTER)));
+		return tree;
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+/**
+ * Generate repositories of commits with empty trees, in the shapes of
+ * common histories.  The commits are written to a single pack file, so
+ * that a million commits can be generated in seconds.  The generated
+ * repositories are kept under the target directory and reused.
+ *
+ * @author	Heng Yuan
+ */
+public class SyntheticRepo
+{
+	public enum Shape
+	{
+		/** A single branch without merges. */
+		LINEAR,
+		/** Short topic branches merged into master as GitHub pull requests. */
+		PULL_REQUEST,
+		/** Long-lived release branches that are merged back into master. */
+		RELEASE,
+		/** Two branches repeatedly merged into each other. */
+		CRISS_CROSS,
+		/** Unrelated histories without a common root, such as gh-pages. */
+		DISCONNECTED,
+		/** Many long-lived topic branches in progress at the same time. */
+		WIDE
+	}
+
+	private final static long SEED = 20190601;
+	private final static long START_TIME = 1500000000L;
+
+	/**
+	 * Get a repository, generating it if it does not exist yet.
+	 *
+	 * @param	shape
+	 * 			the shape of the history
+	 * @param	commitCount
+	 * 			the number of the commits
+	 * @return	the repository directory
+	 * @throws	IOException
+	 * 			in case of I/O error
+	 */
+	public static File get (Shape shape, int commitCount) throws IOException
+	{
+		File dir = new File ("target/repos/" + shape.name ().toLowerCase () + "-" + commitCount);
+		if (new File (dir, ".git/refs/heads/master").isFile ())
+			return dir;
+		new SyntheticRepo (dir).generate (shape, commitCount);
+		return dir;
+	}
+
+	private final File m_dir;
+	private final Random m_random = new Random (SEED);
+	private Repository m_repo;
+	private PackInserter m_inserter;
+	private ObjectId m_emptyTree;
+	private int m_count;
+	private final LinkedHashMap<String, ObjectId> m_branches = new LinkedHashMap<String, ObjectId> ();
+
+	private SyntheticRepo (File dir)
+	{
+		m_dir = dir;
+	}
+
+	private void generate (Shape shape, int commitCount) throws IOException
+	{
+		m_repo = FileRepositoryBuilder.create (new File (m_dir, Constants.DOT_GIT));
+		m_repo.create ();
+		try
+		{
+			m_inserter = ((FileRepository) m_repo).getObjectDatabase ().newPackInserter ();
+			m_inserter.checkExisting (false);
+			m_emptyTree = m_inserter.insert (Constants.OBJ_TREE, new byte[0]);
+			switch (shape)
+			{
+				case LINEAR:
+					generateLinear (commitCount);
+					break;
+				case PULL_REQUEST:
+					generatePullRequests (commitCount);
+					break;
+				case RELEASE:
+					generateReleases (commitCount);
+					break;
+				case CRISS_CROSS:
+					generateCrissCross (commitCount);
+					break;
+				case DISCONNECTED:
+					generateDisconnected (commitCount);
+					break;
+				case WIDE:
+					generateWide (commitCount);
+					break;
+			}
+			m_inserter.flush ();
+
+			for (Map.Entry<String, ObjectId> entry : m_branches.entrySet ())
+			{
+				RefUpdate update = m_repo.updateRef (Constants.R_HEADS + entry.getKey ());
+				update.setNewObjectId (entry.getValue ());
+				update.setForceUpdate (true);
+				update.update ();
+			}
+		}
+		finally
+		{
+			if (m_inserter != null)
+				m_inserter.close ();
+			m_repo.close ();
+		}
+	}
+
+	private ObjectId commit (String message, ObjectId... parents) throws IOException
+	{
+		++m_count;
+		PersonIdent ident = new PersonIdent ("jgvt", "jgvt@localhost", (START_TIME + m_count * 60) * 1000, 0);
+		CommitBuilder builder = new CommitBuilder ();
+		builder.setTreeId (m_emptyTree);
+		builder.setParentIds (parents);
+		builder.setAuthor (ident);
+		builder.setCommitter (ident);
+		builder.setMessage (message + " " + m_count);
+		return m_inserter.insert (builder);
+	}
+
+	private void setBranch (String name, ObjectId id)
+	{
+		m_branches.put (name, id);
+	}
+
+	private void generateLinear (int commitCount) throws IOException
+	{
+		ObjectId master = commit ("init");
+		while (m_count < commitCount)
+		{
+			master = commit ("commit", master);
+		}
+		setBranch ("master", master);
+	}
+
+	private void generatePullRequests (int commitCount) throws IOException
+	{
+		setBranch ("master", generatePullRequestHistory (commitCount));
+	}
+
+	private ObjectId generatePullRequestHistory (int commitCount) throws IOException
+	{
+		ObjectId master = commit ("init");
+		int pr = 0;
+		while (m_count < commitCount)
+		{
+			// a topic branch of 1 to 5 commits, while master moves on.
+			ObjectId topic = master;
+			int topicSize = 1 + m_random.nextInt (5);
+			for (int i = 0; i < topicSize && m_count < commitCount; ++i)
+			{
+				topic = commit ("topic", topic);
+			}
+			if (m_random.nextInt (3) == 0 && m_count < commitCount)
+			{
+				master = commit ("commit", master);
+			}
+			if (m_count < commitCount)
+			{
+				master = commit ("Merge pull request #" + (++pr), master, topic);
+			}
+		}
+		return master;
+	}
+
+	private void generateReleases (int commitCount) throws IOException
+	{
+		final int maxActive = 5;
+		final int releaseInterval = Math.max (20, commitCount / 50);
+
+		ObjectId master = commit ("init");
+		ArrayList<ObjectId> releases = new ArrayList<ObjectId> ();
+		ArrayList<String> releaseNames = new ArrayList<String> ();
+		int releaseCount = 0;
+		while (m_count < commitCount)
+		{
+			if (m_count % releaseInterval == 0)
+			{
+				// branch off a new release, and retire the oldest one.
+				if (releases.size () == maxActive)
+				{
+					setBranch (releaseNames.remove (0), releases.remove (0));
+				}
+				releases.add (master);
+				releaseNames.add ("release-" + (++releaseCount));
+			}
+
+			int choice = m_random.nextInt (10);
+			if (choice < 6 || releases.isEmpty ())
+			{
+				master = commit ("commit", master);
+			}
+			else if (choice < 9)
+			{
+				int index = m_random.nextInt (releases.size ());
+				releases.set (index, commit ("fix", releases.get (index)));
+			}
+			else
+			{
+				// merge a release back into master.
+				int index = m_random.nextInt (releases.size ());
+				master = commit ("Merge branch '" + releaseNames.get (index) + "'", master, releases.get (index));
+			}
+		}
+		for (int i = 0; i < releases.size (); ++i)
+		{
+			setBranch (releaseNames.get (i), releases.get (i));
+		}
+		setBranch ("master", master);
+	}
+
+	private void generateDisconnected (int commitCount) throws IOException
+	{
+		// master has half of the commits, and gh-pages and two vendor
+		// histories share the rest.
+		setBranch ("master", generatePullRequestHistory (commitCount / 2));
+		setBranch ("vendor-1", generatePullRequestHistory (commitCount * 3 / 4));
+		setBranch ("vendor-2", generatePullRequestHistory (commitCount * 7 / 8));
+		ObjectId pages = commit ("init");
+		while (m_count < commitCount)
+		{
+			pages = commit ("commit", pages);
+		}
+		setBranch ("gh-pages", pages);
+	}
+
+	private void generateWide (int commitCount) throws IOException
+	{
+		// one topic branch for every 20 commits, up to 2000 at a time.  Each
+		// commit goes to a random topic, so the topics stay open for a long
+		// time before they are merged into master and started over.
+		final int topicCount = Math.max (10, Math.min (2000, commitCount / 20));
+
+		ObjectId master = commit ("init");
+		ObjectId[] topics = new ObjectId[topicCount];
+		boolean[] started = new boolean[topicCount];
+		for (int i = 0; i < topicCount; ++i)
+		{
+			topics[i] = master;
+		}
+		int merge = 0;
+		while (m_count < commitCount)
+		{
+			int index = m_random.nextInt (topicCount);
+			if (started[index] && m_random.nextInt (10) == 0)
+			{
+				master = commit ("Merge branch 'topic-" + (++merge) + "'", master, topics[index]);
+				topics[index] = master;
+				started[index] = false;
+			}
+			else
+			{
+				topics[index] = commit ("topic", topics[index]);
+				started[index] = true;
+			}
+		}
+		setBranch ("master", master);
+	}
+
+	private void generateCrissCross (int commitCount) throws IOException
+	{
+		ObjectId master = commit ("init");
+		ObjectId develop = commit ("commit", master);
+		while (m_count < commitCount)
+		{
+			int size = 1 + m_random.nextInt (3);
+			for (int i = 0; i < size && m_count < commitCount; ++i)
+			{
+				master = commit ("commit", master);
+				develop = commit ("commit", develop);
+			}
+			// each branch merges the other's tip.
+			ObjectId oldMaster = master;
+			ObjectId oldDevelop = develop;
+			if (m_count < commitCount)
+			{
+				master = commit ("Merge branch 'develop'", master, oldDevelop);
+			}
+			if (m_count < commitCount)
+			{
+				develop = commit ("Merge branch 'master'", develop, oldMaster);
+			}
+		}
+		setBranch ("develop", develop);
+		setBranch ("master", master);
+	}
+}
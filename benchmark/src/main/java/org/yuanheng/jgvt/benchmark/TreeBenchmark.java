@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.yuanheng.jgvt.relation.BranchDiscoveryAlgorithm;
+import org.yuanheng.jgvt.relation.BranchLayoutAlgorithm;
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.RelationEditList;
+import org.yuanheng.jgvt.relation.RelationNode;
+import org.yuanheng.jgvt.relation.RelationTree;
+
+/**
+ * Benchmarks of building a tree, discovering its branches and laying them
+ * out.  Each phase starts from a tree prepared by the previous phases.
+ *
+ * @author	Heng Yuan
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3)
+@Measurement (iterations = 5)
+@Fork (value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class TreeBenchmark
+{
+	/**
+	 * A new tree for each invocation, since the discovery changes it.
+	 */
+	@State (Scope.Thread)
+	public static class NewTree
+	{
+		public RelationTree tree;
+
+		@Setup (Level.Invocation)
+		public void setup (RepoState repo)
+		{
+			tree = repo.createTree ();
+		}
+	}
+
+	/**
+	 * A new tree with the initial branches for each invocation.
+	 */
+	@State (Scope.Thread)
+	public static class DiscoveredTree
+	{
+		public RelationTree tree;
+
+		@Setup (Level.Invocation)
+		public void setup (RepoState repo)
+		{
+			tree = repo.createTree ();
+			BranchDiscoveryAlgorithm.discoverBranches (tree, new RelationEditList ());
+		}
+	}
+
+	/**
+	 * A tree with the branches inferred.  The layout can be repeated on the
+	 * same tree.
+	 */
+	@State (Scope.Thread)
+	public static class InferredTree
+	{
+		public RelationTree tree;
+
+		@Setup (Level.Trial)
+		public void setup (RepoState repo)
+		{
+			tree = repo.createTree ();
+			BranchDiscoveryAlgorithm.inferBranches (tree, new RelationEditList (), new BranchLog ());
+		}
+	}
+
+	@Benchmark
+	public RelationTree addNodes (RepoState repo)
+	{
+		return repo.createTree ();
+	}
+
+	@Benchmark
+	public RelationTree inferBranches (NewTree state)
+	{
+		BranchDiscoveryAlgorithm.inferBranches (state.tree, new RelationEditList (), new BranchLog ());
+		return state.tree;
+	}
+
+	/**
+	 * Infer the branches of the disconnected parts of the history in
+	 * parallel.  A connected history is inferred as a whole.
+	 */
+	@Benchmark
+	public RelationTree inferComponents (NewTree state)
+	{
+		List<List<RelationNode>> components = BranchDiscoveryAlgorithm.partition (state.tree, 0);
+		if (components == null)
+			BranchDiscoveryAlgorithm.inferBranches (state.tree, new RelationEditList (), new BranchLog ());
+		else
+			BranchDiscoveryAlgorithm.inferBranches (state.tree, components, new RelationEditList (), new BranchLog ());
+		return state.tree;
+	}
+
+	@Benchmark
+	public BranchLog mergeBranches (DiscoveredTree state)
+	{
+		BranchLog log = new BranchLog ();
+		BranchDiscoveryAlgorithm.mergeBranches (state.tree, log);
+		return log;
+	}
+
+	@Benchmark
+	public RelationTree layoutBranches (InferredTree state)
+	{
+		BranchLayoutAlgorithm.layoutBranches (state.tree);
+		return state.tree;
+	}
+}
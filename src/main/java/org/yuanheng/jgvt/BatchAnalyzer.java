@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.BranchStatistics;
+import org.yuanheng.jgvt.relation.BuildStatistics;
+import org.yuanheng.jgvt.relation.RelationTree;
+import org.yuanheng.jgvt.relation.RelationTreeFactory;
+
+/**
+ * Compute the branch statistics of repositories without the GUI.
+ * <p>
+ * The repositories are processed in parallel by {@link BatchRunner}.  A
+ * CSV row is written as soon as a repository is done, so the rows are in
+ * the order of completion.  The algorithm histogram is a single column of
+ * <code>name=count</code> pairs separated by semicolons.
+ *
+ * @author	Heng Yuan
+ */
+public class BatchAnalyzer
+{
+	private final static String HEADER = "repo,commits,branches,merges,longest branch,longest branch name,iterations,build ms,algorithms";
+
+	private static String quote (String str)
+	{
+		if (str == null)
+			return "";
+		if (str.indexOf (',') < 0 &&
+			str.indexOf ('"') < 0 &&
+			str.indexOf ('\n') < 0)
+			return str;
+		return "\"" + str.replace ("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Compute the branch statistics of repositories.  The statistics are
+	 * written to the output file in {@link Configs#output}, or to the
+	 * standard output.
+	 *
+	 * @param	files
+	 * 			the repository directories.  A file instead of a directory
+	 * 			analyzes the history of the file.
+	 * @param	importantBranchNames
+	 * 			the important branch names.  The default names are used if
+	 * 			it is empty.
+	 * @return	the exit code.  0 if all the repositories were analyzed.
+	 */
+	public static int analyze (List<File> files, List<String> importantBranchNames)
+	{
+		if (importantBranchNames.isEmpty ())
+		{
+			importantBranchNames = RelationTreeFactory.getDefaultImportantBranchNames ();
+		}
+
+		PrintWriter pw;
+		try
+		{
+			if (Main.configs.output == null)
+				pw = new PrintWriter (new OutputStreamWriter (System.out));
+			else
+				pw = new PrintWriter (new FileWriter (Main.configs.output));
+		}
+		catch (IOException ex)
+		{
+			System.err.println ("Error: " + ex.getMessage ());
+			return 1;
+		}
+
+		final List<String> branchNames = importantBranchNames;
+		long startTime = System.nanoTime ();
+		int failed;
+		try
+		{
+			pw.println (HEADER);
+			pw.flush ();
+			BatchRunner runner = new BatchRunner (Main.configs.jobs, Main.configs.memoryBudget);
+			failed = runner.run (files, (file, index) -> analyze (file, branchNames, pw));
+		}
+		finally
+		{
+			if (Main.configs.output == null)
+				pw.flush ();
+			else
+				pw.close ();
+		}
+
+		long time = (System.nanoTime () - startTime) / 1000000;
+		System.err.println ("Analyzed " + (files.size () - failed) + " of " + files.size () + " repositories in " + time + " ms");
+		return failed == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Compute the branch statistics of a single repository.
+	 *
+	 * @return	true if the statistics were computed.
+	 */
+	private static boolean analyze (File file, List<String> importantBranchNames, PrintWriter pw) throws Exception
+	{
+		long startTime = System.nanoTime ();
+		File dir = file.isDirectory () ? file : file.getAbsoluteFile ().getParentFile ();
+		String row;
+		GitRepo gitRepo = new GitRepo (dir);
+		try
+		{
+			BranchLog log = new BranchLog ();
+			BuildStatistics buildStats = new BuildStatistics ();
+			RelationTree tree = BatchRunner.buildTree (gitRepo, file, importantBranchNames, log, buildStats);
+			long buildTime = (System.nanoTime () - startTime) / 1000000;
+			BranchStatistics stats = BranchStatistics.compute (tree, log);
+
+			StringBuilder algorithms = new StringBuilder ();
+			for (Map.Entry<String, Integer> entry : stats.getAlgorithms ().entrySet ())
+			{
+				if (algorithms.length () > 0)
+					algorithms.append (';');
+				algorithms.append (entry.getKey ()).append ('=').append (entry.getValue ());
+			}
+
+			row = quote (file.isDirectory () ? gitRepo.getRoot ().getPath () : file.getPath ()) + "," +
+				stats.getCommitCount () + "," +
+				stats.getBranchCount () + "," +
+				stats.getMergeCount () + "," +
+				stats.getLongestBranch () + "," +
+				quote (stats.getLongestBranchName ()) + "," +
+				stats.getIterations () + "," +
+				buildTime + "," +
+				quote (algorithms.toString ());
+			if (Main.configs.stats)
+			{
+				// the standard output may be the CSV.
+				System.err.print (gitRepo.getRoot () + ":" + System.lineSeparator () + buildStats);
+			}
+		}
+		finally
+		{
+			gitRepo.close ();
+		}
+		synchronized (pw)
+		{
+			pw.println (row);
+			pw.flush ();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.BuildStatistics;
+import org.yuanheng.jgvt.relation.CommitGraphCache;
+import org.yuanheng.jgvt.relation.RelationEditList;
+import org.yuanheng.jgvt.relation.RelationTree;
+import org.yuanheng.jgvt.relation.RelationTreeFactory;
+
+/**
+ * Run a task over many repositories without the GUI.
+ * <p>
+ * The repositories are processed on a fixed thread pool.  Each repository
+ * reserves its estimated memory from a global budget before it is
+ * processed, so that a few huge repositories running at the same time
+ * cannot exhaust the heap.  A repository larger than the whole budget
+ * runs alone.  The largest repositories are started first, so that they
+ * do not hold up the end of the batch.
+ *
+ * @author	Heng Yuan
+ */
+public class BatchRunner
+{
+	/**
+	 * The task run for each repository.
+	 */
+	public interface Task
+	{
+		/**
+		 * @param	file
+		 * 			the repository directory, or a file in the repository.
+		 * @param	index
+		 * 			the index of the file.
+		 * @return	true if the task was successful.
+		 * @throws	Exception
+		 * 			in case of error.
+		 */
+		public boolean run (File file, int index) throws Exception;
+	}
+
+	/**
+	 * Build the tree of a repository.
+	 *
+	 * @param	gitRepo
+	 * 			the git repo
+	 * @param	file
+	 * 			the repository directory, or a file in the repository to
+	 * 			build the tree of its history.
+	 * @param	importantBranchNames
+	 * 			the important branch names
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the build statistics
+	 * @return	the relation tree
+	 * @throws	IOException
+	 * 			in case of I/O error
+	 */
+	public static RelationTree buildTree (GitRepo gitRepo, File file, List<String> importantBranchNames, BranchLog log, BuildStatistics stats) throws IOException
+	{
+		RelationTreeFactory treeFactory = new RelationTreeFactory (gitRepo, importantBranchNames);
+		treeFactory.setStatistics (stats);
+		treeFactory.setHistoryWindow (Main.configs.maxCount, Main.configs.since);
+		if (!file.isDirectory ())
+		{
+			treeFactory.setPath (Utils.getRelativePath (file, gitRepo.getRoot ()).toString ().replace (File.separatorChar, '/'));
+		}
+		return treeFactory.generateTree (RelationEditList.read (gitRepo), log);
+	}
+
+	/**
+	 * Estimate the memory needed to build the tree of a repository.  The
+	 * number of the commits is read from the commit graph cache if there
+	 * is one.  Otherwise, it is estimated from the number of the objects in
+	 * the pack files.
+	 *
+	 * @param	file
+	 * 			the repository directory, or a file in the repository.
+	 * @return	the estimated memory in bytes.
+	 */
+	public static long estimateMemory (File file)
+	{
+		File dir = file.isDirectory () ? file : file.getAbsoluteFile ().getParentFile ();
+		File gitDir = new FileRepositoryBuilder ().findGitDir (dir).getGitDir ();
+		long commitCount = 0;
+		if (gitDir != null)
+		{
+			commitCount = CommitGraphCache.readSize (gitDir);
+			if (commitCount < 0)
+			{
+				commitCount = getPackedObjectCount (gitDir) / Defaults.BATCH_OBJECTS_PER_COMMIT;
+			}
+		}
+		return Defaults.BATCH_MEMORY_BASE + commitCount * Defaults.BATCH_MEMORY_PER_COMMIT;
+	}
+
+	/**
+	 * Get the number of the objects in the version 2 pack indexes.
+	 */
+	private static long getPackedObjectCount (File gitDir)
+	{
+		File[] files = new File (gitDir, "objects/pack").listFiles ((d, name) -> name.endsWith (".idx"));
+		if (files == null)
+			return 0;
+		long count = 0;
+		for (File file : files)
+		{
+			try (DataInputStream dis = new DataInputStream (new FileInputStream (file)))
+			{
+				// magic, version, and then the fan-out table whose last entry
+				// is the number of the objects.
+				if (dis.readInt () != 0xff744f63 ||
+					dis.readInt () != 2)
+					continue;
+				dis.skipBytes (255 * 4);
+				count += dis.readInt () & 0xffffffffL;
+			}
+			catch (IOException ex)
+			{
+				Debug.printStackTrace (ex);
+			}
+		}
+		return count;
+	}
+
+	private final int m_jobs;
+	/** The memory budget in MB. */
+	private final int m_budget;
+	private final Semaphore m_memory;
+
+	/**
+	 * @param	jobs
+	 * 			the number of repositories processed in parallel.
+	 * @param	memoryBudget
+	 * 			the total estimated memory in bytes of the repositories
+	 * 			being processed.
+	 */
+	public BatchRunner (int jobs, long memoryBudget)
+	{
+		m_jobs = jobs;
+		m_budget = (int) Math.max (1, Math.min (Integer.MAX_VALUE, memoryBudget >> 20));
+		m_memory = new Semaphore (m_budget, true);
+	}
+
+	/**
+	 * Run a task over the repositories, and wait for all of them to finish.
+	 *
+	 * @param	files
+	 * 			the repository directories, or files in the repositories.
+	 * @param	task
+	 * 			the task
+	 * @return	the number of the repositories that failed.
+	 */
+	public int run (List<File> files, Task task)
+	{
+		if (files.isEmpty ())
+			return 0;
+
+		// reserve at most the whole budget, so that a huge repository can
+		// still run by itself.
+		final int[] permits = new int[files.size ()];
+		Integer[] order = new Integer[files.size ()];
+		for (int i = 0; i < permits.length; ++i)
+		{
+			permits[i] = (int) Math.max (1, Math.min (m_budget, estimateMemory (files.get (i)) >> 20));
+			order[i] = i;
+		}
+		Arrays.sort (order, (i1, i2) -> permits[i2] - permits[i1]);
+
+		ExecutorService executor = Executors.newFixedThreadPool (Math.min (m_jobs, files.size ()), r ->
+		{
+			Thread thread = new Thread (r, "batch");
+			thread.setDaemon (true);
+			return thread;
+		});
+
+		ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>> ();
+		for (final int index : order)
+		{
+			final File file = files.get (index);
+			futures.add (executor.submit (() -> run (task, file, index, permits[index])));
+		}
+
+		int failed = 0;
+		for (Future<Boolean> future : futures)
+		{
+			try
+			{
+				if (!future.get ())
+					++failed;
+			}
+			catch (Exception ex)
+			{
+				Debug.printStackTrace (ex);
+				++failed;
+			}
+		}
+		executor.shutdown ();
+		return failed;
+	}
+
+	private boolean run (Task task, File file, int index, int permits)
+	{
+		try
+		{
+			m_memory.acquire (permits);
+		}
+		catch (InterruptedException ex)
+		{
+			return false;
+		}
+		try
+		{
+			if (!file.exists ())
+			{
+				System.err.println (file + ": Error: File does not exist.");
+				return false;
+			}
+			return task.run (file, index);
+		}
+		catch (Throwable t)
+		{
+			System.err.println (file + ": Error: " + t.getMessage ());
+			Debug.printStackTrace (t);
+			return false;
+		}
+		finally
+		{
+			m_memory.release (permits);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A LRU cache of the file changes between a commit and its parent.  The
+ * cache is bounded by the total number of the changed files, so that a few
+ * huge commits cannot use up the memory.
+ *
+ * @author	Heng Yuan
+ */
+class ChangeCache implements ChangeCacheMBean
+{
+	private static class Key
+	{
+		private final ObjectId m_commit;
+		private final ObjectId m_parent;
+
+		Key (ObjectId commit, ObjectId parent)
+		{
+			m_commit = commit.copy ();
+			m_parent = parent == null ? null : parent.copy ();
+		}
+
+		@Override
+		public int hashCode ()
+		{
+			return m_commit.hashCode ();
+		}
+
+		@Override
+		public boolean equals (Object obj)
+		{
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return m_commit.equals (other.m_commit) &&
+				(m_parent == null ? other.m_parent == null : m_parent.equals (other.m_parent));
+		}
+	}
+
+	private static class Entry
+	{
+		private final List<ChangeInfo> m_changes;
+		/** true if the changes were prefetched and not yet requested. */
+		private boolean m_prefetched;
+
+		Entry (List<ChangeInfo> changes, boolean prefetched)
+		{
+			m_changes = changes;
+			m_prefetched = prefetched;
+		}
+	}
+
+	private final LinkedHashMap<Key, Entry> m_map = new LinkedHashMap<Key, Entry> (16, 0.75f, true);
+	private final int m_maxSize;
+	private int m_size;
+
+	private int m_requests;
+	private int m_hits;
+	private int m_prefetchHits;
+	private int m_prefetches;
+
+	/**
+	 * @param	maxSize
+	 * 			the maximum total number of the changed files.
+	 */
+	ChangeCache (int maxSize)
+	{
+		m_maxSize = maxSize;
+	}
+
+	/**
+	 * Get the cached changes.
+	 *
+	 * @param	commit
+	 * 			the commit
+	 * @param	parent
+	 * 			the parent.  null for a root commit.
+	 * @return	the changes.  null if they are not cached.
+	 */
+	synchronized List<ChangeInfo> get (ObjectId commit, ObjectId parent)
+	{
+		Entry entry = m_map.get (new Key (commit, parent));
+		return entry == null ? null : entry.m_changes;
+	}
+
+	/**
+	 * Get the cached changes requested by the user.  Unlike
+	 * {@link #get(ObjectId, ObjectId)}, the request is counted in the hit
+	 * rate.
+	 *
+	 * @param	commit
+	 * 			the commit
+	 * @param	parent
+	 * 			the parent.  null for a root commit.
+	 * @return	the changes.  null if they are not cached.
+	 */
+	synchronized List<ChangeInfo> request (ObjectId commit, ObjectId parent)
+	{
+		++m_requests;
+		Entry entry = m_map.get (new Key (commit, parent));
+		if (entry == null)
+			return null;
+		++m_hits;
+		if (entry.m_prefetched)
+		{
+			entry.m_prefetched = false;
+			++m_prefetchHits;
+		}
+		return entry.m_changes;
+	}
+
+	synchronized boolean contains (ObjectId commit, ObjectId parent)
+	{
+		return m_map.containsKey (new Key (commit, parent));
+	}
+
+	/**
+	 * Cache the changes.
+	 *
+	 * @param	commit
+	 * 			the commit
+	 * @param	parent
+	 * 			the parent.  null for a root commit.
+	 * @param	changes
+	 * 			the changes
+	 * @param	prefetched
+	 * 			true if the changes were computed before being requested.
+	 */
+	synchronized void put (ObjectId commit, ObjectId parent, List<ChangeInfo> changes, boolean prefetched)
+	{
+		Entry oldEntry = m_map.put (new Key (commit, parent), new Entry (changes, prefetched));
+		if (oldEntry != null)
+			m_size -= Math.max (1, oldEntry.m_changes.size ());
+		m_size += Math.max (1, changes.size ());
+		if (prefetched)
+			++m_prefetches;
+
+		// evict the least recently used entries, but keep the new one.
+		Iterator<Entry> it = m_map.values ().iterator ();
+		while (m_size > m_maxSize && m_map.size () > 1)
+		{
+			m_size -= Math.max (1, it.next ().m_changes.size ());
+			it.remove ();
+		}
+	}
+
+	@Override
+	public synchronized int getRequests ()
+	{
+		return m_requests;
+	}
+
+	@Override
+	public synchronized int getHits ()
+	{
+		return m_hits;
+	}
+
+	@Override
+	public synchronized int getMisses ()
+	{
+		return m_requests - m_hits;
+	}
+
+	@Override
+	public synchronized int getPrefetches ()
+	{
+		return m_prefetches;
+	}
+
+	@Override
+	public synchronized int getPrefetchHits ()
+	{
+		return m_prefetchHits;
+	}
+
+	@Override
+	public synchronized int getCachedCommits ()
+	{
+		return m_map.size ();
+	}
+
+	@Override
+	public synchronized int getCachedFiles ()
+	{
+		return m_size;
+	}
+
+	@Override
+	public String getReport ()
+	{
+		return getStats ();
+	}
+
+	/**
+	 * Get the cache statistics.
+	 *
+	 * @return	a human readable summary of the hit rate.
+	 */
+	synchronized String getStats ()
+	{
+		int hitRate = m_requests == 0 ? 0 : (m_hits * 100 / m_requests);
+		return "requests=" + m_requests + " hits=" + m_hits + " (" + hitRate + "%)" +
+			" prefetches=" + m_prefetches + " prefetch hits=" + m_prefetchHits +
+			" cached commits=" + m_map.size () + " cached files=" + m_size;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+/**
+ * The JMX view of the hit rate of the cache of the changes of the
+ * commits, including the changes prefetched for the neighbors of the
+ * selected commit.
+ *
+ * @author	Heng Yuan
+ */
+public interface ChangeCacheMBean
+{
+	/**
+	 * @return	the number of the changes requested by the user.
+	 */
+	public int getRequests ();
+
+	/**
+	 * @return	the number of the requests found in the cache.
+	 */
+	public int getHits ();
+
+	/**
+	 * @return	the number of the requests not found in the cache.
+	 */
+	public int getMisses ();
+
+	/**
+	 * @return	the number of the changes prefetched.
+	 */
+	public int getPrefetches ();
+
+	/**
+	 * @return	the number of the prefetched changes that were requested.
+	 */
+	public int getPrefetchHits ();
+
+	/**
+	 * @return	the number of the commits in the cache.
+	 */
+	public int getCachedCommits ();
+
+	/**
+	 * @return	the total number of the changed files in the cache.
+	 */
+	public int getCachedFiles ();
+
+	/**
+	 * @return	the statistics as a line of text.
+	 */
+	public String getReport ();
+}
@@ -23,6 +23,7 @@ import java.nio.charset.StandardCharsets;
 
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -65,7 +66,20 @@ public class CommitUtils
 
 	public static String getName (RelationNode node)
 	{
-		return getName (node.getCommit ());
+		return getName (node.getId ());
+	}
+
+	/**
+	 * Practically any commits with "Merge pull requests" should not be
+	 * trusted with the ordering of the parent commits.
+	 *
+	 * @param	commit
+	 * 			a parsed commit
+	 * @return	true if the commit message indicates a pull request merge.
+	 */
+	public static boolean isMergePullRequest (RevCommit commit)
+	{
+		return commit.getFullMessage ().startsWith ("Merge pull request");
 	}
 
 	public static String getToolTipString (RevCommit commit, int flag)
@@ -178,9 +192,9 @@ public class CommitUtils
 		return "<td class=\"value\">" + str + "</td>";
 	}
 
-	private static String getCommitLink (RevCommit commit)
+	private static String getCommitLink (AnyObjectId id)
 	{
-		String name = commit.getId ().getName ();
+		String name = id.getName ();
 		return "<a class=\"commit\" href=\"http://" + HOST_COMMIT + "/" + name + "\">" + name + "</a>";
 	}
 
@@ -265,7 +279,7 @@ public class CommitUtils
 				first = false;
 			else
 				subBuilder.append ("<br/>");
-			subBuilder.append (getCommitLink (n.getCommit ()));
+			subBuilder.append (getCommitLink (n.getId ()));
 		}
 		builder.append (getValue (subBuilder.toString ()));
 		builder.append ("</tr>");
@@ -327,11 +341,11 @@ public class CommitUtils
 		builder.append ("<body><table class=\"info\">");
 		builder.append ("<tr>");
 		builder.append (getHeader ("Commit 1 SHA-1"));
-		builder.append (getValue (getCommitLink (n1.getCommit ())));
+		builder.append (getValue (getCommitLink (n1.getId ())));
 		builder.append ("</tr>");
 		builder.append ("<tr>");
 		builder.append (getHeader ("Commit 2 SHA-1"));
-		builder.append (getValue (getCommitLink (n2.getCommit ())));
+		builder.append (getValue (getCommitLink (n2.getId ())));
 		builder.append ("</tr>");
 /*
 		builder.append ("<tr>");
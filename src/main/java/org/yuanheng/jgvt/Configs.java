@@ -15,6 +15,8 @@
  */
 package org.yuanheng.jgvt;
 
+import java.io.File;
+
 /**
  * This class holds instance configurations.
  *
@@ -23,4 +25,26 @@ package org.yuanheng.jgvt;
 public class Configs
 {
 	public boolean debug;
+	/** Do not fetch from the remote repositories. */
+	public boolean offline;
+	/** The maximum number of commits to load. */
+	public int maxCount = Integer.MAX_VALUE;
+	/** The commit time of the oldest commits to load. */
+	public int since = Integer.MIN_VALUE;
+	/** The rename detection limit.  -1 to use diff.renameLimit of the repository. */
+	public int renameLimit = -1;
+	/** The number of neighbor commits whose changes are prefetched.  0 disables the prefetch.  -1 to use the preference. */
+	public int prefetchCount = -1;
+	/** The format to export the trees without the GUI.  null to start the GUI. */
+	public String exportFormat;
+	/** The export output file, or the directory for multiple repositories.  The statistics output file. */
+	public File output;
+	/** Print the branch statistics of the repositories without the GUI. */
+	public boolean analyze;
+	/** Print the time and the allocated memory of each phase of building the trees. */
+	public boolean stats;
+	/** The number of repositories processed in parallel without the GUI. */
+	public int jobs = Runtime.getRuntime ().availableProcessors ();
+	/** The total estimated memory in bytes of the repositories being processed in parallel. */
+	public long memoryBudget = Runtime.getRuntime ().maxMemory () / 4 * 3;
 }
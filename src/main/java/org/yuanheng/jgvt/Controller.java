@@ -17,20 +17,30 @@ package org.yuanheng.jgvt;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.management.ObjectName;
 import javax.swing.SwingUtilities;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkListener;
 
-import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.yuanheng.jgvt.gui.GUI;
 import org.yuanheng.jgvt.gui.ListInfo;
+import org.yuanheng.jgvt.gui.StatusBarMonitor;
 import org.yuanheng.jgvt.gui.graph.GVTGraph;
 import org.yuanheng.jgvt.gui.graph.GVTGraphFactory;
 import org.yuanheng.jgvt.relation.*;
@@ -65,15 +75,59 @@ public class Controller
 		return s_browserUrlHandler;
 	}
 
+	/** The number of the controllers created, to give each its own JMX names. */
+	private final static AtomicInteger s_instanceCount = new AtomicInteger ();
+
+	private static ExecutorService createExecutor (String name)
+	{
+		return createExecutor (name, Thread.NORM_PRIORITY);
+	}
+
+	private static ExecutorService createExecutor (String name, int priority)
+	{
+		return Executors.newSingleThreadExecutor (r ->
+		{
+			Thread thread = new Thread (r, name);
+			thread.setDaemon (true);
+			thread.setPriority (priority);
+			return thread;
+		});
+	}
+
 	private GUI m_gui;
 	private GitRepo m_gitRepo;
 	private File m_dir;
 	private File m_file;
 	private RelationTree m_tree;
+	/** false if only the recent commits are in the tree. */
+	private boolean m_treeComplete;
+	/** Incremented when the tree being shown is edited in place. */
+	private int m_treeEdits;
 	private RelationNode m_selectedNode;
 	private RelationNode m_rememberedNode;
 	private final ArrayList<String> m_importantBranchNames;
 	private BranchLog m_branchLog;
+	/** The statistics of the last build. */
+	private final BuildStatistics m_buildStats;
+	/** The instance number in the JMX names of this controller. */
+	private final int m_instance = s_instanceCount.incrementAndGet ();
+	/** The JMX names registered.  null if the registration failed. */
+	private ObjectName m_buildStatsName;
+	private ObjectName m_changeCacheName;
+	/** The fetch that moved the refs, to be added to the statistics of the next build. */
+	private volatile BuildStatistics.Phase m_fetchPhase;
+	/** The executor that fetches from the remote repositories. */
+	private final ExecutorService m_fetchExecutor;
+	private final AtomicBoolean m_fetching = new AtomicBoolean ();
+	private final AtomicBoolean m_extending = new AtomicBoolean ();
+	/** The executor that builds the tree. */
+	private final ExecutorService m_buildExecutor;
+	private StatusBarMonitor m_buildMonitor;
+	/** The executor that computes the changes of the selected commits. */
+	private final ExecutorService m_diffExecutor;
+	/** The low priority executor that computes the changes of the neighbors. */
+	private final ExecutorService m_prefetchExecutor;
+	private final AtomicInteger m_prefetchGeneration = new AtomicInteger ();
 
 	private final HyperlinkListener m_commitUrlHandler = new HyperlinkListener ()
 	{
@@ -100,13 +154,21 @@ public class Controller
 		m_importantBranchNames.addAll (RelationTreeFactory.getDefaultImportantBranchNames ());
 		m_tree = new RelationTree ();
 		m_branchLog = new BranchLog ();
+		m_buildStats = new BuildStatistics ();
+		m_buildStatsName = registerMBean (m_buildStats, Defaults.MBEAN_BUILD_STATISTICS);
+		m_fetchExecutor = createExecutor ("fetch");
+		m_buildExecutor = createExecutor ("build");
+		m_diffExecutor = createExecutor ("diff");
+		m_prefetchExecutor = createExecutor ("prefetch", Thread.MIN_PRIORITY);
 	}
 
-	public void setRepo (GitRepo gitRepo, List<String> importantBranchNames) throws Exception
+	public void setRepo (GitRepo gitRepo, File file, List<String> importantBranchNames) throws Exception
 	{
 		m_gitRepo = gitRepo;
 		m_dir = m_gitRepo.getRoot ();
-		m_file = null;
+		m_file = file;
+		unregisterMBean (m_changeCacheName);
+		m_changeCacheName = registerMBean (m_gitRepo.getChangeCacheStatistics (), Defaults.MBEAN_CHANGE_CACHE);
 
 		m_gui.setRoot (m_gitRepo.getRoot ().getAbsolutePath ());
 		m_gui.setBranch (m_gitRepo.getBranch ());
@@ -117,6 +179,73 @@ public class Controller
 
 		setImportantBranchNames (importantBranchNames);
 		generateTree ();
+		fetchRemotes ();
+	}
+
+	/**
+	 * Register an MBean under a name unique to this controller.  The GUI
+	 * works without it, so a failure is only reported.
+	 *
+	 * @param	mbean
+	 * 			the MBean
+	 * @param	name
+	 * 			the JMX name without the instance number.
+	 * @return	the registered name.  null if the registration failed.
+	 */
+	private ObjectName registerMBean (Object mbean, String name)
+	{
+		try
+		{
+			ObjectName objectName = new ObjectName (name + ",instance=" + m_instance);
+			ManagementFactory.getPlatformMBeanServer ().registerMBean (mbean, objectName);
+			return objectName;
+		}
+		catch (Exception ex)
+		{
+			System.err.println ("Warning: Unable to register " + name + ": " + ex.getMessage ());
+			Debug.printStackTrace (ex);
+			return null;
+		}
+	}
+
+	private static void unregisterMBean (ObjectName name)
+	{
+		if (name == null)
+			return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer ().unregisterMBean (name);
+		}
+		catch (Exception ex)
+		{
+			System.err.println ("Warning: Unable to unregister " + name + ": " + ex.getMessage ());
+			Debug.printStackTrace (ex);
+		}
+	}
+
+	/**
+	 * Unregister the MBeans of this controller and stop its background
+	 * threads.
+	 */
+	public void close ()
+	{
+		unregisterMBean (m_buildStatsName);
+		unregisterMBean (m_changeCacheName);
+		m_buildStatsName = null;
+		m_changeCacheName = null;
+		m_fetchExecutor.shutdownNow ();
+		m_buildExecutor.shutdownNow ();
+		m_diffExecutor.shutdownNow ();
+		m_prefetchExecutor.shutdownNow ();
+	}
+
+	/**
+	 * @return	the JMX name of the build statistics.  null if they are not
+	 * 			registered.
+	 */
+	ObjectName getBuildStatisticsName ()
+	{
+		return m_buildStatsName;
 	}
 
 	public void setImportantBranchNames (List<String> importantBranchNames)
@@ -149,17 +278,313 @@ public class Controller
 		return m_tree;
 	}
 
-	public void generateTree () throws GitAPIException, IOException
+	/**
+	 * Generate the whole tree in the background.
+	 */
+	public void generateTree ()
 	{
-		RelationTreeFactory treeFactory = new RelationTreeFactory (m_gitRepo, m_importantBranchNames);
-		m_gitRepo.fetch (true);
-		m_branchLog.clear ();
-		m_tree = treeFactory.generateTree (m_gitRepo.getCommitLogs (m_file), Main.editList, m_branchLog);
+		build (false);
+	}
+
+	/**
+	 * Build the tree in the background.  The commits are read, and the
+	 * branches are discovered and laid out on the build thread.  The graph
+	 * model is then updated on the event dispatch thread.  For a large
+	 * repository, the recent commits are shown first.  The build in
+	 * progress, if any, is cancelled.
+	 *
+	 * @param	incremental
+	 * 			true to update the current tree when possible.
+	 */
+	private void build (boolean incremental)
+	{
+		if (m_buildMonitor != null)
+			m_buildMonitor.cancel ();
+		final StatusBarMonitor monitor = m_gui.createProgressMonitor ();
+		m_buildMonitor = monitor;
+
+		final GitRepo gitRepo = m_gitRepo;
+		final File file = m_file;
+		final RelationTree oldTree = (incremental && m_treeComplete && file == null) ? m_tree : null;
+		final RelationEditList editList = (RelationEditList) Main.editList.clone ();
+		final RelationTreeFactory treeFactory = new RelationTreeFactory (gitRepo, new ArrayList<String> (m_importantBranchNames));
+		treeFactory.setProgressMonitor (monitor);
+		treeFactory.setHistoryWindow (Main.configs.maxCount, Main.configs.since);
+		final BuildStatistics stats = new BuildStatistics ();
+		BuildStatistics.Phase fetchPhase = m_fetchPhase;
+		m_fetchPhase = null;
+		if (fetchPhase != null)
+			stats.add (fetchPhase);
+		treeFactory.setStatistics (stats);
+
+		m_buildExecutor.execute (() ->
+		{
+			try
+			{
+				if (oldTree != null && updateTree (treeFactory, oldTree, monitor, stats))
+					return;
+
+				final BranchLog log = new BranchLog ();
+				if (file != null)
+				{
+					treeFactory.setPath (Utils.getRelativePath (file, gitRepo.getRoot ()).toString ().replace (File.separatorChar, '/'));
+				}
+				final RelationTree tree = treeFactory.generateTree (editList, log, recentTree ->
+				{
+					SwingUtilities.invokeLater (() -> { publish (monitor, recentTree, null, null); });
+				});
+				SwingUtilities.invokeAndWait (() -> { publish (monitor, tree, log, stats); });
+			}
+			catch (CancellationException ex)
+			{
+				Debug.println ("tree generation cancelled");
+			}
+			catch (Throwable t)
+			{
+				Debug.printStackTrace (t);
+			}
+			finally
+			{
+				monitor.done ();
+			}
+		});
+	}
+
+	/**
+	 * Incrementally update the tree.  A copy of the tree is updated on the
+	 * build thread, and then shown on the event dispatch thread.
+	 *
+	 * @return	true if the tree was updated.  false if the tree needs to be
+	 * 			generated again.
+	 * @throws	Exception
+	 * 			in case of error
+	 */
+	private boolean updateTree (final RelationTreeFactory treeFactory, final RelationTree tree, final StatusBarMonitor monitor, final BuildStatistics stats) throws Exception
+	{
+		BuildStatistics.Phase phase = stats.begin ("ref snapshot");
+		final RefSnapshot refs = m_gitRepo.getRefSnapshot ();
+		stats.end (phase);
+		if (!refs.hasChanged (tree.getRefSnapshot ()))
+			return true;
+		final CommitGraphCache graph = treeFactory.loadUpdate (tree, refs);
+
+		boolean updated = changeTree (tree, monitor, stats, true, (copy, editList, log) ->
+		{
+			return treeFactory.updateTree (copy, graph, refs, editList, log);
+		});
+		if (monitor.isCancelled ())
+			throw new CancellationException ();
+		return updated;
+	}
+
+	/**
+	 * A change made to a copy of the tree on the build thread.
+	 */
+	private interface TreeChange
+	{
+		/**
+		 * @return	the nodes laid out again, or null if the change failed.
+		 */
+		List<RelationNode> change (RelationTree tree, RelationEditList editList, BranchLog log);
+	}
+
+	/**
+	 * Change a copy of the tree being shown on the build thread, and show
+	 * the copy on the event dispatch thread.  The tree being shown is only
+	 * copied and replaced on the event dispatch thread.  If the tree is
+	 * edited in the meantime, the change is made again to a new copy.
+	 *
+	 * @param	tree
+	 * 			the tree being shown.  Nothing is changed if it has been
+	 * 			replaced.
+	 * @param	monitor
+	 * 			the monitor of the build.
+	 * @param	stats
+	 * 			the build statistics
+	 * @param	center
+	 * 			true to center the selected node.
+	 * @param	change
+	 * 			the change
+	 * @return	false if the change failed.
+	 * @throws	Exception
+	 * 			in case of error
+	 */
+	private boolean changeTree (final RelationTree tree, final StatusBarMonitor monitor, final BuildStatistics stats, final boolean center, TreeChange change) throws Exception
+	{
+		final boolean[] retry = new boolean[1];
+		do
+		{
+			final RelationTree[] copy = new RelationTree[1];
+			final BranchLog[] log = new BranchLog[1];
+			final RelationEditList[] editList = new RelationEditList[1];
+			final int[] edits = new int[1];
+			final List<RelationNode> nodes;
+			SwingUtilities.invokeAndWait (() ->
+			{
+				if (monitor.isCancelled () || tree != m_tree)
+					return;
+				copy[0] = tree.copy ();
+				log[0] = m_branchLog.copy (copy[0]);
+				editList[0] = (RelationEditList) Main.editList.clone ();
+				edits[0] = m_treeEdits;
+			});
+			if (copy[0] == null)
+				return true;
+			nodes = change.change (copy[0], editList[0], log[0]);
+			if (nodes == null)
+				return false;
+			SwingUtilities.invokeAndWait (() ->
+			{
+				retry[0] = false;
+				if (monitor.isCancelled () || tree != m_tree)
+					return;
+				if (edits[0] != m_treeEdits)
+				{
+					retry[0] = true;
+					return;
+				}
+				m_tree = copy[0];
+				m_branchLog.clear ();
+				m_branchLog.addAll (log[0]);
+				updateGraphModel (center, stats, nodes);
+			});
+		}
+		while (retry[0]);
+		return true;
+	}
+
+	/**
+	 * Show a newly generated tree.
+	 *
+	 * @param	monitor
+	 * 			the monitor of the build.  The tree is discarded if the
+	 * 			build was cancelled.
+	 * @param	tree
+	 * 			the new tree
+	 * @param	log
+	 * 			the branch discovery log of the tree.  null if only the
+	 * 			recent commits are in the tree.
+	 * @param	stats
+	 * 			the build statistics of the tree.  null if only the recent
+	 * 			commits are in the tree.
+	 */
+	private void publish (StatusBarMonitor monitor, RelationTree tree, BranchLog log, BuildStatistics stats)
+	{
+		if (monitor.isCancelled ())
+			return;
+		m_tree = tree;
+		m_treeComplete = (log != null);
+		if (log != null)
+		{
+			m_branchLog.clear ();
+			m_branchLog.addAll (log);
+		}
+		updateGraphModel (true, stats);
+	}
+
+	/**
+	 * Load older commits into a tree limited by the history window.  A
+	 * copy of the tree is extended on the build thread without reloading.
+	 */
+	public void extendHistory ()
+	{
+		if (!m_treeComplete || !m_tree.isTruncated () ||
+			!m_extending.compareAndSet (false, true))
+			return;
+		final RelationTree tree = m_tree;
+		final StatusBarMonitor monitor = m_gui.createProgressMonitor ();
+		final RelationTreeFactory treeFactory = new RelationTreeFactory (m_gitRepo, new ArrayList<String> (m_importantBranchNames));
+		treeFactory.setProgressMonitor (monitor);
+		final BuildStatistics stats = new BuildStatistics ();
+		treeFactory.setStatistics (stats);
+
+		m_buildExecutor.execute (() ->
+		{
+			try
+			{
+				changeTree (tree, monitor, stats, false, (copy, editList, log) ->
+					treeFactory.extendTree (copy, Defaults.HISTORY_EXTEND_COUNT, editList, log));
+			}
+			catch (Throwable t)
+			{
+				Debug.printStackTrace (t);
+			}
+			finally
+			{
+				m_extending.set (false);
+				monitor.done ();
+			}
+		});
+	}
+
+	/**
+	 * Update the graph model from the tree and restore the selection.
+	 *
+	 * @param	center
+	 * 			true to center the selected node.
+	 * @param	stats
+	 * 			the build statistics of the tree.  They become the
+	 * 			statistics of the last build.  It can be null.
+	 */
+	private void updateGraphModel (boolean center, BuildStatistics stats)
+	{
+		updateGraphModel (center, stats, null);
+	}
+
+	/**
+	 * Update the graph model from the tree and restore the selection.
+	 *
+	 * @param	center
+	 * 			true to center the selected node.
+	 * @param	stats
+	 * 			the build statistics of the tree.  They become the
+	 * 			statistics of the last build.  It can be null.
+	 * @param	nodes
+	 * 			the nodes laid out again since the graph model was
+	 * 			created.  null to create the graph model again.
+	 */
+	private void updateGraphModel (boolean center, BuildStatistics stats, List<RelationNode> nodes)
+	{
+		ObjectId id = (m_selectedNode == null) ? null : m_selectedNode.getId ();
 
 		GVTGraph graph = m_gui.getGraph ();
 		GVTGraphFactory factory = new GVTGraphFactory (graph);
-		factory.updateGraphModel (m_tree, graph.getToolTipFlag ());
- 	}
+		BuildStatistics.Phase phase = (stats == null) ? null : stats.begin ("updateGraphModel");
+		if (nodes == null)
+			factory.updateGraphModel (m_tree);
+		else
+			factory.updateGraphModel (m_tree, nodes);
+		if (stats != null)
+		{
+			stats.end (phase);
+			setBuildStatistics (stats);
+		}
+
+		RelationNode node = (id == null) ? null : m_tree.getNode (id);
+		if (node != null)
+		{
+			select (node, center);
+		}
+		else if (center)
+		{
+			m_selectedNode = null;
+			centerTree ();
+		}
+	}
+
+	/**
+	 * Replace the statistics of the last build, and print them if
+	 * requested on the command line.
+	 */
+	private void setBuildStatistics (BuildStatistics stats)
+	{
+		m_buildStats.clear ();
+		m_buildStats.addAll (stats);
+		if (Main.configs.stats)
+		{
+			System.out.print (m_gitRepo.getRoot () + ":" + System.lineSeparator () + stats);
+		}
+	}
 
 	public void centerTree ()
 	{
@@ -171,61 +596,199 @@ public class Controller
 		}
  	}
 
-	public void refresh ()
+	/**
+	 * Check if fetching from the remote repositories is disabled, either
+	 * from the command line or in the preferences.
+	 *
+	 * @return	true if the remote repositories should not be fetched.
+	 */
+	public boolean isOffline ()
 	{
-		String id = null;
-		if (m_selectedNode != null)
-		{
-			id = m_selectedNode.getCommit ().getName ();
-		}
-		try
+		return Main.configs.offline || !Main.pref.getFetch ();
+	}
+
+	/**
+	 * Fetch from the remote repositories in the background.  The local
+	 * history is shown without waiting for the fetch, and the tree is only
+	 * refreshed if the fetch moved any ref.
+	 */
+	public void fetchRemotes ()
+	{
+		if (m_gitRepo == null || isOffline ())
+			return;
+		// a fetch is already running
+		if (!m_fetching.compareAndSet (false, true))
+			return;
+		final GitRepo gitRepo = m_gitRepo;
+		m_fetchExecutor.execute (() ->
 		{
-			generateTree ();
-			RelationNode node = null;
-			if (id != null)
+			try
 			{
-				node = m_tree.getNode (ObjectId.fromString (id));
+				RefSnapshot oldRefs = gitRepo.getRefSnapshot ();
+				BuildStatistics stats = new BuildStatistics ();
+				BuildStatistics.Phase phase = stats.begin ("fetch");
+				if (!gitRepo.fetch ())
+					return;
+				stats.end (phase);
+				if (!gitRepo.getRefSnapshot ().hasChanged (oldRefs))
+				{
+					m_buildStats.add (phase);
+					return;
+				}
+				m_fetchPhase = phase;
+				SwingUtilities.invokeLater (() ->
+				{
+					if (gitRepo == m_gitRepo)
+						refresh (true);
+				});
 			}
-			if (node != null)
+			catch (Throwable t)
 			{
-				m_selectedNode = node;
-				select (m_selectedNode, true);
+				Debug.printStackTrace (t);
 			}
-			else
+			finally
 			{
-				m_selectedNode = null;
-				centerTree ();
+				m_fetching.set (false);
 			}
-		}
-		catch (Throwable t)
-		{
-			Debug.printStackTrace (t);
-		}
+		});
+	}
+
+	/**
+	 * Update the tree with the new commits since the last refresh, and
+	 * then fetch from the remote repositories in the background.
+	 */
+	public void refresh ()
+	{
+		refresh (true);
+		fetchRemotes ();
+	}
+
+	/**
+	 * Refresh the tree.
+	 *
+	 * @param	incremental
+	 * 			if true, only the commits reachable from the moved refs are
+	 * 			added to the existing tree when possible.  Otherwise, the
+	 * 			whole tree is regenerated.  The latter is necessary when
+	 * 			the preferences or the edit list changed.
+	 */
+	public void refresh (boolean incremental)
+	{
+		build (incremental);
 	}
 
 	public void joinBranch (RelationNode node, RelationNode parentNode)
 	{
 		int index = 0;
-		if (node.getParents ().length == 2 &&
-			node.getParents ()[1] == parentNode)
+		if (node.getParentCount () == 2 &&
+			node.getParent (1) == parentNode)
 		{
 			index = 1;
 		}
-		Main.editList.add (node.getCommit (), index);
+		Main.editList.add (node.getId (), index);
+		++m_treeEdits;
 
+		BuildStatistics stats = new BuildStatistics ();
+		BuildStatistics.Phase phase = stats.begin ("mergeBranches");
+		RelationBranch[] oldBranches = BranchLayoutAlgorithm.getNodeBranches (m_tree);
 		node.getRelationBranch ().mergeParent (parentNode.getRelationBranch ());
-		BranchDiscoveryAlgorithm.mergeBranches (m_tree, m_branchLog);
-		BranchLayoutAlgorithm.layoutBranches (m_tree);
+		BranchDiscoveryAlgorithm.mergeBranches (m_tree, m_branchLog, stats);
+		stats.end (phase, m_tree);
+
+		// only lay out the branches changed by the edit.
+		phase = stats.begin ("layoutBranches");
+		Set<RelationBranch> changedBranches = BranchLayoutAlgorithm.getChangedBranches (m_tree, oldBranches);
+		List<RelationNode> nodes = BranchLayoutAlgorithm.layoutBranches (m_tree, changedBranches);
+		stats.end (phase);
 
 		GVTGraph graph = m_gui.getGraph ();
 		GVTGraphFactory factory = new GVTGraphFactory (graph);
-		factory.updateGraphModel (m_tree, graph.getToolTipFlag ());
+		phase = stats.begin ("updateGraphModel");
+		factory.updateGraphModel (m_tree, nodes);
+		stats.end (phase);
+		setBuildStatistics (stats);
+
+		// the build in progress does not have the new edit.
+		if (!m_treeComplete)
+			generateTree ();
 	}
 
 	public void select (RelationNode node, boolean center)
 	{
 		m_selectedNode = node;
 		m_gui.select (node, center);
+		prefetchChanges (node);
+	}
+
+	/**
+	 * Compute the changes of the neighbors of the selected node in the
+	 * background: the next and the previous nodes in the branch first,
+	 * then the merge parents, then the nodes further along the branch.
+	 * The requests for the previously selected node are dropped.
+	 *
+	 * @param	node
+	 * 			the selected node
+	 */
+	private void prefetchChanges (RelationNode node)
+	{
+		final int generation = m_prefetchGeneration.incrementAndGet ();
+		int budget = Main.configs.prefetchCount >= 0 ? Main.configs.prefetchCount : Main.pref.getPrefetchCount ();
+		if (node == null || budget <= 0 || node.getRelationBranch () == null)
+			return;
+
+		final List<ObjectId> ids = getPrefetchIds (node, budget);
+		final GitRepo gitRepo = m_gitRepo;
+		m_prefetchExecutor.execute (() ->
+		{
+			for (ObjectId id : ids)
+			{
+				if (generation != m_prefetchGeneration.get ())
+					return;
+				gitRepo.prefetchChanges (id);
+			}
+			Debug.println ("change cache: " + gitRepo.getChangeCacheStatistics ().getReport ());
+		});
+	}
+
+	/**
+	 * Get the neighbors of a node whose changes are prefetched, in the
+	 * order of {@link #prefetchChanges(RelationNode)}.
+	 *
+	 * @param	node
+	 * 			the selected node
+	 * @param	budget
+	 * 			the maximum number of the neighbors.
+	 * @return	the commit ids of the neighbors.
+	 */
+	static List<ObjectId> getPrefetchIds (RelationNode node, int budget)
+	{
+		ArrayList<ObjectId> ids = new ArrayList<ObjectId> ();
+		List<RelationNode> list = node.getRelationBranch ().getOrderedList ();
+		int index = list.indexOf (node);
+		for (int distance = 1; ids.size () < budget; ++distance)
+		{
+			boolean hasMore = false;
+			if (index + distance < list.size ())
+			{
+				ids.add (list.get (index + distance).getId ());
+				hasMore = true;
+			}
+			if (index - distance >= 0 && ids.size () < budget)
+			{
+				ids.add (list.get (index - distance).getId ());
+				hasMore = true;
+			}
+			if (distance == 1)
+			{
+				for (int i = 1; i < node.getParentCount () && ids.size () < budget; ++i)
+				{
+					ids.add (node.getParent (i).getId ());
+				}
+			}
+			if (!hasMore)
+				break;
+		}
+		return ids;
 	}
 
 	public void select (String commit, boolean center)
@@ -251,6 +814,28 @@ public class Controller
 		return m_gitRepo;
 	}
 
+	/**
+	 * Compute the changes of a commit in the background.  The commit body
+	 * is also parsed in the background.
+	 *
+	 * @param	node
+	 * 			the node of the commit
+	 * @param	consumer
+	 * 			the consumer of the changes.  It is called on the event
+	 * 			dispatch thread.
+	 * @return	the future of the computation.  Cancelling it drops the
+	 * 			request if it has not started yet.
+	 */
+	public Future<?> loadChanges (RelationNode node, Consumer<List<ChangeInfo>> consumer)
+	{
+		final GitRepo gitRepo = m_gitRepo;
+		return m_diffExecutor.submit (() ->
+		{
+			List<ChangeInfo> changes = gitRepo.getChanges (node.getCommit ());
+			SwingUtilities.invokeLater (() -> { consumer.accept (changes); });
+		});
+	}
+
 	public boolean remember ()
 	{
 		return remember (m_selectedNode);
@@ -354,23 +939,61 @@ public class Controller
 		ArrayList<ListInfo> listInfos = new ArrayList<ListInfo> ();
 		for (Ref ref : refs)
 		{
-			listInfos.add (new ListInfo (ref, m_tree.getNode (ref.getObjectId ())));
+			listInfos.add (new ListInfo (ref, m_tree.getNode (RefSnapshot.getPeeledId (ref))));
 		}
 		return listInfos;
 	}
 
-	public List<ListInfo> getBranchList () throws GitAPIException
+	public List<ListInfo> getBranchList () throws IOException
 	{
-		return getListInfo (m_gitRepo.getAllBranches ());
+		return getListInfo (getRefSnapshot ().getBranches ());
 	}
 
-	public List<ListInfo> getTagList () throws GitAPIException
+	public List<ListInfo> getTagList () throws IOException
 	{
-		return getListInfo (m_gitRepo.getTags ());
+		return getListInfo (getRefSnapshot ().getTags ());
+	}
+
+	/**
+	 * Get the refs the current tree was built from, so that the lists
+	 * match the tree.
+	 *
+	 * @return	the ref snapshot.
+	 * @throws	IOException
+	 * 			in case of I/O error.
+	 */
+	private RefSnapshot getRefSnapshot () throws IOException
+	{
+		RefSnapshot refs = m_tree.getRefSnapshot ();
+		if (refs == null)
+			refs = m_gitRepo.getRefSnapshot ();
+		return refs;
 	}
 
 	public BranchLog getBranchLog ()
 	{
 		return m_branchLog;
 	}
+
+	/**
+	 * Get the statistics of the last build, or of the last join.
+	 *
+	 * @return	the build statistics
+	 */
+	public BuildStatistics getBuildStatistics ()
+	{
+		return m_buildStats;
+	}
+
+	/**
+	 * Get the hit and the miss counts of the change cache of the
+	 * repository.
+	 *
+	 * @return	the change cache statistics.  null if no repository is
+	 * 			shown.
+	 */
+	public ChangeCacheMBean getChangeCacheStatistics ()
+	{
+		return m_gitRepo == null ? null : m_gitRepo.getChangeCacheStatistics ();
+	}
 }
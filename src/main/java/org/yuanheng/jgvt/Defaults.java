@@ -34,6 +34,89 @@ public class Defaults
 	 * The jgvt edit list file
 	 */
 	public final static String JGVT_EDITLIST = ".jgvt";
+	/**
+	 * The jgvt commit graph cache file in .git/jgvt/
+	 */
+	public final static String JGVT_COMMIT_GRAPH = "commitgraph";
+	/**
+	 * The jgvt changed path index file in .git/jgvt/
+	 */
+	public final static String JGVT_CHANGED_PATHS = "changedpaths";
+	/**
+	 * The jgvt layout cache file in .git/jgvt/
+	 */
+	public final static String JGVT_LAYOUT = "layout";
+	/**
+	 * The JMX name of the statistics of the last build.  Each controller
+	 * adds its instance number.
+	 */
+	public final static String MBEAN_BUILD_STATISTICS = "org.yuanheng.jgvt:type=BuildStatistics";
+	/**
+	 * The JMX name of the statistics of the change cache.  Each controller
+	 * adds its instance number.
+	 */
+	public final static String MBEAN_CHANGE_CACHE = "org.yuanheng.jgvt:type=ChangeCache";
+
+	/**
+	 * The maximum number of commits whose message bodies are kept in memory.
+	 */
+	public final static int MAX_COMMIT_BODY_CACHE = 4096;
+	/**
+	 * The number of recent commits shown first while the whole tree is
+	 * being generated.
+	 */
+	public final static int RECENT_COMMIT_COUNT = 1000;
+	/**
+	 * The number of older commits loaded each time the history window is
+	 * extended.
+	 */
+	public final static int HISTORY_EXTEND_COUNT = 1000;
+
+	/**
+	 * The number of the commits of the second largest disconnected part of
+	 * a history for the branches of the parts to be discovered in parallel.
+	 */
+	public final static int PARALLEL_DISCOVERY_MIN_NODES = 10000;
+
+	/**
+	 * The maximum number of pooled diff formatters.
+	 */
+	public final static int DIFF_POOL_SIZE = 4;
+	/**
+	 * The maximum size of a file whose changed lines are counted.
+	 */
+	public final static int DIFF_MAX_FILE_SIZE = 1024 * 1024;
+	/**
+	 * The maximum number of files in a commit whose changed lines are
+	 * counted.
+	 */
+	public final static int DIFF_MAX_STAT_FILES = 1000;
+	/**
+	 * The maximum total number of changed files of the commits in the
+	 * change cache.
+	 */
+	public final static int CHANGE_CACHE_SIZE = 50000;
+	/**
+	 * The number of neighbor commits whose changes are prefetched when a
+	 * commit is selected.
+	 */
+	public final static int PREFETCH_COUNT = 4;
+	public final static int MAX_PREFETCH_COUNT = 64;
+
+	/**
+	 * The estimated memory to build the tree of an empty repository.
+	 */
+	public final static long BATCH_MEMORY_BASE = 16 * 1024 * 1024;
+	/**
+	 * The estimated memory per commit to build the tree of a repository.
+	 */
+	public final static long BATCH_MEMORY_PER_COMMIT = 2048;
+	/**
+	 * The estimated number of the objects per commit in the pack files,
+	 * for estimating the number of the commits of a repository without the
+	 * commit graph cache.
+	 */
+	public final static int BATCH_OBJECTS_PER_COMMIT = 4;
 
 	/**
 	 * The number of characters to show for a hash.
@@ -74,6 +157,29 @@ public class Defaults
 	 */
 	public final static boolean LEFT_ONLY = true;
 
+	/**
+	 * Show the linear runs of commits as single vertices.
+	 */
+	public final static boolean COLLAPSE_COMMITS = false;
+	/**
+	 * The minimum number of commits in a run to be collapsed.
+	 */
+	public final static int COLLAPSE_MIN_COMMITS = 3;
+	/**
+	 * Let the rows of the graph be shared by the vertices that do not
+	 * follow each other, so that the collapsed runs take fewer rows.
+	 */
+	public final static boolean COMPACT_ROWS = false;
+
+	/**
+	 * Fetch from the remote repositories in the background.
+	 */
+	public final static boolean FETCH = true;
+	/**
+	 * The fetch timeout in seconds.
+	 */
+	public final static int FETCH_TIMEOUT = 30;
+
 	/**
 	 * Change tree's added font color
 	 */
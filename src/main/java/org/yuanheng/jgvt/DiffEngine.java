@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.diff.*;
+import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.util.io.NullOutputStream;
+
+/**
+ * Compute the file changes between two trees.
+ * <p>
+ * The {@link DiffFormatter}s and their {@link ObjectReader}s are pooled, so
+ * that the pack indexes and the delta base cache of a reader are reused
+ * across the calls, and the changes can be computed from multiple threads.
+ * The added and deleted line counts are computed directly from the blobs
+ * without formatting the patches.  Binary files, files larger than
+ * {@link Defaults#DIFF_MAX_FILE_SIZE}, and the files after the first
+ * {@link Defaults#DIFF_MAX_STAT_FILES} are not counted.
+ *
+ * @author	Heng Yuan
+ */
+public class DiffEngine implements AutoCloseable
+{
+	/**
+	 * A pooled reader and the formatter using it.
+	 */
+	private static class Context
+	{
+		final ObjectReader m_reader;
+		final DiffFormatter m_diffFmt;
+
+		Context (Repository repo, int renameLimit)
+		{
+			m_reader = repo.newObjectReader ();
+			m_diffFmt = new DiffFormatter (NullOutputStream.INSTANCE);
+			m_diffFmt.setReader (m_reader, repo.getConfig ());
+			m_diffFmt.setDetectRenames (renameLimit != 0);
+			if (renameLimit > 0)
+				m_diffFmt.getRenameDetector ().setRenameLimit (renameLimit);
+		}
+
+		void close ()
+		{
+			m_diffFmt.close ();
+			m_reader.close ();
+		}
+	}
+
+	private final Repository m_repo;
+	private final DiffAlgorithm m_algorithm;
+	private final ArrayDeque<Context> m_pool = new ArrayDeque<Context> ();
+	private int m_renameLimit = -1;
+	private boolean m_closed;
+
+	public DiffEngine (Repository repo)
+	{
+		m_repo = repo;
+		m_algorithm = DiffAlgorithm.getAlgorithm (repo.getConfig ().getEnum (
+			ConfigConstants.CONFIG_DIFF_SECTION, null,
+			ConfigConstants.CONFIG_KEY_ALGORITHM, SupportedAlgorithm.HISTOGRAM));
+	}
+
+	/**
+	 * Set the rename detection limit.
+	 *
+	 * @param	renameLimit
+	 * 			the maximum number of added or deleted files for the
+	 * 			content based rename detection.  0 disables the rename
+	 * 			detection.  -1 uses diff.renameLimit of the repository.
+	 */
+	public void setRenameLimit (int renameLimit)
+	{
+		synchronized (m_pool)
+		{
+			m_renameLimit = renameLimit;
+			for (Context context : m_pool)
+				context.close ();
+			m_pool.clear ();
+		}
+	}
+
+	private Context acquire ()
+	{
+		synchronized (m_pool)
+		{
+			Context context = m_pool.poll ();
+			if (context != null)
+				return context;
+			return new Context (m_repo, m_renameLimit);
+		}
+	}
+
+	private void release (Context context)
+	{
+		synchronized (m_pool)
+		{
+			if (!m_closed && m_pool.size () < Defaults.DIFF_POOL_SIZE)
+			{
+				m_pool.push (context);
+				return;
+			}
+		}
+		context.close ();
+	}
+
+	/**
+	 * Get the file changes between two trees.
+	 *
+	 * @param	t1
+	 * 			the old tree.  null for an empty tree.
+	 * @param	t2
+	 * 			the new tree.
+	 * @return	the file changes.  It is empty in case of error.
+	 */
+	public List<ChangeInfo> getChanges (RevTree t1, RevTree t2)
+	{
+		ArrayList<ChangeInfo> changes = new ArrayList<ChangeInfo> ();
+		Context context = acquire ();
+		try
+		{
+			for (DiffEntry entry : context.m_diffFmt.scan (t1, t2))
+			{
+				ChangeInfo info = new ChangeInfo (entry);
+				if (changes.size () < Defaults.DIFF_MAX_STAT_FILES)
+					countLines (context.m_reader, entry, info);
+				changes.add (info);
+			}
+		}
+		catch (Exception ex)
+		{
+			Debug.printStackTrace (ex);
+		}
+		finally
+		{
+			release (context);
+		}
+		return changes;
+	}
+
+	/**
+	 * Count the added and deleted lines of a file.  The counts are left at
+	 * 0 for binary and large files.
+	 */
+	private void countLines (ObjectReader reader, DiffEntry entry, ChangeInfo info) throws IOException
+	{
+		if (entry.getOldId ().equals (entry.getNewId ()))
+			return;
+		if (entry.getOldMode () == FileMode.GITLINK ||
+			entry.getNewMode () == FileMode.GITLINK)
+			return;
+
+		RawText a = null;
+		RawText b = null;
+		if (entry.getChangeType () != DiffEntry.ChangeType.ADD)
+		{
+			a = getText (reader, entry.getOldId ().toObjectId ());
+			if (a == null)
+				return;
+		}
+		if (entry.getChangeType () != DiffEntry.ChangeType.DELETE)
+		{
+			b = getText (reader, entry.getNewId ().toObjectId ());
+			if (b == null)
+				return;
+		}
+
+		if (a == null)
+			info.setAdded (b.size ());
+		else if (b == null)
+			info.setDeleted (a.size ());
+		else
+		{
+			int added = 0;
+			int deleted = 0;
+			for (Edit edit : m_algorithm.diff (RawTextComparator.DEFAULT, a, b))
+			{
+				deleted += edit.getEndA () - edit.getBeginA ();
+				added += edit.getEndB () - edit.getBeginB ();
+			}
+			info.setAdded (added);
+			info.setDeleted (deleted);
+		}
+	}
+
+	/**
+	 * Load a text blob.
+	 *
+	 * @return	the text.  null if the blob is binary or too large.
+	 */
+	private static RawText getText (ObjectReader reader, ObjectId id) throws IOException
+	{
+		ObjectLoader loader = reader.open (id, Constants.OBJ_BLOB);
+		if (loader.getSize () > Defaults.DIFF_MAX_FILE_SIZE)
+			return null;
+		byte[] data;
+		try
+		{
+			data = loader.getCachedBytes (Defaults.DIFF_MAX_FILE_SIZE);
+		}
+		catch (LargeObjectException ex)
+		{
+			return null;
+		}
+		if (RawText.isBinary (data))
+			return null;
+		return new RawText (data);
+	}
+
+	@Override
+	public void close ()
+	{
+		synchronized (m_pool)
+		{
+			m_closed = true;
+			for (Context context : m_pool)
+				context.close ();
+			m_pool.clear ();
+		}
+	}
+}
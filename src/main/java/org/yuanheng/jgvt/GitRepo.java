@@ -17,19 +17,13 @@ package org.yuanheng.jgvt;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand.ListMode;
-import org.eclipse.jgit.api.LogCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
@@ -38,7 +32,6 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
-import org.eclipse.jgit.util.io.NullOutputStream;
 
 /**
  * A wrapper around Git and GitRepo.
@@ -50,9 +43,8 @@ public class GitRepo implements AutoCloseable
 	private final Repository m_repo;
 	private final Git m_git;
 	private final File m_root;
-	private boolean m_fetched;
-	private WeakReference<Map<ObjectId, Ref>> m_tagMap = new WeakReference<Map<ObjectId, Ref>> (null);
-	private WeakReference<Map<ObjectId, Ref>> m_branchMap = new WeakReference<Map<ObjectId, Ref>> (null);
+	private final DiffEngine m_diffEngine;
+	private final ChangeCache m_changeCache = new ChangeCache (Defaults.CHANGE_CACHE_SIZE);
 
 	public GitRepo () throws IOException
 	{
@@ -69,6 +61,7 @@ public class GitRepo implements AutoCloseable
 						.build();
 		m_git = Git.wrap (m_repo);
 		m_root = builder.getGitDir ().getParentFile ().getCanonicalFile ();
+		m_diffEngine = new DiffEngine (m_repo);
 	}
 
 	public ObjectId getHead ()
@@ -98,24 +91,26 @@ public class GitRepo implements AutoCloseable
 		return m_git;
 	}
 
-	public void fetch ()
-	{
-		fetch (false);
-	}
-
-	public void fetch (boolean force)
+	/**
+	 * Fetch from the remote repositories.  This call can be slow, so it
+	 * should not be made on the UI thread.
+	 *
+	 * @return	true if the fetch was successful.
+	 */
+	public boolean fetch ()
 	{
-		if (!m_fetched || force)
+		if (m_repo.getRemoteNames ().isEmpty ())
+			return false;
+		try
 		{
-			try
-			{
-				m_git.fetch ().call ();
-				m_fetched = true;
-			}
-			catch (GitAPIException ex)
-			{
-			}
+			m_git.fetch ().setTimeout (Defaults.FETCH_TIMEOUT).call ();
+			return true;
+		}
+		catch (GitAPIException | JGitInternalException ex)
+		{
+			Debug.printStackTrace (ex);
 		}
+		return false;
 	}
 
 	public String getBranch ()
@@ -140,106 +135,146 @@ public class GitRepo implements AutoCloseable
 		return new RevWalk (m_repo);
 	}
 
-	public Iterable<RevCommit> getCommitLogs (File file) throws GitAPIException, IOException
-	{
-		fetch ();
-		LogCommand log = m_git.log ().all ().setMaxCount (Integer.MAX_VALUE);
-		if (file != null)
-		{
-			log.addPath (Utils.getRelativePath (file, m_root).toString ());
-		}
-
-		return log.call ();
-	}
-
 	public List<Ref> getAllBranches () throws GitAPIException
 	{
-		fetch ();
 		return m_git.branchList ().setListMode (ListMode.ALL).call ();
 	}
 
 	public List<Ref> getTags () throws GitAPIException
 	{
-		fetch ();
 		return m_git.tagList ().call ();
 	}
 
-	public Map<ObjectId, Ref> getTagMap () throws GitAPIException
+	/**
+	 * Take a snapshot of all the refs.
+	 *
+	 * @return	the ref snapshot.
+	 * @throws	IOException
+	 * 			in case of I/O error.
+	 */
+	public RefSnapshot getRefSnapshot () throws IOException
 	{
-		Map<ObjectId, Ref> map = m_tagMap.get ();
-		if (map == null)
-		{
-			List<Ref> refs = getTags ();
-			map = new HashMap<ObjectId, Ref> ();
-			for (Ref ref : refs)
-				map.put (ref.getObjectId (), ref);
+		return RefSnapshot.create (m_repo.getRefDatabase ());
+	}
 
-			m_tagMap = new WeakReference<Map<ObjectId, Ref>> (map);
+	/**
+	 * Get the tree of a commit.  Commits loaded from the commit graph cache
+	 * are not parsed, so their parents do not have the tree information
+	 * until they are parsed.
+	 *
+	 * @param	commit
+	 * 			the commit
+	 * @return	the tree of the commit.  null if it cannot be parsed.
+	 */
+	private RevTree getTree (RevCommit commit)
+	{
+		RevTree tree = commit.getTree ();
+		if (tree == null)
+		{
+			try (RevWalk revWalk = createRevWalk ())
+			{
+				tree = revWalk.parseCommit (commit).getTree ();
+			}
+			catch (IOException ex)
+			{
+				Debug.printStackTrace (ex);
+			}
 		}
-		return map;
+		return tree;
 	}
 
-	public Map<ObjectId, Ref> getBranchMap () throws GitAPIException
+	/**
+	 * Get the changes of a commit from its first parent.  The changes are
+	 * cached.
+	 *
+	 * @param	commit
+	 * 			the parsed commit
+	 * @return	the changes.  The list should not be modified.
+	 */
+	public List<ChangeInfo> getChanges (RevCommit commit)
 	{
-		Map<ObjectId, Ref> map = m_branchMap.get ();
-		if (map == null)
-		{
-			List<Ref> refs = getAllBranches ();
-			map = new HashMap<ObjectId, Ref> ();
-			for (Ref ref : refs)
-				map.put (ref.getObjectId (), ref);
+		RevCommit parent = commit.getParentCount () > 0 ? commit.getParent (0) : null;
+		List<ChangeInfo> changes = m_changeCache.get (commit, parent);
+		if (changes != null)
+			return changes;
+
+        RevTree before = parent != null ? getTree (parent) : null;
+        RevTree current = getTree (commit);
+
+        changes = Collections.unmodifiableList (m_diffEngine.getChanges (before, current));
+        m_changeCache.put (commit, parent, changes, false);
+        return changes;
+	}
 
-			m_branchMap = new WeakReference<Map<ObjectId, Ref>> (map);
+	/**
+	 * Compute and cache the changes of a commit before they are requested.
+	 * The commit is parsed separately, so this function can be called from
+	 * any thread.
+	 *
+	 * @param	id
+	 * 			the commit id
+	 */
+	public void prefetchChanges (ObjectId id)
+	{
+		try (RevWalk revWalk = createRevWalk ())
+		{
+			RevCommit commit = revWalk.parseCommit (id);
+			RevCommit parent = commit.getParentCount () > 0 ? commit.getParent (0) : null;
+			if (m_changeCache.contains (commit, parent))
+				return;
+			RevTree before = parent != null ? revWalk.parseCommit (parent).getTree () : null;
+			List<ChangeInfo> changes = Collections.unmodifiableList (m_diffEngine.getChanges (before, commit.getTree ()));
+			m_changeCache.put (commit, parent, changes, true);
+		}
+		catch (IOException ex)
+		{
+			Debug.printStackTrace (ex);
 		}
-		return map;
-	}
-
-	private List<ChangeInfo> getChanges (RevTree t1, RevTree t2)
-	{
-		ArrayList<ChangeInfo> changes = new ArrayList<ChangeInfo> ();
-	    DiffFormatter diffFmt = new DiffFormatter(NullOutputStream.INSTANCE);
-	    diffFmt.setRepository(m_repo);
-	    diffFmt.setDetectRenames (true);
-
-	    try
-        {
-	    	List<DiffEntry> entries = diffFmt.scan (t1, t2);
-	        for (DiffEntry diff: entries)
-	        {
-	        	ChangeInfo info = new ChangeInfo (diff);
-	        	int added = 0;
-	        	int deleted = 0;
-	        	for (Edit edit : diffFmt.toFileHeader(diff).toEditList())
-	        	{
-	        		deleted += edit.getEndA() - edit.getBeginA();
-	        		added += edit.getEndB() - edit.getBeginB();
-	            }
-	        	info.setAdded (added);
-	        	info.setDeleted (deleted);
-	            changes.add (info);
-	        }
-        }
-        catch (Exception ex)
-        {
-        }
-        diffFmt.close ();
-		return changes;
 	}
 
-	public List<ChangeInfo> getChanges (RevCommit commit)
+	/**
+	 * Get the statistics of the change cache.
+	 *
+	 * @return	the hit and the miss counts of the change cache.
+	 */
+	public ChangeCacheMBean getChangeCacheStatistics ()
 	{
-        RevTree before = commit.getParentCount() > 0 ? commit.getParent(0).getTree() : null;
-        RevTree current = commit.getTree();
+		return m_changeCache;
+	}
 
-        return getChanges (before, current);
+	/**
+	 * Get the changes of a commit only if they are cached.  The request is
+	 * counted in the cache hit rate.
+	 *
+	 * @param	commit
+	 * 			the parsed commit
+	 * @return	the changes.  null if they are not cached.
+	 */
+	public List<ChangeInfo> getCachedChanges (RevCommit commit)
+	{
+		RevCommit parent = commit.getParentCount () > 0 ? commit.getParent (0) : null;
+		return m_changeCache.request (commit, parent);
 	}
 
 	public List<ChangeInfo> getChanges (RevCommit c1, RevCommit c2)
 	{
-        RevTree t1 = c1.getTree ();
-        RevTree t2 = c2.getTree();
+        RevTree t1 = getTree (c1);
+        RevTree t2 = getTree (c2);
+
+        return m_diffEngine.getChanges (t1, t2);
+	}
 
-        return getChanges (t1, t2);
+	/**
+	 * Set the rename detection limit for computing the changes.
+	 *
+	 * @param	renameLimit
+	 * 			the maximum number of added or deleted files for the
+	 * 			content based rename detection.  0 disables the rename
+	 * 			detection.  -1 uses diff.renameLimit of the repository.
+	 */
+	public void setRenameLimit (int renameLimit)
+	{
+		m_diffEngine.setRenameLimit (renameLimit);
 	}
 
 	public File getGitDir ()
@@ -250,6 +285,7 @@ public class GitRepo implements AutoCloseable
 	@Override
 	public void close () throws Exception
 	{
+		m_diffEngine.close ();
 		m_repo.close ();
 	}
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+
+import org.yuanheng.jgvt.export.DotExporter;
+import org.yuanheng.jgvt.export.DotOptions;
+import org.yuanheng.jgvt.export.JsonExporter;
+import org.yuanheng.jgvt.export.SvgExporter;
+import org.yuanheng.jgvt.gui.graph.GVTGraph;
+import org.yuanheng.jgvt.gui.graph.GVTGraphFactory;
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.BuildStatistics;
+import org.yuanheng.jgvt.relation.RelationTree;
+import org.yuanheng.jgvt.relation.RelationTreeFactory;
+
+/**
+ * Compute the trees of repositories and export them without the GUI.
+ * <p>
+ * The repositories are processed in parallel by {@link BatchRunner}, and
+ * the time spent on each is reported.  The dot and json exports do not
+ * touch AWT at all.  The svg export builds the graph model in memory,
+ * which only needs the headless AWT for measuring the text.
+ *
+ * @author	Heng Yuan
+ */
+public class HeadlessExporter
+{
+	public final static String FORMAT_DOT = "dot";
+	public final static String FORMAT_JSON = "json";
+	public final static String FORMAT_SVG = "svg";
+
+	public static boolean isFormat (String format)
+	{
+		return FORMAT_DOT.equals (format) ||
+			FORMAT_JSON.equals (format) ||
+			FORMAT_SVG.equals (format);
+	}
+
+	/**
+	 * Export the trees of repositories.
+	 *
+	 * @param	files
+	 * 			the repository directories.  A file instead of a directory
+	 * 			exports the history of the file.
+	 * @param	importantBranchNames
+	 * 			the important branch names.  The default names are used if
+	 * 			it is empty.
+	 * @return	the exit code.  0 if all the repositories were exported.
+	 */
+	public static int export (List<File> files, List<String> importantBranchNames)
+	{
+		String format = Main.configs.exportFormat;
+		if (importantBranchNames.isEmpty ())
+		{
+			importantBranchNames = RelationTreeFactory.getDefaultImportantBranchNames ();
+		}
+
+		// figure out the output files
+		File output = Main.configs.output;
+		File[] outputFiles = new File[files.size ()];
+		if (files.size () == 1 && output != null && !output.isDirectory ())
+		{
+			outputFiles[0] = output;
+		}
+		else
+		{
+			File outputDir = (output == null) ? new File (".") : output;
+			if (!outputDir.isDirectory () && !outputDir.mkdirs ())
+			{
+				System.err.println ("Error: Unable to create " + outputDir);
+				return 1;
+			}
+			HashSet<String> names = new HashSet<String> ();
+			for (int i = 0; i < files.size (); ++i)
+			{
+				String name = getName (files.get (i));
+				String outputName = name;
+				for (int n = 2; !names.add (outputName); ++n)
+				{
+					outputName = name + "-" + n;
+				}
+				outputFiles[i] = new File (outputDir, outputName + "." + format);
+			}
+		}
+
+		final List<String> branchNames = importantBranchNames;
+		final boolean single = files.size () == 1;
+		long startTime = System.nanoTime ();
+		BatchRunner runner = new BatchRunner (Main.configs.jobs, Main.configs.memoryBudget);
+		int failed = runner.run (files, (file, index) -> export (file, outputFiles[index], format, branchNames, single));
+
+		long time = (System.nanoTime () - startTime) / 1000000;
+		if (!single)
+		{
+			System.err.println ("Exported " + (files.size () - failed) + " of " + files.size () + " repositories in " + time + " ms");
+		}
+		return failed == 0 ? 0 : 1;
+	}
+
+	private static String getName (File file)
+	{
+		try
+		{
+			file = file.getCanonicalFile ();
+		}
+		catch (Exception ex)
+		{
+			file = file.getAbsoluteFile ();
+		}
+		String name = file.getName ();
+		return name.length () == 0 ? "jgvt" : name;
+	}
+
+	/**
+	 * Export the tree of a single repository.
+	 *
+	 * @return	true if the tree was exported.
+	 */
+	private static boolean export (File file, File outputFile, String format, List<String> importantBranchNames, boolean single) throws Exception
+	{
+		long startTime = System.nanoTime ();
+		File dir = file.isDirectory () ? file : file.getAbsoluteFile ().getParentFile ();
+		GitRepo gitRepo = new GitRepo (dir);
+		try
+		{
+			gitRepo.setRenameLimit (Main.configs.renameLimit);
+			if (single)
+			{
+				// per repository preferences only apply when there is no
+				// other repository to share them with.
+				Main.pref = Preference.getPreference (gitRepo);
+			}
+
+			BuildStatistics stats = new BuildStatistics ();
+			RelationTree tree = BatchRunner.buildTree (gitRepo, file, importantBranchNames, new BranchLog (), stats);
+			long buildTime = System.nanoTime ();
+
+			switch (format)
+			{
+				case FORMAT_DOT:
+				{
+					DotOptions options = new DotOptions ();
+					options.abbrevLength = Main.pref.getAbbrevLength ();
+					new DotExporter (options).save (outputFile, "jgvt", tree);
+					break;
+				}
+				case FORMAT_JSON:
+				{
+					new JsonExporter ().save (outputFile, tree);
+					break;
+				}
+				case FORMAT_SVG:
+				{
+					GVTGraph graph = new GVTGraph ();
+					graph.setStylesheet (GVTGraphFactory.GRAPH_STYLE);
+					BuildStatistics.Phase phase = stats.begin ("updateGraphModel");
+					// the exported graph shows every commit.
+					new GVTGraphFactory (graph).updateGraphModel (tree, false);
+					stats.end (phase);
+					new SvgExporter (graph).save (outputFile);
+					break;
+				}
+			}
+			long endTime = System.nanoTime ();
+
+			System.err.println (gitRepo.getRoot () + ": " + tree.size () + " commits, " +
+				tree.getBranchSet ().size () + " branches, build " +
+				(buildTime - startTime) / 1000000 + " ms, export " +
+				(endTime - buildTime) / 1000000 + " ms -> " + outputFile +
+				(Main.configs.stats ? System.lineSeparator () + stats : ""));
+			return true;
+		}
+		finally
+		{
+			gitRepo.close ();
+		}
+	}
+}
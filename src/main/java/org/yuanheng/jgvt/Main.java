@@ -16,6 +16,8 @@
 package org.yuanheng.jgvt;
 
 import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -41,10 +43,21 @@ public class Main
 	private static Options createOptions ()
 	{
 		Options options = new Options ();
+		options.addOption ("a", "analyze", false, "print the branch statistics of the repos in CSV without the GUI.  Multiple repo directories can be specified.");
 		options.addOption ("b", "branch", false, "list branches");
 		options.addOption ("d", "debug", false, "print debug messages");
+		options.addOption ("e", "export", true, "export the tree without the GUI.  The format can be dot, json or svg.  Multiple repo directories can be specified.");
 		options.addOption ("h", "help", false, "print this message");
 		options.addOption ("i", "important", true, "specify an important branch name.  The option can be specified multiple times in order of importance.");
+		options.addOption ("j", "jobs", true, "the number of repos exported or analyzed in parallel.  The default is the number of processors.");
+		options.addOption ("m", "memory", true, "the memory budget in MB shared by the repos exported or analyzed in parallel.  The default is 3/4 of the maximum heap size.");
+		options.addOption ("n", "max-count", true, "only load the specified number of the most recent commits.  Older commits are loaded when the graph is scrolled to the top.");
+		options.addOption ("O", "output", true, "the export output file, or the output directory when multiple repos are exported.  The default is the current directory.  For the statistics, the output file.  The default is the standard output.");
+		options.addOption ("o", "offline", false, "do not fetch from the remote repositories");
+		options.addOption ("p", "prefetch", true, "the number of neighbor commits whose changes are computed in the background when a commit is selected.  0 disables the prefetch.  It overrides the preference.");
+		options.addOption ("r", "rename-limit", true, "the maximum number of added or deleted files for the rename detection.  0 disables the rename detection.");
+		options.addOption ("S", "stats", false, "print the time and the allocated memory of each phase of building the trees.");
+		options.addOption ("s", "since", true, "only load the commits since the date (yyyy-mm-dd).  Older commits are loaded when the graph is scrolled to the top.");
 		options.addOption ("t", "tag", false, "list tags");
 		return options;
 	}
@@ -88,6 +101,11 @@ public class Main
 			{
 				switch (option.getId ())
 				{
+					case 'a':
+					{
+						configs.analyze = true;
+						break;
+					}
 					case 'h':
 					{
 						HelpFormatter formatter = new HelpFormatter ();
@@ -109,11 +127,106 @@ public class Main
 						configs.debug = true;
 						break;
 					}
+					case 'e':
+					{
+						configs.exportFormat = option.getValue ().trim ();
+						if (!HeadlessExporter.isFormat (configs.exportFormat))
+						{
+							throw new IllegalArgumentException ("Invalid export format: " + option.getValue ());
+						}
+						break;
+					}
+					case 'j':
+					{
+						configs.jobs = Integer.parseInt (option.getValue ().trim ());
+						if (configs.jobs <= 0)
+						{
+							throw new IllegalArgumentException ("Invalid number of jobs: " + option.getValue ());
+						}
+						break;
+					}
+					case 'O':
+					{
+						configs.output = new File (option.getValue ().trim ());
+						break;
+					}
+					case 'o':
+					{
+						configs.offline = true;
+						break;
+					}
+					case 'm':
+					{
+						configs.memoryBudget = Long.parseLong (option.getValue ().trim ()) * 1024 * 1024;
+						if (configs.memoryBudget <= 0)
+						{
+							throw new IllegalArgumentException ("Invalid memory budget: " + option.getValue ());
+						}
+						break;
+					}
+					case 'n':
+					{
+						configs.maxCount = Integer.parseInt (option.getValue ().trim ());
+						if (configs.maxCount <= 0)
+						{
+							throw new IllegalArgumentException ("Invalid max count: " + option.getValue ());
+						}
+						break;
+					}
+					case 'p':
+					{
+						configs.prefetchCount = Integer.parseInt (option.getValue ().trim ());
+						if (configs.prefetchCount < 0)
+						{
+							throw new IllegalArgumentException ("Invalid prefetch count: " + option.getValue ());
+						}
+						break;
+					}
+					case 'r':
+					{
+						configs.renameLimit = Integer.parseInt (option.getValue ().trim ());
+						if (configs.renameLimit < 0)
+						{
+							throw new IllegalArgumentException ("Invalid rename limit: " + option.getValue ());
+						}
+						break;
+					}
+					case 'S':
+					{
+						configs.stats = true;
+						break;
+					}
+					case 's':
+					{
+						LocalDate date = LocalDate.parse (option.getValue ().trim ());
+						configs.since = (int) date.atStartOfDay (ZoneId.systemDefault ()).toEpochSecond ();
+						break;
+					}
 				}
 			}
 
 			args = cmd.getArgs ();
 
+			if (configs.exportFormat != null || configs.analyze)
+			{
+				// do not initialize AWT.
+				System.setProperty ("java.awt.headless", "true");
+
+				ArrayList<File> files = new ArrayList<File> ();
+				for (String arg : args)
+				{
+					files.add (new File (arg));
+				}
+				if (files.isEmpty ())
+				{
+					files.add (new File (".").getCanonicalFile ());
+				}
+				if (configs.analyze)
+					System.exit (BatchAnalyzer.analyze (files, importantBranchNames));
+				else
+					System.exit (HeadlessExporter.export (files, importantBranchNames));
+			}
+
 			if (args.length > 0)
 			{
 				file = new File (args[0]);
@@ -126,7 +239,7 @@ public class Main
 					}
 					else if (file.isFile ())
 					{
-						dir = file.getParentFile ();
+						dir = file.getAbsoluteFile ().getParentFile ();
 					}
 				}
 				else
@@ -157,6 +270,14 @@ public class Main
 			System.exit (1);;
 		}
 
+		gitRepo.setRenameLimit (configs.renameLimit);
+		pref = Preference.getPreference (gitRepo);
+
+		if (!configs.offline && pref.getFetch () &&
+			(cmd.hasOption ('b') || cmd.hasOption ('t')))
+		{
+			gitRepo.fetch ();
+		}
 		if (cmd.hasOption ('b'))
 		{
 			listBranches (gitRepo);
@@ -168,14 +289,13 @@ public class Main
 			System.exit (0);
 		}
 
-		pref = Preference.getPreference (gitRepo);
 		editList = RelationEditList.read (gitRepo);
 
 		Controller controller = new Controller ();
 		GUI gui = new GUI (controller);
 		try
 		{
-			controller.setRepo (gitRepo, importantBranchNames);
+			controller.setRepo (gitRepo, file, importantBranchNames);
 		}
 		catch (Throwable t)
 		{
@@ -188,6 +308,7 @@ public class Main
 		SwingUtilities.invokeLater (() -> { gui.getGraphComponent ().requestFocus (); });
 
 		gui.waitForClose ();
+		controller.close ();
 		System.exit (0);
 	}
 }
@@ -42,6 +42,10 @@ public class Preference
 	private final static String KEY_START_X = "startX";
 	private final static String KEY_START_Y = "startY";
 	private final static String KEY_LEFT_ONLY = "leftOnly";
+	private final static String KEY_FETCH = "fetch";
+	private final static String KEY_COLLAPSE_COMMITS = "collapseCommits";
+	private final static String KEY_COMPACT_ROWS = "compactRows";
+	private final static String KEY_PREFETCH_COUNT = "prefetchCount";
 
 	private static boolean getBoolean (Properties properties, String key, boolean defaultValue)
 	{
@@ -112,6 +116,10 @@ public class Preference
 	private double m_startX = Defaults.START_X;
 	private double m_startY = Defaults.START_Y;
 	private boolean m_leftOnly = Defaults.LEFT_ONLY;
+	private boolean m_fetch = Defaults.FETCH;
+	private boolean m_collapseCommits = Defaults.COLLAPSE_COMMITS;
+	private boolean m_compactRows = Defaults.COMPACT_ROWS;
+	private int m_prefetchCount = Defaults.PREFETCH_COUNT;
 
 	private Preference (GitRepo gitRepo)
 	{
@@ -190,6 +198,10 @@ public class Preference
 		m_startX = getDouble (m_settings, KEY_START_X, Defaults.MIN_START_X, Defaults.MAX_START_X, Defaults.START_X);
 		m_startY = getDouble (m_settings, KEY_START_Y, Defaults.MIN_START_Y, Defaults.MAX_START_Y, Defaults.START_Y);
 		m_leftOnly = getBoolean (m_settings, KEY_LEFT_ONLY, Defaults.LEFT_ONLY);
+		m_fetch = getBoolean (m_settings, KEY_FETCH, Defaults.FETCH);
+		m_collapseCommits = getBoolean (m_settings, KEY_COLLAPSE_COMMITS, Defaults.COLLAPSE_COMMITS);
+		m_compactRows = getBoolean (m_settings, KEY_COMPACT_ROWS, Defaults.COMPACT_ROWS);
+		m_prefetchCount = getInt (m_settings, KEY_PREFETCH_COUNT, 0, Defaults.MAX_PREFETCH_COUNT, Defaults.PREFETCH_COUNT);
 	}
 
 	public boolean save (SaveType saveType)
@@ -272,6 +284,10 @@ public class Preference
 		m_settings.setProperty (KEY_START_X, "" + m_startX);
 		m_settings.setProperty (KEY_START_Y, "" + m_startY);
 		m_settings.setProperty (KEY_LEFT_ONLY, "" + m_leftOnly);
+		m_settings.setProperty (KEY_FETCH, "" + m_fetch);
+		m_settings.setProperty (KEY_COLLAPSE_COMMITS, "" + m_collapseCommits);
+		m_settings.setProperty (KEY_COMPACT_ROWS, "" + m_compactRows);
+		m_settings.setProperty (KEY_PREFETCH_COUNT, "" + m_prefetchCount);
 	}
 
 	public String getExportDirectory ()
@@ -355,4 +371,52 @@ public class Preference
 		m_leftOnly = b;
 		return changed;
 	}
+
+	public boolean getFetch ()
+	{
+		return m_fetch;
+	}
+
+	public boolean setFetch (boolean b)
+	{
+		boolean changed = (m_fetch != b);
+		m_fetch = b;
+		return changed;
+	}
+
+	public boolean getCollapseCommits ()
+	{
+		return m_collapseCommits;
+	}
+
+	public boolean setCollapseCommits (boolean b)
+	{
+		boolean changed = (m_collapseCommits != b);
+		m_collapseCommits = b;
+		return changed;
+	}
+
+	public boolean getCompactRows ()
+	{
+		return m_compactRows;
+	}
+
+	public boolean setCompactRows (boolean b)
+	{
+		boolean changed = (m_compactRows != b);
+		m_compactRows = b;
+		return changed;
+	}
+
+	public int getPrefetchCount ()
+	{
+		return m_prefetchCount;
+	}
+
+	public boolean setPrefetchCount (int prefetchCount)
+	{
+		boolean changed = (m_prefetchCount != prefetchCount);
+		m_prefetchCount = prefetchCount;
+		return changed;
+	}
 }
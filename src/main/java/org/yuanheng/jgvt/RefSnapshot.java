@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+
+/**
+ * An immutable snapshot of the refs in a repository.  Annotated tags are
+ * peeled, so that the refs can be matched against the commits.
+ *
+ * @author	Heng Yuan
+ */
+public class RefSnapshot
+{
+	/**
+	 * Take a snapshot of all the refs.  The refs are peeled in parallel
+	 * since peeling loose annotated tags requires reading the tag objects.
+	 *
+	 * @param	refDb
+	 * 			the ref database
+	 * @return	the ref snapshot
+	 * @throws	IOException
+	 * 			in case of I/O error.
+	 */
+	public static RefSnapshot create (RefDatabase refDb) throws IOException
+	{
+		List<Ref> refs = refDb.getRefs ();
+		try
+		{
+			refs = refs.parallelStream ().map (ref ->
+			{
+				if (ref.isPeeled ())
+					return ref;
+				try
+				{
+					return refDb.peel (ref);
+				}
+				catch (IOException ex)
+				{
+					throw new UncheckedIOException (ex);
+				}
+			}).collect (Collectors.toList ());
+		}
+		catch (UncheckedIOException ex)
+		{
+			throw ex.getCause ();
+		}
+		return new RefSnapshot (refs);
+	}
+
+	/**
+	 * Get the object id a ref eventually points to.
+	 *
+	 * @param	ref
+	 * 			a peeled ref
+	 * @return	the peeled object id.  null if the ref is unborn.
+	 */
+	public static ObjectId getPeeledId (Ref ref)
+	{
+		ObjectId id = ref.getPeeledObjectId ();
+		if (id == null)
+		{
+			id = ref.getObjectId ();
+		}
+		return id;
+	}
+
+	private final Map<String, ObjectId> m_tips;
+	private final List<Ref> m_branches;
+	private final List<Ref> m_tags;
+	private final Map<ObjectId, Ref> m_branchMap;
+	private final Map<ObjectId, Ref> m_tagMap;
+
+	private RefSnapshot (List<Ref> refs)
+	{
+		TreeMap<String, ObjectId> tips = new TreeMap<String, ObjectId> ();
+		TreeMap<String, Ref> branches = new TreeMap<String, Ref> ();
+		TreeMap<String, Ref> tags = new TreeMap<String, Ref> ();
+		for (Ref ref : refs)
+		{
+			ObjectId id = getPeeledId (ref);
+			if (id == null)
+				continue;
+			String name = ref.getName ();
+			tips.put (name, id);
+			if (name.startsWith (Constants.R_HEADS) ||
+				name.startsWith (Constants.R_REMOTES))
+			{
+				branches.put (name, ref);
+			}
+			else if (name.startsWith (Constants.R_TAGS))
+			{
+				tags.put (name, ref);
+			}
+		}
+
+		HashMap<ObjectId, Ref> branchMap = new HashMap<ObjectId, Ref> ();
+		for (Ref ref : branches.values ())
+		{
+			branchMap.put (getPeeledId (ref), ref);
+		}
+		HashMap<ObjectId, Ref> tagMap = new HashMap<ObjectId, Ref> ();
+		for (Ref ref : tags.values ())
+		{
+			tagMap.put (getPeeledId (ref), ref);
+		}
+
+		m_tips = Collections.unmodifiableMap (tips);
+		m_branches = Collections.unmodifiableList (new ArrayList<Ref> (branches.values ()));
+		m_tags = Collections.unmodifiableList (new ArrayList<Ref> (tags.values ()));
+		m_branchMap = Collections.unmodifiableMap (branchMap);
+		m_tagMap = Collections.unmodifiableMap (tagMap);
+	}
+
+	/**
+	 * Get the peeled object ids of all the refs.
+	 *
+	 * @return	a map of ref names to the peeled object ids.
+	 */
+	public Map<String, ObjectId> getTips ()
+	{
+		return m_tips;
+	}
+
+	/**
+	 * @return	the local and remote branches, sorted by name.
+	 */
+	public List<Ref> getBranches ()
+	{
+		return m_branches;
+	}
+
+	/**
+	 * @return	the tags, sorted by name.
+	 */
+	public List<Ref> getTags ()
+	{
+		return m_tags;
+	}
+
+	/**
+	 * @return	a map of commit ids to the branches pointing to them.
+	 */
+	public Map<ObjectId, Ref> getBranchMap ()
+	{
+		return m_branchMap;
+	}
+
+	/**
+	 * @return	a map of peeled object ids to the tags pointing to them.
+	 */
+	public Map<ObjectId, Ref> getTagMap ()
+	{
+		return m_tagMap;
+	}
+
+	/**
+	 * Get the refs that were added, removed or moved since an older
+	 * snapshot.
+	 *
+	 * @param	oldSnapshot
+	 * 			the older snapshot.  It can be null.
+	 * @return	the names of the changed refs.
+	 */
+	public Set<String> getChangedRefs (RefSnapshot oldSnapshot)
+	{
+		TreeSet<String> changed = new TreeSet<String> ();
+		if (oldSnapshot == null)
+		{
+			changed.addAll (m_tips.keySet ());
+			return changed;
+		}
+		for (Map.Entry<String, ObjectId> entry : m_tips.entrySet ())
+		{
+			if (!entry.getValue ().equals (oldSnapshot.m_tips.get (entry.getKey ())))
+				changed.add (entry.getKey ());
+		}
+		for (String name : oldSnapshot.m_tips.keySet ())
+		{
+			if (!m_tips.containsKey (name))
+				changed.add (name);
+		}
+		return changed;
+	}
+
+	/**
+	 * Check if any ref was added, removed or moved since an older snapshot.
+	 *
+	 * @param	oldSnapshot
+	 * 			the older snapshot.  It can be null.
+	 * @return	true if the refs changed.
+	 */
+	public boolean hasChanged (RefSnapshot oldSnapshot)
+	{
+		return oldSnapshot == null || !m_tips.equals (oldSnapshot.m_tips);
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.export;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.BranchLog.AlgorithmProfile;
+
+/**
+ * Export the profile of the branch discovery algorithms as CSV, one row
+ * per algorithm run in each merge iteration.
+ *
+ * @author	Heng Yuan
+ */
+public class BranchProfileExporter
+{
+	public final static String HEADER = "iteration,level,algorithm,candidates,merges,time ms";
+
+	public void save (File file, BranchLog log) throws IOException
+	{
+		try (PrintWriter pw = new PrintWriter (new FileWriter (file)))
+		{
+			pw.println (HEADER);
+			for (int i = 0; i < log.getProfileCount (); ++i)
+			{
+				AlgorithmProfile profile = log.getProfile (i);
+				pw.println (profile.iteration + "," +
+					profile.level + "," +
+					profile.algorithm + "," +
+					profile.candidates + "," +
+					profile.merges + "," +
+					String.format (Locale.ROOT, "%.3f", profile.time / 1000000.0));
+			}
+			if (pw.checkError ())
+				throw new IOException ("Unable to write " + file);
+		}
+	}
+}
@@ -41,7 +41,7 @@ public class DotExporter
 
 	private String getName (RelationNode node)
 	{
-		return "Node" + node.getCommit ().abbreviate (m_options.abbrevLength).name ();
+		return "Node" + node.getId ().abbreviate (m_options.abbrevLength).name ();
 	}
 
 	public void save (File file, String graphName, RelationTree tree) throws IOException
@@ -104,7 +104,7 @@ public class DotExporter
 
 			if (annot == null)
 			{
-				pw.println ("  " + getName (node) + " [ label = \"" + node.getCommit ().abbreviate (m_options.abbrevLength).name () + "\" ]");
+				pw.println ("  " + getName (node) + " [ label = \"" + node.getId ().abbreviate (m_options.abbrevLength).name () + "\" ]");
 			}
 			else
 			{
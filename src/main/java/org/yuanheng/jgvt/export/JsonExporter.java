@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.export;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.yuanheng.jgvt.relation.RelationBranch;
+import org.yuanheng.jgvt.relation.RelationNode;
+import org.yuanheng.jgvt.relation.RelationTree;
+import org.yuanheng.jgvt.relation.RelationType;
+
+/**
+ * Export the tree as JSON.  The nodes are listed with their layout
+ * positions, branches and parents.  The branches are listed with their
+ * nodes from the first to the last.
+ *
+ * @author	Heng Yuan
+ */
+public class JsonExporter
+{
+	private static String quote (String str)
+	{
+		StringBuilder builder = new StringBuilder ();
+		builder.append ('"');
+		for (int i = 0; i < str.length (); ++i)
+		{
+			char ch = str.charAt (i);
+			switch (ch)
+			{
+				case '"':
+					builder.append ("\\\"");
+					break;
+				case '\\':
+					builder.append ("\\\\");
+					break;
+				case '\n':
+					builder.append ("\\n");
+					break;
+				case '\r':
+					builder.append ("\\r");
+					break;
+				case '\t':
+					builder.append ("\\t");
+					break;
+				default:
+					if (ch < 0x20)
+						builder.append (String.format ("\\u%04x", (int) ch));
+					else
+						builder.append (ch);
+			}
+		}
+		builder.append ('"');
+		return builder.toString ();
+	}
+
+	public void save (File file, RelationTree tree) throws IOException
+	{
+		Collection<RelationNode> nodes = tree.getNodes ();
+
+		// number the branches in the node order
+		IdentityHashMap<RelationBranch, Integer> branchMap = new IdentityHashMap<RelationBranch, Integer> ();
+		ArrayList<RelationBranch> branches = new ArrayList<RelationBranch> ();
+		for (RelationNode node : nodes)
+		{
+			RelationBranch branch = node.getRelationBranch ();
+			if (branch == null || branchMap.containsKey (branch))
+				continue;
+			branchMap.put (branch, branches.size ());
+			branches.add (branch);
+		}
+
+		try (PrintWriter pw = new PrintWriter (new FileWriter (file)))
+		{
+			pw.println ("{");
+			pw.println ("  \"nodes\": [");
+			int count = 0;
+			for (RelationNode node : nodes)
+			{
+				pw.print ("    { \"id\": " + quote (node.getId ().name ()));
+				pw.print (", \"time\": " + node.getCommitTime ());
+				pw.print (", \"x\": " + node.getX ());
+				pw.print (", \"y\": " + node.getY ());
+				RelationBranch branch = node.getRelationBranch ();
+				if (branch != null)
+				{
+					pw.print (", \"branch\": " + branchMap.get (branch));
+				}
+				String annot = node.getAnnotation ();
+				if (annot != null)
+				{
+					pw.print (", \"annotation\": " + quote (annot));
+				}
+				pw.print (", \"parents\": [");
+				RelationNode[] parents = node.getParents ();
+				for (int i = 0; i < parents.length; ++i)
+				{
+					if (i > 0)
+						pw.print (", ");
+					RelationType relation = node.getRelation (parents[i]);
+					pw.print ("{ \"id\": " + quote (parents[i].getId ().name ()));
+					if (relation != null)
+					{
+						pw.print (", \"relation\": " + quote (relation.name ()));
+					}
+					pw.print (" }");
+				}
+				pw.print ("] }");
+				pw.println (++count < nodes.size () ? "," : "");
+			}
+			pw.println ("  ],");
+
+			pw.println ("  \"branches\": [");
+			for (int i = 0; i < branches.size (); ++i)
+			{
+				List<RelationNode> list = branches.get (i).getOrderedList ();
+				pw.print ("    [");
+				for (int j = 0; j < list.size (); ++j)
+				{
+					if (j > 0)
+						pw.print (", ");
+					pw.print (quote (list.get (j).getId ().name ()));
+				}
+				pw.println ((i + 1) < branches.size () ? "]," : "]");
+			}
+			pw.println ("  ]");
+			pw.println ("}");
+		}
+	}
+}
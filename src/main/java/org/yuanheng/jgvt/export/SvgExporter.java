@@ -33,7 +33,7 @@ import com.mxgraph.util.mxCellRenderer;
 /**
  * @author Heng Yuan
  */
-class SvgExporter
+public class SvgExporter
 {
 	private final GVTGraph m_graph;
 
@@ -17,25 +17,52 @@ package org.yuanheng.jgvt.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
 
-import javax.swing.JDialog;
-import javax.swing.JFrame;
-import javax.swing.JPanel;
+import javax.swing.*;
 
 import org.yuanheng.jgvt.Controller;
+import org.yuanheng.jgvt.Debug;
+import org.yuanheng.jgvt.Main;
+import org.yuanheng.jgvt.export.BranchProfileExporter;
 
+import com.jgoodies.forms.builder.ButtonBarBuilder;
 import com.jgoodies.forms.factories.Paddings;
 
 /**
+ * Show the branch merges, and the profile of the discovery algorithms
+ * that found them.  The tables are refreshed whenever the dialog is
+ * activated.
+ *
  * @author	Heng Yuan
  */
 class BranchLogDialog extends JDialog
 {
 	private static final long serialVersionUID = 3605493344485080989L;
 
+	private final Controller m_controller;
+	private final BranchLogPane m_branchLogPane;
+	private final BranchProfileModel m_profileModel;
+	private final BranchProfileModel m_summaryModel;
+
+	private Action m_exportAction = new AbstractAction ("Export CSV")
+	{
+		private static final long serialVersionUID = -1180525146286549305L;
+
+		@Override
+		public void actionPerformed (ActionEvent e)
+		{
+			exportProfile ();
+		}
+	};
+
 	public BranchLogDialog (JFrame parent, Controller controller)
 	{
 		super (parent);
+		m_controller = controller;
 		setTitle ("Branch Log");
 		setDefaultCloseOperation (JDialog.DISPOSE_ON_CLOSE);
 
@@ -43,9 +70,63 @@ class BranchLogDialog extends JDialog
 		contentPane.setBorder (Paddings.DIALOG);
 		setContentPane (contentPane);
 
-		contentPane.add (new BranchLogPane (controller, controller.getBranchLog ()), BorderLayout.CENTER);
+		m_branchLogPane = new BranchLogPane (controller, controller.getBranchLog ());
+		m_profileModel = new BranchProfileModel (controller.getBranchLog (), false);
+		m_summaryModel = new BranchProfileModel (controller.getBranchLog (), true);
+
+		JTabbedPane tabbedPane = new JTabbedPane ();
+		tabbedPane.addTab ("Merges", m_branchLogPane);
+		tabbedPane.addTab ("Iterations", createTablePane (m_profileModel));
+		tabbedPane.addTab ("Algorithms", createTablePane (m_summaryModel));
+		contentPane.add (tabbedPane, BorderLayout.CENTER);
+
+		JPanel buttomPanel = ButtonBarBuilder.create ().addButton (m_exportAction).addGlue ().build ();
+		buttomPanel.setBorder (Paddings.BUTTON_BAR_PAD);
+		contentPane.add (buttomPanel, BorderLayout.SOUTH);
+
+		addWindowListener (new WindowAdapter ()
+		{
+			@Override
+			public void windowActivated (WindowEvent e)
+			{
+				m_branchLogPane.refresh ();
+				m_profileModel.refresh ();
+				m_summaryModel.refresh ();
+			}
+		});
 
 		setMinimumSize (new Dimension (300, 300));
-		setSize (480, 400);
+		setSize (560, 400);
+	}
+
+	private static JScrollPane createTablePane (BranchProfileModel model)
+	{
+		JTable table = new JTable (model);
+		table.setAutoCreateRowSorter (true);
+		table.getColumnModel ().getColumn (BranchProfileModel.COL_ALGORITHM).setPreferredWidth (200);
+		return new JScrollPane (table);
+	}
+
+	private void exportProfile ()
+	{
+		JFileChooser chooser = new JFileChooser (Main.pref.getExportDirectory ());
+		chooser.setFileSelectionMode (JFileChooser.FILES_ONLY);
+		chooser.setSelectedFile (new File ("branchprofile.csv"));
+		if (chooser.showSaveDialog (this) != JFileChooser.APPROVE_OPTION)
+			return;
+		File file = chooser.getSelectedFile ();
+		if (!file.getName ().endsWith (".csv"))
+		{
+			file = new File (file.getPath () + ".csv");
+		}
+		try
+		{
+			new BranchProfileExporter ().save (file, m_controller.getBranchLog ());
+		}
+		catch (Exception ex)
+		{
+			Debug.printStackTrace (ex);
+			JOptionPane.showMessageDialog (this, ex.getMessage (), "Error", JOptionPane.ERROR_MESSAGE);
+		}
 	}
 }
@@ -83,7 +83,7 @@ public class BranchLogModel extends AbstractTableModel
 			case COL_INDEX:
 				return row;
 			case COL_COMMIT:
-				return m_log.get (row).node.getCommit ().getName ();
+				return m_log.get (row).node.getId ().getName ();
 			case COL_ALGORITHM:
 				return m_log.get (row).algorithm;
 			case COL_ITERATION:
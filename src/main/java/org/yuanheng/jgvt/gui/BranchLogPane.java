@@ -118,6 +118,14 @@ class BranchLogPane extends JPanel
 		m_sorter.addRowSorterListener (rowCountListener);
 	}
 
+	/**
+	 * Show the changes of the branch log.
+	 */
+	public void refresh ()
+	{
+		((BranchLogModel) m_table.getModel ()).fireTableDataChanged ();
+	}
+
 	private void updateFilter ()
 	{
 		String text = m_input.getText ().trim ();
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.BranchLog.AlgorithmProfile;
+
+/**
+ * The profile of the branch discovery algorithms in the branch log.  It
+ * shows either each algorithm run in each merge iteration, or the sum of
+ * the runs of each algorithm.
+ *
+ * @author	Heng Yuan
+ */
+public class BranchProfileModel extends AbstractTableModel
+{
+	private static final long serialVersionUID = 4213765071623490553L;
+
+	public final static int COL_ALGORITHM = 0;
+	public final static int COL_LEVEL = 1;
+	public final static int COL_ITERATION = 2;
+	public final static int COL_CANDIDATES = 3;
+	public final static int COL_MERGES = 4;
+	public final static int COL_TIME = 5;
+
+	public static String[] COLUMN_NAMES = { "Algorithm", "Level", "Iteration", "Candidates", "Merges", "Time (ms)" };
+	public static String[] SUMMARY_COLUMN_NAMES = { "Algorithm", "Level", "Invocations", "Candidates", "Merges", "Time (ms)" };
+
+	private final BranchLog m_log;
+	private final boolean m_summary;
+	private List<AlgorithmProfile> m_profiles = new ArrayList<AlgorithmProfile> ();
+
+	/**
+	 * @param	log
+	 * 			the branch log
+	 * @param	summary
+	 * 			true to show the sum of the runs of each algorithm.
+	 */
+	public BranchProfileModel (BranchLog log, boolean summary)
+	{
+		m_log = log;
+		m_summary = summary;
+		refresh ();
+	}
+
+	/**
+	 * Take a new snapshot of the branch log.
+	 */
+	public void refresh ()
+	{
+		if (m_summary)
+		{
+			m_profiles = m_log.getProfileSummary ();
+		}
+		else
+		{
+			m_profiles = new ArrayList<AlgorithmProfile> ();
+			for (int i = 0; i < m_log.getProfileCount (); ++i)
+			{
+				m_profiles.add (m_log.getProfile (i));
+			}
+		}
+		fireTableDataChanged ();
+	}
+
+	@Override
+	public int getRowCount ()
+	{
+		return m_profiles.size ();
+	}
+
+	@Override
+	public int getColumnCount ()
+	{
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName (int column)
+	{
+		return m_summary ? SUMMARY_COLUMN_NAMES[column] : COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass (int column)
+	{
+		switch (column)
+		{
+			case COL_ALGORITHM:
+				return String.class;
+			case COL_LEVEL:
+			case COL_ITERATION:
+			case COL_MERGES:
+				return Integer.class;
+			case COL_CANDIDATES:
+				return Long.class;
+			case COL_TIME:
+				return Double.class;
+			default:
+				return Object.class;
+		}
+	}
+
+	@Override
+	public Object getValueAt (int row, int column)
+	{
+		AlgorithmProfile profile = m_profiles.get (row);
+		switch (column)
+		{
+			case COL_ALGORITHM:
+				return profile.algorithm;
+			case COL_LEVEL:
+				return profile.level;
+			case COL_ITERATION:
+				return m_summary ? profile.invocations : profile.iteration;
+			case COL_CANDIDATES:
+				return profile.candidates;
+			case COL_MERGES:
+				return profile.merges;
+			case COL_TIME:
+				return profile.time / 1000000.0;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean isCellEditable (int rowIndex, int columnIndex)
+	{
+		return false;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+
+import org.yuanheng.jgvt.ChangeCacheMBean;
+import org.yuanheng.jgvt.Controller;
+
+import com.jgoodies.forms.factories.Paddings;
+
+/**
+ * Show the time, the allocated memory and the tree size of each phase of
+ * the last build, and the hit rate of the change cache.  The statistics
+ * are refreshed whenever the dialog is activated.
+ *
+ * @author	Heng Yuan
+ */
+class BuildStatisticsDialog extends JDialog
+{
+	private static final long serialVersionUID = -1823410766516939462L;
+
+	private final BuildStatisticsModel m_model;
+	private final Controller m_controller;
+	private final JLabel m_changeCacheLabel = new JLabel ();
+
+	public BuildStatisticsDialog (JFrame parent, Controller controller)
+	{
+		super (parent);
+		m_controller = controller;
+		setTitle ("Build Statistics");
+		setDefaultCloseOperation (JDialog.DISPOSE_ON_CLOSE);
+
+		JPanel contentPane = new JPanel (new BorderLayout ());
+		contentPane.setBorder (Paddings.DIALOG);
+		setContentPane (contentPane);
+
+		m_model = new BuildStatisticsModel (controller.getBuildStatistics ());
+		JTable table = new JTable (m_model);
+		table.getColumnModel ().getColumn (BuildStatisticsModel.COL_PHASE).setPreferredWidth (200);
+		contentPane.add (new JScrollPane (table), BorderLayout.CENTER);
+		m_changeCacheLabel.setBorder (Paddings.DLU4);
+		contentPane.add (m_changeCacheLabel, BorderLayout.SOUTH);
+
+		addWindowListener (new WindowAdapter ()
+		{
+			@Override
+			public void windowActivated (WindowEvent e)
+			{
+				m_model.refresh ();
+				refreshChangeCache ();
+			}
+		});
+
+		setMinimumSize (new Dimension (300, 300));
+		setSize (560, 400);
+	}
+
+	private void refreshChangeCache ()
+	{
+		ChangeCacheMBean stats = m_controller.getChangeCacheStatistics ();
+		if (stats == null)
+			m_changeCacheLabel.setText ("");
+		else
+			m_changeCacheLabel.setText ("Change cache: " + stats.getRequests () + " requests, " +
+				stats.getHits () + " hits, " + stats.getMisses () + " misses, " +
+				stats.getPrefetchHits () + " of " + stats.getPrefetches () + " prefetches used");
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.yuanheng.jgvt.relation.BuildStatistics;
+import org.yuanheng.jgvt.relation.BuildStatistics.Phase;
+
+/**
+ * @author	Heng Yuan
+ */
+public class BuildStatisticsModel extends AbstractTableModel
+{
+	private static final long serialVersionUID = -3346316470541180914L;
+
+	public final static int COL_PHASE = 0;
+	public final static int COL_TIME = 1;
+	public final static int COL_ALLOCATED = 2;
+	public final static int COL_NODES = 3;
+	public final static int COL_BRANCHES = 4;
+
+	public static String[] COLUMN_NAMES = { "Phase", "Time (ms)", "Allocated (KB)", "Nodes", "Branches" };
+
+	private final BuildStatistics m_stats;
+	private List<Phase> m_phases = new ArrayList<Phase> ();
+
+	public BuildStatisticsModel (BuildStatistics stats)
+	{
+		m_stats = stats;
+		refresh ();
+	}
+
+	/**
+	 * Take a new snapshot of the statistics.
+	 */
+	public void refresh ()
+	{
+		m_phases = m_stats.getPhases ();
+		fireTableDataChanged ();
+	}
+
+	@Override
+	public int getRowCount ()
+	{
+		return m_phases.size ();
+	}
+
+	@Override
+	public int getColumnCount ()
+	{
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName (int column)
+	{
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass (int column)
+	{
+		switch (column)
+		{
+			case COL_PHASE:
+				return String.class;
+			case COL_TIME:
+				return Double.class;
+			case COL_ALLOCATED:
+				return Long.class;
+			case COL_NODES:
+			case COL_BRANCHES:
+				return Integer.class;
+			default:
+				return Object.class;
+		}
+	}
+
+	@Override
+	public Object getValueAt (int row, int column)
+	{
+		Phase phase = m_phases.get (row);
+		switch (column)
+		{
+			case COL_PHASE:
+				// indent the nested phases.
+				return "    ".substring (0, Math.min (4, phase.level * 2)) + phase.name;
+			case COL_TIME:
+				return phase.time / 1000000.0;
+			case COL_ALLOCATED:
+				return phase.allocated < 0 ? null : phase.allocated >> 10;
+			case COL_NODES:
+				return phase.nodeCount < 0 ? null : phase.nodeCount;
+			case COL_BRANCHES:
+				return phase.branchCount < 0 ? null : phase.branchCount;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean isCellEditable (int rowIndex, int columnIndex)
+	{
+		return false;
+	}
+}
@@ -15,7 +15,9 @@
  */
 package org.yuanheng.jgvt.gui;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.yuanheng.jgvt.ChangeInfo;
 import org.yuanheng.jgvt.Controller;
@@ -30,20 +32,46 @@ class CommitPane extends ChangePane
 	private static final long serialVersionUID = -3411516962635048642L;
 
 	private RelationNode m_node;
+	private Future<?> m_future;
 
 	public CommitPane (Controller controller)
 	{
 		super (controller, new ChangeTreeCommit ());
 	}
 
-	public void select (RelationNode node)
+	/**
+	 * Show the changes of a commit.  The changes are computed in the
+	 * background if they are not cached.  A pending computation for the
+	 * previously selected commit is cancelled.
+	 *
+	 * @param	node
+	 * 			the selected node
+	 */
+	public void select (final RelationNode node)
 	{
 		if (m_node == node)
 			return;
 		m_node = node;
+		if (m_future != null)
+		{
+			m_future.cancel (false);
+			m_future = null;
+		}
 
 		((ChangeTreeCommit)getRoot ()).setNode (node);
-		List<ChangeInfo> changes = getController ().getGitRepo ().getChanges (node.getCommit ());
-		setChanges (changes);
+		List<ChangeInfo> changes = getController ().getGitRepo ().getCachedChanges (node.getCommit ());
+		if (changes != null)
+		{
+			setChanges (changes);
+			return;
+		}
+		setChanges (Collections.<ChangeInfo>emptyList ());
+		m_future = getController ().loadChanges (node, result ->
+		{
+			if (m_node != node)
+				return;
+			m_future = null;
+			setChanges (result);
+		});
 	}
 }
@@ -158,7 +158,7 @@ class EditListDialog extends JDialog
 
 	private void refresh ()
 	{
-		m_controller.refresh ();
+		m_controller.refresh (false);
 	}
 
 	private void save (int choice)
@@ -71,6 +71,7 @@ public class GUI
 	private JDialog m_listBranchDialog;
 	private JDialog m_listTagDialog;
 	private JDialog m_branchLogDialog;
+	private JDialog m_buildStatsDialog;
 
 	private String m_branch;
 	private String m_file;
@@ -219,6 +220,22 @@ public class GUI
 		}
 	};
 
+	private Action m_buildStatsAction = new AbstractAction ("Show build statistics")
+	{
+		private static final long serialVersionUID = -5096528389530178562L;
+
+		@Override
+		public void actionPerformed (ActionEvent e)
+		{
+			if (m_buildStatsDialog == null)
+			{
+				m_buildStatsDialog = new BuildStatisticsDialog (m_frame, m_controller);
+				m_buildStatsDialog.setLocationRelativeTo (m_frame);
+			}
+			m_buildStatsDialog.setVisible (true);
+		}
+	};
+
 	private Action m_rememberAction = new AbstractAction ("Remember selected")
 	{
 		private static final long serialVersionUID = 3415698093054735622L;
@@ -671,8 +688,7 @@ public class GUI
 		createGraphComp (controller);
 		createPropertyPane ();
 
-		// disable status bar for now
-//		contentPane.add (m_statusBar, BorderLayout.SOUTH);
+		contentPane.add (m_statusBar, BorderLayout.SOUTH);
 
 		m_splitPane = new JSplitPane (JSplitPane.VERTICAL_SPLIT, m_graphComp, m_propertyPane);
 		m_splitPane.setResizeWeight (1);
@@ -766,6 +782,7 @@ public class GUI
 		menu.setMnemonic ('H');
 		subMenu = new JMenu ("Debug");
 		subMenu.add (new JMenuItem (m_branchLogAction));
+		subMenu.add (new JMenuItem (m_buildStatsAction));
 		menu.add (subMenu);
 		menu.add (new JMenuItem (m_aboutAction2));
 		m_menuBar.add (menu);
@@ -867,6 +884,17 @@ public class GUI
 		return m_statusBar;
 	}
 
+	/**
+	 * Create a monitor that shows the progress of a task in the status
+	 * bar.
+	 *
+	 * @return	the progress monitor.
+	 */
+	public StatusBarMonitor createProgressMonitor ()
+	{
+		return new StatusBarMonitor (m_statusBar);
+	}
+
 	public void setRoot (String repo)
 	{
 		m_repo = repo;
@@ -40,11 +40,15 @@ class PreferenceDialog extends JDialog
 
 	private final Controller m_controller;
 	private JSpinner m_abbrevLenInput;
+	private JSpinner m_prefetchCountInput;
 	private JSpinner m_branchSpacingInput;
 	private JSpinner m_childSpacingInput;
 	private JSpinner m_startXInput;
 	private JSpinner m_startYInput;
 	private JCheckBox m_leftOnlyInput;
+	private JCheckBox m_fetchInput;
+	private JCheckBox m_collapseCommitsInput;
+	private JCheckBox m_compactRowsInput;
 	private JComboBox<String> m_saveToInput;
 
 	private Action m_restoreDefaultsAction = new AbstractAction ("Restore Defaults")
@@ -55,10 +59,14 @@ class PreferenceDialog extends JDialog
 		public void actionPerformed (ActionEvent e)
 		{
 			m_abbrevLenInput.setValue (Defaults.DEFAULT_ABBREV_LEN);
+			m_prefetchCountInput.setValue (Defaults.PREFETCH_COUNT);
 			m_branchSpacingInput.setValue (Defaults.BRANCH_SPACING);
 			m_childSpacingInput.setValue (Defaults.CHILD_SPACING);
 			m_startXInput.setValue (Defaults.START_X);
 			m_startYInput.setValue (Defaults.START_Y);
+			m_fetchInput.setSelected (Defaults.FETCH);
+			m_collapseCommitsInput.setSelected (Defaults.COLLAPSE_COMMITS);
+			m_compactRowsInput.setSelected (Defaults.COMPACT_ROWS);
 		}
 	};
 
@@ -73,7 +81,7 @@ class PreferenceDialog extends JDialog
 			dispose ();
 			if (changed)
 			{
-				SwingUtilities.invokeLater (() -> { m_controller.refresh (); });
+				SwingUtilities.invokeLater (() -> { m_controller.refresh (false); });
 			}
 		}
 	};
@@ -103,7 +111,7 @@ class PreferenceDialog extends JDialog
 
 		FormBuilder builder = FormBuilder.create ()
 				.columns("right:pref, 4dlu, default, 4dlu, right:pref, 4dlu, default")
-				.rows("pref, $lg, pref, $lg, pref, $lg, pref, $lg, pref");
+				.rows("pref, $lg, pref, $lg, pref, $lg, pref, $lg, pref, $lg, pref");
 
 		{
 			builder.add ("SHA1 Abbreviation Length:").xy (1, 1);
@@ -112,6 +120,13 @@ class PreferenceDialog extends JDialog
 			builder.add (m_abbrevLenInput).xy (3, 1);
 		}
 
+		{
+			builder.add ("Prefetch Commits:").xy (5, 1);
+			SpinnerNumberModel model = new SpinnerNumberModel (0, 0, Defaults.MAX_PREFETCH_COUNT, 1);
+			m_prefetchCountInput = new JSpinner (model);
+			builder.add (m_prefetchCountInput).xy (7, 1);
+		}
+
 		{
 			builder.add ("Branch spacing:").xy (1, 3);
 			SpinnerNumberModel model = new SpinnerNumberModel (Defaults.MIN_BRANCH_SPACING, Defaults.MIN_BRANCH_SPACING, Defaults.MAX_BRANCH_SPACING, 10);
@@ -147,9 +162,25 @@ class PreferenceDialog extends JDialog
 		}
 
 		{
-			builder.add ("Save to:").xy (1, 9);
+			builder.add ("Fetch Remotes:").xy (5, 7);
+			m_fetchInput = new JCheckBox ((Icon)null, Defaults.FETCH);
+			builder.add (m_fetchInput).xy (7, 7);
+		}
+
+		{
+			builder.add ("Collapse Commits:").xy (1, 9);
+			m_collapseCommitsInput = new JCheckBox ((Icon)null, Defaults.COLLAPSE_COMMITS);
+			builder.add (m_collapseCommitsInput).xy (3, 9);
+
+			builder.add ("Compact Rows:").xy (5, 9);
+			m_compactRowsInput = new JCheckBox ((Icon)null, Defaults.COMPACT_ROWS);
+			builder.add (m_compactRowsInput).xy (7, 9);
+		}
+
+		{
+			builder.add ("Save to:").xy (1, 11);
 			m_saveToInput = new JComboBox<String> (SAVE_STRINGS);
-			builder.add (m_saveToInput).xy (3, 9);
+			builder.add (m_saveToInput).xy (3, 11);
 		}
 
 		contentPane.add (builder.getPanel (), BorderLayout.CENTER);
@@ -176,11 +207,15 @@ class PreferenceDialog extends JDialog
 	private void loadPreference ()
 	{
 		m_abbrevLenInput.setValue (Main.pref.getAbbrevLength ());
+		m_prefetchCountInput.setValue (Main.pref.getPrefetchCount ());
 		m_branchSpacingInput.setValue (Main.pref.getBranchSpacing ());
 		m_childSpacingInput.setValue (Main.pref.getChildSpacing ());
 		m_startXInput.setValue (Main.pref.getStartX ());
 		m_startYInput.setValue (Main.pref.getStartY ());
 		m_leftOnlyInput.setSelected (Main.pref.getLeftOnly ());
+		m_fetchInput.setSelected (Main.pref.getFetch ());
+		m_collapseCommitsInput.setSelected (Main.pref.getCollapseCommits ());
+		m_compactRowsInput.setSelected (Main.pref.getCompactRows ());
 	}
 
 	private boolean save (Preference pref, int index)
@@ -214,12 +249,22 @@ class PreferenceDialog extends JDialog
 		changed |= Main.pref.setStartX (((Number)m_startXInput.getValue ()).doubleValue ());
 		changed |= Main.pref.setStartY (((Number)m_startYInput.getValue ()).doubleValue ());
 		changed |= Main.pref.setLeftOnly (m_leftOnlyInput.isSelected ());
+		changed |= Main.pref.setCollapseCommits (m_collapseCommitsInput.isSelected ());
+		changed |= Main.pref.setCompactRows (m_compactRowsInput.isSelected ());
+		// prefetching does not change the tree.
+		Main.pref.setPrefetchCount (((Number)m_prefetchCountInput.getValue ()).intValue ());
+		// fetching does not change the tree until the refs move.
+		boolean fetchChanged = Main.pref.setFetch (m_fetchInput.isSelected ());
 
 		boolean saved = save (Main.pref, m_saveToInput.getSelectedIndex ());
 		if (!saved)
 		{
 			JOptionPane.showMessageDialog (getParent (), "Unable to save preferences.", "Error", JOptionPane.ERROR_MESSAGE);
 		}
+		if (fetchChanged)
+		{
+			m_controller.fetchRemotes ();
+		}
 
 		return changed;
 	}
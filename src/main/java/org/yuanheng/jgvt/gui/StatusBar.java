@@ -15,10 +15,14 @@
  */
 package org.yuanheng.jgvt.gui;
 
+import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTextField;
 
+import org.eclipse.jgit.lib.ProgressMonitor;
+
 /**
  * @author	Heng Yuan
  */
@@ -29,6 +33,10 @@ class StatusBar extends JPanel
 	private JTextField m_rootField;
 	private JTextField m_branchField;
 	private JTextField m_fileField;
+	private JProgressBar m_progressBar;
+	private JButton m_cancelButton;
+	/** The monitor of the task in progress. */
+	private StatusBarMonitor m_monitor;
 
 	public StatusBar ()
 	{
@@ -47,6 +55,21 @@ class StatusBar extends JPanel
 		add(m_branchField);
 		add(new JLabel ("File:"));
 		add(m_fileField);
+
+		m_progressBar = new JProgressBar ();
+		m_progressBar.setStringPainted (true);
+		m_progressBar.setVisible (false);
+
+		m_cancelButton = new JButton ("Cancel");
+		m_cancelButton.addActionListener (e ->
+		{
+			if (m_monitor != null)
+				m_monitor.cancel ();
+		});
+		m_cancelButton.setVisible (false);
+
+		add(m_progressBar);
+		add(m_cancelButton);
 	}
 
 	public void setRoot (String gitRoot)
@@ -65,4 +88,49 @@ class StatusBar extends JPanel
 			file = "";
 		m_fileField.setText (file);
 	}
+
+	/**
+	 * Show the progress of a task.  The previous task, if any, is no
+	 * longer shown.
+	 *
+	 * @param	monitor
+	 * 			the monitor of the task.
+	 */
+	void startProgress (StatusBarMonitor monitor)
+	{
+		m_monitor = monitor;
+		m_progressBar.setIndeterminate (true);
+		m_progressBar.setString ("");
+		m_progressBar.setVisible (true);
+		m_cancelButton.setVisible (true);
+		revalidate ();
+	}
+
+	void setProgress (StatusBarMonitor monitor, String title, int completed, int totalWork)
+	{
+		if (m_monitor != monitor)
+			return;
+		if (totalWork == ProgressMonitor.UNKNOWN)
+		{
+			m_progressBar.setIndeterminate (true);
+			m_progressBar.setString (completed > 0 ? title + " (" + completed + ")" : title);
+		}
+		else
+		{
+			m_progressBar.setIndeterminate (false);
+			m_progressBar.setMaximum (totalWork);
+			m_progressBar.setValue (completed);
+			m_progressBar.setString (title);
+		}
+	}
+
+	void stopProgress (StatusBarMonitor monitor)
+	{
+		if (m_monitor != monitor)
+			return;
+		m_monitor = null;
+		m_progressBar.setVisible (false);
+		m_cancelButton.setVisible (false);
+		revalidate ();
+	}
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.gui;
+
+import javax.swing.SwingUtilities;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+/**
+ * A ProgressMonitor that shows the progress in the status bar.  It can be
+ * called from any thread.  The task is cancelled from the status bar or
+ * by {@link #cancel()}.
+ *
+ * @author	Heng Yuan
+ */
+public class StatusBarMonitor implements ProgressMonitor
+{
+	/** The minimum amount of work between the status bar updates. */
+	private final static int UPDATE_INTERVAL = 1000;
+
+	private final StatusBar m_statusBar;
+	private volatile boolean m_cancelled;
+	private String m_title;
+	private int m_totalWork;
+	private int m_completed;
+	private int m_lastShown;
+
+	StatusBarMonitor (StatusBar statusBar)
+	{
+		m_statusBar = statusBar;
+		SwingUtilities.invokeLater (() -> { m_statusBar.startProgress (this); });
+	}
+
+	@Override
+	public void start (int totalTasks)
+	{
+	}
+
+	@Override
+	public void beginTask (String title, int totalWork)
+	{
+		m_title = title;
+		m_totalWork = totalWork;
+		m_completed = 0;
+		m_lastShown = 0;
+		show ();
+	}
+
+	@Override
+	public void update (int completed)
+	{
+		m_completed += completed;
+		int interval = (m_totalWork == UNKNOWN) ? UPDATE_INTERVAL : Math.max (1, m_totalWork / 100);
+		if (m_completed - m_lastShown >= interval)
+		{
+			m_lastShown = m_completed;
+			show ();
+		}
+	}
+
+	@Override
+	public void endTask ()
+	{
+	}
+
+	@Override
+	public boolean isCancelled ()
+	{
+		return m_cancelled;
+	}
+
+	/**
+	 * Cancel the task.
+	 */
+	public void cancel ()
+	{
+		m_cancelled = true;
+	}
+
+	/**
+	 * Remove the progress from the status bar once the task is finished.
+	 */
+	public void done ()
+	{
+		SwingUtilities.invokeLater (() -> { m_statusBar.stopProgress (this); });
+	}
+
+	private void show ()
+	{
+		final String title = m_title;
+		final int completed = m_completed;
+		final int totalWork = m_totalWork;
+		SwingUtilities.invokeLater (() -> { m_statusBar.setProgress (this, title, completed, totalWork); });
+	}
+}
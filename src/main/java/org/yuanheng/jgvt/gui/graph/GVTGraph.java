@@ -15,7 +15,11 @@
  */
 package org.yuanheng.jgvt.gui.graph;
 
+import java.util.HashSet;
+
+import org.eclipse.jgit.lib.ObjectId;
 import org.yuanheng.jgvt.CommitUtils;
+import org.yuanheng.jgvt.relation.RelationNode;
 
 import com.mxgraph.model.mxGraphModel;
 import com.mxgraph.view.mxGraph;
@@ -29,10 +33,16 @@ public class GVTGraph extends mxGraph
 
 	private int m_toolTipFlag;
 	private GVTTree m_tree;
+	/**
+	 * The commits expanded by the user.  They are kept across the trees so
+	 * that rebuilding the graph does not collapse them again.
+	 */
+	private final HashSet<ObjectId> m_expandedIds;
 
 	public GVTGraph ()
 	{
 		m_toolTipFlag = DEFAULT_TOOLTIP_FLAG;
+		m_expandedIds = new HashSet<ObjectId> ();
 
 		setCellsBendable (false);
 		setCellsCloneable (false);
@@ -62,6 +72,16 @@ public class GVTGraph extends mxGraph
 		m_tree = tree;
 	}
 
+	public boolean isExpanded (RelationNode node)
+	{
+		return m_expandedIds.contains (node.getId ());
+	}
+
+	public void setExpanded (RelationNode node)
+	{
+		m_expandedIds.add (node.getId ().copy ());
+	}
+
 	/**
 	 * Overriding the method to disable edge selection.
 	 *
@@ -105,8 +125,12 @@ public class GVTGraph extends mxGraph
 		GVTVertex v = (GVTVertex) model.getValue (cell);
 		if (v == null)
 			return null;
+		if (m_tree.getRun (v) != null)
+			return v.toString ();
 
-		return v.getToolTip ();
+		// the tooltip is generated on demand so that the commit body is
+		// only read when needed.
+		return m_tree.getNode (v).getTooltip (m_toolTipFlag);
 	}
 
 	public int getToolTipFlag ()
@@ -34,6 +34,7 @@ public class GVTGraphComponent extends mxGraphComponent
 {
 	private static final long serialVersionUID = 1573837130692041836L;
 
+	private final Controller m_controller;
 	private final GVTPopupMenu m_popupMenu;
 
 	private ComponentListener m_resizeListener = new ComponentAdapter ()
@@ -49,18 +50,56 @@ public class GVTGraphComponent extends mxGraphComponent
 		}
 	};
 
+	private AdjustmentListener m_scrollListener = new AdjustmentListener ()
+	{
+		private int m_lastValue;
+
+		@Override
+		public void adjustmentValueChanged (AdjustmentEvent e)
+		{
+			// the oldest commits are at the top, so scrolling up to the top
+			// loads the older history.
+			int value = e.getValue ();
+			if (value == e.getAdjustable ().getMinimum () &&
+				m_lastValue > value)
+			{
+				m_controller.extendHistory ();
+			}
+			m_lastValue = value;
+		}
+	};
+
 	private MouseListener m_mouseListener = new MouseAdapter ()
 	{
 	    @Override
 		public void mouseClicked(MouseEvent e)
 	    {
 	    	if (e.getClickCount () == 1 &&
+	    		e.getModifiers () == MouseEvent.BUTTON1_MASK)
+	    	{
+	    		// clicking a collapsed run shows its commits.
+	    		Object cell = getCellAt(e.getX (), e.getY ());
+	    		if (cell instanceof mxCell &&
+	    			graph.getModel ().isVertex (cell))
+	    		{
+	    			Object vertex = new GVTGraphFactory ((GVTGraph)graph).expand (cell);
+	    			if (vertex != null)
+	    				graph.setSelectionCell (vertex);
+	    		}
+	    	}
+	    	else if (e.getClickCount () == 1 &&
 	    		e.getModifiers () == MouseEvent.BUTTON3_MASK)
 	    	{
 	    		Object cell = getCellAt(e.getX (), e.getY ());
-                if (cell instanceof mxCell)
+                if (cell instanceof mxCell &&
+                	graph.getModel ().isVertex (cell))
                 {
-                	if (graph.getModel ().isVertex (cell))
+                	// the commit actions apply to a single commit, so a
+                	// collapsed run is expanded first.
+                	if (new GVTGraphFactory ((GVTGraph)graph).expand (cell) != null)
+                		cell = getCellAt(e.getX (), e.getY ());
+                	if (cell instanceof mxCell &&
+                		graph.getModel ().isVertex (cell))
                 	{
                 		GVTVertex v = (GVTVertex) graph.getModel ().getValue (cell);
         				RelationNode node = ((GVTGraph)graph).getTree ().getNode (v);
@@ -78,7 +117,9 @@ public class GVTGraphComponent extends mxGraphComponent
 	public GVTGraphComponent (Controller controller, GVTGraph graph)
 	{
 		super (graph);
+		m_controller = controller;
 		addComponentListener (m_resizeListener);
+		getVerticalScrollBar ().addAdjustmentListener (m_scrollListener);
 
 		setConnectable (false);
 		setAutoScroll (true);
@@ -146,6 +187,13 @@ public class GVTGraphComponent extends mxGraphComponent
 	{
 		GVTGraph graph = (GVTGraph)this.graph;
 		Object cell = graph.getTree ().getVertex (node);
+		// expand the collapsed run that contains the node.
+		if (cell != null &&
+			graph.getTree ().getRun ((GVTVertex) graph.getModel ().getValue (cell)) != null)
+		{
+			new GVTGraphFactory (graph).expand (cell);
+			cell = graph.getTree ().getVertex (node);
+		}
 		scrollCellToVisible (cell, true);
 
 		// fake selection event
@@ -15,15 +15,22 @@
  */
 package org.yuanheng.jgvt.gui.graph;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.yuanheng.jgvt.Defaults;
 import org.yuanheng.jgvt.Main;
-import org.yuanheng.jgvt.relation.LayoutInfo;
 import org.yuanheng.jgvt.relation.RelationNode;
 import org.yuanheng.jgvt.relation.RelationTree;
 
 import com.mxgraph.canvas.mxGraphics2DCanvas;
+import com.mxgraph.model.mxGeometry;
 import com.mxgraph.model.mxGraphModel;
 import com.mxgraph.util.mxConstants;
 import com.mxgraph.util.mxPoint;
@@ -118,11 +125,28 @@ public class GVTGraphFactory
 		char[] chars = new char[charLen];
 		for (int i = 0; i < charLen; ++i)
 			chars[i] = 'M';
-		String str = new String (chars);
+		return computeBounds (new String (chars));
+	}
+
+	private static mxRectangle computeBounds (String str)
+	{
 		return mxUtils.getLabelPaintBounds (str, GRAPH_STYLE.getDefaultVertexStyle (), false, new mxPoint (), null, 1.0, false);
 	}
 
-	public void updateGraphModel (RelationTree relTree, int toolTipFlag)
+	public void updateGraphModel (RelationTree relTree)
+	{
+		updateGraphModel (relTree, Main.pref.getCollapseCommits ());
+	}
+
+	/**
+	 * Create the graph model of a tree.
+	 *
+	 * @param	relTree
+	 * 			the relation tree
+	 * @param	collapse
+	 * 			true to show the linear runs of commits as single vertices.
+	 */
+	public void updateGraphModel (RelationTree relTree, boolean collapse)
 	{
 		GVTTree tree = new GVTTree ();
 		m_graph.setTree (tree);
@@ -133,49 +157,403 @@ public class GVTGraphFactory
 		model.beginUpdate ();
 		model.clear ();
 
-		Object parent = m_graph.getDefaultParent ();
-
 		// 1st create all the vertices
+		if (collapse)
+		{
+			for (RelationNode[] run : getRuns (relTree.getNodes (), null))
+				insertVertex (tree, run, vertexBound);
+		}
 		for (RelationNode node : relTree.getNodes ())
 		{
-			GVTVertex v = tree.createVertex (node, toolTipFlag);
-			LayoutInfo layoutInfo = node.getLayoutInfo ();
-			double x = layoutInfo.getX () * Main.pref.getBranchSpacing () + Main.pref.getStartX ();
-			double y = layoutInfo.getY () * Main.pref.getChildSpacing () + Main.pref.getStartY ();
-
-			Object vertex = m_graph.insertVertex (parent, null, v, x, y, vertexBound.getWidth (), vertexBound.getHeight ());
-			tree.link (v.getId (), vertex);
+			if (tree.getVertexId (node) == null)
+				insertVertex (tree, node, vertexBound);
 		}
 
-		// 2nd add edges
+		// 2nd add edges.  The nodes inside a run have no vertices, and
+		// their edges are inside the run.
 		int numVertices = tree.size ();
 		for (int id = 0; id < numVertices; ++id)
 		{
-			RelationNode node = tree.getNode (id);
-			Object vertex = tree.getVertex (id);
+			insertParentEdges (tree, tree.getNode (id));
+		}
+
+		if (Main.pref.getCompactRows ())
+			compactRows (tree, vertexBound);
+
+		model.endUpdate ();
+	}
+
+	/**
+	 * Replace the vertex of a collapsed run with the vertices of its
+	 * commits.
+	 *
+	 * @param	cell
+	 * 			the vertex of a collapsed run.
+	 * @return	the vertex of the first commit of the run, or null if the
+	 * 			cell is not a collapsed run.
+	 */
+	public Object expand (Object cell)
+	{
+		GVTTree tree = m_graph.getTree ();
+		mxGraphModel model = (mxGraphModel) m_graph.getModel ();
+		GVTVertex v = (GVTVertex) model.getValue (cell);
+		RelationNode[] run = (tree == null || v == null) ? null : tree.removeRun (v);
+		if (run == null)
+			return null;
+
+		mxRectangle vertexBound = computeBounds (Main.pref.getAbbrevLength ());
+
+		model.beginUpdate ();
+		try
+		{
+			m_graph.removeCells (new Object[] { cell });
+			for (RelationNode node : run)
+			{
+				m_graph.setExpanded (node);
+				insertVertex (tree, node, vertexBound);
+			}
+			for (RelationNode node : run)
+			{
+				insertParentEdges (tree, node);
+			}
+			RelationNode last = run[run.length - 1];
+			for (RelationNode child : last.getChildren ())
+			{
+				m_graph.insertEdge (m_graph.getDefaultParent (), null, null, tree.getVertex (last), tree.getVertex (child), getEdgeStyle (child, last));
+			}
+			if (tree.getRows () != null)
+				compactRows (tree, vertexBound);
+		}
+		finally
+		{
+			model.endUpdate ();
+		}
+		return tree.getVertex (run[0]);
+	}
+
+	private void insertVertex (GVTTree tree, RelationNode node, mxRectangle vertexBound)
+	{
+		GVTVertex v = tree.createVertex (node);
+		double x = node.getX () * Main.pref.getBranchSpacing () + Main.pref.getStartX ();
+		double y = node.getY () * Main.pref.getChildSpacing () + Main.pref.getStartY ();
+
+		Object vertex = m_graph.insertVertex (m_graph.getDefaultParent (), null, v, x, y, vertexBound.getWidth (), vertexBound.getHeight ());
+		tree.link (v.getId (), vertex);
+	}
+
+	/**
+	 * The vertex of a run spans the rows of its commits, and is wide enough
+	 * for the number of commits.
+	 */
+	private void insertVertex (GVTTree tree, RelationNode[] run, mxRectangle vertexBound)
+	{
+		RelationNode first = run[0];
+		RelationNode last = run[run.length - 1];
+		GVTVertex v = tree.createVertex (run);
+		double x = first.getX () * Main.pref.getBranchSpacing () + Main.pref.getStartX ();
+		double y = first.getY () * Main.pref.getChildSpacing () + Main.pref.getStartY ();
+		double width = Math.max (vertexBound.getWidth (), computeBounds (v.toString ()).getWidth ());
+		double height = (last.getY () - first.getY ()) * Main.pref.getChildSpacing () + vertexBound.getHeight ();
+
+		Object vertex = m_graph.insertVertex (m_graph.getDefaultParent (), null, v, x, y, width, height);
+		tree.link (v.getId (), vertex);
+	}
+
+	private void insertParentEdges (GVTTree tree, RelationNode node)
+	{
+		Object parent = m_graph.getDefaultParent ();
+		Object vertex = tree.getVertex (node);
+		for (RelationNode parentNode : node.getParents ())
+		{
+			Object parentVertex = tree.getVertex (parentNode);
+			m_graph.insertEdge (parent, null, null, parentVertex, vertex, getEdgeStyle (node, parentNode));
+		}
+	}
 
-			for (RelationNode parentNode : node.getParents ())
+	/**
+	 * Find the runs of commits to be collapsed.  A run is a chain of
+	 * commits in a branch that each have one parent and one child, and
+	 * have no tags or branches.
+	 *
+	 * @param	nodes
+	 * 			the nodes to search
+	 * @param	scope
+	 * 			the nodes that can be in the runs.  null for all the nodes.
+	 */
+	private List<RelationNode[]> getRuns (Collection<RelationNode> nodes, Set<RelationNode> scope)
+	{
+		List<RelationNode[]> runs = new ArrayList<RelationNode[]> ();
+		List<RelationNode> run = new ArrayList<RelationNode> ();
+		for (RelationNode node : nodes)
+		{
+			// start from the first commit of each run.
+			if (!isCollapsible (node) ||
+				isRunLink (node.getParent (0), node, scope))
 			{
-				int parentId = tree.getVertexId (parentNode);
-				Object parentVertex = tree.getVertex (parentId);
+				continue;
+			}
+			RelationNode n = node;
+			run.add (n);
+			while (isRunLink (n, n.getChild (0), scope))
+			{
+				n = n.getChild (0);
+				run.add (n);
+			}
+			if (run.size () >= Defaults.COLLAPSE_MIN_COMMITS)
+				runs.add (run.toArray (new RelationNode[run.size ()]));
+			run.clear ();
+		}
+		return runs;
+	}
+
+	private boolean isCollapsible (RelationNode node)
+	{
+		return node.getParentCount () == 1 &&
+			node.getChildCount () == 1 &&
+			node.getTags ().length == 0 &&
+			node.getBranches ().length == 0 &&
+			!m_graph.isExpanded (node);
+	}
 
-				String edgeStyle = COMMIT_STYLE;
-				switch (node.getRelation (parentNode))
+	private boolean isRunLink (RelationNode parent, RelationNode child, Set<RelationNode> scope)
+	{
+		if (scope != null &&
+			(!scope.contains (parent) || !scope.contains (child)))
+			return false;
+		return isCollapsible (parent) &&
+			isCollapsible (child) &&
+			parent.getRelationBranch () == child.getRelationBranch ();
+	}
+
+	/**
+	 * Move the vertices of the nodes laid out again, and update the styles
+	 * of their edges, instead of creating the graph model again.  The
+	 * collapsed runs with the nodes laid out again are found again, since
+	 * the branches of their nodes have changed.  The nodes added to the
+	 * tree get new vertices.
+	 *
+	 * @param	relTree
+	 * 			the relation tree of the graph, or an updated copy of it.
+	 * @param	nodes
+	 * 			the nodes laid out again, including the new nodes.
+	 */
+	public void updateGraphModel (RelationTree relTree, Collection<RelationNode> nodes)
+	{
+		GVTTree tree = m_graph.getTree ();
+		if (tree == null || !tree.setRelationTree (relTree))
+		{
+			updateGraphModel (relTree);
+			return;
+		}
+		HashSet<RelationNode> rebuilt = new HashSet<RelationNode> ();
+		for (RelationNode node : nodes)
+		{
+			if (tree.getVertexId (node) == null)
+				rebuilt.add (node);
+		}
+		if (tree.getNodeCount () + rebuilt.size () != relTree.size ())
+		{
+			updateGraphModel (relTree);
+			return;
+		}
+
+		// the nodes of the old and the new runs get new vertices.  The runs
+		// next to the nodes laid out again can be extended by them.
+		HashSet<RelationNode> scope = new HashSet<RelationNode> (nodes);
+		for (RelationNode node : nodes)
+		{
+			addRun (tree, node, scope, rebuilt);
+			for (RelationNode parent : node.getParents ())
+				addRun (tree, parent, scope, rebuilt);
+			for (RelationNode child : node.getChildren ())
+				addRun (tree, child, scope, rebuilt);
+		}
+		List<RelationNode[]> runs = Main.pref.getCollapseCommits () ? getRuns (scope, scope) : Collections.<RelationNode[]>emptyList ();
+		for (RelationNode[] run : runs)
+		{
+			Collections.addAll (rebuilt, run);
+		}
+
+		mxRectangle vertexBound = computeBounds (Main.pref.getAbbrevLength ());
+
+		mxGraphModel model = (mxGraphModel) m_graph.getModel ();
+		model.beginUpdate ();
+		try
+		{
+			if (!rebuilt.isEmpty ())
+			{
+				ArrayList<Object> cells = new ArrayList<Object> ();
+				for (RelationNode node : rebuilt)
+				{
+					Object vertex = tree.removeVertex (node);
+					if (vertex != null)
+						cells.add (vertex);
+				}
+				m_graph.removeCells (cells.toArray ());
+
+				for (RelationNode[] run : runs)
 				{
-					case CHILD:
-						edgeStyle = COMMIT_STYLE;
-						break;
-					case MERGE:
-						edgeStyle = MERGE_STYLE;
-						break;
-					case BRANCH:
-						edgeStyle = BRANCH_STYLE;
-						break;
+					insertVertex (tree, run, vertexBound);
+				}
+				for (RelationNode node : rebuilt)
+				{
+					if (tree.getVertexId (node) == null)
+						insertVertex (tree, node, vertexBound);
+				}
+
+				// the edges inside a run are not shown, and the edges
+				// between the new vertices are added once.
+				for (RelationNode node : rebuilt)
+				{
+					RelationNode[] run = tree.getRun (node);
+					if (run == null || run[0] == node)
+						insertParentEdges (tree, node);
+					if (run != null && run[run.length - 1] != node)
+						continue;
+					for (RelationNode child : node.getChildren ())
+					{
+						if (!rebuilt.contains (child))
+							m_graph.insertEdge (m_graph.getDefaultParent (), null, null, tree.getVertex (node), tree.getVertex (child), getEdgeStyle (child, node));
+					}
+				}
+			}
+
+			for (RelationNode node : nodes)
+			{
+				if (rebuilt.contains (node))
+					continue;
+				Object vertex = tree.getVertex (node);
+				mxGeometry geometry = (mxGeometry) model.getGeometry (vertex).clone ();
+				geometry.setX (node.getX () * Main.pref.getBranchSpacing () + Main.pref.getStartX ());
+				geometry.setY (node.getY () * Main.pref.getChildSpacing () + Main.pref.getStartY ());
+				model.setGeometry (vertex, geometry);
+
+				for (RelationNode parentNode : node.getParents ())
+				{
+					// a truncated node can gain an edge to a parent that
+					// was already in the tree.
+					Object parentVertex = tree.getVertex (parentNode);
+					String style = getEdgeStyle (node, parentNode);
+					if (!updateEdgeStyle (model, parentVertex, vertex, style) && parentVertex != vertex)
+						m_graph.insertEdge (m_graph.getDefaultParent (), null, null, parentVertex, vertex, style);
+				}
+				for (int i = 0; i < node.getChildCount (); ++i)
+				{
+					RelationNode child = node.getChild (i);
+					updateEdgeStyle (model, vertex, tree.getVertex (child), getEdgeStyle (child, node));
 				}
-				m_graph.insertEdge (parent, null, null, parentVertex, vertex, edgeStyle);
 			}
+			if (tree.getRows () != null)
+				compactRows (tree, vertexBound);
+		}
+		finally
+		{
+			model.endUpdate ();
 		}
+	}
 
-		model.endUpdate ();
+	/**
+	 * Move the vertices up so that the rows of the layout are shared when
+	 * no vertex follows another one in between.  A long collapsed run thus
+	 * takes the rows of the runs in the other branches instead of all the
+	 * rows of its commits.  The rows are kept apart where a branch follows
+	 * another branch in the same column, and where an edge between two
+	 * vertices goes down, so that no vertex overlaps another one and no
+	 * edge becomes flat.
+	 */
+	private void compactRows (GVTTree tree, mxRectangle vertexBound)
+	{
+		Collection<RelationNode> nodes = tree.getNodes ();
+		int maxY = 0;
+		HashSet<Long> lastCells = new HashSet<Long> ();
+		for (RelationNode node : nodes)
+		{
+			maxY = Math.max (maxY, node.getY ());
+			if (node.getRelationBranch ().getLast () == node)
+				lastCells.add (getCell (node.getX (), node.getY ()));
+		}
+
+		boolean[] breaks = new boolean[maxY + 1];
+		for (RelationNode node : nodes)
+		{
+			Integer id = tree.getVertexId (node);
+			for (RelationNode parent : node.getParents ())
+			{
+				// the edges inside a run are not shown.
+				if (parent.getY () != node.getY () &&
+					!id.equals (tree.getVertexId (parent)))
+					breaks[Math.max (parent.getY (), node.getY ()) - 1] = true;
+			}
+			if (node.getY () > 0 &&
+				node.getRelationBranch ().getFirst () == node &&
+				lastCells.contains (getCell (node.getX (), node.getY () - 1)))
+				breaks[node.getY () - 1] = true;
+		}
+
+		int[] rows = new int[maxY + 1];
+		for (int y = 1; y <= maxY; ++y)
+			rows[y] = rows[y - 1] + (breaks[y - 1] ? 1 : 0);
+		tree.setRows (rows);
+
+		mxGraphModel model = (mxGraphModel) m_graph.getModel ();
+		for (RelationNode node : nodes)
+		{
+			RelationNode[] run = tree.getRun (node);
+			if (run != null && run[0] != node)
+				continue;
+			RelationNode last = (run == null) ? node : run[run.length - 1];
+			Object vertex = tree.getVertex (node);
+			double y = rows[node.getY ()] * Main.pref.getChildSpacing () + Main.pref.getStartY ();
+			double height = (rows[last.getY ()] - rows[node.getY ()]) * Main.pref.getChildSpacing () + vertexBound.getHeight ();
+			mxGeometry geometry = model.getGeometry (vertex);
+			if (geometry.getY () == y && geometry.getHeight () == height)
+				continue;
+			geometry = (mxGeometry) geometry.clone ();
+			geometry.setY (y);
+			geometry.setHeight (height);
+			model.setGeometry (vertex, geometry);
+		}
+	}
+
+	private static long getCell (int x, int y)
+	{
+		return ((long) x << 32) | y;
+	}
+
+	private static void addRun (GVTTree tree, RelationNode node, Set<RelationNode> scope, Set<RelationNode> rebuilt)
+	{
+		RelationNode[] run = tree.getRun (node);
+		if (run != null && rebuilt.add (run[0]))
+		{
+			Collections.addAll (scope, run);
+			Collections.addAll (rebuilt, run);
+		}
+	}
+
+	/**
+	 * @return	false if there is no edge between the vertices.
+	 */
+	private static boolean updateEdgeStyle (mxGraphModel model, Object parentVertex, Object vertex, String edgeStyle)
+	{
+		Object[] edges = mxGraphModel.getEdgesBetween (model, parentVertex, vertex, true);
+		for (Object edge : edges)
+		{
+			if (!edgeStyle.equals (model.getStyle (edge)))
+				model.setStyle (edge, edgeStyle);
+		}
+		return edges.length > 0;
+	}
+
+	private static String getEdgeStyle (RelationNode node, RelationNode parentNode)
+	{
+		switch (node.getRelation (parentNode))
+		{
+			case MERGE:
+				return MERGE_STYLE;
+			case BRANCH:
+				return BRANCH_STYLE;
+			default:
+				return COMMIT_STYLE;
+		}
 	}
 }
@@ -15,10 +15,13 @@
  */
 package org.yuanheng.jgvt.gui.graph;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.yuanheng.jgvt.CommitUtils;
 import org.yuanheng.jgvt.relation.RelationNode;
+import org.yuanheng.jgvt.relation.RelationTree;
 
 /**
  * Since there is a possibility that GVTVertex could be re-created.  We want
@@ -32,28 +35,122 @@ public class GVTTree
 	private final HashMap<Integer, RelationNode> m_nodeMap;
 	private final HashMap<RelationNode, Integer> m_reverseMap;
 	private final HashMap<Integer, Object> m_vertexMap;
+	private final HashMap<Integer, RelationNode[]> m_runMap;
+	private int m_nextId;
+	private int[] m_rows;
 
 	public GVTTree ()
 	{
 		m_nodeMap = new HashMap<Integer, RelationNode> ();
 		m_reverseMap = new HashMap<RelationNode, Integer> ();
 		m_vertexMap = new HashMap<Integer, Object> ();
+		m_runMap = new HashMap<Integer, RelationNode[]> ();
 	}
 
-	public GVTVertex createVertex (RelationNode node, int toolTipFlag)
+	public GVTVertex createVertex (RelationNode node)
 	{
-		int id = m_nodeMap.size ();
+		int id = m_nextId++;
 		GVTVertex v = new GVTVertex (id);
 
 		m_nodeMap.put (id, node);
 		m_reverseMap.put (node, id);
 
 		v.setName (CommitUtils.getName (node));
-		v.setToolTip (node.getTooltip (toolTipFlag));
 
 		return v;
 	}
 
+	/**
+	 * Create a vertex for a collapsed run of commits.  All the nodes of the
+	 * run map to the vertex, and the vertex maps to the first node.
+	 *
+	 * @param	run
+	 * 			the nodes of the run, from the parent to the child.
+	 */
+	public GVTVertex createVertex (RelationNode[] run)
+	{
+		int id = m_nextId++;
+		GVTVertex v = new GVTVertex (id);
+
+		m_nodeMap.put (id, run[0]);
+		for (RelationNode node : run)
+			m_reverseMap.put (node, id);
+		m_runMap.put (id, run);
+
+		v.setName (run.length + " commits");
+
+		return v;
+	}
+
+	/**
+	 * @return	the nodes of a collapsed run, or null if the vertex is not
+	 * 			a collapsed run.
+	 */
+	public RelationNode[] getRun (GVTVertex v)
+	{
+		return m_runMap.get (v.getId ());
+	}
+
+	/**
+	 * Remove the vertex of a collapsed run so that its nodes can have
+	 * their own vertices.
+	 *
+	 * @return	the nodes of the run, or null if the vertex is not a
+	 * 			collapsed run.
+	 */
+	public RelationNode[] removeRun (GVTVertex v)
+	{
+		RelationNode[] run = m_runMap.remove (v.getId ());
+		if (run != null)
+		{
+			m_nodeMap.remove (v.getId ());
+			m_vertexMap.remove (v.getId ());
+			for (RelationNode node : run)
+				m_reverseMap.remove (node);
+		}
+		return run;
+	}
+
+	/**
+	 * @return	the nodes of the collapsed run that contains a node, or null
+	 * 			if the node is not in a collapsed run.
+	 */
+	public RelationNode[] getRun (RelationNode node)
+	{
+		Integer id = m_reverseMap.get (node);
+		return id == null ? null : m_runMap.get (id);
+	}
+
+	/**
+	 * Remove the vertex of a node, or the vertex of the collapsed run that
+	 * contains the node.
+	 *
+	 * @return	the vertex removed.  null if the node has no vertex.
+	 */
+	public Object removeVertex (RelationNode node)
+	{
+		Integer id = m_reverseMap.get (node);
+		if (id == null)
+			return null;
+		RelationNode[] run = m_runMap.remove (id);
+		if (run != null)
+		{
+			for (RelationNode n : run)
+				m_reverseMap.remove (n);
+		}
+		else
+		{
+			m_reverseMap.remove (node);
+		}
+		m_nodeMap.remove (id);
+		return m_vertexMap.remove (id);
+	}
+
+	public boolean hasRuns ()
+	{
+		return !m_runMap.isEmpty ();
+	}
+
 	public RelationNode getNode (GVTVertex v)
 	{
 		return m_nodeMap.get (v.getId ());
@@ -84,8 +181,75 @@ public class GVTTree
 		return getVertex (getVertexId (node));
 	}
 
+	/**
+	 * Map the vertices to the nodes of another relation tree with the same
+	 * commits, such as a copy of the tree updated in the background.
+	 *
+	 * @param	relTree
+	 * 			the relation tree
+	 * @return	false if a commit with a vertex is not in the relation tree.
+	 * 			The vertices are not changed in that case.
+	 */
+	public boolean setRelationTree (RelationTree relTree)
+	{
+		HashMap<RelationNode, Integer> reverseMap = new HashMap<RelationNode, Integer> ();
+		for (Map.Entry<RelationNode, Integer> entry : m_reverseMap.entrySet ())
+		{
+			RelationNode node = relTree.getNode (entry.getKey ().getId ());
+			if (node == null)
+				return false;
+			if (node == entry.getKey ())
+				return true;
+			reverseMap.put (node, entry.getValue ());
+		}
+		m_reverseMap.clear ();
+		m_reverseMap.putAll (reverseMap);
+		for (Map.Entry<Integer, RelationNode> entry : m_nodeMap.entrySet ())
+		{
+			entry.setValue (relTree.getNode (entry.getValue ().getId ()));
+		}
+		for (RelationNode[] run : m_runMap.values ())
+		{
+			for (int i = 0; i < run.length; ++i)
+				run[i] = relTree.getNode (run[i].getId ());
+		}
+		return true;
+	}
+
+	/**
+	 * @return	the nodes with vertices, including the nodes in the
+	 * 			collapsed runs.
+	 */
+	public Collection<RelationNode> getNodes ()
+	{
+		return m_reverseMap.keySet ();
+	}
+
+	/**
+	 * @return	the row of the graph of each row of the layout, or null if
+	 * 			the rows are not compacted.
+	 */
+	public int[] getRows ()
+	{
+		return m_rows;
+	}
+
+	public void setRows (int[] rows)
+	{
+		m_rows = rows;
+	}
+
 	public int size ()
 	{
 		return m_nodeMap.size ();
 	}
+
+	/**
+	 * @return	the number of nodes with vertices, including the nodes in
+	 * 			the collapsed runs.
+	 */
+	public int getNodeCount ()
+	{
+		return m_reverseMap.size ();
+	}
 }
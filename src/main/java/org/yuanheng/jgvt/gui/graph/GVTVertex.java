@@ -30,7 +30,6 @@ public class GVTVertex implements Serializable
 
 	private final int m_id;
 	private String m_name;
-	private String m_toolTip;
 
 	public GVTVertex (int id)
 	{
@@ -47,19 +46,9 @@ public class GVTVertex implements Serializable
 		m_name = name;
 	}
 
-	public void setToolTip (String toolTip)
-	{
-		m_toolTip = toolTip;
-	}
-
 	@Override
 	public String toString ()
 	{
 		return m_name;
 	}
-
-	public String getToolTip ()
-	{
-		return m_toolTip;
-	}
 }
@@ -16,10 +16,13 @@
 package org.yuanheng.jgvt.relation;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.yuanheng.jgvt.CommitUtils;
 import org.yuanheng.jgvt.Debug;
 import org.yuanheng.jgvt.Main;
+import org.yuanheng.jgvt.relation.discovery.BranchWorklist;
 import org.yuanheng.jgvt.relation.discovery.DiscoveryAlgorithm;
 import org.yuanheng.jgvt.relation.discovery.DiscoveryAlgorithmManager;
 import org.yuanheng.jgvt.relation.discovery.DiscoveryUtils;
@@ -51,16 +54,51 @@ public class BranchDiscoveryAlgorithm
 		if (tree.size () == 0)
 			return;
 
+		discoverBranches (tree, editList);
+		mergeBranches (tree, log);
+	}
+
+	/**
+	 * Discover the initial branches of all the nodes in the tree, without
+	 * merging them.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	editList
+	 * 			a list of nodes which should be part of the parent branch.
+	 */
+	public static void discoverBranches (RelationTree tree, RelationEditList editList)
+	{
+		discoverBranches (tree.getStartNode (), tree.getNodes (), editList);
+	}
+
+	/**
+	 * Discover the initial branches of the nodes.
+	 *
+	 * @param	startNode
+	 * 			the last node of the main branch.  null if the nodes do not
+	 * 			include it.
+	 * @param	nodes
+	 * 			the nodes.  They must include all their parents and children.
+	 * @param	editList
+	 * 			a list of nodes which should be part of the parent branch.
+	 */
+	private static void discoverBranches (RelationNode startNode, Collection<RelationNode> nodes, RelationEditList editList)
+	{
 		// See if we can trace from the main branch and collect branches.
-		discoverInitialBranches (tree.getStartNode (), true, editList);
+		if (startNode != null)
+			discoverInitialBranches (startNode, true, editList);
 
 		// Now find remaining nodes with multiple parents.
 		ArrayList<RelationNode> multiParentNodes = new ArrayList<RelationNode> ();
-		for (RelationNode node : tree.getNodes ())
+		ArrayList<RelationNode> leaves = new ArrayList<RelationNode> ();
+		for (RelationNode node : nodes)
 		{
+			if (node.getChildCount () == 0)
+				leaves.add (node);
 			if (node.isVisited ())
 				continue;
-			if (node.getParents ().length > 1)
+			if (node.getParentCount () > 1)
 			{
 				multiParentNodes.add (node);
 			}
@@ -74,7 +112,6 @@ public class BranchDiscoveryAlgorithm
 		}
 
 		// find any remaining branches starting from leaves.
-		List <RelationNode> leaves = tree.getLeaves ();
 		Collections.sort (leaves, RelationNode.sortByDateComparator);
 		for (RelationNode node : leaves)
 		{
@@ -82,8 +119,295 @@ public class BranchDiscoveryAlgorithm
 				continue;
 			discoverInitialBranches (node, false, editList);
 		}
+	}
 
-		mergeBranches (tree, log);
+	/**
+	 * Split the nodes of a tree into the weakly connected components of the
+	 * commit graph, such as an orphan gh-pages history that shares no
+	 * commits with the rest.  No branch crosses two components, so the
+	 * branches of the components can be discovered independently.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	minNodes
+	 * 			the number of the nodes of the second largest component
+	 * 			for the split to be worthwhile.
+	 * @return	the components, with the one containing the start node
+	 * 			first.  null if the tree is not worth splitting.
+	 */
+	public static List<List<RelationNode>> partition (RelationTree tree, int minNodes)
+	{
+		if (tree.size () < 2 * Math.max (minNodes, 1))
+			return null;
+
+		// every node reaches a root through its parents, so a tree with a
+		// single root is connected.
+		int size = 0;
+		int rootCount = 0;
+		for (RelationNode node : tree.getNodes ())
+		{
+			size = Math.max (size, node.getIndex () + 1);
+			if (node.getParentCount () == 0)
+				++rootCount;
+		}
+		if (rootCount < 2)
+			return null;
+
+		// union-find over the parent edges
+		int[] roots = new int[size];
+		for (int i = 0; i < size; ++i)
+		{
+			roots[i] = i;
+		}
+		for (RelationNode node : tree.getNodes ())
+		{
+			for (int i = 0; i < node.getParentCount (); ++i)
+			{
+				int root1 = findRoot (roots, node.getIndex ());
+				int root2 = findRoot (roots, node.getParent (i).getIndex ());
+				if (root1 != root2)
+					roots[Math.max (root1, root2)] = Math.min (root1, root2);
+			}
+		}
+
+		// count the nodes of each component, and check the second largest.
+		int[] counts = new int[size];
+		int largest = 0;
+		int secondLargest = 0;
+		for (RelationNode node : tree.getNodes ())
+		{
+			++counts[findRoot (roots, node.getIndex ())];
+		}
+		for (int count : counts)
+		{
+			if (count > largest)
+			{
+				secondLargest = largest;
+				largest = count;
+			}
+			else if (count > secondLargest)
+			{
+				secondLargest = count;
+			}
+		}
+		if (secondLargest == 0 || secondLargest < minNodes)
+			return null;
+
+		// list the components in the order of their first nodes.
+		int mainRoot = findRoot (roots, tree.getStartNode ().getIndex ());
+		ArrayList<List<RelationNode>> components = new ArrayList<List<RelationNode>> ();
+		components.add (new ArrayList<RelationNode> (counts[mainRoot]));
+		int[] componentIndexes = new int[size];
+		for (RelationNode node : tree.getNodes ())
+		{
+			int root = findRoot (roots, node.getIndex ());
+			if (componentIndexes[root] == 0 && root != mainRoot)
+			{
+				componentIndexes[root] = components.size ();
+				components.add (new ArrayList<RelationNode> (counts[root]));
+			}
+			components.get (componentIndexes[root]).add (node);
+		}
+		return components;
+	}
+
+	private static int findRoot (int[] roots, int index)
+	{
+		while (roots[index] != index)
+		{
+			// path halving
+			roots[index] = roots[roots[index]];
+			index = roots[index];
+		}
+		return index;
+	}
+
+	/**
+	 * Infer the branches of the components of a tree in parallel.
+	 * <p>
+	 * Each component is discovered and merged on its own, with its own
+	 * branch log and its own sequence of branch ids, and the logs are
+	 * combined in the order of the components.  Since the order of the
+	 * branches searched depends on their ids, the same components always
+	 * give the same branches regardless of the thread scheduling.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	components
+	 * 			the components returned by {@link #partition(RelationTree, int)}.
+	 * @param	editList
+	 * 			a list of nodes which should be part of the parent branch.
+	 * @param	log
+	 * 			the branch discovery log
+	 */
+	public static void inferBranches (RelationTree tree, List<List<RelationNode>> components, RelationEditList editList, BranchLog log)
+	{
+		RelationNode startNode = tree.getStartNode ();
+		// build the children index shared by the nodes before the threads
+		// read it.
+		startNode.getChildCount ();
+
+		int firstId = tree.getNextBranchId ();
+		int step = components.size ();
+		BranchLog[] logs = new BranchLog[step];
+		int[] nextIds = new int[step];
+
+		ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>> ();
+		for (int i = 0; i < step; ++i)
+		{
+			final int index = i;
+			tasks.add (ForkJoinPool.commonPool ().submit (() ->
+			{
+				List<RelationNode> nodes = components.get (index);
+				logs[index] = new BranchLog ();
+				RelationBranch.beginIdSequence (firstId + index, step);
+				try
+				{
+					discoverBranches (index == 0 ? startNode : null, nodes, editList);
+					searchMerges (nodes, logs[index], null);
+				}
+				finally
+				{
+					nextIds[index] = RelationBranch.endIdSequence ();
+				}
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks)
+		{
+			task.join ();
+		}
+
+		for (int i = 0; i < step; ++i)
+		{
+			tree.reserveBranchIds (nextIds[i]);
+			log.addAll (logs[i]);
+		}
+		finishMerges (tree);
+	}
+
+	/**
+	 * Infer branches for the nodes newly added to a tree whose branches
+	 * were already inferred.  Only the new branches and their neighbors
+	 * are searched for merges.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	newNodes
+	 * 			the new nodes
+	 * @param	editList
+	 * 			a list of nodes which should be part of the parent branch.
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 */
+	public static void inferBranches (RelationTree tree, List<RelationNode> newNodes, RelationEditList editList, BranchLog log, BuildStatistics stats)
+	{
+		// if the main branch moved forward, extend it.
+		RelationNode startNode = tree.getStartNode ();
+		if (startNode.getRelationBranch () == null)
+		{
+			discoverInitialBranches (startNode, true, editList);
+
+			RelationBranch mainBranch = startNode.getRelationBranch ();
+			RelationNode firstNode = mainBranch.getFirst ();
+			if (firstNode.getParentCount () > 0)
+			{
+				RelationNode parentNode = firstNode.getParent (0);
+				if (parentNode.getRelationBranch () != mainBranch &&
+					DiscoveryUtils.isLastInBranch (parentNode))
+				{
+					mainBranch.mergeParent (parentNode.getRelationBranch ());
+				}
+			}
+		}
+
+		ArrayList<RelationNode> multiParentNodes = new ArrayList<RelationNode> ();
+		ArrayList<RelationNode> leaves = new ArrayList<RelationNode> ();
+		for (RelationNode node : newNodes)
+		{
+			if (node.getParentCount () > 1)
+				multiParentNodes.add (node);
+			if (node.getChildCount () == 0)
+				leaves.add (node);
+		}
+		Collections.sort (multiParentNodes, RelationNode.sortByDateComparator);
+		for (RelationNode node : multiParentNodes)
+		{
+			if (node.isVisited ())
+				continue;
+			discoverInitialBranches (node, false, editList);
+		}
+		Collections.sort (leaves, RelationNode.sortByDateComparator);
+		for (RelationNode node : leaves)
+		{
+			if (node.isVisited ())
+				continue;
+			discoverInitialBranches (node, false, editList);
+		}
+
+		HashSet<RelationBranch> branchSet = getBranchSet (newNodes);
+		expandSearch (branchSet);
+
+		mergeBranches (tree, branchSet, log, stats);
+	}
+
+	/**
+	 * Infer branches for the older nodes added when the history window of a
+	 * tree is extended.  The main branch is extended toward the root, and
+	 * only the new branches and the branches of the formerly truncated
+	 * nodes are searched for merges.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	newNodes
+	 * 			the new nodes
+	 * @param	editList
+	 * 			a list of nodes which should be part of the parent branch.
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 */
+	public static void extendBranches (RelationTree tree, List<RelationNode> newNodes, RelationEditList editList, BranchLog log, BuildStatistics stats)
+	{
+		// extend the main branch toward the root.
+		RelationBranch mainBranch = tree.getStartNode ().getRelationBranch ();
+		RelationNode firstNode = mainBranch.getFirst ();
+		if (firstNode.getParentCount () > 0 &&
+			firstNode.getParent (0).getRelationBranch () == null)
+		{
+			RelationNode parentNode = firstNode.getParent (0);
+			discoverInitialBranches (parentNode, true, editList);
+			if (DiscoveryUtils.isLastInBranch (parentNode))
+			{
+				parentNode.setNthChild (firstNode, 0);
+				mainBranch.mergeParent (parentNode.getRelationBranch ());
+			}
+		}
+
+		// discover the remaining branches from their newest nodes.
+		ArrayList<RelationNode> sortedNodes = new ArrayList<RelationNode> (newNodes);
+		Collections.sort (sortedNodes, Collections.reverseOrder (RelationNode.sortByDateComparator));
+		for (RelationNode node : sortedNodes)
+		{
+			if (node.getRelationBranch () == null)
+				discoverInitialBranches (node, false, editList);
+		}
+
+		// the formerly truncated nodes are the children of the new nodes.
+		ArrayList<RelationNode> nodes = new ArrayList<RelationNode> (newNodes);
+		for (RelationNode node : newNodes)
+		{
+			for (int i = 0; i < node.getChildCount (); ++i)
+			{
+				nodes.add (node.getChild (i));
+			}
+		}
+		HashSet<RelationBranch> branchSet = getBranchSet (nodes);
+		expandSearch (branchSet);
+
+		mergeBranches (tree, branchSet, log, stats);
 	}
 
 	/**
@@ -109,19 +433,18 @@ public class BranchDiscoveryAlgorithm
 		for (;;)
 		{
 			stack.add (node);
-			RelationNode[] parents = node.getParents ();
-			if (parents.length > 0)
+			if (node.getParentCount () > 0)
 			{
-				int joinParent = editList.getJoinParent (node.getCommit ());
+				int joinParent = editList.getJoinParent (node.getId ());
 				if (joinParent >= 0)
 				{
-					editList.remove (node.getCommit ());
+					editList.remove (node.getId ());
 					if (joinParent == 1)
 					{
 						node.swapParentOrder ();
 					}
 
-					RelationNode parentNode = parents[0];
+					RelationNode parentNode = node.getParent (0);
 					if (parentNode.getRelationBranch () != null)
 					{
 						if (DiscoveryUtils.isLastInBranch (parentNode))
@@ -144,14 +467,14 @@ public class BranchDiscoveryAlgorithm
 				}
 				else
 				{
-					RelationNode parentNode = parents[0];
+					RelationNode parentNode = node.getParent (0);
 					if (parentNode.getRelationBranch () != null)
 					{
 						break;
 					}
 					if (!reachRoot &&
-						(parents.length > 1 ||
-						 parentNode.getChildren ().length > 1))
+						(node.getParentCount () > 1 ||
+						 parentNode.getChildCount () > 1))
 					{
 						break;
 					}
@@ -182,16 +505,16 @@ public class BranchDiscoveryAlgorithm
 			}
 			node.visit ();
 
-			int joinParent = editList.getJoinParent (node.getCommit ());
+			int joinParent = editList.getJoinParent (node.getId ());
 			if (joinParent >= 0 &&
-				node.getParents ().length > joinParent)
+				node.getParentCount () > joinParent)
 			{
-				editList.remove (node.getCommit ());
+				editList.remove (node.getId ());
 				if (joinParent == 1)
 				{
 					node.swapParentOrder ();
 				}
-				RelationNode parentNode = node.getParents ()[0];
+				RelationNode parentNode = node.getParent (0);
 
 				if (parentNode.getRelationBranch () != null)
 				{
@@ -205,8 +528,9 @@ public class BranchDiscoveryAlgorithm
 						Debug.println ("Unable to apply edit list: " + CommitUtils.getName (node));
 					}
 
-					for (RelationNode parent : node.getParents ())
+					for (int i = 0; i < node.getParentCount (); ++i)
 					{
+						RelationNode parent = node.getParent (i);
 						RelationBranch parentBranch = parent.getRelationBranch ();
 						if (parentBranch != null)
 						{
@@ -227,17 +551,18 @@ public class BranchDiscoveryAlgorithm
 			else
 			{
 				// scan parents
-				if (node.getParents ().length == 1 &&
-					node.getParents ()[0].getChildren ().length == 1 &&
-					node.getParents ()[0].getRelationBranch () == null)
+				if (node.getParentCount () == 1 &&
+					node.getParent (0).getChildCount () == 1 &&
+					node.getParent (0).getRelationBranch () == null)
 				{
-					branch.add (node.getParents ()[0]);
-					stack.add (node.getParents ()[0]);
+					branch.add (node.getParent (0));
+					stack.add (node.getParent (0));
 				}
 				else
 				{
-					for (RelationNode parent : node.getParents ())
+					for (int i = 0; i < node.getParentCount (); ++i)
 					{
+						RelationNode parent = node.getParent (i);
 						RelationBranch parentBranch = parent.getRelationBranch ();
 						if (parentBranch != null)
 						{
@@ -253,88 +578,174 @@ public class BranchDiscoveryAlgorithm
 
 	public static void mergeBranches (RelationTree tree, BranchLog log)
 	{
-		int iteration = 0;
+		mergeBranches (tree, tree.getNodes (), log, null);
+	}
+
+	/**
+	 * Merge the branches of all the nodes in the tree, and record the time
+	 * of each merge iteration.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 */
+	public static void mergeBranches (RelationTree tree, BranchLog log, BuildStatistics stats)
+	{
+		mergeBranches (tree, tree.getNodes (), log, stats);
+	}
+
+	/**
+	 * Merge branches, starting the search from the branches of the
+	 * specified nodes.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	nodes
+	 * 			the nodes whose branches to start the search with.
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 */
+	private static void mergeBranches (RelationTree tree, Collection<RelationNode> nodes, BranchLog log, BuildStatistics stats)
+	{
+		searchMerges (nodes, log, stats);
+		finishMerges (tree);
+	}
+
+	/**
+	 * Merge branches, starting the search from the specified branches.
+	 *
+	 * @param	tree
+	 * 			relation tree
+	 * @param	branches
+	 * 			the branches to start the search with.
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 */
+	private static void mergeBranches (RelationTree tree, Set<RelationBranch> branches, BranchLog log, BuildStatistics stats)
+	{
+		searchMerges (branches, log, stats);
+		finishMerges (tree);
+	}
+
+	/**
+	 * Repeatedly search for the branches to merge, starting from the
+	 * branches of the specified nodes.
+	 *
+	 * @param	nodes
+	 * 			the nodes whose branches to start the search with.
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 */
+	private static void searchMerges (Collection<RelationNode> nodes, BranchLog log, BuildStatistics stats)
+	{
+		searchMerges (getBranchSet (nodes), log, stats);
+	}
+
+	/**
+	 * Repeatedly search for the branches to merge, first with only the safe
+	 * algorithms, then with both the safe and unsafe algorithms.  The
+	 * unsafe searches start from the current branches of the seed and the
+	 * branches changed by the safe searches, so the nodes are not scanned
+	 * again.
+	 *
+	 * @param	seedBranches
+	 * 			the branches to start the search with.
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 */
+	private static void searchMerges (Set<RelationBranch> seedBranches, BranchLog log, BuildStatistics stats)
+	{
+		HashSet<RelationBranch> changedBranches = new HashSet<RelationBranch> ();
+
+		// first do only safe searches
+		Debug.println ("safe searches only");
+		int iteration = searchMerges (seedBranches, 1, 0, changedBranches, log, stats);
+
+		// then do both safe and unsafe searches
+		HashSet<RelationBranch> branchSet = new HashSet<RelationBranch> ();
+		addCurrentBranches (branchSet, seedBranches);
+		addCurrentBranches (branchSet, changedBranches);
+		Debug.println ("safe + unsafe searches");
+		iteration = searchMerges (branchSet, 2, iteration, null, log, stats);
+
+		log.addIterations (iteration);
+	}
+
+	/**
+	 * Repeatedly search for the branches to merge until no branches are
+	 * changed.  Each iteration searches the branches changed by the
+	 * previous iteration and their neighbors.
+	 *
+	 * @param	seedBranches
+	 * 			the branches to start the search with.
+	 * @param	levels
+	 * 			the number of the algorithm levels to run.
+	 * @param	iteration
+	 * 			the number of the first iteration.
+	 * @param	changedBranches
+	 * 			the set to collect the changed branches.  It can be null.
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	stats
+	 * 			the statistics of the merge iterations.  It can be null.
+	 * @return	the number of the next iteration.
+	 */
+	private static int searchMerges (Set<RelationBranch> seedBranches, int levels, int iteration, Set<RelationBranch> changedBranches, BranchLog log, BuildStatistics stats)
+	{
+		String phaseName = (levels == 1) ? "safe iteration " : "iteration ";
 
 		@SuppressWarnings ("unchecked")
 		HashSet<RelationBranch>[] branchSets = (HashSet<RelationBranch>[]) new HashSet<?>[2];
-		branchSets[0] = tree.getBranchSet ();
+		branchSets[0] = new HashSet<RelationBranch> (seedBranches);
 		branchSets[1] = new HashSet<RelationBranch> ();
 
 		@SuppressWarnings ("unchecked")
 		HashSet<RelationBranch>[] singleNodeBranchSets = (HashSet<RelationBranch>[]) new HashSet<?>[2];
 		singleNodeBranchSets[0] = new HashSet<RelationBranch> ();
 		singleNodeBranchSets[1] = new HashSet<RelationBranch> ();
-		for (RelationNode node : tree.getNodes ())
+		for (RelationBranch branch : seedBranches)
 		{
-			if (node.getRelationBranch ().size () == 1)
-				singleNodeBranchSets[0].add (node.getRelationBranch ());
+			if (branch.size () == 1)
+				singleNodeBranchSets[0].add (branch);
 		}
 
-		// first do only safe searches
 		int index = 0;
-		Debug.println ("safe searches only");
-		Debug.println ("index: " + index + ": " + branchSets[index].size ());
-		while (branchSets[index].size () > 0)
-		{
-			int nextIndex = 1 - index;
-			branchSets[nextIndex].clear ();
-			Debug.println ("index: " + index + ": " + branchSets[index].size ());
-
-			branchSets[index].addAll (singleNodeBranchSets[index]);
-
-			for (DiscoveryAlgorithm algorithm : DiscoveryAlgorithmManager.getInstance ().getList (0))
-			{
-				algorithm.discover (branchSets[index], branchSets[nextIndex], iteration, log);
-			}
-
-			/////////////////////////////////////////////////////////////
-			// end of algorithms
-			/////////////////////////////////////////////////////////////
-			singleNodeBranchSets[nextIndex].clear ();
-			for (RelationBranch branch : singleNodeBranchSets[index])
-			{
-				if (branch.size () == 1)
-					singleNodeBranchSets[nextIndex].add (branch);
-			}
-			index = nextIndex;
-			expandSearch(branchSets[index]);
-
-			++iteration;
-		}
-
-		// then do both safe and unsafe searches
-		index = 0;
-		branchSets[0] = tree.getBranchSet ();
-		branchSets[1].clear ();
-		singleNodeBranchSets[0].clear ();
-		singleNodeBranchSets[1].clear ();
-		for (RelationNode node : tree.getNodes ())
-		{
-			if (node.getRelationBranch ().size () == 1)
-				singleNodeBranchSets[0].add (node.getRelationBranch ());
-		}
-		Debug.println ("safe + unsafe searches");
 		Debug.println ("index: " + index + ": " + branchSets[index].size ());
 		while (branchSets[index].size () > 0)
 		{
+			BuildStatistics.Phase phase = (stats == null) ? null : stats.begin (phaseName + iteration, 1);
 			int nextIndex = 1 - index;
 			branchSets[nextIndex].clear ();
 			Debug.println ("index: " + index + ": " + branchSets[index].size ());
 
 			branchSets[index].addAll (singleNodeBranchSets[index]);
 
-			for (int level = 0; level < 2; ++level)
+			BranchWorklist worklist = new BranchWorklist (branchSets[index]);
+			Set<RelationBranch> checkBranches = worklist.getCheckSet (branchSets[nextIndex]);
+			for (int level = 0; level < levels; ++level)
 			{
 				for (DiscoveryAlgorithm algorithm : DiscoveryAlgorithmManager.getInstance ().getList (level))
 				{
-					algorithm.discover (branchSets[index], branchSets[nextIndex], iteration, log);
+					discover (algorithm, level, worklist, checkBranches, iteration, log);
 				}
 			}
 
-
 			/////////////////////////////////////////////////////////////
 			// end of algorithms
 			/////////////////////////////////////////////////////////////
+			if (changedBranches != null)
+				changedBranches.addAll (branchSets[nextIndex]);
 			singleNodeBranchSets[nextIndex].clear ();
 			for (RelationBranch branch : singleNodeBranchSets[index])
 			{
@@ -344,9 +755,34 @@ public class BranchDiscoveryAlgorithm
 			index = nextIndex;
 			expandSearch(branchSets[index]);
 
+			if (phase != null)
+				stats.end (phase);
 			++iteration;
 		}
+		return iteration;
+	}
 
+	/**
+	 * Add the branches that currently own the nodes of the specified
+	 * branches.  The branches emptied by the merges are skipped.
+	 *
+	 * @param	branchSet
+	 * 			the set to add the current branches to.
+	 * @param	branches
+	 * 			the branches, some of which may have been merged.
+	 */
+	private static void addCurrentBranches (Set<RelationBranch> branchSet, Set<RelationBranch> branches)
+	{
+		for (RelationBranch branch : branches)
+		{
+			RelationBranch current = branch.findRoot ().getOwner ();
+			if (current.size () > 0)
+				branchSet.add (current);
+		}
+	}
+
+	private static void finishMerges (RelationTree tree)
+	{
 		if (Main.configs.debug)
 		{
 			for (RelationNode node : tree.getNodes ())
@@ -365,6 +801,32 @@ public class BranchDiscoveryAlgorithm
 		tree.resetVisit ();
 	}
 
+	/**
+	 * Run a discovery algorithm on the branches matching its pattern, and
+	 * record the number of the branches it examined, the number of the
+	 * merges and the time in the log.  Each merge is logged once by the
+	 * algorithms.
+	 */
+	private static void discover (DiscoveryAlgorithm algorithm, int level, BranchWorklist worklist, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
+	{
+		Set<RelationBranch> branches = worklist.getBranches (algorithm.getPattern ());
+		int candidates = branches.size ();
+		int merges = log.size ();
+		long startTime = System.nanoTime ();
+		algorithm.discover (branches, checkBranches, iteration, log);
+		log.profile (algorithm.getClass ().getSimpleName (), level, iteration, candidates, log.size () - merges, System.nanoTime () - startTime);
+	}
+
+	private static HashSet<RelationBranch> getBranchSet (Collection<RelationNode> nodes)
+	{
+		HashSet<RelationBranch> branchSet = new HashSet<RelationBranch> ();
+		for (RelationNode node : nodes)
+		{
+			branchSet.add (node.getRelationBranch ());
+		}
+		return branchSet;
+	}
+
 	/**
 	 * We need to expand the search since the branchSet only contains the ones
 	 * just got modified.  We need to include parents and children the modified
@@ -383,13 +845,15 @@ public class BranchDiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			for (RelationNode parent : firstNode.getParents ())
+			for (int i = 0; i < firstNode.getParentCount (); ++i)
 			{
+				RelationNode parent = firstNode.getParent (i);
 				expandSet.add (parent.getRelationBranch ());
 			}
 			RelationNode lastNode = branch.getLast ();
-			for (RelationNode child : lastNode.getChildren ())
+			for (int i = 0; i < lastNode.getChildCount (); ++i)
 			{
+				RelationNode child = lastNode.getChild (i);
 				expandSet.add (child.getRelationBranch ());
 			}
 		}
@@ -15,6 +15,9 @@
  */
 package org.yuanheng.jgvt.relation;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -69,19 +72,19 @@ public class BranchLayoutAlgorithm
 
 				RelationNode node = state.next ();
 				RelationBranch branch = node.getRelationBranch ();
-				LayoutInfo layoutInfo = node.getLayoutInfo ();
 
 				int x = state.getX ();
 				int y = state.getY ();
 
-				layoutInfo.setX (x);
-				layoutInfo.setY (y);
+				node.setX (x);
+				node.setY (y);
 				++y;
 				state.setY (y);
 
 				int index = 0;
-				for (RelationNode child : node.getChildren ())
+				for (int i = 0; i < node.getChildCount (); ++i)
 				{
+					RelationNode child = node.getChild (i);
 					// a bit of optimization
 					if (index == 0 && branch.has (child))
 					{
@@ -92,7 +95,7 @@ public class BranchLayoutAlgorithm
 					RelationBranch childBranch = child.getRelationBranch ();
 					if (childBranch.isVisited ())
 					{
-						if (child.getParents ()[0] == node)
+						if (child.getParent (0) == node)
 						{
 							child.setRelation (node, RelationType.BRANCH);
 						}
@@ -106,7 +109,7 @@ public class BranchLayoutAlgorithm
 					}
 					branchSet.remove (childBranch);
 					childBranch.visit ();
-					if (child.getParents ()[0] == node)
+					if (child.getParent (0) == node)
 					{
 						child.setRelation (node, RelationType.BRANCH);
 					}
@@ -120,8 +123,7 @@ public class BranchLayoutAlgorithm
 					if (y1 < 0)
 						y1 = 0;
 					int y2 = y1 + childState.size () - 1;
-					while (matrix.isTaken (checkX, y1, y2))
-						++checkX;
+					checkX = matrix.getFreeColumn (checkX, y1, y2);
 					matrix.take (checkX, y1, y2);
 					childState.setX (checkX);
 					childState.setY (y1);
@@ -139,21 +141,21 @@ ExitAnchorBranch:
 				for (int index = 0; index < nodes.size (); ++index)
 				{
 					RelationNode node = nodes.get (index);
-					for (RelationNode child : node.getChildren ())
+					for (int i = 0; i < node.getChildCount (); ++i)
 					{
-						if (child.getLayoutInfo ().getY () >= 0)
+						RelationNode child = node.getChild (i);
+						if (child.getY () >= 0)
 						{
 							branch.visit ();
 
 							toRemove = branch;
 							LayoutState state = new LayoutState (branch);
-							int checkX = child.getLayoutInfo ().getX () + 1;
-							int y = child.getLayoutInfo ().getY () - index - 1;
+							int checkX = child.getX () + 1;
+							int y = child.getY () - index - 1;
 							if (y < 0)
 								y = 0;
 							int y2 = y + nodes.size () - 1;
-							while (matrix.isTaken (checkX, y, y2))
-								++checkX;
+							checkX = matrix.getFreeColumn (checkX, y, y2);
 							matrix.take (checkX, y, y2);
 							state.setX (checkX);
 							state.setY (y);
@@ -169,15 +171,14 @@ ExitAnchorBranch:
 				for (RelationBranch branch : branchSet)
 				{
 					List<RelationNode> nodes = branch.getOrderedList ();
-					if (nodes.get (0).getParents ().length == 0)
+					if (nodes.get (0).getParentCount () == 0)
 					{
 						toRemove = branch;
 						LayoutState state = new LayoutState (branch);
 						int checkX = 1;
 						int y = 0;
 						int y2 = y + nodes.size () - 1;
-						while (matrix.isTaken (checkX, y, y2))
-							++checkX;
+						checkX = matrix.getFreeColumn (checkX, y, y2);
 						matrix.take (checkX, y, y2);
 						state.setX (checkX);
 						state.setY (y);
@@ -191,4 +192,229 @@ ExitAnchorBranch:
 			branchSet.remove (toRemove);
 		}
 	}
+
+	/**
+	 * Get the branch of each node, so that the branches changed by an edit
+	 * can be found with {@link #getChangedBranches(RelationTree, RelationBranch[])}.
+	 *
+	 * @param	tree
+	 * 			the relation tree
+	 * @return	the branch of each node, by the node index.
+	 */
+	public static RelationBranch[] getNodeBranches (RelationTree tree)
+	{
+		RelationNodeStore store = tree.getStore ();
+		RelationBranch[] branches = new RelationBranch[store.size ()];
+		for (int i = 0; i < branches.length; ++i)
+		{
+			branches[i] = store.getRelationBranch (i);
+		}
+		return branches;
+	}
+
+	/**
+	 * Find the branches that gained or lost nodes since
+	 * {@link #getNodeBranches(RelationTree)}.
+	 *
+	 * @param	tree
+	 * 			the relation tree
+	 * @param	oldBranches
+	 * 			the branch of each node before the edit.
+	 * @return	the changed branches that still have nodes.
+	 */
+	public static Set<RelationBranch> getChangedBranches (RelationTree tree, RelationBranch[] oldBranches)
+	{
+		RelationNodeStore store = tree.getStore ();
+		HashSet<RelationBranch> changedBranches = new HashSet<RelationBranch> ();
+		int size = Math.min (store.size (), oldBranches.length);
+		for (int i = 0; i < size; ++i)
+		{
+			RelationBranch branch = store.getRelationBranch (i);
+			RelationBranch oldBranch = oldBranches[i];
+			if (branch == oldBranch)
+				continue;
+			if (branch != null)
+				changedBranches.add (branch);
+			if (oldBranch != null && oldBranch.size () > 0)
+				changedBranches.add (oldBranch);
+		}
+		return changedBranches;
+	}
+
+	/**
+	 * Lay out the changed branches again, keeping the columns of the other
+	 * branches.  A changed branch keeps its old column if it is still free.
+	 * A branch anchored at a changed branch, by the parent of its first
+	 * node, is laid out again if it is no longer right below and to the
+	 * right of its anchor.
+	 *
+	 * @param	tree
+	 * 			the relation tree that was laid out.
+	 * @param	changedBranches
+	 * 			the branches that gained or lost nodes.
+	 * @return	the nodes laid out again.
+	 */
+	public static List<RelationNode> layoutBranches (RelationTree tree, Set<RelationBranch> changedBranches)
+	{
+		ArrayList<RelationNode> nodes = new ArrayList<RelationNode> ();
+		if (tree.size () == 0)
+		{
+			return nodes;
+		}
+		RelationBranch mainBranch = tree.getStartNode ().getRelationBranch ();
+
+		// take the columns of the current layout, and find the branches
+		// anchored at each branch.
+		LayoutMatrix matrix = new LayoutMatrix ();
+		HashMap<RelationBranch, List<RelationBranch>> anchoredMap = new HashMap<RelationBranch, List<RelationBranch>> ();
+		for (RelationBranch branch : tree.getBranchSet ())
+		{
+			if (changedBranches.contains (branch))
+			{
+				// the nodes may come from different branches.
+				for (RelationNode node : branch.getOrderedList ())
+				{
+					if (node.getY () >= 0)
+						matrix.take (node.getX (), node.getY ());
+				}
+			}
+			else
+			{
+				RelationNode first = branch.getFirst ();
+				if (first.getY () >= 0)
+					matrix.take (first.getX (), first.getY (), first.getY () + branch.size () - 1);
+			}
+			RelationBranch anchor = getAnchor (branch);
+			if (anchor != null)
+			{
+				List<RelationBranch> anchoredList = anchoredMap.get (anchor);
+				if (anchoredList == null)
+				{
+					anchoredList = new ArrayList<RelationBranch> ();
+					anchoredMap.put (anchor, anchoredList);
+				}
+				anchoredList.add (branch);
+			}
+		}
+
+		HashSet<RelationBranch> pending = new HashSet<RelationBranch> ();
+		LinkedList<RelationBranch> queue = new LinkedList<RelationBranch> ();
+		for (RelationBranch branch : changedBranches)
+		{
+			if (branch.size () > 0)
+			{
+				pending.add (branch);
+				queue.add (branch);
+			}
+		}
+		while (queue.size () > 0)
+		{
+			RelationBranch branch = queue.getFirst ();
+			if (!pending.contains (branch))
+			{
+				queue.removeFirst ();
+				continue;
+			}
+			RelationBranch anchor = getAnchor (branch);
+			if (anchor != null && pending.contains (anchor))
+			{
+				// the anchor is laid out first.
+				queue.addFirst (anchor);
+				continue;
+			}
+			queue.removeFirst ();
+			pending.remove (branch);
+
+			List<RelationNode> list = branch.getOrderedList ();
+			RelationNode first = list.get (0);
+			int oldX = first.getX ();
+			int y = Math.max (first.getY (), 0);
+			for (RelationNode node : list)
+			{
+				if (node.getY () >= 0)
+					matrix.free (node.getX (), node.getY (), node.getY ());
+			}
+
+			int x;
+			if (branch == mainBranch)
+			{
+				x = 0;
+				y = 0;
+			}
+			else
+			{
+				int minX = 1;
+				if (anchor != null && first.getParent (0).getY () >= 0)
+				{
+					RelationNode parent = first.getParent (0);
+					minX = parent.getX () + 1;
+					y = parent.getY () + 1;
+				}
+				int y2 = y + list.size () - 1;
+				if (oldX >= minX && !matrix.isTaken (oldX, y, y2))
+					x = oldX;
+				else
+					x = matrix.getFreeColumn (minX, y, y2);
+			}
+			matrix.take (x, y, y + list.size () - 1);
+
+			for (RelationNode node : list)
+			{
+				node.setX (x);
+				node.setY (y++);
+				setRelations (node);
+				nodes.add (node);
+			}
+
+			List<RelationBranch> anchoredList = anchoredMap.get (branch);
+			if (anchoredList == null)
+				continue;
+			for (RelationBranch anchoredBranch : anchoredList)
+			{
+				RelationNode anchoredFirst = anchoredBranch.getFirst ();
+				RelationNode parent = anchoredFirst.getParent (0);
+				if (pending.contains (anchoredBranch) ||
+					(anchoredFirst.getY () == parent.getY () + 1 &&
+					 anchoredFirst.getX () > parent.getX ()))
+					continue;
+				pending.add (anchoredBranch);
+				queue.add (anchoredBranch);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Get the branch of the parent of the first node.
+	 */
+	private static RelationBranch getAnchor (RelationBranch branch)
+	{
+		RelationNode first = branch.getFirst ();
+		if (first.getParentCount () == 0)
+			return null;
+		return first.getParent (0).getRelationBranch ();
+	}
+
+	/**
+	 * Set the relations of a node to its parents and to its children in
+	 * other branches, the same way as the full layout.
+	 */
+	private static void setRelations (RelationNode node)
+	{
+		RelationBranch branch = node.getRelationBranch ();
+		for (int i = 0; i < node.getParentCount (); ++i)
+		{
+			RelationNode parent = node.getParent (i);
+			if (parent.getRelationBranch () == branch)
+				node.setRelation (parent, RelationType.CHILD);
+			else
+				node.setRelation (parent, i == 0 ? RelationType.BRANCH : RelationType.MERGE);
+		}
+		for (int i = 0; i < node.getChildCount (); ++i)
+		{
+			RelationNode child = node.getChild (i);
+			if (child.getRelationBranch () != branch)
+				child.setRelation (node, child.getParent (0) == node ? RelationType.BRANCH : RelationType.MERGE);
+		}
+	}
 }
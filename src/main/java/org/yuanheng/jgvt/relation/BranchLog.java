@@ -16,6 +16,8 @@
 package org.yuanheng.jgvt.relation;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * @author	Heng Yuan
@@ -36,11 +38,45 @@ public class BranchLog
 		}
 	}
 
+	/**
+	 * The profile of the discovery algorithms.  It is either a single run
+	 * of an algorithm in a merge iteration, or the sum of all the runs of
+	 * an algorithm.
+	 */
+	public static class AlgorithmProfile
+	{
+		/** The class name of the algorithm. */
+		public String algorithm;
+		/** 0 for the safe algorithms, 1 for the unsafe ones. */
+		public int level;
+		/** The merge iteration.  -1 for the sum. */
+		public int iteration;
+		/** The number of the runs. */
+		public int invocations;
+		/** The number of the branches examined. */
+		public long candidates;
+		/** The number of the branch merges performed. */
+		public int merges;
+		/** The time in nanoseconds. */
+		public long time;
+
+		public AlgorithmProfile (String algorithm, int level, int iteration)
+		{
+			this.algorithm = algorithm;
+			this.level = level;
+			this.iteration = iteration;
+		}
+	}
+
 	private final ArrayList<BranchLogEntry> m_list;
+	private final ArrayList<AlgorithmProfile> m_profiles;
+	/** The number of the branch merge iterations. */
+	private int m_iterations;
 
 	public BranchLog ()
 	{
 		m_list = new ArrayList<BranchLogEntry> ();
+		m_profiles = new ArrayList<AlgorithmProfile> ();
 	}
 
 	public void log (RelationNode node, String algorithm, int iteration)
@@ -48,9 +84,73 @@ public class BranchLog
 		m_list.add (new BranchLogEntry (node, algorithm, iteration));
 	}
 
+	/**
+	 * Record a run of a discovery algorithm.
+	 *
+	 * @param	algorithm
+	 * 			the class name of the algorithm
+	 * @param	level
+	 * 			the algorithm level
+	 * @param	iteration
+	 * 			the merge iteration
+	 * @param	candidates
+	 * 			the number of the branches examined
+	 * @param	merges
+	 * 			the number of the branch merges performed
+	 * @param	time
+	 * 			the time in nanoseconds
+	 */
+	public void profile (String algorithm, int level, int iteration, int candidates, int merges, long time)
+	{
+		AlgorithmProfile profile = new AlgorithmProfile (algorithm, level, iteration);
+		profile.invocations = 1;
+		profile.candidates = candidates;
+		profile.merges = merges;
+		profile.time = time;
+		m_profiles.add (profile);
+	}
+
 	public void clear ()
 	{
 		m_list.clear ();
+		m_profiles.clear ();
+		m_iterations = 0;
+	}
+
+	public void addAll (BranchLog log)
+	{
+		m_list.addAll (log.m_list);
+		m_profiles.addAll (log.m_profiles);
+		m_iterations += log.m_iterations;
+	}
+
+	/**
+	 * Copy this log to a copy of the tree of the logged nodes.
+	 *
+	 * @param	tree
+	 * 			the copy of the tree.
+	 * @return	the copy of this log with the nodes of the copied tree.
+	 */
+	public BranchLog copy (RelationTree tree)
+	{
+		BranchLog log = new BranchLog ();
+		for (BranchLogEntry entry : m_list)
+		{
+			log.m_list.add (new BranchLogEntry (tree.getNode (entry.node.getId ()), entry.algorithm, entry.iteration));
+		}
+		log.m_profiles.addAll (m_profiles);
+		log.m_iterations = m_iterations;
+		return log;
+	}
+
+	public void addIterations (int iterations)
+	{
+		m_iterations += iterations;
+	}
+
+	public int getIterations ()
+	{
+		return m_iterations;
 	}
 
 	public int size ()
@@ -62,4 +162,43 @@ public class BranchLog
 	{
 		return m_list.get (index);
 	}
+
+	/**
+	 * Get the number of the algorithm runs recorded.  The profiles are not
+	 * saved in the layout cache, so there is none if the layout was loaded
+	 * from the cache.
+	 */
+	public int getProfileCount ()
+	{
+		return m_profiles.size ();
+	}
+
+	public AlgorithmProfile getProfile (int index)
+	{
+		return m_profiles.get (index);
+	}
+
+	/**
+	 * Sum up the runs of each algorithm.
+	 *
+	 * @return	the sums of the algorithms in the order they first ran.
+	 */
+	public List<AlgorithmProfile> getProfileSummary ()
+	{
+		LinkedHashMap<String, AlgorithmProfile> map = new LinkedHashMap<String, AlgorithmProfile> ();
+		for (AlgorithmProfile profile : m_profiles)
+		{
+			AlgorithmProfile sum = map.get (profile.algorithm);
+			if (sum == null)
+			{
+				sum = new AlgorithmProfile (profile.algorithm, profile.level, -1);
+				map.put (profile.algorithm, sum);
+			}
+			sum.invocations += profile.invocations;
+			sum.candidates += profile.candidates;
+			sum.merges += profile.merges;
+			sum.time += profile.time;
+		}
+		return new ArrayList<AlgorithmProfile> (map.values ());
+	}
 }
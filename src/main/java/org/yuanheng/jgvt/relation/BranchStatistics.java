@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The branch statistics of a tree after the branch discovery.
+ *
+ * @author	Heng Yuan
+ */
+public class BranchStatistics
+{
+	/**
+	 * Compute the statistics of a tree.
+	 *
+	 * @param	tree
+	 * 			the relation tree
+	 * @param	log
+	 * 			the branch discovery log of the tree.
+	 * @return	the statistics
+	 */
+	public static BranchStatistics compute (RelationTree tree, BranchLog log)
+	{
+		BranchStatistics stats = new BranchStatistics ();
+		stats.m_commitCount = tree.size ();
+		for (RelationNode node : tree.getNodes ())
+		{
+			if (node.getParentCount () > 1)
+				++stats.m_mergeCount;
+		}
+		for (RelationBranch branch : tree.getBranchSet ())
+		{
+			++stats.m_branchCount;
+			if (branch.size () > stats.m_longestBranch)
+			{
+				stats.m_longestBranch = branch.size ();
+				stats.m_longestBranchName = branch.getLast ().getAnnotation ();
+			}
+		}
+		stats.m_iterations = log.getIterations ();
+		for (int i = 0; i < log.size (); ++i)
+		{
+			stats.m_algorithms.merge (log.get (i).algorithm, 1, Integer::sum);
+		}
+		return stats;
+	}
+
+	private int m_commitCount;
+	private int m_branchCount;
+	private int m_mergeCount;
+	private int m_longestBranch;
+	private String m_longestBranchName;
+	private int m_iterations;
+	private final TreeMap<String, Integer> m_algorithms = new TreeMap<String, Integer> ();
+
+	private BranchStatistics ()
+	{
+	}
+
+	public int getCommitCount ()
+	{
+		return m_commitCount;
+	}
+
+	public int getBranchCount ()
+	{
+		return m_branchCount;
+	}
+
+	public int getMergeCount ()
+	{
+		return m_mergeCount;
+	}
+
+	/**
+	 * Get the number of the nodes in the longest branch.
+	 */
+	public int getLongestBranch ()
+	{
+		return m_longestBranch;
+	}
+
+	/**
+	 * Get the tags and the branch names of the last node of the longest
+	 * branch.
+	 *
+	 * @return	the names.  null if there is none.
+	 */
+	public String getLongestBranchName ()
+	{
+		return m_longestBranchName;
+	}
+
+	/**
+	 * Get the number of the branch merge iterations.
+	 */
+	public int getIterations ()
+	{
+		return m_iterations;
+	}
+
+	/**
+	 * Get the number of the branch merges done by each discovery algorithm.
+	 *
+	 * @return	the algorithm histogram, sorted by the algorithm names.
+	 */
+	public Map<String, Integer> getAlgorithms ()
+	{
+		return m_algorithms;
+	}
+}
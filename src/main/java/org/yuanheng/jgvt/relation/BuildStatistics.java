@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * The wall time, the allocated memory and the tree size of each phase of
+ * a tree build.
+ * <p>
+ * A phase has to end on the thread it began, since the allocated memory
+ * is measured per thread.  The methods are synchronized so that the
+ * statistics can be read over JMX while a build is being recorded.
+ *
+ * @author	Heng Yuan
+ */
+public class BuildStatistics implements BuildStatisticsMBean
+{
+	public static class Phase
+	{
+		public final String name;
+		/** The nesting level.  Only the top level phases are added to the total. */
+		public final int level;
+		/** The wall time in nanoseconds. */
+		public long time;
+		/** The allocated bytes.  -1 if unknown. */
+		public long allocated = -1;
+		/** The number of the nodes at the end of the phase.  -1 if not counted. */
+		public int nodeCount = -1;
+		/** The number of the branches at the end of the phase.  -1 if not counted. */
+		public int branchCount = -1;
+
+		private final long m_startTime;
+		private final long m_startAllocated;
+
+		private Phase (String name, int level)
+		{
+			this.name = name;
+			this.level = level;
+			m_startAllocated = getThreadAllocatedBytes ();
+			m_startTime = System.nanoTime ();
+		}
+	}
+
+	private final static com.sun.management.ThreadMXBean s_threadBean = getThreadBean ();
+
+	private static com.sun.management.ThreadMXBean getThreadBean ()
+	{
+		try
+		{
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean ();
+			if (bean instanceof com.sun.management.ThreadMXBean)
+			{
+				com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+				if (sunBean.isThreadAllocatedMemorySupported () &&
+					sunBean.isThreadAllocatedMemoryEnabled ())
+					return sunBean;
+			}
+		}
+		catch (Throwable t)
+		{
+		}
+		return null;
+	}
+
+	/**
+	 * Get the bytes allocated by the current thread so far.
+	 *
+	 * @return	the allocated bytes.  -1 if the JVM does not support it.
+	 */
+	private static long getThreadAllocatedBytes ()
+	{
+		if (s_threadBean == null)
+			return -1;
+		return s_threadBean.getThreadAllocatedBytes (Thread.currentThread ().getId ());
+	}
+
+	private static int countBranches (RelationTree tree)
+	{
+		HashSet<RelationBranch> branchSet = new HashSet<RelationBranch> ();
+		for (RelationNode node : tree.getNodes ())
+		{
+			if (node.getRelationBranch () != null)
+				branchSet.add (node.getRelationBranch ());
+		}
+		return branchSet.size ();
+	}
+
+	private final ArrayList<Phase> m_phases = new ArrayList<Phase> ();
+
+	/**
+	 * Begin a phase.  The phases are listed in the order they begin, so
+	 * that the nested phases follow the phases containing them.
+	 *
+	 * @param	name
+	 * 			the phase name
+	 * @return	the phase
+	 */
+	public Phase begin (String name)
+	{
+		return begin (name, 0);
+	}
+
+	/**
+	 * Begin a phase nested in another phase.
+	 *
+	 * @param	name
+	 * 			the phase name
+	 * @param	level
+	 * 			the nesting level.
+	 * @return	the phase
+	 */
+	public Phase begin (String name, int level)
+	{
+		Phase phase = new Phase (name, level);
+		add (phase);
+		return phase;
+	}
+
+	/**
+	 * End a phase without counting the nodes.
+	 *
+	 * @param	phase
+	 * 			the phase returned by {@link #begin(String)}.
+	 */
+	public void end (Phase phase)
+	{
+		end (phase, null);
+	}
+
+	/**
+	 * End a phase and count the nodes and the branches of the tree.
+	 *
+	 * @param	phase
+	 * 			the phase returned by {@link #begin(String)}.
+	 * @param	tree
+	 * 			the tree being built.  It can be null.
+	 */
+	public void end (Phase phase, RelationTree tree)
+	{
+		long time = System.nanoTime () - phase.m_startTime;
+		long allocated = (phase.m_startAllocated < 0) ? -1 : getThreadAllocatedBytes () - phase.m_startAllocated;
+		int nodeCount = -1;
+		int branchCount = -1;
+		if (tree != null)
+		{
+			nodeCount = tree.size ();
+			branchCount = countBranches (tree);
+		}
+		synchronized (this)
+		{
+			phase.time = time;
+			phase.allocated = allocated;
+			phase.nodeCount = nodeCount;
+			phase.branchCount = branchCount;
+		}
+	}
+
+	/**
+	 * Add a phase recorded by another statistics, e.g. a fetch that
+	 * triggered the build.
+	 *
+	 * @param	phase
+	 * 			the phase
+	 */
+	public synchronized void add (Phase phase)
+	{
+		m_phases.add (phase);
+	}
+
+	public synchronized void addAll (BuildStatistics stats)
+	{
+		m_phases.addAll (stats.getPhases ());
+	}
+
+	public synchronized void clear ()
+	{
+		m_phases.clear ();
+	}
+
+	/**
+	 * @return	a copy of the phases recorded so far.
+	 */
+	public synchronized ArrayList<Phase> getPhases ()
+	{
+		return new ArrayList<Phase> (m_phases);
+	}
+
+	@Override
+	public synchronized String[] getPhaseNames ()
+	{
+		String[] names = new String[m_phases.size ()];
+		for (int i = 0; i < names.length; ++i)
+		{
+			names[i] = m_phases.get (i).name;
+		}
+		return names;
+	}
+
+	@Override
+	public synchronized double[] getTimes ()
+	{
+		double[] times = new double[m_phases.size ()];
+		for (int i = 0; i < times.length; ++i)
+		{
+			times[i] = m_phases.get (i).time / 1000000.0;
+		}
+		return times;
+	}
+
+	@Override
+	public synchronized long[] getAllocatedBytes ()
+	{
+		long[] allocated = new long[m_phases.size ()];
+		for (int i = 0; i < allocated.length; ++i)
+		{
+			allocated[i] = m_phases.get (i).allocated;
+		}
+		return allocated;
+	}
+
+	@Override
+	public synchronized double getTotalTime ()
+	{
+		long time = 0;
+		for (Phase phase : m_phases)
+		{
+			if (phase.level == 0)
+				time += phase.time;
+		}
+		return time / 1000000.0;
+	}
+
+	@Override
+	public synchronized long getTotalAllocatedBytes ()
+	{
+		long allocated = 0;
+		for (Phase phase : m_phases)
+		{
+			if (phase.level == 0 && phase.allocated > 0)
+				allocated += phase.allocated;
+		}
+		return allocated;
+	}
+
+	@Override
+	public synchronized int getNodeCount ()
+	{
+		for (int i = m_phases.size () - 1; i >= 0; --i)
+		{
+			if (m_phases.get (i).nodeCount >= 0)
+				return m_phases.get (i).nodeCount;
+		}
+		return 0;
+	}
+
+	@Override
+	public synchronized int getBranchCount ()
+	{
+		for (int i = m_phases.size () - 1; i >= 0; --i)
+		{
+			if (m_phases.get (i).branchCount >= 0)
+				return m_phases.get (i).branchCount;
+		}
+		return 0;
+	}
+
+	@Override
+	public String getReport ()
+	{
+		return toString ();
+	}
+
+	/**
+	 * Format the statistics as a table, one phase per line.
+	 */
+	@Override
+	public synchronized String toString ()
+	{
+		StringBuilder builder = new StringBuilder ();
+		builder.append (String.format ("%-32s %10s %12s %10s %10s%n", "phase", "ms", "alloc KB", "nodes", "branches"));
+		for (Phase phase : m_phases)
+		{
+			builder.append (String.format ("%-32s %10.1f %12s %10s %10s%n",
+				"                ".substring (0, Math.min (16, phase.level * 2)) + phase.name,
+				phase.time / 1000000.0,
+				phase.allocated < 0 ? "" : String.valueOf (phase.allocated >> 10),
+				phase.nodeCount < 0 ? "" : String.valueOf (phase.nodeCount),
+				phase.branchCount < 0 ? "" : String.valueOf (phase.branchCount)));
+		}
+		builder.append (String.format ("%-32s %10.1f %12d%n", "total", getTotalTime (), getTotalAllocatedBytes () >> 10));
+		return builder.toString ();
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+/**
+ * The JMX view of the {@link BuildStatistics} of the last build.  The
+ * arrays are indexed by the phase.
+ *
+ * @author	Heng Yuan
+ */
+public interface BuildStatisticsMBean
+{
+	public String[] getPhaseNames ();
+
+	/**
+	 * @return	the wall time of each phase in milliseconds.
+	 */
+	public double[] getTimes ();
+
+	/**
+	 * @return	the allocated bytes of each phase.  -1 if unknown.
+	 */
+	public long[] getAllocatedBytes ();
+
+	/**
+	 * @return	the total wall time in milliseconds of the top level phases.
+	 */
+	public double getTotalTime ();
+
+	/**
+	 * @return	the total allocated bytes of the top level phases.
+	 */
+	public long getTotalAllocatedBytes ();
+
+	/**
+	 * @return	the number of the nodes at the end of the last phase that
+	 * 			counted them.
+	 */
+	public int getNodeCount ();
+
+	/**
+	 * @return	the number of the branches at the end of the last phase
+	 * 			that counted them.
+	 */
+	public int getBranchCount ();
+
+	/**
+	 * @return	the statistics formatted as a table.
+	 */
+	public String getReport ();
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.yuanheng.jgvt.Debug;
+import org.yuanheng.jgvt.Defaults;
+import org.yuanheng.jgvt.GitRepo;
+
+/**
+ * A per-commit Bloom filter of the paths changed from the first parent,
+ * stored in .git/jgvt/.  The leading directories of the changed paths are
+ * added as well, so that a filter can be queried for a file or a
+ * directory.
+ * <p>
+ * The filters use the same parameters as git's changed-path Bloom filters:
+ * 10 bits per path, 7 hashes computed from two murmur3 hashes, and a
+ * single byte of all 1s for commits that changed too many paths.
+ *
+ * @author	Heng Yuan
+ */
+public class ChangedPathIndex
+{
+	private final static int MAGIC = 0x4a475650;	// JGVP
+	private final static int VERSION = 1;
+
+	private final static int BITS_PER_PATH = 10;
+	private final static int NUM_HASHES = 7;
+	private final static int MAX_CHANGED_PATHS = 512;
+	private final static int SEED1 = 0x293ae76f;
+	private final static int SEED2 = 0x7e646e2c;
+
+	private final static byte[] s_emptyFilter = new byte[0];
+	private final static byte[] s_fullFilter = new byte[] { (byte)0xff };
+
+	/**
+	 * Load the changed path filters of the commits in a commit graph.  The
+	 * filters of the commits not in the index are computed and the index is
+	 * written back.
+	 *
+	 * @param	gitRepo
+	 * 			the git repo
+	 * @param	graph
+	 * 			the commit graph
+	 * @param	monitor
+	 * 			the monitor for the progress of indexing the new commits.
+	 * @return	the changed path index
+	 * @throws	IOException
+	 * 			in case of I/O error.
+	 * @throws	CancellationException
+	 * 			if the monitor is cancelled.  The commits indexed so far are
+	 * 			still saved.
+	 */
+	public static ChangedPathIndex load (GitRepo gitRepo, CommitGraphCache graph, ProgressMonitor monitor) throws IOException
+	{
+		File file = getIndexFile (gitRepo);
+
+		ChangedPathIndex index = new ChangedPathIndex ();
+		if (file.isFile ())
+		{
+			try
+			{
+				index.read (file);
+			}
+			catch (IOException ex)
+			{
+				Debug.printStackTrace (ex);
+				index = new ChangedPathIndex ();
+			}
+		}
+
+		int missing = 0;
+		for (int i = 0; i < graph.size (); ++i)
+		{
+			if (!index.m_filters.containsKey (graph.getCommit (i)))
+				++missing;
+		}
+		if (missing == 0 && index.m_filters.size () == graph.size ())
+		{
+			Debug.println ("changed path index: " + graph.size () + " commits");
+			return index;
+		}
+
+		// keep only the commits in the graph
+		HashMap<ObjectId, byte[]> filters = new HashMap<ObjectId, byte[]> (graph.size () * 4 / 3 + 1);
+		for (int i = 0; i < graph.size (); ++i)
+		{
+			byte[] filter = index.m_filters.get (graph.getCommit (i));
+			if (filter != null)
+				filters.put (graph.getCommit (i), filter);
+		}
+		index.m_filters = filters;
+
+		monitor.beginTask ("Indexing changed paths", missing);
+		try (ObjectReader reader = gitRepo.getRepo ().newObjectReader ();
+			 RevWalk revWalk = new RevWalk (reader))
+		{
+			revWalk.setRetainBody (false);
+			for (int i = 0; i < graph.size (); ++i)
+			{
+				ObjectId id = graph.getCommit (i);
+				if (filters.containsKey (id))
+					continue;
+				RevCommit commit = revWalk.parseCommit (id);
+				RevCommit parent = commit.getParentCount () == 0 ? null : revWalk.parseCommit (commit.getParent (0));
+				filters.put (id.copy (), createFilter (getChangedPaths (reader, parent, commit)));
+				monitor.update (1);
+				if (monitor.isCancelled ())
+					throw new CancellationException ();
+			}
+		}
+		finally
+		{
+			monitor.endTask ();
+			try
+			{
+				File dir = file.getParentFile ();
+				if (dir.isDirectory () || dir.mkdir ())
+				{
+					index.write (file);
+				}
+			}
+			catch (IOException ex)
+			{
+				Debug.printStackTrace (ex);
+			}
+		}
+		Debug.println ("changed path index updated: " + graph.size () + " commits");
+		return index;
+	}
+
+	private static File getIndexFile (GitRepo gitRepo)
+	{
+		File jgvtDir = new File (gitRepo.getGitDir (), Defaults.GIT_DIR_JGVT_DIR);
+		return new File (jgvtDir, Defaults.JGVT_CHANGED_PATHS);
+	}
+
+	/**
+	 * Get the paths changed from the parent, including their leading
+	 * directories.
+	 *
+	 * @return	the changed paths.  null if there are too many.
+	 */
+	private static HashSet<String> getChangedPaths (ObjectReader reader, RevCommit parent, RevCommit commit) throws IOException
+	{
+		HashSet<String> paths = new HashSet<String> ();
+		try (TreeWalk tw = new TreeWalk (reader))
+		{
+			tw.setRecursive (true);
+			tw.setFilter (TreeFilter.ANY_DIFF);
+			if (parent == null)
+				tw.addTree (new EmptyTreeIterator ());
+			else
+				tw.addTree (parent.getTree ());
+			tw.addTree (commit.getTree ());
+			while (tw.next ())
+			{
+				String path = tw.getPathString ();
+				while (paths.add (path))
+				{
+					int index = path.lastIndexOf ('/');
+					if (index < 0)
+						break;
+					path = path.substring (0, index);
+				}
+				if (paths.size () > MAX_CHANGED_PATHS)
+					return null;
+			}
+		}
+		return paths;
+	}
+
+	private static byte[] createFilter (HashSet<String> paths)
+	{
+		if (paths == null)
+			return s_fullFilter;
+		if (paths.size () == 0)
+			return s_emptyFilter;
+		byte[] filter = new byte[(paths.size () * BITS_PER_PATH + 7) / 8];
+		long bits = filter.length * 8L;
+		for (String path : paths)
+		{
+			byte[] data = path.getBytes (StandardCharsets.UTF_8);
+			long h1 = murmur3 (SEED1, data) & 0xffffffffL;
+			long h2 = murmur3 (SEED2, data) & 0xffffffffL;
+			for (int i = 0; i < NUM_HASHES; ++i)
+			{
+				int bit = (int)(((h1 + i * h2) & 0xffffffffL) % bits);
+				filter[bit >> 3] |= 1 << (bit & 7);
+			}
+		}
+		return filter;
+	}
+
+	/**
+	 * The 32-bit murmur3 hash.
+	 */
+	static int murmur3 (int seed, byte[] data)
+	{
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+		int h = seed;
+		int len4 = data.length / 4;
+		for (int i = 0; i < len4; ++i)
+		{
+			int k = (data[i * 4] & 0xff) |
+					((data[i * 4 + 1] & 0xff) << 8) |
+					((data[i * 4 + 2] & 0xff) << 16) |
+					((data[i * 4 + 3] & 0xff) << 24);
+			k *= c1;
+			k = Integer.rotateLeft (k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft (h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		int k = 0;
+		int tail = len4 * 4;
+		int remaining = data.length & 3;
+		if (remaining == 3)
+			k ^= (data[tail + 2] & 0xff) << 16;
+		if (remaining >= 2)
+			k ^= (data[tail + 1] & 0xff) << 8;
+		if (remaining >= 1)
+		{
+			k ^= data[tail] & 0xff;
+			k *= c1;
+			k = Integer.rotateLeft (k, 15);
+			k *= c2;
+			h ^= k;
+		}
+		h ^= data.length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private Map<ObjectId, byte[]> m_filters = new HashMap<ObjectId, byte[]> ();
+
+	private ChangedPathIndex ()
+	{
+	}
+
+	/**
+	 * Check if a commit might have changed a path from its first parent.
+	 *
+	 * @param	commit
+	 * 			the commit
+	 * @param	path
+	 * 			the file or directory path
+	 * @return	false if the commit definitely did not change the path.
+	 * 			true if the commit might have changed the path, or if the
+	 * 			commit is not indexed.
+	 */
+	public boolean mightChange (ObjectId commit, String path)
+	{
+		byte[] filter = m_filters.get (commit);
+		if (filter == null)
+			return true;
+		if (filter.length == 0)
+			return false;
+		byte[] data = path.getBytes (StandardCharsets.UTF_8);
+		long h1 = murmur3 (SEED1, data) & 0xffffffffL;
+		long h2 = murmur3 (SEED2, data) & 0xffffffffL;
+		long bits = filter.length * 8L;
+		for (int i = 0; i < NUM_HASHES; ++i)
+		{
+			int bit = (int)(((h1 + i * h2) & 0xffffffffL) % bits);
+			if ((filter[bit >> 3] & (1 << (bit & 7))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	private void read (File file) throws IOException
+	{
+		try (DataInputStream dis = new DataInputStream (new BufferedInputStream (new FileInputStream (file), 65536)))
+		{
+			if (dis.readInt () != MAGIC ||
+				dis.readInt () != VERSION)
+			{
+				throw new IOException ("Incompatible changed path index: " + file);
+			}
+			int size = dis.readInt ();
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			for (int i = 0; i < size; ++i)
+			{
+				dis.readFully (raw);
+				int length = dis.readUnsignedShort ();
+				byte[] filter = new byte[length];
+				dis.readFully (filter);
+				m_filters.put (ObjectId.fromRaw (raw), filter);
+			}
+		}
+	}
+
+	private void write (File file) throws IOException
+	{
+		File tmpFile = new File (file.getPath () + ".tmp");
+		try (DataOutputStream dos = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (tmpFile), 65536)))
+		{
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+
+			dos.writeInt (MAGIC);
+			dos.writeInt (VERSION);
+			dos.writeInt (m_filters.size ());
+			for (Map.Entry<ObjectId, byte[]> entry : m_filters.entrySet ())
+			{
+				entry.getKey ().copyRawTo (raw, 0);
+				dos.write (raw);
+				dos.writeShort (entry.getValue ().length);
+				dos.write (entry.getValue ());
+			}
+		}
+		if (!tmpFile.renameTo (file))
+		{
+			file.delete ();
+			if (!tmpFile.renameTo (file))
+			{
+				throw new IOException ("Unable to write " + file);
+			}
+		}
+	}
+}
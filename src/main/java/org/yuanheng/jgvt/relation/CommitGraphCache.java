@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.yuanheng.jgvt.CommitUtils;
+import org.yuanheng.jgvt.Debug;
+import org.yuanheng.jgvt.Defaults;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RefSnapshot;
+
+/**
+ * A compact copy of the commit graph stored in .git/jgvt/.  It contains
+ * the commit ids, the parent indices, the commit times and the ref tips
+ * the graph was computed from.
+ * <p>
+ * On a warm start, the commits are created with {@link RevWalk#lookupCommit}
+ * which does not read the pack files.  The commit bodies are parsed on
+ * demand by {@link RelationNode#getCommit()}.
+ *
+ * @author	Heng Yuan
+ */
+public class CommitGraphCache
+{
+	private final static int MAGIC = 0x4a475654;	// JGVT
+	private final static int VERSION = 1;
+
+	private final static int FLAG_MERGE_PULL_REQUEST = 0x01;
+
+	/**
+	 * Load the commit graph of all the refs.  The cache is read if it exists
+	 * and is extended with the commits reachable from the refs that moved.
+	 * Commits no longer reachable from any ref are dropped.  The updated
+	 * cache is written back.
+	 *
+	 * @param	gitRepo
+	 * 			the git repo
+	 * @param	refs
+	 * 			the current refs
+	 * @param	revWalk
+	 * 			the RevWalk used to create the commits.
+	 * @param	monitor
+	 * 			the monitor for the progress of walking the new commits.
+	 * @return	the commit graph
+	 * @throws	IOException
+	 * 			in case of I/O error.
+	 * @throws	CancellationException
+	 * 			if the monitor is cancelled.
+	 */
+	public static CommitGraphCache load (GitRepo gitRepo, RefSnapshot refs, RevWalk revWalk, ProgressMonitor monitor) throws IOException
+	{
+		File file = getCacheFile (gitRepo);
+		Map<String, ObjectId> refTips = refs.getTips ();
+
+		CommitGraphCache cache = null;
+		if (file.isFile ())
+		{
+			try
+			{
+				cache = read (file, revWalk);
+			}
+			catch (IOException ex)
+			{
+				Debug.printStackTrace (ex);
+			}
+		}
+
+		if (cache != null && cache.m_refTips.equals (refTips))
+		{
+			Debug.println ("commit graph cache: " + cache.size () + " commits");
+			return cache;
+		}
+
+		cache = update (cache, refTips, revWalk, monitor);
+		Debug.println ("commit graph cache updated: " + cache.size () + " commits");
+
+		try
+		{
+			File dir = file.getParentFile ();
+			if (dir.isDirectory () || dir.mkdir ())
+			{
+				cache.write (file);
+			}
+		}
+		catch (IOException ex)
+		{
+			Debug.printStackTrace (ex);
+		}
+		return cache;
+	}
+
+	/**
+	 * Get the number of the commits in the cache without loading it.
+	 *
+	 * @param	gitDir
+	 * 			the .git directory
+	 * @return	the number of the commits.  -1 if there is no cache.
+	 */
+	public static int readSize (File gitDir)
+	{
+		File file = new File (new File (gitDir, Defaults.GIT_DIR_JGVT_DIR), Defaults.JGVT_COMMIT_GRAPH);
+		if (!file.isFile ())
+			return -1;
+		try (DataInputStream dis = new DataInputStream (new FileInputStream (file)))
+		{
+			if (dis.readInt () == MAGIC &&
+				dis.readInt () == VERSION)
+			{
+				return dis.readInt ();
+			}
+		}
+		catch (IOException ex)
+		{
+			Debug.printStackTrace (ex);
+		}
+		return -1;
+	}
+
+	private static File getCacheFile (GitRepo gitRepo)
+	{
+		File jgvtDir = new File (gitRepo.getGitDir (), Defaults.GIT_DIR_JGVT_DIR);
+		return new File (jgvtDir, Defaults.JGVT_COMMIT_GRAPH);
+	}
+
+	private static CommitGraphCache read (File file, RevWalk revWalk) throws IOException
+	{
+		try (DataInputStream dis = new DataInputStream (new BufferedInputStream (new FileInputStream (file), 65536)))
+		{
+			if (dis.readInt () != MAGIC ||
+				dis.readInt () != VERSION)
+			{
+				throw new IOException ("Incompatible commit graph cache: " + file);
+			}
+			int size = dis.readInt ();
+			int parentSize = dis.readInt ();
+			// the counts are checked against the file length before the
+			// arrays are allocated.  Each commit takes at least the id, the
+			// time, the flags and the parent count, and each parent 4 bytes.
+			if (size < 0 || parentSize < 0 ||
+				(long) size * (Constants.OBJECT_ID_LENGTH + 6) + 4L * parentSize > file.length ())
+			{
+				throw new IOException ("Corrupted commit graph cache: " + file);
+			}
+
+			CommitGraphCache cache = new CommitGraphCache (size, parentSize);
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			int parentIndex = 0;
+			for (int i = 0; i < size; ++i)
+			{
+				dis.readFully (raw);
+				cache.m_commits[i] = revWalk.lookupCommit (ObjectId.fromRaw (raw));
+				cache.m_commitTimes[i] = dis.readInt ();
+				cache.m_flags[i] = dis.readByte ();
+				int parentCount = dis.readUnsignedByte ();
+				cache.m_parentStart[i] = parentIndex;
+				for (int j = 0; j < parentCount; ++j)
+				{
+					int parent = dis.readInt ();
+					if (parent < 0 || parent >= size ||
+						parentIndex >= parentSize)
+					{
+						throw new IOException ("Corrupted commit graph cache: " + file);
+					}
+					cache.m_parents[parentIndex++] = parent;
+				}
+			}
+			if (parentIndex != parentSize)
+			{
+				throw new IOException ("Corrupted commit graph cache: " + file);
+			}
+			cache.m_parentStart[size] = parentIndex;
+
+			int refCount = dis.readInt ();
+			for (int i = 0; i < refCount; ++i)
+			{
+				String name = dis.readUTF ();
+				dis.readFully (raw);
+				cache.m_refTips.put (name, ObjectId.fromRaw (raw));
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Read the message of a commit without keeping its body in the RevWalk.
+	 * The body is parsed into a copy of the commit, since parsing it with
+	 * the RevWalk would set the body of the commit in the RevWalk.
+	 */
+	private static boolean isMergePullRequest (RevWalk revWalk, RevCommit commit) throws IOException
+	{
+		byte[] raw = revWalk.getObjectReader ().open (commit, Constants.OBJ_COMMIT).getCachedBytes ();
+		return CommitUtils.isMergePullRequest (RevCommit.parse (raw));
+	}
+
+	/**
+	 * Walk the commits not yet in the cache and merge them with the cached
+	 * commits.
+	 *
+	 * @param	oldCache
+	 * 			the existing cache.  It can be null.
+	 * @param	refTips
+	 * 			the current ref tips.
+	 * @param	revWalk
+	 * 			the RevWalk used to create the commits.  It does not retain
+	 * 			the bodies of the commits afterward.
+	 * @return	the new cache.
+	 * @throws	IOException
+	 * 			in case of I/O error.
+	 */
+	private static CommitGraphCache update (CommitGraphCache oldCache, Map<String, ObjectId> refTips, RevWalk revWalk, ProgressMonitor monitor) throws IOException
+	{
+		HashMap<ObjectId, Integer> oldIndexMap = new HashMap<ObjectId, Integer> ();
+		if (oldCache != null)
+		{
+			for (int i = 0; i < oldCache.m_size; ++i)
+			{
+				oldIndexMap.put (oldCache.m_commits[i], i);
+			}
+		}
+
+		// the RevWalk is kept by the tree, so only the header fields of
+		// the commits are kept in it, including the uninteresting and the
+		// boundary commits.  The bodies are read again on demand.
+		revWalk.setRetainBody (false);
+
+		// walk the new commits, stopping at the commits reachable from
+		// the old ref tips.
+		boolean hasStart = false;
+		for (ObjectId tip : refTips.values ())
+		{
+			if (oldIndexMap.containsKey (tip))
+				continue;
+			try
+			{
+				revWalk.markStart (revWalk.parseCommit (tip));
+				hasStart = true;
+			}
+			catch (MissingObjectException | IncorrectObjectTypeException ex)
+			{
+				// the ref does not point to a commit
+			}
+		}
+
+		ArrayList<RevCommit> newCommits = new ArrayList<RevCommit> ();
+		BitSet mergePullRequests = new BitSet ();
+		if (hasStart)
+		{
+			try
+			{
+				if (oldCache != null)
+				{
+					for (ObjectId tip : oldCache.m_refTips.values ())
+					{
+						if (oldIndexMap.containsKey (tip))
+						{
+							revWalk.markUninteresting (revWalk.lookupCommit (tip));
+						}
+					}
+				}
+				for (RevCommit commit : revWalk)
+				{
+					if (!oldIndexMap.containsKey (commit))
+					{
+						if (commit.getParentCount () > 1 &&
+							isMergePullRequest (revWalk, commit))
+						{
+							mergePullRequests.set (newCommits.size ());
+						}
+						newCommits.add (commit);
+					}
+					monitor.update (1);
+					if (monitor.isCancelled ())
+						throw new CancellationException ();
+				}
+			}
+			finally
+			{
+				revWalk.reset ();
+			}
+		}
+
+		// the new commits are newer, so put them first.
+		int oldSize = (oldCache == null) ? 0 : oldCache.m_size;
+		int totalSize = newCommits.size () + oldSize;
+		HashMap<ObjectId, Integer> indexMap = new HashMap<ObjectId, Integer> (totalSize * 4 / 3 + 1);
+		for (int i = 0; i < newCommits.size (); ++i)
+		{
+			indexMap.put (newCommits.get (i), i);
+		}
+		for (int i = 0; i < oldSize; ++i)
+		{
+			indexMap.put (oldCache.m_commits[i], newCommits.size () + i);
+		}
+
+		int parentSize = (oldCache == null) ? 0 : oldCache.m_parentStart[oldSize];
+		for (RevCommit commit : newCommits)
+		{
+			parentSize += commit.getParentCount ();
+		}
+
+		CommitGraphCache all = new CommitGraphCache (totalSize, parentSize);
+		int parentIndex = 0;
+		int index = 0;
+		for (RevCommit commit : newCommits)
+		{
+			all.m_commits[index] = commit;
+			all.m_commitTimes[index] = commit.getCommitTime ();
+			all.m_flags[index] = mergePullRequests.get (index) ? (byte)FLAG_MERGE_PULL_REQUEST : 0;
+			all.m_parentStart[index] = parentIndex;
+			for (RevCommit parent : commit.getParents ())
+			{
+				Integer parentId = indexMap.get (parent);
+				if (parentId != null)
+				{
+					all.m_parents[parentIndex++] = parentId;
+				}
+			}
+			++index;
+		}
+		for (int i = 0; i < oldSize; ++i)
+		{
+			all.m_commits[index] = oldCache.m_commits[i];
+			all.m_commitTimes[index] = oldCache.m_commitTimes[i];
+			all.m_flags[index] = oldCache.m_flags[i];
+			all.m_parentStart[index] = parentIndex;
+			for (int j = oldCache.m_parentStart[i]; j < oldCache.m_parentStart[i + 1]; ++j)
+			{
+				all.m_parents[parentIndex++] = oldCache.m_parents[j] + newCommits.size ();
+			}
+			++index;
+		}
+		all.m_parentStart[totalSize] = parentIndex;
+		all.m_refTips.putAll (refTips);
+
+		return all.prune (indexMap);
+	}
+
+	private final RevCommit[] m_commits;
+	private final int[] m_commitTimes;
+	private final byte[] m_flags;
+	/** CSR style parent list.  Parents of commit i are stored in [m_parentStart[i], m_parentStart[i + 1]). */
+	private final int[] m_parentStart;
+	private final int[] m_parents;
+	private final TreeMap<String, ObjectId> m_refTips;
+	private final int m_size;
+
+	private CommitGraphCache (int size, int parentSize)
+	{
+		m_size = size;
+		m_commits = new RevCommit[size];
+		m_commitTimes = new int[size];
+		m_flags = new byte[size];
+		m_parentStart = new int[size + 1];
+		m_parents = new int[parentSize];
+		m_refTips = new TreeMap<String, ObjectId> ();
+	}
+
+	/**
+	 * Remove the commits that are not reachable from any of the ref tips.
+	 * This happens when branches are deleted or rewound.
+	 *
+	 * @param	indexMap
+	 * 			the commit to index map.
+	 * @return	this cache if all the commits are reachable.  Otherwise,
+	 * 			a new cache with only the reachable commits.
+	 */
+	private CommitGraphCache prune (Map<ObjectId, Integer> indexMap)
+	{
+		boolean[] reachable = new boolean[m_size];
+		int[] stack = new int[m_size];
+		int top = 0;
+		int count = 0;
+		for (ObjectId tip : m_refTips.values ())
+		{
+			Integer index = indexMap.get (tip);
+			if (index != null && !reachable[index])
+			{
+				reachable[index] = true;
+				stack[top++] = index;
+				++count;
+			}
+		}
+		while (top > 0)
+		{
+			int index = stack[--top];
+			for (int j = m_parentStart[index]; j < m_parentStart[index + 1]; ++j)
+			{
+				int parent = m_parents[j];
+				if (!reachable[parent])
+				{
+					reachable[parent] = true;
+					stack[top++] = parent;
+					++count;
+				}
+			}
+		}
+		if (count == m_size)
+		{
+			return this;
+		}
+
+		int[] newIndex = new int[m_size];
+		int parentSize = 0;
+		int index = 0;
+		for (int i = 0; i < m_size; ++i)
+		{
+			if (reachable[i])
+			{
+				newIndex[i] = index++;
+				parentSize += m_parentStart[i + 1] - m_parentStart[i];
+			}
+		}
+
+		CommitGraphCache cache = new CommitGraphCache (count, parentSize);
+		int parentIndex = 0;
+		for (int i = 0; i < m_size; ++i)
+		{
+			if (!reachable[i])
+				continue;
+			index = newIndex[i];
+			cache.m_commits[index] = m_commits[i];
+			cache.m_commitTimes[index] = m_commitTimes[i];
+			cache.m_flags[index] = m_flags[i];
+			cache.m_parentStart[index] = parentIndex;
+			for (int j = m_parentStart[i]; j < m_parentStart[i + 1]; ++j)
+			{
+				cache.m_parents[parentIndex++] = newIndex[m_parents[j]];
+			}
+		}
+		cache.m_parentStart[count] = parentIndex;
+		cache.m_refTips.putAll (m_refTips);
+		return cache;
+	}
+
+	/**
+	 * Create a graph of a subset of the commits with rewritten parents.
+	 *
+	 * @param	indices
+	 * 			the indices of the commits to keep, in order.
+	 * @param	parentLists
+	 * 			the parents of each kept commit, as indices into the new
+	 * 			graph.
+	 * @return	the new graph.  The ref tips are the same as this graph.
+	 */
+	CommitGraphCache subgraph (int[] indices, int[][] parentLists)
+	{
+		int parentSize = 0;
+		for (int[] parents : parentLists)
+		{
+			parentSize += parents.length;
+		}
+
+		CommitGraphCache cache = new CommitGraphCache (indices.length, parentSize);
+		int parentIndex = 0;
+		for (int i = 0; i < indices.length; ++i)
+		{
+			cache.m_commits[i] = m_commits[indices[i]];
+			cache.m_commitTimes[i] = m_commitTimes[indices[i]];
+			cache.m_flags[i] = m_flags[indices[i]];
+			cache.m_parentStart[i] = parentIndex;
+			for (int parent : parentLists[i])
+			{
+				cache.m_parents[parentIndex++] = parent;
+			}
+		}
+		cache.m_parentStart[indices.length] = parentIndex;
+		cache.m_refTips.putAll (m_refTips);
+		return cache;
+	}
+
+	private void write (File file) throws IOException
+	{
+		File tmpFile = new File (file.getPath () + ".tmp");
+		try (DataOutputStream dos = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (tmpFile), 65536)))
+		{
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+
+			dos.writeInt (MAGIC);
+			dos.writeInt (VERSION);
+			dos.writeInt (m_size);
+			dos.writeInt (m_parentStart[m_size]);
+			for (int i = 0; i < m_size; ++i)
+			{
+				m_commits[i].copyRawTo (raw, 0);
+				dos.write (raw);
+				dos.writeInt (m_commitTimes[i]);
+				dos.writeByte (m_flags[i]);
+				dos.writeByte (m_parentStart[i + 1] - m_parentStart[i]);
+				for (int j = m_parentStart[i]; j < m_parentStart[i + 1]; ++j)
+				{
+					dos.writeInt (m_parents[j]);
+				}
+			}
+
+			dos.writeInt (m_refTips.size ());
+			for (Map.Entry<String, ObjectId> entry : m_refTips.entrySet ())
+			{
+				dos.writeUTF (entry.getKey ());
+				entry.getValue ().copyRawTo (raw, 0);
+				dos.write (raw);
+			}
+		}
+		if (!tmpFile.renameTo (file))
+		{
+			file.delete ();
+			if (!tmpFile.renameTo (file))
+			{
+				throw new IOException ("Unable to write " + file);
+			}
+		}
+	}
+
+	public int size ()
+	{
+		return m_size;
+	}
+
+	public RevCommit getCommit (int index)
+	{
+		return m_commits[index];
+	}
+
+	public int getCommitTime (int index)
+	{
+		return m_commitTimes[index];
+	}
+
+	public boolean isMergePullRequest (int index)
+	{
+		return (m_flags[index] & FLAG_MERGE_PULL_REQUEST) != 0;
+	}
+
+	public int getParentCount (int index)
+	{
+		return m_parentStart[index + 1] - m_parentStart[index];
+	}
+
+	public int getParent (int index, int n)
+	{
+		return m_parents[m_parentStart[index] + n];
+	}
+
+	public Map<String, ObjectId> getRefTips ()
+	{
+		return m_refTips;
+	}
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.yuanheng.jgvt.GitRepo;
+
+/**
+ * Compute the history of a file from the commit graph.
+ * <p>
+ * The commits are simplified the same way as <code>git log -- path</code>:
+ * a commit is kept only if it changed the path from all of its parents.
+ * If a merge did not change the path from one of its parents, only that
+ * parent is followed.  The parents of the kept commits are rewritten to
+ * their nearest kept ancestors.
+ * <p>
+ * The {@link ChangedPathIndex} is checked first, so that the trees are
+ * only compared for the commits that might have changed the path.  When
+ * the path was added by a rename, the history continues with the old
+ * path.
+ *
+ * @author	Heng Yuan
+ */
+public class FileHistory
+{
+	/**
+	 * Get the commit graph of the commits that changed a path.
+	 *
+	 * @param	gitRepo
+	 * 			the git repo
+	 * @param	graph
+	 * 			the commit graph of all the commits.
+	 * @param	path
+	 * 			the path relative to the repository root.
+	 * @param	monitor
+	 * 			the progress monitor
+	 * @return	the commit graph of the path.
+	 * @throws	IOException
+	 * 			in case of I/O error.
+	 * @throws	CancellationException
+	 * 			if the monitor is cancelled.
+	 */
+	public static CommitGraphCache filter (GitRepo gitRepo, CommitGraphCache graph, String path, ProgressMonitor monitor) throws IOException
+	{
+		ChangedPathIndex index = ChangedPathIndex.load (gitRepo, graph, monitor);
+		DiffConfig diffConfig = gitRepo.getRepo ().getConfig ().get (DiffConfig.KEY);
+		try (ObjectReader reader = gitRepo.getRepo ().newObjectReader ();
+			 RevWalk revWalk = new RevWalk (reader))
+		{
+			revWalk.setRetainBody (false);
+			return new FileHistory (graph, index, reader, revWalk, diffConfig).filter (path, monitor);
+		}
+	}
+
+	private final CommitGraphCache m_graph;
+	private final ChangedPathIndex m_index;
+	private final ObjectReader m_reader;
+	private final RevWalk m_revWalk;
+	private final DiffConfig m_diffConfig;
+
+	private FileHistory (CommitGraphCache graph, ChangedPathIndex index, ObjectReader reader, RevWalk revWalk, DiffConfig diffConfig)
+	{
+		m_graph = graph;
+		m_index = index;
+		m_reader = reader;
+		m_revWalk = revWalk;
+		m_diffConfig = diffConfig;
+	}
+
+	private CommitGraphCache filter (String path, ProgressMonitor monitor) throws IOException
+	{
+		int size = m_graph.size ();
+
+		// topological order with the children before the parents.
+		int[] childCounts = new int[size];
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < m_graph.getParentCount (i); ++j)
+				++childCounts[m_graph.getParent (i, j)];
+		}
+		int[] order = new int[size];
+		int tail = 0;
+		for (int i = 0; i < size; ++i)
+		{
+			if (childCounts[i] == 0)
+				order[tail++] = i;
+		}
+		for (int head = 0; head < tail; ++head)
+		{
+			int i = order[head];
+			for (int j = 0; j < m_graph.getParentCount (i); ++j)
+			{
+				int parent = m_graph.getParent (i, j);
+				if (--childCounts[parent] == 0)
+					order[tail++] = parent;
+			}
+		}
+
+		// the paths of each commit.  The paths can differ from the original
+		// path for the commits before a rename.  Only the ref tips and the
+		// commits reachable through the followed parents have the paths.
+		String[][] paths = new String[size][];
+		HashSet<ObjectId> tips = new HashSet<ObjectId> (m_graph.getRefTips ().values ());
+		for (int i = 0; i < size; ++i)
+		{
+			if (tips.contains (m_graph.getCommit (i)))
+				paths[i] = new String[] { path };
+		}
+		boolean[] included = new boolean[size];
+		// the only parent followed by a commit that is not included.
+		int[] followParents = new int[size];
+		Arrays.fill (followParents, -1);
+
+		monitor.beginTask ("Filtering commits", size);
+		for (int k = 0; k < tail; ++k)
+		{
+			int i = order[k];
+			String[] commitPaths = paths[i];
+			paths[i] = null;
+			monitor.update (1);
+			if (monitor.isCancelled ())
+				throw new CancellationException ();
+			if (commitPaths == null)
+				continue;
+
+			int parentCount = m_graph.getParentCount (i);
+			if (parentCount == 0)
+			{
+				included[i] = exists (getTree (i), commitPaths);
+			}
+			else
+			{
+				int same = -1;
+				for (int j = 0; j < parentCount && same < 0; ++j)
+				{
+					int parent = m_graph.getParent (i, j);
+					if (j == 0 && !mightChange (i, commitPaths))
+						same = parent;
+					else if (isSame (getTree (parent), getTree (i), commitPaths))
+						same = parent;
+				}
+				if (same >= 0)
+				{
+					followParents[i] = same;
+					paths[same] = union (paths[same], commitPaths);
+				}
+				else
+				{
+					included[i] = true;
+					for (int j = 0; j < parentCount; ++j)
+					{
+						int parent = m_graph.getParent (i, j);
+						paths[parent] = union (paths[parent], getParentPaths (getTree (parent), getTree (i), commitPaths));
+					}
+				}
+			}
+		}
+		monitor.endTask ();
+
+		// rewrite the parents to the nearest included ancestors.  The parents
+		// are visited before the children.
+		int[] targets = new int[size];
+		int count = 0;
+		for (int k = tail - 1; k >= 0; --k)
+		{
+			int i = order[k];
+			if (included[i])
+			{
+				targets[i] = i;
+				++count;
+			}
+			else
+				targets[i] = followParents[i] < 0 ? -1 : targets[followParents[i]];
+		}
+
+		int[] indices = new int[count];
+		int[] newIndices = new int[size];
+		count = 0;
+		for (int i = 0; i < size; ++i)
+		{
+			if (included[i])
+			{
+				indices[count] = i;
+				newIndices[i] = count++;
+			}
+		}
+		int[][] parentLists = new int[count][];
+		for (int n = 0; n < count; ++n)
+		{
+			int i = indices[n];
+			int[] parents = new int[m_graph.getParentCount (i)];
+			int parentCount = 0;
+			for (int j = 0; j < parents.length; ++j)
+			{
+				int target = targets[m_graph.getParent (i, j)];
+				if (target < 0)
+					continue;
+				int parent = newIndices[target];
+				boolean duplicate = false;
+				for (int p = 0; p < parentCount; ++p)
+				{
+					if (parents[p] == parent)
+						duplicate = true;
+				}
+				if (!duplicate)
+					parents[parentCount++] = parent;
+			}
+			parentLists[n] = Arrays.copyOf (parents, parentCount);
+		}
+		return m_graph.subgraph (indices, parentLists);
+	}
+
+	private boolean mightChange (int index, String[] paths)
+	{
+		for (String path : paths)
+		{
+			if (m_index.mightChange (m_graph.getCommit (index), path))
+				return true;
+		}
+		return false;
+	}
+
+	private RevTree getTree (int index) throws IOException
+	{
+		return m_revWalk.parseCommit (m_graph.getCommit (index)).getTree ();
+	}
+
+	private boolean exists (RevTree tree, String[] paths) throws IOException
+	{
+		try (TreeWalk tw = new TreeWalk (m_reader))
+		{
+			tw.setRecursive (true);
+			tw.setFilter (PathFilterGroup.createFromStrings (paths));
+			tw.addTree (tree);
+			return tw.next ();
+		}
+	}
+
+	private boolean isSame (RevTree parentTree, RevTree tree, String[] paths) throws IOException
+	{
+		try (TreeWalk tw = new TreeWalk (m_reader))
+		{
+			tw.setRecursive (true);
+			tw.setFilter (AndTreeFilter.create (PathFilterGroup.createFromStrings (paths), TreeFilter.ANY_DIFF));
+			tw.addTree (parentTree);
+			tw.addTree (tree);
+			return !tw.next ();
+		}
+	}
+
+	/**
+	 * Get the paths in the parent.  A path that does not exist in the
+	 * parent is replaced by the source of the rename, if there is one.
+	 */
+	private String[] getParentPaths (RevTree parentTree, RevTree tree, String[] paths) throws IOException
+	{
+		String[] parentPaths = paths;
+		for (int i = 0; i < paths.length; ++i)
+		{
+			String path = paths[i];
+			if (exists (parentTree, new String[] { path }) ||
+				!exists (tree, new String[] { path }))
+			{
+				continue;
+			}
+			String oldPath = getRenameSource (parentTree, tree, path);
+			if (oldPath != null)
+			{
+				if (parentPaths == paths)
+					parentPaths = paths.clone ();
+				parentPaths[i] = oldPath;
+			}
+		}
+		return parentPaths;
+	}
+
+	private String getRenameSource (RevTree parentTree, RevTree tree, String path) throws IOException
+	{
+		try (TreeWalk tw = new TreeWalk (m_reader))
+		{
+			tw.setRecursive (true);
+			tw.setFilter (TreeFilter.ANY_DIFF);
+			tw.addTree (parentTree);
+			tw.addTree (tree);
+			RenameDetector rd = new RenameDetector (m_reader, m_diffConfig);
+			rd.addAll (DiffEntry.scan (tw));
+			List<DiffEntry> entries = rd.compute (m_reader, NullProgressMonitor.INSTANCE);
+			for (DiffEntry entry : entries)
+			{
+				if (entry.getChangeType () == DiffEntry.ChangeType.RENAME &&
+					path.equals (entry.getNewPath ()))
+				{
+					return entry.getOldPath ();
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String[] union (String[] paths1, String[] paths2)
+	{
+		if (paths1 == null || paths1 == paths2)
+			return paths2;
+		String[] paths = paths1;
+		for (String path : paths2)
+		{
+			if (Arrays.asList (paths).contains (path))
+				continue;
+			paths = Arrays.copyOf (paths, paths.length + 1);
+			paths[paths.length - 1] = path;
+		}
+		return paths;
+	}
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.io.NullOutputStream;
+import org.yuanheng.jgvt.Debug;
+import org.yuanheng.jgvt.Defaults;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.Main;
+import org.yuanheng.jgvt.RefSnapshot;
+
+/**
+ * The result of the branch discovery and the layout of a tree, stored in
+ * .git/jgvt/.  It contains the branch membership, the relation types, the
+ * parent and children order and x/y of each node, along with the branch
+ * discovery log.
+ * <p>
+ * The file is keyed by a hash of everything the result depends on: the
+ * refs, the user edits, the important branch names, the history window
+ * and the file path.  It is memory-mapped when it is read.
+ *
+ * @author	Heng Yuan
+ */
+public class LayoutCache
+{
+	private final static int MAGIC = 0x4a47564c;	// JGVL
+	private final static int VERSION = 4;
+	/** The bytes of a branch: the id, the weight, x and y. */
+	private final static int BRANCH_RECORD_SIZE = 4 * 4;
+
+	/**
+	 * Compute the key of a layout.
+	 *
+	 * @param	refs
+	 * 			the refs the tree is built from.
+	 * @param	editList
+	 * 			the user edits
+	 * @param	importantBranchNames
+	 * 			the important branch name patterns
+	 * @param	minCommitTime
+	 * 			the commit time of the oldest commits in the tree.
+	 * @param	path
+	 * 			the file path of the tree.  It can be null.
+	 * @return	the key
+	 */
+	public static byte[] computeKey (RefSnapshot refs, RelationEditList editList, List<String> importantBranchNames, int minCommitTime, String path)
+	{
+		MessageDigest md = Constants.newMessageDigest ();
+		try (DataOutputStream dos = new DataOutputStream (new DigestOutputStream (NullOutputStream.INSTANCE, md)))
+		{
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			dos.writeInt (VERSION);
+			dos.writeInt (refs.getTips ().size ());
+			for (Map.Entry<String, ObjectId> entry : refs.getTips ().entrySet ())
+			{
+				dos.writeUTF (entry.getKey ());
+				entry.getValue ().copyRawTo (raw, 0);
+				dos.write (raw);
+			}
+			dos.writeInt (editList.size ());
+			for (RelationEditEntry entry : editList.getList ())
+			{
+				entry.id.copyRawTo (raw, 0);
+				dos.write (raw);
+				dos.writeInt (entry.mergeParent);
+			}
+			dos.writeInt (importantBranchNames.size ());
+			for (String name : importantBranchNames)
+			{
+				dos.writeUTF (name);
+			}
+			dos.writeInt (minCommitTime);
+			dos.writeUTF (path == null ? "" : path);
+			dos.writeBoolean (Main.pref.getLeftOnly ());
+		}
+		catch (IOException ex)
+		{
+			// not possible
+		}
+		return md.digest ();
+	}
+
+	/**
+	 * Restore the layout of a tree.  The tree must have the nodes added
+	 * but not yet inferred.
+	 *
+	 * @param	gitRepo
+	 * 			the git repo
+	 * @param	key
+	 * 			the key computed by {@link #computeKey}
+	 * @param	tree
+	 * 			the tree
+	 * @param	log
+	 * 			the branch discovery log to restore.
+	 * @return	true if the layout was restored.  false if there is no
+	 * 			saved layout for the key, and the tree is unchanged.
+	 */
+	public static boolean load (GitRepo gitRepo, byte[] key, RelationTree tree, BranchLog log)
+	{
+		File file = getCacheFile (gitRepo);
+		if (!file.isFile ())
+			return false;
+		try (FileChannel channel = FileChannel.open (file.toPath ()))
+		{
+			MappedByteBuffer buffer = channel.map (FileChannel.MapMode.READ_ONLY, 0, channel.size ());
+			if (buffer.getInt () != MAGIC ||
+				buffer.getInt () != VERSION)
+				return false;
+			byte[] fileKey = new byte[key.length];
+			buffer.get (fileKey);
+			if (!Arrays.equals (key, fileKey))
+				return false;
+			if (!read (buffer, tree, log))
+			{
+				Debug.println ("layout cache does not match the tree");
+				return false;
+			}
+			Debug.println ("layout cache: " + tree.size () + " nodes");
+			return true;
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			Debug.printStackTrace (ex);
+		}
+		return false;
+	}
+
+	/**
+	 * Save the layout of a tree.
+	 *
+	 * @param	gitRepo
+	 * 			the git repo
+	 * @param	key
+	 * 			the key computed by {@link #computeKey}
+	 * @param	tree
+	 * 			the tree after the branch discovery and the layout.
+	 * @param	log
+	 * 			the branch discovery log
+	 */
+	public static void save (GitRepo gitRepo, byte[] key, RelationTree tree, BranchLog log)
+	{
+		File file = getCacheFile (gitRepo);
+		try
+		{
+			File dir = file.getParentFile ();
+			if (dir.isDirectory () || dir.mkdir ())
+			{
+				write (file, key, tree, log);
+			}
+		}
+		catch (IOException ex)
+		{
+			Debug.printStackTrace (ex);
+		}
+	}
+
+	private static File getCacheFile (GitRepo gitRepo)
+	{
+		File jgvtDir = new File (gitRepo.getGitDir (), Defaults.GIT_DIR_JGVT_DIR);
+		return new File (jgvtDir, Defaults.JGVT_LAYOUT);
+	}
+
+	private static void write (File file, byte[] key, RelationTree tree, BranchLog log) throws IOException
+	{
+		RelationNodeStore store = tree.getStore ();
+		int size = store.size ();
+
+		// number the branches in the node order
+		HashMap<RelationBranch, Integer> branchMap = new HashMap<RelationBranch, Integer> ();
+		ArrayList<RelationBranch> branches = new ArrayList<RelationBranch> ();
+		int[] branchIndices = new int[size];
+		for (int i = 0; i < size; ++i)
+		{
+			RelationBranch branch = store.getRelationBranch (i);
+			if (branch == null)
+			{
+				branchIndices[i] = -1;
+				continue;
+			}
+			Integer index = branchMap.get (branch);
+			if (index == null)
+			{
+				index = branches.size ();
+				branchMap.put (branch, index);
+				branches.add (branch);
+			}
+			branchIndices[i] = index;
+		}
+
+		File tmpFile = new File (file.getPath () + ".tmp");
+		try (DataOutputStream dos = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (tmpFile), 65536)))
+		{
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+
+			dos.writeInt (MAGIC);
+			dos.writeInt (VERSION);
+			dos.write (key);
+			dos.writeInt (size);
+			for (int i = 0; i < size; ++i)
+			{
+				store.getCommit (i).copyRawTo (raw, 0);
+				dos.write (raw);
+			}
+			store.writeLayout (dos);
+
+			dos.writeInt (tree.getStartNode () == null ? -1 : tree.getStartNode ().getIndex ());
+			dos.writeInt (branches.size ());
+			for (RelationBranch branch : branches)
+			{
+				LayoutInfo info = branch.getLayoutInfo ();
+				dos.writeInt (branch.getId ());
+				dos.writeInt (info.getWeight ());
+				dos.writeInt (info.getX ());
+				dos.writeInt (info.getY ());
+			}
+			for (int i = 0; i < size; ++i)
+			{
+				dos.writeInt (branchIndices[i]);
+			}
+
+			dos.writeInt (log.size ());
+			for (int i = 0; i < log.size (); ++i)
+			{
+				BranchLog.BranchLogEntry entry = log.get (i);
+				byte[] algorithm = entry.algorithm.getBytes (StandardCharsets.UTF_8);
+				dos.writeInt (entry.node.getIndex ());
+				dos.writeInt (entry.iteration);
+				dos.writeShort (algorithm.length);
+				dos.write (algorithm);
+			}
+			dos.writeInt (log.getIterations ());
+		}
+		if (!tmpFile.renameTo (file))
+		{
+			file.delete ();
+			if (!tmpFile.renameTo (file))
+			{
+				throw new IOException ("Unable to write " + file);
+			}
+		}
+	}
+
+	private static boolean read (ByteBuffer buffer, RelationTree tree, BranchLog log)
+	{
+		RelationNodeStore store = tree.getStore ();
+		int size = store.size ();
+		if (buffer.getInt () != size)
+			return false;
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		for (int i = 0; i < size; ++i)
+		{
+			buffer.get (raw);
+			if (!store.getCommit (i).equals (ObjectId.fromRaw (raw)))
+				return false;
+		}
+
+		// everything is read and validated before the tree is changed.
+		RelationNodeStore.Layout layout = store.readLayout (buffer);
+		if (layout == null)
+			return false;
+
+		int startNode = buffer.getInt ();
+		if (startNode < -1 || startNode >= size)
+			return false;
+		int branchCount = buffer.getInt ();
+		if (branchCount < 0 || buffer.remaining () < (long)branchCount * BRANCH_RECORD_SIZE)
+			return false;
+		int[] branchInfo = new int[branchCount * BRANCH_RECORD_SIZE / 4];
+		buffer.asIntBuffer ().get (branchInfo);
+		buffer.position (buffer.position () + branchInfo.length * 4);
+		int[] branchIndices = new int[size];
+		buffer.asIntBuffer ().get (branchIndices);
+		buffer.position (buffer.position () + size * 4);
+		for (int index : branchIndices)
+		{
+			if (index < -1 || index >= branchCount)
+				return false;
+		}
+		int[] previous = getBranchChains (layout, branchIndices, branchCount);
+		if (previous == null)
+			return false;
+
+		int logSize = buffer.getInt ();
+		BranchLog newLog = new BranchLog ();
+		for (int i = 0; i < logSize; ++i)
+		{
+			int node = buffer.getInt ();
+			int iteration = buffer.getInt ();
+			byte[] algorithm = new byte[buffer.getShort () & 0xffff];
+			buffer.get (algorithm);
+			if (node < 0 || node >= size)
+				return false;
+			newLog.log (store.getNode (node), new String (algorithm, StandardCharsets.UTF_8), iteration);
+		}
+		newLog.addIterations (buffer.getInt ());
+
+		store.applyLayout (layout);
+
+		// the branches are built from the first node to the last node.
+		int[] next = new int[size];
+		Arrays.fill (next, -1);
+		for (int i = 0; i < size; ++i)
+		{
+			if (previous[i] >= 0)
+				next[previous[i]] = i;
+		}
+		int nextId = 0;
+		for (int i = 0; i < size; ++i)
+		{
+			int index = branchIndices[i];
+			if (index < 0 || previous[i] >= 0)
+				continue;
+			int id = branchInfo[index * 4];
+			RelationBranch branch = new RelationBranch (id, store.getNode (i));
+			for (int j = next[i]; j >= 0; j = next[j])
+			{
+				branch.add (store.getNode (j));
+			}
+			LayoutInfo info = branch.getLayoutInfo ();
+			info.setWeight (branchInfo[index * 4 + 1]);
+			info.setX (branchInfo[index * 4 + 2]);
+			info.setY (branchInfo[index * 4 + 3]);
+			nextId = Math.max (nextId, id + 1);
+		}
+		tree.reserveBranchIds (nextId);
+		if (startNode >= 0)
+			tree.setStartNode (store.getNode (startNode));
+		log.addAll (newLog);
+		return true;
+	}
+
+	/**
+	 * Find the node before each node in its branch, which is the first
+	 * parent in the same branch.  Each branch must be a single chain of
+	 * nodes.
+	 *
+	 * @param	layout
+	 * 			the layout read, which has the parent order.
+	 * @param	branchIndices
+	 * 			the branch index of each node.  -1 if the node does not
+	 * 			have a branch.
+	 * @param	branchCount
+	 * 			the number of branches.
+	 * @return	the previous node of each node.  -1 for the first node of a
+	 * 			branch.  null if the branches are not chains.
+	 */
+	private static int[] getBranchChains (RelationNodeStore.Layout layout, int[] branchIndices, int branchCount)
+	{
+		int size = branchIndices.length;
+		int[] previous = new int[size];
+		boolean[] hasNext = new boolean[size];
+		int[] firstCounts = new int[branchCount];
+		for (int i = 0; i < size; ++i)
+		{
+			previous[i] = -1;
+			int index = branchIndices[i];
+			if (index < 0)
+				continue;
+			for (int n = 0; n < layout.getParentCount (i); ++n)
+			{
+				int parent = layout.getParent (i, n);
+				if (branchIndices[parent] == index)
+				{
+					previous[i] = parent;
+					break;
+				}
+			}
+			if (previous[i] < 0)
+			{
+				++firstCounts[index];
+			}
+			else
+			{
+				if (hasNext[previous[i]])
+					return null;
+				hasNext[previous[i]] = true;
+			}
+		}
+		for (int count : firstCounts)
+		{
+			if (count != 1)
+				return null;
+		}
+		return previous;
+	}
+
+}
@@ -38,6 +38,20 @@ public class LayoutInfo
 		m_y = -1;
 	}
 
+	/**
+	 * Copy the layout of another branch.
+	 *
+	 * @param	info
+	 * 			the layout info to be copied.
+	 */
+	void copy (LayoutInfo info)
+	{
+		m_visited = info.m_visited;
+		m_weight = info.m_weight;
+		m_x = info.m_x;
+		m_y = info.m_y;
+	}
+
 	public boolean isVisited ()
 	{
 		return m_visited;
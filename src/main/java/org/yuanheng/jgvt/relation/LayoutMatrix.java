@@ -15,92 +15,190 @@
  */
 package org.yuanheng.jgvt.relation;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 
 /**
+ * The columns taken by the branches in each row.
+ * <p>
+ * It is a segment tree over the rows.  Each segment keeps the columns taken
+ * in all of its rows, and the columns taken in any of its rows.  A branch
+ * takes or frees a column for a range of rows in O(log rows), and the first
+ * free column for a range of rows is found by skipping the runs of the
+ * taken columns of O(log rows) segments, instead of checking every row of
+ * every column.
+ *
  * @author	Heng Yuan
  */
 class LayoutMatrix
 {
-	private final ArrayList<int[]> m_matrix;
+	private static class Segment
+	{
+		/** The columns taken in all the rows of this segment. */
+		final BitSet all = new BitSet ();
+		/** The columns taken in any row of this segment. */
+		final BitSet any = new BitSet ();
+		Segment left;
+		Segment right;
+	}
+
+	private Segment m_root = new Segment ();
+	/** The number of rows of the root segment.  Always a power of 2. */
+	private int m_rows = 1;
 
 	public LayoutMatrix ()
 	{
-		m_matrix = new ArrayList<int[]> ();
 	}
 
 	public void take (int x, int y)
 	{
-		if (m_matrix.size () <= y)
-		{
-			int count = y - m_matrix.size () + 1;
-			for (int i = 0; i < count; ++i)
-			{
-				m_matrix.add (null);
-			}
-		}
-		int[] row = m_matrix.get (y);
-		if (row == null || row.length <= (x / 32))
+		take (x, y, y);
+	}
+
+	public void take (int x, int y1, int y2)
+	{
+		if (y1 > y2)
+			return;
+		while (m_rows <= y2)
 		{
-			int[] newRow = new int[(x / 32) + 10];
-			if (row != null)
-			{
-				for (int i = 0; i < row.length; ++i)
-					newRow[i] = row[i];
-			}
-			row = newRow;
-			m_matrix.set (y, row);
+			// double the rows, and the old root becomes the first half.
+			Segment root = new Segment ();
+			root.left = m_root;
+			root.any.or (m_root.any);
+			m_root = root;
+			m_rows *= 2;
 		}
-		setBit (row, x);
+		take (m_root, 0, m_rows - 1, x, y1, y2);
 	}
 
-	public void take (int x, int y1, int y2)
+	private static void take (Segment segment, int lo, int hi, int x, int y1, int y2)
 	{
-		if (m_matrix.size () <= y2)
+		segment.any.set (x);
+		if (y1 <= lo && hi <= y2)
+		{
+			segment.all.set (x);
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		if (y1 <= mid)
 		{
-			int count = y2 - m_matrix.size () + 1;
-			for (int i = 0; i < count; ++i)
-			{
-				m_matrix.add (null);
-			}
+			if (segment.left == null)
+				segment.left = new Segment ();
+			take (segment.left, lo, mid, x, y1, y2);
 		}
-		for (int y = y1; y <= y2; ++y)
+		if (y2 > mid)
 		{
-			take (x, y);
+			if (segment.right == null)
+				segment.right = new Segment ();
+			take (segment.right, mid + 1, hi, x, y1, y2);
 		}
 	}
 
-	public boolean isTaken (int x, int y)
+	/**
+	 * Free a column for a range of rows.
+	 *
+	 * @param	x
+	 * 			the column
+	 * @param	y1
+	 * 			the first row
+	 * @param	y2
+	 * 			the last row
+	 */
+	public void free (int x, int y1, int y2)
+	{
+		if (y1 > y2 || y1 >= m_rows)
+			return;
+		if (y2 >= m_rows)
+			y2 = m_rows - 1;
+		free (m_root, 0, m_rows - 1, x, y1, y2);
+	}
+
+	private static void free (Segment segment, int lo, int hi, int x, int y1, int y2)
 	{
-		if (m_matrix.size () <= y)
+		if (segment == null || !segment.any.get (x))
+			return;
+		if (y1 <= lo && hi <= y2)
 		{
-			return false;
+			segment.all.clear (x);
+			segment.any.clear (x);
+			free (segment.left, lo, (lo + hi) >>> 1, x, y1, y2);
+			free (segment.right, ((lo + hi) >>> 1) + 1, hi, x, y1, y2);
+			return;
 		}
-		int[] row = m_matrix.get (y);
-		if (row == null || row.length <= (x / 32))
+		int mid = (lo + hi) >>> 1;
+		if (segment.all.get (x))
 		{
-			return false;
+			// the rows outside the range stay taken.
+			segment.all.clear (x);
+			if (segment.left == null)
+				segment.left = new Segment ();
+			if (segment.right == null)
+				segment.right = new Segment ();
+			segment.left.all.set (x);
+			segment.left.any.set (x);
+			segment.right.all.set (x);
+			segment.right.any.set (x);
 		}
-		return isBitSet (row, x);
+		if (y1 <= mid)
+			free (segment.left, lo, mid, x, y1, y2);
+		if (y2 > mid)
+			free (segment.right, mid + 1, hi, x, y1, y2);
+		if (!(segment.left != null && segment.left.any.get (x)) &&
+			!(segment.right != null && segment.right.any.get (x)))
+			segment.any.clear (x);
+	}
+
+	public boolean isTaken (int x, int y)
+	{
+		return isTaken (x, y, y);
 	}
 
 	public boolean isTaken (int x, int y1, int y2)
 	{
-		for (int y = y1; y <= y2; ++y)
-		{
-			if (isTaken (x, y))
-				return true;
-		}
-		return false;
+		return getFreeColumn (x, y1, y2) != x;
 	}
 
-	private static boolean isBitSet (int[] arr, int bit)
+	/**
+	 * Find the first column from x that is free in all the rows from y1 to
+	 * y2.
+	 *
+	 * @param	x
+	 * 			the first column to check
+	 * @param	y1
+	 * 			the first row
+	 * @param	y2
+	 * 			the last row
+	 * @return	the free column.
+	 */
+	public int getFreeColumn (int x, int y1, int y2)
 	{
-		return ((arr[bit / 32]) & (1 << (bit % 32))) != 0;
+		if (y1 > y2 || y1 >= m_rows)
+			return x;
+		if (y2 >= m_rows)
+			y2 = m_rows - 1;
+		// skip the taken columns until none of the segments moves x.
+		for (;;)
+		{
+			int freeX = getFreeColumn (m_root, 0, m_rows - 1, x, y1, y2);
+			if (freeX == x)
+				return x;
+			x = freeX;
+		}
 	}
 
-	private static void setBit (int[] arr, int bit)
+	private static int getFreeColumn (Segment segment, int lo, int hi, int x, int y1, int y2)
 	{
-		arr[bit / 32] |= (1 << (bit % 32));
+		if (segment == null)
+			return x;
+		if (y1 <= lo && hi <= y2)
+			return segment.any.nextClearBit (x);
+		x = segment.all.nextClearBit (x);
+		if (!segment.any.get (x))
+			return x;
+		int mid = (lo + hi) >>> 1;
+		if (y1 <= mid)
+			x = getFreeColumn (segment.left, lo, mid, x, y1, y2);
+		if (y2 > mid)
+			x = getFreeColumn (segment.right, mid + 1, hi, x, y1, y2);
+		return x;
 	}
 }
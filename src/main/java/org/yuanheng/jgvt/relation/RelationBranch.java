@@ -16,55 +16,235 @@
 package org.yuanheng.jgvt.relation;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
+ * A chain of nodes in which each node is the parent 0 of the next node.
+ * <p>
+ * The nodes of the branches are kept in disjoint node sets (union-find), so
+ * merging two branches links their node sets instead of moving the nodes.
+ * A node has a position relative to its set, and a set has an offset to
+ * its parent set, so the position of a node in its branch is found along
+ * the way to the root set.  The ends and the size are updated as the
+ * branches merge, so that {@link #getFirst()}, {@link #getLast()} and
+ * {@link #indexOf(RelationNode)} do not need the ordered list.
+ *
  * @author	Heng Yuan
  */
 public class RelationBranch implements Comparable<RelationBranch>
 {
-	private static int s_id = 0;
+	/**
+	 * The ids of the branches created by a thread discovering the branches
+	 * of a part of a tree.
+	 */
+	private static class IdSequence
+	{
+		private int m_next;
+		private final int m_step;
+
+		public IdSequence (int start, int step)
+		{
+			m_next = start;
+			m_step = step;
+		}
+	}
+
+	private final static ThreadLocal<IdSequence> s_idSequence = new ThreadLocal<IdSequence> ();
+
+	/**
+	 * Create the branch ids of the current thread from a sequence instead,
+	 * so that the ids do not depend on the scheduling of the threads which
+	 * discover the branches in parallel.
+	 *
+	 * @param	start
+	 * 			the first id
+	 * @param	step
+	 * 			the difference between the consecutive ids.
+	 */
+	static void beginIdSequence (int start, int step)
+	{
+		s_idSequence.set (new IdSequence (start, step));
+	}
+
+	/**
+	 * Stop creating the branch ids of the current thread from a sequence.
+	 *
+	 * @return	the next id of the sequence.
+	 */
+	static int endIdSequence ()
+	{
+		IdSequence sequence = s_idSequence.get ();
+		s_idSequence.remove ();
+		return sequence.m_next;
+	}
+
+	/**
+	 * Create the id of a branch.  Outside of a sequence, the ids are
+	 * numbered per tree, so that the ids of a build do not depend on the
+	 * other builds.
+	 */
+	private static int createId (RelationNode node)
+	{
+		IdSequence sequence = s_idSequence.get ();
+		if (sequence == null)
+			return node.getTree ().createBranchId ();
+		int id = sequence.m_next;
+		sequence.m_next += sequence.m_step;
+		return id;
+	}
 
 	private final int m_id;
-	private final Set<RelationNode> m_nodes = new HashSet<RelationNode> ();
 	private final LayoutInfo m_layoutInfo = new LayoutInfo ();
+
+	/** The parent in the union-find of the node sets.  null for a root set. */
+	private RelationBranch m_parentSet;
+	/** The offset from the positions in this set to the parent set. */
+	private int m_setOffset;
+	private int m_setRank;
+	/** The branch whose nodes are in this set, if this is a root set. */
+	private RelationBranch m_owner;
+
+	private RelationNode m_first;
+	private RelationNode m_last;
+	private int m_size;
+	/** The position of the first node in the root set of this branch. */
+	private int m_firstPosition;
 	private ArrayList<RelationNode> m_orderedList;
 
 	public RelationBranch (RelationNode node)
 	{
-		m_id = s_id++;
+		m_id = createId (node);
+		m_owner = this;
+		add (node);
+	}
+
+	/**
+	 * Create a branch restored from a layout cache.
+	 *
+	 * @param	id
+	 * 			the id of the branch when the layout was saved.
+	 * @param	node
+	 * 			the first node.
+	 */
+	RelationBranch (int id, RelationNode node)
+	{
+		m_id = id;
+		m_owner = this;
 		add (node);
 	}
 
+	/**
+	 * Copy a branch to the nodes of a copied tree.  The copy keeps the id
+	 * and the layout of the branch, and owns a node set of its own.  The
+	 * nodes are assigned to the copy by the caller.
+	 *
+	 * @param	branch
+	 * 			the branch to be copied.
+	 * @param	first
+	 * 			the copy of the first node.
+	 * @param	last
+	 * 			the copy of the last node.
+	 */
+	RelationBranch (RelationBranch branch, RelationNode first, RelationNode last)
+	{
+		m_id = branch.m_id;
+		m_layoutInfo.copy (branch.m_layoutInfo);
+		m_owner = this;
+		m_first = first;
+		m_last = last;
+		m_size = branch.m_size;
+		m_firstPosition = branch.m_first.getBranchPosition ();
+	}
+
+	/**
+	 * Find the root of the node set, and link this set directly to it.
+	 *
+	 * @return	the root set.
+	 */
+	RelationBranch findRoot ()
+	{
+		if (m_parentSet == null)
+			return this;
+		RelationBranch root = m_parentSet.findRoot ();
+		if (m_parentSet != root)
+		{
+			m_setOffset += m_parentSet.m_setOffset;
+			m_parentSet = root;
+		}
+		return root;
+	}
+
+	/**
+	 * @return	the offset from the positions in this set to the root set.
+	 * 			It is only valid right after {@link #findRoot()}.
+	 */
+	int getRootOffset ()
+	{
+		return m_setOffset;
+	}
+
+	/**
+	 * @return	the branch whose nodes are in this set.  Only valid for a
+	 * 			root set.
+	 */
+	RelationBranch getOwner ()
+	{
+		return m_owner;
+	}
+
 	public int size ()
 	{
-		return m_nodes.size ();
+		return m_size;
 	}
 
 	public boolean has (RelationNode node)
 	{
-		return m_nodes.contains (node);
+		return node.getRelationBranch () == this;
 	}
 
+	/**
+	 * Add a node to either end of this branch.
+	 *
+	 * @param	node
+	 * 			a parent of the first node, or a child of the last node.
+	 */
 	public void add (RelationNode node)
 	{
 		RelationBranch otherBranch = node.getRelationBranch ();
+		if (otherBranch == this)
+		{
+			return;
+		}
 		if (otherBranch != null)
 		{
-			if (otherBranch == this)
-			{
-				return;
-			}
+			otherBranch.remove (node);
+		}
 
-			if (otherBranch.has (node))
-			{
-				otherBranch.remove (node);
-			}
+		int position;
+		if (m_size == 0)
+		{
+			m_first = node;
+			m_last = node;
+			position = m_firstPosition;
+		}
+		else if (isParent (node, m_first))
+		{
+			node.setNthChild (m_first, 0);
+			m_first = node;
+			position = --m_firstPosition;
+		}
+		else if (isParent (m_last, node))
+		{
+			m_last.setNthChild (node, 0);
+			m_last = node;
+			position = m_firstPosition + m_size;
+		}
+		else
+		{
+			throw new RuntimeException ("Incorrect add");
 		}
-		node.setRelationBranch (this);
-		m_nodes.add (node);
+		node.setRelationBranch (findRoot (), position);
+		++m_size;
 		m_orderedList = null;
 
 		if (node.getWeight () < getWeight ())
@@ -73,127 +253,185 @@ public class RelationBranch implements Comparable<RelationBranch>
 		}
 	}
 
+	/**
+	 * Remove a node from either end of this branch.
+	 *
+	 * @param	node
+	 * 			the first or the last node.
+	 */
 	public void remove (RelationNode node)
 	{
-		m_nodes.remove (node);
-		node.setRelationBranch (null);
+		if (m_size == 1)
+		{
+			m_first = null;
+			m_last = null;
+		}
+		else if (node == m_first)
+		{
+			m_first = getNext (node);
+			++m_firstPosition;
+		}
+		else if (node == m_last)
+		{
+			for (int i = 0; i < node.getParentCount (); ++i)
+			{
+				if (node.getParent (i).getRelationBranch () == this)
+				{
+					m_last = node.getParent (i);
+					break;
+				}
+			}
+		}
+		else
+		{
+			throw new RuntimeException ("Incorrect remove");
+		}
+		node.setRelationBranch (null, 0);
+		--m_size;
 		m_orderedList = null;
 	}
 
-	private void merge (RelationBranch otherBranch)
+	private static boolean isParent (RelationNode parent, RelationNode child)
+	{
+		for (int i = 0; i < child.getParentCount (); ++i)
+		{
+			if (child.getParent (i) == parent)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Link the node set of another branch to the node set of this branch.
+	 * The smaller set by rank becomes the child.
+	 *
+	 * @param	otherBranch
+	 * 			the branch being merged.
+	 * @param	offset
+	 * 			the offset from the positions of the other branch to the
+	 * 			positions of this branch.
+	 */
+	private void merge (RelationBranch otherBranch, int offset)
 	{
-		ArrayList<RelationNode> nodes = new ArrayList<RelationNode> ();
-		nodes.addAll (otherBranch.m_nodes);
-		for (RelationNode node : nodes)
+		RelationBranch root = findRoot ();
+		RelationBranch otherRoot = otherBranch.findRoot ();
+		if (root.m_setRank < otherRoot.m_setRank)
+		{
+			root.m_parentSet = otherRoot;
+			root.m_setOffset = -offset;
+			m_firstPosition -= offset;
+			otherRoot.m_owner = this;
+		}
+		else
 		{
-			add (node);
+			otherRoot.m_parentSet = root;
+			otherRoot.m_setOffset = offset;
+			if (root.m_setRank == otherRoot.m_setRank)
+				++root.m_setRank;
 		}
+
+		m_size += otherBranch.m_size;
 		m_orderedList = null;
+		if (otherBranch.getWeight () < getWeight ())
+		{
+			setWeight (otherBranch.getWeight ());
+		}
+
+		otherBranch.m_first = null;
+		otherBranch.m_last = null;
+		otherBranch.m_size = 0;
+		otherBranch.m_orderedList = null;
 	}
 
 	public void mergeParent (RelationBranch parentBranch)
 	{
 		RelationNode firstNode = getFirst ();
-		if (firstNode.getParents ().length == 2 &&
-			firstNode.getParents ()[1] == parentBranch.getLast ())
+		if (firstNode.getParentCount () == 2 &&
+			firstNode.getParent (1) == parentBranch.getLast ())
 		{
 			firstNode.swapParentOrder ();
 		}
 		else
 		{
-			if (firstNode.getParents ().length == 0 ||
-				firstNode.getParents ()[0] != parentBranch.getLast ())
+			if (firstNode.getParentCount () == 0 ||
+				firstNode.getParent (0) != parentBranch.getLast ())
 			{
 				throw new RuntimeException ("Incorrect merge");
 			}
 		}
-		merge (parentBranch);
+		parentBranch.getLast ().setNthChild (firstNode, 0);
+		RelationNode parentFirst = parentBranch.getFirst ();
+		int parentSize = parentBranch.size ();
+		merge (parentBranch, m_firstPosition - parentSize - parentBranch.m_firstPosition);
+		m_first = parentFirst;
+		m_firstPosition -= parentSize;
 	}
 
 	public void mergeChild (RelationBranch childBranch)
 	{
 		RelationNode firstNode = childBranch.getFirst ();
-		if (firstNode.getParents ().length == 2 &&
-			firstNode.getParents ()[1] == getLast ())
+		if (firstNode.getParentCount () == 2 &&
+			firstNode.getParent (1) == getLast ())
 		{
 			firstNode.swapParentOrder ();
 		}
 		else
 		{
-			if (firstNode.getParents ().length == 0 ||
-				firstNode.getParents ()[0] != getLast ())
+			if (firstNode.getParentCount () == 0 ||
+				firstNode.getParent (0) != getLast ())
 			{
 				throw new RuntimeException ("Incorrect merge");
 			}
 		}
-		merge (childBranch);
+		getLast ().setNthChild (firstNode, 0);
+		RelationNode childLast = childBranch.getLast ();
+		merge (childBranch, m_firstPosition + m_size - childBranch.m_firstPosition);
+		m_last = childLast;
 	}
 
-	public List<RelationNode> getOrderedList ()
+	/**
+	 * Get the node following a node in this branch, and make it the first
+	 * child of the node.
+	 *
+	 * @param	node
+	 * 			a node in this branch.
+	 * @return	the next node.  null if the node is the last node.
+	 */
+	public RelationNode getNext (RelationNode node)
 	{
-		if (m_orderedList == null)
+		if (node == m_last)
+			return null;
+		for (int i = 0; i < node.getChildCount (); ++i)
 		{
-			RelationNode node = null;
-			for (RelationNode n : m_nodes)
+			RelationNode child = node.getChild (i);
+			if (child.getRelationBranch () == this)
 			{
-				if (n.getParents ().length == 0)
-				{
-					node = n;
-					break;
-				}
-				int index = 0;
-				boolean found = false;
-				for (RelationNode p : n.getParents ())
-				{
-					if (has (p))
-					{
-						found = true;
-						node = n;
-						// reorder the parents.
-						if (index > 0)
-						{
-							RelationNode tmp = n.getParents ()[0];
-							n.getParents ()[0] = p;
-							n.getParents ()[index] = tmp;
-						}
-						break;
-					}
-					++index;
-				}
-				if (!found)
+				if (i != 0)
 				{
-					node = n;
-					break;
+					node.setNthChild (child, 0);
 				}
+				return child;
 			}
-			m_orderedList = new ArrayList<RelationNode> ();
-			for (;;)
+		}
+		return null;
+	}
+
+	/**
+	 * Get the nodes from the first to the last.  The list is built on demand
+	 * and kept until the branch changes.
+	 *
+	 * @return	the ordered nodes.
+	 */
+	public List<RelationNode> getOrderedList ()
+	{
+		if (m_orderedList == null)
+		{
+			m_orderedList = new ArrayList<RelationNode> (m_size);
+			for (RelationNode node = m_first; node != null; node = getNext (node))
 			{
 				m_orderedList.add (node);
-				if (node.getChildren ().length == 0)
-				{
-					break;
-				}
-				boolean found = false;
-				int index = 0;
-				for (RelationNode c : node.getChildren ())
-				{
-					if (has (c))
-					{
-						found = true;
-						if (index != 0)
-						{
-							node.setNthChild (c, 0);
-						}
-						node = c;
-						break;
-					}
-					++index;
-				}
-				if (!found)
-					break;
 			}
-			if (m_orderedList.size () != m_nodes.size ())
+			if (m_orderedList.size () != m_size)
 				throw new RuntimeException ("Build orderd list failure: size = " + size () + ", order = " + m_orderedList.size ());
 		}
 		return m_orderedList;
@@ -201,18 +439,19 @@ public class RelationBranch implements Comparable<RelationBranch>
 
 	public RelationNode getFirst ()
 	{
-		return getOrderedList ().get (0);
+		return m_first;
 	}
 
 	public RelationNode getLast ()
 	{
-		List<RelationNode> list = getOrderedList ();
-		return list.get (list.size () - 1);
+		return m_last;
 	}
 
 	public int indexOf (RelationNode child)
 	{
-		return getOrderedList ().indexOf (child);
+		if (child.getRelationBranch () != this)
+			return -1;
+		return child.getBranchPosition () - m_firstPosition;
 	}
 
 	public void resetLayout ()
@@ -16,222 +16,295 @@
 package org.yuanheng.jgvt.relation;
 
 import java.util.Comparator;
-import java.util.HashMap;
 
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.yuanheng.jgvt.CommitUtils;
-import org.yuanheng.jgvt.Utils;
 
 /**
+ * A view of a node in {@link RelationNodeStore}.
+ *
  * @author	Heng Yuan
  */
 public class RelationNode implements Comparable<RelationNode>
 {
 	private final static RelationNode[] s_emptyArray = new RelationNode[0];
-	private final static Ref[] s_emptyRefArray = new Ref[0];
 
-	private final RevCommit m_commit;
-	private Ref[] m_tags = s_emptyRefArray;
-	private Ref[] m_branches = s_emptyRefArray;
-	private String m_annotation;
-	private String m_toolTip;
+	private final RelationNodeStore m_store;
+	private final int m_index;
 
-	private RelationNode[] m_parents = s_emptyArray;
-	private RelationNode[] m_children = s_emptyArray;
+	RelationNode (RelationNodeStore store, int index)
+	{
+		m_store = store;
+		m_index = index;
+	}
 
-	private final LayoutInfo m_layoutInfo = new LayoutInfo ();
-	private RelationBranch m_relationBranch;
-	private final HashMap<RelationNode, RelationType> m_relationMap;
+	/**
+	 * Get the index of this node in the store.
+	 *
+	 * @return	the node index.
+	 */
+	int getIndex ()
+	{
+		return m_index;
+	}
 
-	RelationNode (RevCommit commit)
+	/**
+	 * @return	the tree of this node.
+	 */
+	RelationTree getTree ()
 	{
-		m_commit = commit;
-		m_relationMap = new HashMap<RelationNode, RelationType> ();
+		return m_store.getTree ();
 	}
 
+	/**
+	 * Get the commit.  Only the commit headers are kept in memory, so the
+	 * commit body is parsed on demand into a copy of the commit.
+	 *
+	 * @return	the parsed commit.
+	 */
 	public RevCommit getCommit ()
 	{
-		return m_commit;
+		RevCommit commit = m_store.getCommit (m_index);
+		if (commit.getRawBuffer () == null)
+		{
+			commit = getTree ().parseBody (commit);
+		}
+		return commit;
+	}
+
+	/**
+	 * Get the commit id without parsing the commit.
+	 *
+	 * @return	the commit id.
+	 */
+	public ObjectId getId ()
+	{
+		return m_store.getCommit (m_index);
+	}
+
+	public int getCommitTime ()
+	{
+		return m_store.getCommitTime (m_index);
+	}
+
+	public boolean isMergePullRequest ()
+	{
+		return m_store.isMergePullRequest (m_index);
+	}
+
+	/**
+	 * Check if some parents of this node are outside of the history window
+	 * of the tree.
+	 *
+	 * @return	true if the parents of this node are not all in the tree.
+	 */
+	public boolean isTruncated ()
+	{
+		return m_store.isTruncated (m_index);
 	}
 
 	public void addTag (Ref tag)
 	{
 		if (tag == null)
 			return;
-		m_tags = Utils.arrayAdd (Ref.class, m_tags, tag);
+		m_store.addTag (this, tag);
 	}
 
 	public void addBranch (Ref branch)
 	{
 		if (branch == null)
 			return;
-		m_branches = Utils.arrayAdd (Ref.class, m_branches, branch);
+		m_store.addBranch (this, branch);
 	}
 
 	public String getAnnotation ()
 	{
-		if (m_annotation == null)
-		{
-			if (m_tags.length == 0 && m_branches.length == 0)
-				return null;
-			m_annotation = CommitUtils.getAnnotation (m_tags, m_branches);
-		}
-		return m_annotation;
+		return m_store.getAnnotation (this);
 	}
 
 	public String getTooltip (int flag)
 	{
-		if (m_toolTip == null)
-		{
-			m_toolTip = CommitUtils.getToolTipString (m_commit, flag);
-		}
-		return m_toolTip;
+		return CommitUtils.getToolTipString (getCommit (), flag);
 	}
 
 	public void addParent (RelationNode parent)
 	{
-		m_parents = Utils.arrayAdd (RelationNode.class, m_parents, parent);
-		if (m_parents.length > 2)
+		m_store.addParent (m_index, parent.m_index);
+	}
+
+	public int getParentCount ()
+	{
+		return m_store.getParentCount (m_index);
+	}
+
+	public RelationNode getParent (int n)
+	{
+		return m_store.getParent (m_index, n);
+	}
+
+	/**
+	 * Get a copy of the parents.
+	 *
+	 * @return	the parents.
+	 */
+	public RelationNode[] getParents ()
+	{
+		int count = m_store.getParentCount (m_index);
+		if (count == 0)
+			return s_emptyArray;
+		RelationNode[] parents = new RelationNode[count];
+		for (int i = 0; i < count; ++i)
 		{
-			throw new RuntimeException ("Commit " + m_commit.getName () + " has too many parents");
+			parents[i] = m_store.getParent (m_index, i);
 		}
-		parent.addChild (this);
+		return parents;
 	}
 
-	private void addChild (RelationNode child)
+	public int getChildCount ()
 	{
-		m_children = Utils.arrayAdd (RelationNode.class, m_children, child);
+		return m_store.getChildCount (m_index);
 	}
 
-	public RelationNode[] getParents ()
+	public RelationNode getChild (int n)
 	{
-		return m_parents;
+		return m_store.getChild (m_index, n);
 	}
 
+	/**
+	 * Get a copy of the children.
+	 *
+	 * @return	the children.
+	 */
 	public RelationNode[] getChildren ()
 	{
-		return m_children;
+		int count = m_store.getChildCount (m_index);
+		if (count == 0)
+			return s_emptyArray;
+		RelationNode[] children = new RelationNode[count];
+		for (int i = 0; i < count; ++i)
+		{
+			children[i] = m_store.getChild (m_index, i);
+		}
+		return children;
 	}
 
 	public void setNthChild (RelationNode child, int n)
 	{
-		if (m_children[n] == child)
-			return;
-		int i;
-		for (i = 0; i < m_children.length; ++i)
-		{
-			if (m_children[i] == child)
-				break;
-		}
+		m_store.setNthChild (m_index, child, n);
+	}
 
-		if (n < i)
-		{
-			for (int j = i; j > n; --j)
-			{
-				m_children[j] = m_children[j - 1];
-			}
-			m_children[n] = child;
-		}
-		else if (n > i)
-		{
-			for (int j = i; j < n; ++j)
-			{
-				m_children[j] = m_children[j + 1];
-			}
-			m_children[n] = child;
-		}
+	void sortChildren (Comparator<RelationNode> comparator)
+	{
+		m_store.sortChildren (m_index, comparator);
 	}
 
 	public void setRelation (RelationNode parent, RelationType type)
 	{
-		m_relationMap.put (parent, type);
+		m_store.setRelation (m_index, parent, type);
 	}
 
 	public RelationType getRelation (RelationNode parent)
 	{
-		RelationType type = m_relationMap.get (parent);
-		if (type != null)
-		{
-			return type;
-		}
-		if (m_parents[0] == parent)
-		{
-			return RelationType.CHILD;
-		}
-		return RelationType.MERGE;
+		return m_store.getRelation (m_index, parent);
+	}
+
+	public int getX ()
+	{
+		return m_store.getX (m_index);
+	}
+
+	public void setX (int x)
+	{
+		m_store.setX (m_index, x);
 	}
 
-	public LayoutInfo getLayoutInfo ()
+	public int getY ()
 	{
-		return m_layoutInfo;
+		return m_store.getY (m_index);
+	}
+
+	public void setY (int y)
+	{
+		m_store.setY (m_index, y);
 	}
 
 	public RelationBranch getRelationBranch ()
 	{
-		return m_relationBranch;
+		return m_store.getRelationBranch (m_index);
+	}
+
+	/**
+	 * Put this node in a node set of a branch.
+	 *
+	 * @param	set
+	 * 			the node set.  null to remove this node from its branch.
+	 * @param	position
+	 * 			the position of this node in the node set.
+	 */
+	void setRelationBranch (RelationBranch set, int position)
+	{
+		m_store.setRelationBranch (m_index, set, position);
 	}
 
-	public void setRelationBranch (RelationBranch relationBranch)
+	/**
+	 * @return	the position of this node in the node set of its branch.
+	 */
+	int getBranchPosition ()
 	{
-		m_relationBranch = relationBranch;
+		return m_store.getBranchPosition (m_index);
 	}
 
 	public Ref[] getBranches ()
 	{
-		return m_branches;
+		return m_store.getBranches (this);
 	}
 
 	public Ref[] getTags ()
 	{
-		return m_tags;
+		return m_store.getTags (this);
 	}
 
 	public void swapParentOrder ()
 	{
-		if (m_parents.length == 2)
-		{
-			RelationNode tmp = m_parents[0];
-			m_parents[0] = m_parents[1];
-			m_parents[1] = tmp;
-		}
+		m_store.swapParentOrder (m_index);
 	}
 
 	public void resetLayout ()
 	{
-		m_layoutInfo.reset ();
-		m_relationMap.clear ();
+		m_store.resetLayout (m_index);
 	}
 
 	public boolean isVisited ()
 	{
-		return m_layoutInfo.isVisited ();
+		return m_store.isVisited (m_index);
 	}
 
 	public void visit ()
 	{
-		m_layoutInfo.visit ();
+		m_store.visit (m_index);
 	}
 
 	public void resetVisit ()
 	{
-		m_layoutInfo.resetVisit ();
+		m_store.resetVisit (m_index);
 	}
 
 	public int getWeight ()
 	{
-		return m_layoutInfo.getWeight ();
+		return m_store.getWeight (m_index);
 	}
 
 	public void setWeight (int weight)
 	{
-		m_layoutInfo.setWeight (weight);
+		m_store.setWeight (m_index, weight);
 	}
 
 	public RelationNode[] canJoinParentBranch ()
 	{
 		if (getRelationBranch () == null ||
-			getParents ().length == 0 ||
+			getParentCount () == 0 ||
 			this != getRelationBranch ().getFirst ())
 		{
 			return null;
@@ -240,8 +313,9 @@ public class RelationNode implements Comparable<RelationNode>
 		RelationNode n1 = null;
 		RelationNode n2 = null;
 		int count = 0;
-		for (RelationNode parent : getParents ())
+		for (int i = 0; i < getParentCount (); ++i)
 		{
+			RelationNode parent = getParent (i);
 			if (parent == parent.getRelationBranch ().getLast ())
 			{
 				if (count == 0)
@@ -265,13 +339,13 @@ public class RelationNode implements Comparable<RelationNode>
 	@Override
 	public int compareTo (RelationNode o)
 	{
-		return m_commit.compareTo (o.m_commit);
+		return getId ().compareTo (o.getId ());
 	}
 
 	@Override
 	public int hashCode ()
 	{
-		return m_commit.hashCode ();
+		return getId ().hashCode ();
 	}
 
 	public static Comparator<RelationNode> sortByWeightComparator = new Comparator<RelationNode> ()
@@ -287,11 +361,11 @@ public class RelationNode implements Comparable<RelationNode>
 			{
 				return n1.getWeight () - n2.getWeight ();
 			}
-			if (n1.getCommit ().getCommitTime () != n2.getCommit ().getCommitTime ())
+			if (n1.getCommitTime () != n2.getCommitTime ())
 			{
-				return - (n1.getCommit ().getCommitTime () - n2.getCommit ().getCommitTime ());
+				return - (n1.getCommitTime () - n2.getCommitTime ());
 			}
-			return n1.getCommit ().compareTo (n2.getCommit ());
+			return n1.getId ().compareTo (n2.getId ());
 		}
 	};
 
@@ -300,7 +374,7 @@ public class RelationNode implements Comparable<RelationNode>
 		@Override
 		public int compare (RelationNode o1, RelationNode o2)
 		{
-			return o1.getCommit ().getCommitTime () - o2.getCommit ().getCommitTime ();
+			return o1.getCommitTime () - o2.getCommitTime ();
 		}
 	};
 }
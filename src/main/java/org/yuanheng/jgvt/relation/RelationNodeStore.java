@@ -0,0 +1,926 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.yuanheng.jgvt.CommitUtils;
+import org.yuanheng.jgvt.Utils;
+
+/**
+ * Columnar storage of the nodes in a {@link RelationTree}.  Each node
+ * is identified by an int index, and its data is stored in primitive
+ * arrays.  {@link RelationNode} is a view over an index.
+ * <p>
+ * The first 2 parents of a node are stored at <code>2 * index</code>
+ * and <code>2 * index + 1</code>.  The other parents of octopus merges are
+ * rare, so they are stored in an overflow table.  The children are stored
+ * in CSR (compressed sparse row) format, which the tree rebuilds with
+ * {@link #buildChildren()} once it has added the new edges, so that the
+ * readers never modify the store.
+ * <p>
+ * The nodes are looked up by their commit ids through an open addressing
+ * table of node indexes.  The {@link RelationNode} views are still cached
+ * per node, since the callers rely on the node identity.
+ *
+ * @author	Heng Yuan
+ */
+class RelationNodeStore
+{
+	private final static int NONE = -1;
+	private final static int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The bytes of the fixed layout columns of a node: 2 parents, 2
+	 * relation types, x, y and the weight.
+	 */
+	private final static int NODE_LAYOUT_SIZE = 2 * 4 + 2 + 3 * 4;
+	/** The bytes of the layout of a parent after the first 2 parents. */
+	private final static int MORE_PARENT_LAYOUT_SIZE = 4 + 1;
+
+	private final static byte FLAG_MERGE_PULL_REQUEST = 0x01;
+	private final static byte FLAG_VISITED = 0x02;
+	private final static byte FLAG_TRUNCATED = 0x04;
+
+	private final static Ref[] s_emptyRefArray = new Ref[0];
+	private final static RelationType[] s_relationTypes = RelationType.values ();
+
+	private final RelationTree m_tree;
+
+	private int m_size;
+	private RelationNode[] m_nodes;
+	/**
+	 * The index + 1 of the nodes hashed by their commit ids, with linear
+	 * probing.  0 if the slot is empty.  The length is a power of 2 that
+	 * is twice the capacity.
+	 */
+	private int[] m_idTable;
+	/** A live list view of the nodes in the index order. */
+	private final List<RelationNode> m_nodeList = new AbstractList<RelationNode> ()
+	{
+		@Override
+		public RelationNode get (int index)
+		{
+			if (index < 0 || index >= m_size)
+				throw new IndexOutOfBoundsException ();
+			return m_nodes[index];
+		}
+
+		@Override
+		public int size ()
+		{
+			return m_size;
+		}
+	};
+	private RevCommit[] m_commits;
+	private int[] m_commitTimes;
+	private byte[] m_flags;
+	/** Parents of node i are at [2i] and [2i + 1].  NONE if not present. */
+	private int[] m_parents;
+	/** The relation type ordinal + 1 to each parent.  0 if not set. */
+	private byte[] m_relations;
+	/** The parents after the first 2 of node i. */
+	private final HashMap<Integer, int[]> m_moreParents = new HashMap<Integer, int[]> ();
+	/** The relation types to the parents in {@link #m_moreParents}. */
+	private final HashMap<Integer, byte[]> m_moreRelations = new HashMap<Integer, byte[]> ();
+	private int[] m_x;
+	private int[] m_y;
+	private int[] m_weights;
+	/** The node set of the branch of node i.  See {@link RelationBranch}. */
+	private RelationBranch[] m_branches;
+	/** The position of node i relative to its node set. */
+	private int[] m_branchPositions;
+
+	/** Children of node i are in [m_childStart[i], m_childStart[i + 1]). */
+	private int[] m_childStart = new int[1];
+	private int[] m_children = new int[0];
+	/** The number of nodes covered by the children index. */
+	private int m_childSize;
+	/** Parent and child pairs added since the children index was built. */
+	private int[] m_newEdges = new int[16];
+	private int m_newEdgeSize;
+
+	/** Tags, branches and annotations are sparse. */
+	private final HashMap<RelationNode, Ref[]> m_tags = new HashMap<RelationNode, Ref[]> ();
+	private final HashMap<RelationNode, Ref[]> m_refBranches = new HashMap<RelationNode, Ref[]> ();
+	private final HashMap<RelationNode, String> m_annotations = new HashMap<RelationNode, String> ();
+
+	/**
+	 * The layout columns read from a layout cache, before they replace the
+	 * columns of the store.
+	 */
+	class Layout
+	{
+		int[] parents;
+		byte[] relations;
+		int[] x;
+		int[] y;
+		int[] weights;
+		int[] childStart;
+		int[] children;
+		final HashMap<Integer, byte[]> moreRelations = new HashMap<Integer, byte[]> ();
+
+		int getParentCount (int index)
+		{
+			return RelationNodeStore.this.getParentCount (index);
+		}
+
+		/**
+		 * Get a parent in the parent order of the layout.
+		 */
+		int getParent (int index, int n)
+		{
+			if (n < 2)
+				return parents[index * 2 + n];
+			return m_moreParents.get (index)[n - 2];
+		}
+	}
+
+	RelationNodeStore (RelationTree tree)
+	{
+		m_tree = tree;
+		allocate (INITIAL_CAPACITY);
+	}
+
+	private void allocate (int capacity)
+	{
+		m_nodes = new RelationNode[capacity];
+		m_idTable = new int[capacity * 2];
+		m_commits = new RevCommit[capacity];
+		m_commitTimes = new int[capacity];
+		m_flags = new byte[capacity];
+		m_parents = new int[capacity * 2];
+		m_relations = new byte[capacity * 2];
+		m_x = new int[capacity];
+		m_y = new int[capacity];
+		m_weights = new int[capacity];
+		m_branches = new RelationBranch[capacity];
+		m_branchPositions = new int[capacity];
+	}
+
+	private void grow ()
+	{
+		int capacity = m_nodes.length * 2;
+		m_nodes = Arrays.copyOf (m_nodes, capacity);
+		m_commits = Arrays.copyOf (m_commits, capacity);
+		m_commitTimes = Arrays.copyOf (m_commitTimes, capacity);
+		m_flags = Arrays.copyOf (m_flags, capacity);
+		m_parents = Arrays.copyOf (m_parents, capacity * 2);
+		m_relations = Arrays.copyOf (m_relations, capacity * 2);
+		m_x = Arrays.copyOf (m_x, capacity);
+		m_y = Arrays.copyOf (m_y, capacity);
+		m_weights = Arrays.copyOf (m_weights, capacity);
+		m_branches = Arrays.copyOf (m_branches, capacity);
+		m_branchPositions = Arrays.copyOf (m_branchPositions, capacity);
+
+		m_idTable = new int[capacity * 2];
+		for (int i = 0; i < m_size; ++i)
+			putId (i);
+	}
+
+	RelationTree getTree ()
+	{
+		return m_tree;
+	}
+
+	int size ()
+	{
+		return m_size;
+	}
+
+	void clear ()
+	{
+		m_size = 0;
+		allocate (INITIAL_CAPACITY);
+		m_childStart = new int[1];
+		m_children = new int[0];
+		m_childSize = 0;
+		m_newEdgeSize = 0;
+		m_moreParents.clear ();
+		m_moreRelations.clear ();
+		m_tags.clear ();
+		m_refBranches.clear ();
+		m_annotations.clear ();
+	}
+
+	/**
+	 * Copy the nodes, the edges and the layout to the store of another
+	 * tree.  The branches of the nodes are not copied.
+	 *
+	 * @param	store
+	 * 			the empty store of the copied tree.
+	 */
+	void copyTo (RelationNodeStore store)
+	{
+		int capacity = m_nodes.length;
+		store.m_size = m_size;
+		store.m_nodes = new RelationNode[capacity];
+		for (int i = 0; i < m_size; ++i)
+			store.m_nodes[i] = new RelationNode (store, i);
+		store.m_idTable = m_idTable.clone ();
+		store.m_commits = m_commits.clone ();
+		store.m_commitTimes = m_commitTimes.clone ();
+		store.m_flags = m_flags.clone ();
+		store.m_parents = m_parents.clone ();
+		store.m_relations = m_relations.clone ();
+		for (Map.Entry<Integer, int[]> entry : m_moreParents.entrySet ())
+			store.m_moreParents.put (entry.getKey (), entry.getValue ().clone ());
+		for (Map.Entry<Integer, byte[]> entry : m_moreRelations.entrySet ())
+			store.m_moreRelations.put (entry.getKey (), entry.getValue ().clone ());
+		store.m_x = m_x.clone ();
+		store.m_y = m_y.clone ();
+		store.m_weights = m_weights.clone ();
+		store.m_branches = new RelationBranch[capacity];
+		store.m_branchPositions = new int[capacity];
+		store.m_childStart = m_childStart.clone ();
+		store.m_children = m_children.clone ();
+		store.m_childSize = m_childSize;
+		store.m_newEdges = m_newEdges.clone ();
+		store.m_newEdgeSize = m_newEdgeSize;
+		for (Map.Entry<RelationNode, Ref[]> entry : m_tags.entrySet ())
+			store.m_tags.put (store.m_nodes[entry.getKey ().getIndex ()], entry.getValue ());
+		for (Map.Entry<RelationNode, Ref[]> entry : m_refBranches.entrySet ())
+			store.m_refBranches.put (store.m_nodes[entry.getKey ().getIndex ()], entry.getValue ());
+	}
+
+	RelationNode add (RevCommit commit, int commitTime, boolean mergePullRequest)
+	{
+		if (m_size == m_nodes.length)
+		{
+			grow ();
+		}
+		int index = m_size++;
+		RelationNode node = new RelationNode (this, index);
+		m_nodes[index] = node;
+		m_commits[index] = commit;
+		m_commitTimes[index] = commitTime;
+		m_flags[index] = mergePullRequest ? FLAG_MERGE_PULL_REQUEST : 0;
+		m_parents[index * 2] = NONE;
+		m_parents[index * 2 + 1] = NONE;
+		m_relations[index * 2] = 0;
+		m_relations[index * 2 + 1] = 0;
+		m_x[index] = -1;
+		m_y[index] = -1;
+		m_weights[index] = Integer.MAX_VALUE;
+		m_branches[index] = null;
+		putId (index);
+		return node;
+	}
+
+	private void putId (int index)
+	{
+		int mask = m_idTable.length - 1;
+		int slot = m_commits[index].hashCode () & mask;
+		while (m_idTable[slot] != 0)
+			slot = (slot + 1) & mask;
+		m_idTable[slot] = index + 1;
+	}
+
+	/**
+	 * Get the index of the node of a commit.
+	 *
+	 * @param	id
+	 * 			the commit id
+	 * @return	the node index.  -1 if the commit is not in the store.
+	 */
+	int indexOf (AnyObjectId id)
+	{
+		int mask = m_idTable.length - 1;
+		int slot = id.hashCode () & mask;
+		int index;
+		while ((index = m_idTable[slot]) != 0)
+		{
+			if (AnyObjectId.equals (m_commits[index - 1], id))
+				return index - 1;
+			slot = (slot + 1) & mask;
+		}
+		return NONE;
+	}
+
+	RelationNode getNode (int index)
+	{
+		return m_nodes[index];
+	}
+
+	RelationNode getNode (AnyObjectId id)
+	{
+		int index = indexOf (id);
+		return index == NONE ? null : m_nodes[index];
+	}
+
+	/**
+	 * @return	a live view of the nodes in the index order.
+	 */
+	List<RelationNode> getNodes ()
+	{
+		return m_nodeList;
+	}
+
+	RevCommit getCommit (int index)
+	{
+		return m_commits[index];
+	}
+
+	int getCommitTime (int index)
+	{
+		return m_commitTimes[index];
+	}
+
+	boolean isMergePullRequest (int index)
+	{
+		return (m_flags[index] & FLAG_MERGE_PULL_REQUEST) != 0;
+	}
+
+	boolean isTruncated (int index)
+	{
+		return (m_flags[index] & FLAG_TRUNCATED) != 0;
+	}
+
+	void setTruncated (int index, boolean truncated)
+	{
+		if (truncated)
+			m_flags[index] |= FLAG_TRUNCATED;
+		else
+			m_flags[index] &= ~FLAG_TRUNCATED;
+	}
+
+	//////////////////////////////////////////////////////////////////////
+	// parents
+	//////////////////////////////////////////////////////////////////////
+
+	void addParent (int index, int parent)
+	{
+		if (m_parents[index * 2] == NONE)
+		{
+			m_parents[index * 2] = parent;
+		}
+		else if (m_parents[index * 2 + 1] == NONE)
+		{
+			m_parents[index * 2 + 1] = parent;
+		}
+		else
+		{
+			int[] parents = m_moreParents.get (index);
+			byte[] relations = m_moreRelations.get (index);
+			if (parents == null)
+			{
+				parents = new int[0];
+				relations = new byte[0];
+			}
+			parents = Arrays.copyOf (parents, parents.length + 1);
+			parents[parents.length - 1] = parent;
+			m_moreParents.put (index, parents);
+			m_moreRelations.put (index, Arrays.copyOf (relations, parents.length));
+		}
+
+		if (m_newEdgeSize + 2 > m_newEdges.length)
+		{
+			m_newEdges = Arrays.copyOf (m_newEdges, m_newEdges.length * 2);
+		}
+		m_newEdges[m_newEdgeSize++] = parent;
+		m_newEdges[m_newEdgeSize++] = index;
+	}
+
+	int getParentCount (int index)
+	{
+		if (m_parents[index * 2] == NONE)
+			return 0;
+		if (m_parents[index * 2 + 1] == NONE)
+			return 1;
+		int[] parents = m_moreParents.get (index);
+		return parents == null ? 2 : 2 + parents.length;
+	}
+
+	private int getParentIndex (int index, int n)
+	{
+		if (n < 2)
+			return m_parents[index * 2 + n];
+		return m_moreParents.get (index)[n - 2];
+	}
+
+	RelationNode getParent (int index, int n)
+	{
+		return m_nodes[getParentIndex (index, n)];
+	}
+
+	private int indexOfParent (int index, int parent)
+	{
+		if (m_parents[index * 2] == parent)
+			return 0;
+		if (m_parents[index * 2 + 1] == parent)
+			return 1;
+		int[] parents = m_moreParents.get (index);
+		if (parents != null)
+		{
+			for (int n = 0; n < parents.length; ++n)
+			{
+				if (parents[n] == parent)
+					return n + 2;
+			}
+		}
+		return NONE;
+	}
+
+	int indexOfParent (int index, RelationNode parent)
+	{
+		return indexOfParent (index, parent.getIndex ());
+	}
+
+	void swapParentOrder (int index)
+	{
+		if (getParentCount (index) == 2)
+		{
+			int i = index * 2;
+			int tmp = m_parents[i];
+			m_parents[i] = m_parents[i + 1];
+			m_parents[i + 1] = tmp;
+
+			// the relation types are associated with the parents.
+			byte r = m_relations[i];
+			m_relations[i] = m_relations[i + 1];
+			m_relations[i + 1] = r;
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////
+	// children
+	//////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Rebuild the children index with the edges added since the last time.
+	 * The existing children order is kept, and the new children are added
+	 * at the end in the order they were added.  It must be called after
+	 * adding nodes or parents, before the children are read.
+	 */
+	void buildChildren ()
+	{
+		if (m_childSize == m_size && m_newEdgeSize == 0)
+			return;
+
+		int[] childStart = new int[m_size + 1];
+		for (int i = 0; i < m_childSize; ++i)
+		{
+			childStart[i + 1] = m_childStart[i + 1] - m_childStart[i];
+		}
+		for (int e = 0; e < m_newEdgeSize; e += 2)
+		{
+			++childStart[m_newEdges[e] + 1];
+		}
+		for (int i = 0; i < m_size; ++i)
+		{
+			childStart[i + 1] += childStart[i];
+		}
+
+		int[] children = new int[childStart[m_size]];
+		int[] pos = new int[m_size];
+		for (int i = 0; i < m_size; ++i)
+		{
+			pos[i] = childStart[i];
+		}
+		for (int i = 0; i < m_childSize; ++i)
+		{
+			for (int j = m_childStart[i]; j < m_childStart[i + 1]; ++j)
+			{
+				children[pos[i]++] = m_children[j];
+			}
+		}
+		for (int e = 0; e < m_newEdgeSize; e += 2)
+		{
+			children[pos[m_newEdges[e]]++] = m_newEdges[e + 1];
+		}
+
+		m_childStart = childStart;
+		m_children = children;
+		m_childSize = m_size;
+		m_newEdgeSize = 0;
+		if (m_newEdges.length > 1024)
+		{
+			m_newEdges = new int[16];
+		}
+	}
+
+	int getChildCount (int index)
+	{
+		return m_childStart[index + 1] - m_childStart[index];
+	}
+
+	RelationNode getChild (int index, int n)
+	{
+		return m_nodes[m_children[m_childStart[index] + n]];
+	}
+
+	void setNthChild (int index, RelationNode child, int n)
+	{
+		int start = m_childStart[index];
+		int end = m_childStart[index + 1];
+		int childIndex = child.getIndex ();
+		if (m_children[start + n] == childIndex)
+			return;
+		int i;
+		for (i = start; i < end; ++i)
+		{
+			if (m_children[i] == childIndex)
+				break;
+		}
+		n += start;
+		if (n < i)
+		{
+			System.arraycopy (m_children, n, m_children, n + 1, i - n);
+			m_children[n] = childIndex;
+		}
+		else if (n > i)
+		{
+			System.arraycopy (m_children, i + 1, m_children, i, n - i);
+			m_children[n] = childIndex;
+		}
+	}
+
+	void sortChildren (int index, Comparator<RelationNode> comparator)
+	{
+		int start = m_childStart[index];
+		int end = m_childStart[index + 1];
+		if (end - start < 2)
+			return;
+		RelationNode[] children = new RelationNode[end - start];
+		for (int i = start; i < end; ++i)
+		{
+			children[i - start] = m_nodes[m_children[i]];
+		}
+		Arrays.sort (children, comparator);
+		for (int i = start; i < end; ++i)
+		{
+			m_children[i] = children[i - start].getIndex ();
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////
+	// relations
+	//////////////////////////////////////////////////////////////////////
+
+	void setRelation (int index, RelationNode parent, RelationType type)
+	{
+		int n = indexOfParent (index, parent);
+		if (n == NONE)
+			return;
+		byte r = (byte)(type.ordinal () + 1);
+		if (n < 2)
+			m_relations[index * 2 + n] = r;
+		else
+			m_moreRelations.get (index)[n - 2] = r;
+	}
+
+	RelationType getRelation (int index, RelationNode parent)
+	{
+		int n = indexOfParent (index, parent);
+		if (n != NONE)
+		{
+			byte r = (n < 2) ? m_relations[index * 2 + n] : m_moreRelations.get (index)[n - 2];
+			if (r != 0)
+			{
+				return s_relationTypes[r - 1];
+			}
+		}
+		if (n == 0)
+		{
+			return RelationType.CHILD;
+		}
+		return RelationType.MERGE;
+	}
+
+	//////////////////////////////////////////////////////////////////////
+	// layout
+	//////////////////////////////////////////////////////////////////////
+
+	void resetLayout (int index)
+	{
+		m_flags[index] &= ~FLAG_VISITED;
+		m_x[index] = -1;
+		m_y[index] = -1;
+		m_relations[index * 2] = 0;
+		m_relations[index * 2 + 1] = 0;
+		byte[] relations = m_moreRelations.get (index);
+		if (relations != null)
+			Arrays.fill (relations, (byte)0);
+	}
+
+	boolean isVisited (int index)
+	{
+		return (m_flags[index] & FLAG_VISITED) != 0;
+	}
+
+	void visit (int index)
+	{
+		m_flags[index] |= FLAG_VISITED;
+	}
+
+	void resetVisit (int index)
+	{
+		m_flags[index] &= ~FLAG_VISITED;
+	}
+
+	int getX (int index)
+	{
+		return m_x[index];
+	}
+
+	void setX (int index, int x)
+	{
+		m_x[index] = x;
+	}
+
+	int getY (int index)
+	{
+		return m_y[index];
+	}
+
+	void setY (int index, int y)
+	{
+		m_y[index] = y;
+	}
+
+	int getWeight (int index)
+	{
+		return m_weights[index];
+	}
+
+	void setWeight (int index, int weight)
+	{
+		m_weights[index] = weight;
+	}
+
+	RelationBranch getRelationBranch (int index)
+	{
+		RelationBranch set = findBranchSet (index);
+		return set == null ? null : set.getOwner ();
+	}
+
+	void setRelationBranch (int index, RelationBranch set, int position)
+	{
+		m_branches[index] = set;
+		m_branchPositions[index] = position;
+	}
+
+	int getBranchPosition (int index)
+	{
+		findBranchSet (index);
+		return m_branchPositions[index];
+	}
+
+	/**
+	 * Find the root node set of the branch of a node, and point the node
+	 * directly to it, so that the next lookup is constant time.
+	 */
+	private RelationBranch findBranchSet (int index)
+	{
+		RelationBranch set = m_branches[index];
+		if (set == null)
+			return null;
+		RelationBranch root = set.findRoot ();
+		if (root != set)
+		{
+			m_branchPositions[index] += set.getRootOffset ();
+			m_branches[index] = root;
+		}
+		return root;
+	}
+
+	//////////////////////////////////////////////////////////////////////
+	// persistence
+	//////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Write the columns computed by the branch discovery and the layout:
+	 * the parent order, the relation types, the children order, x, y and
+	 * the weights.  The parents after the first 2 and their relation types
+	 * are written at the end.
+	 *
+	 * @param	dos
+	 * 			the output stream
+	 * @throws	IOException
+	 * 			in case of I/O error
+	 */
+	void writeLayout (DataOutputStream dos) throws IOException
+	{
+		dos.writeInt (m_size);
+		for (int i = 0; i < m_size * 2; ++i)
+			dos.writeInt (m_parents[i]);
+		dos.write (m_relations, 0, m_size * 2);
+		for (int i = 0; i < m_size; ++i)
+			dos.writeInt (m_x[i]);
+		for (int i = 0; i < m_size; ++i)
+			dos.writeInt (m_y[i]);
+		for (int i = 0; i < m_size; ++i)
+			dos.writeInt (m_weights[i]);
+		for (int i = 0; i <= m_size; ++i)
+			dos.writeInt (m_childStart[i]);
+		for (int i = 0; i < m_childStart[m_size]; ++i)
+			dos.writeInt (m_children[i]);
+		dos.writeInt (m_moreParents.size ());
+		for (int index : new TreeSet<Integer> (m_moreParents.keySet ()))
+		{
+			int[] parents = m_moreParents.get (index);
+			dos.writeInt (index);
+			dos.writeInt (parents.length);
+			for (int parent : parents)
+				dos.writeInt (parent);
+			dos.write (m_moreRelations.get (index));
+		}
+	}
+
+	/**
+	 * Read the columns written by {@link #writeLayout(DataOutputStream)}.
+	 * The nodes must have been added in the same order with the same
+	 * parents.  The store is not changed until the layout is applied.
+	 *
+	 * @param	buffer
+	 * 			the input buffer
+	 * @return	the layout read.  null if the data does not match the nodes.
+	 */
+	Layout readLayout (ByteBuffer buffer)
+	{
+		if (buffer.remaining () < 4 || buffer.getInt () != m_size)
+			return null;
+		if (buffer.remaining () < (long)m_size * NODE_LAYOUT_SIZE + 4)
+			return null;
+
+		Layout layout = new Layout ();
+		int[] parents = new int[m_size * 2];
+		buffer.asIntBuffer ().get (parents);
+		buffer.position (buffer.position () + parents.length * 4);
+		for (int i = 0; i < m_size; ++i)
+		{
+			// the same parents, possibly swapped.
+			int p0 = m_parents[i * 2];
+			int p1 = m_parents[i * 2 + 1];
+			if (!(parents[i * 2] == p0 && parents[i * 2 + 1] == p1) &&
+				!(p1 != NONE && parents[i * 2] == p1 && parents[i * 2 + 1] == p0))
+				return null;
+		}
+		layout.parents = parents;
+		byte[] relations = new byte[m_size * 2];
+		buffer.get (relations);
+		for (byte r : relations)
+		{
+			if (r < 0 || r > s_relationTypes.length)
+				return null;
+		}
+		layout.relations = relations;
+		layout.x = new int[m_size];
+		buffer.asIntBuffer ().get (layout.x);
+		buffer.position (buffer.position () + m_size * 4);
+		layout.y = new int[m_size];
+		buffer.asIntBuffer ().get (layout.y);
+		buffer.position (buffer.position () + m_size * 4);
+		layout.weights = new int[m_size];
+		buffer.asIntBuffer ().get (layout.weights);
+		buffer.position (buffer.position () + m_size * 4);
+		int[] childStart = new int[m_size + 1];
+		buffer.asIntBuffer ().get (childStart);
+		buffer.position (buffer.position () + childStart.length * 4);
+		if (childStart[m_size] != m_childStart[m_size] ||
+			buffer.remaining () < childStart[m_size] * 4L)
+			return null;
+		int[] children = new int[childStart[m_size]];
+		buffer.asIntBuffer ().get (children);
+		buffer.position (buffer.position () + children.length * 4);
+		for (int i = 0; i < m_size; ++i)
+		{
+			if (childStart[i + 1] - childStart[i] != m_childStart[i + 1] - m_childStart[i])
+				return null;
+			for (int j = childStart[i]; j < childStart[i + 1]; ++j)
+			{
+				int child = children[j];
+				if (child < 0 || child >= m_size ||
+					indexOfParent (child, i) == NONE)
+					return null;
+			}
+		}
+		layout.childStart = childStart;
+		layout.children = children;
+		if (buffer.remaining () < 4)
+			return null;
+		int moreCount = buffer.getInt ();
+		if (moreCount != m_moreParents.size ())
+			return null;
+		for (int k = 0; k < moreCount; ++k)
+		{
+			if (buffer.remaining () < 8)
+				return null;
+			int index = buffer.getInt ();
+			int count = buffer.getInt ();
+			int[] more = m_moreParents.get (index);
+			if (more == null || more.length != count ||
+				buffer.remaining () < (long)count * MORE_PARENT_LAYOUT_SIZE)
+				return null;
+			for (int parent : more)
+			{
+				if (buffer.getInt () != parent)
+					return null;
+			}
+			byte[] moreRelation = new byte[count];
+			buffer.get (moreRelation);
+			for (byte r : moreRelation)
+			{
+				if (r < 0 || r > s_relationTypes.length)
+					return null;
+			}
+			layout.moreRelations.put (index, moreRelation);
+		}
+		return layout;
+	}
+
+	/**
+	 * Replace the columns with the layout read.
+	 *
+	 * @param	layout
+	 * 			the layout read by {@link #readLayout(ByteBuffer)}.
+	 */
+	void applyLayout (Layout layout)
+	{
+		System.arraycopy (layout.parents, 0, m_parents, 0, layout.parents.length);
+		System.arraycopy (layout.relations, 0, m_relations, 0, layout.relations.length);
+		System.arraycopy (layout.x, 0, m_x, 0, m_size);
+		System.arraycopy (layout.y, 0, m_y, 0, m_size);
+		System.arraycopy (layout.weights, 0, m_weights, 0, m_size);
+		m_childStart = layout.childStart;
+		m_children = layout.children;
+		m_moreRelations.putAll (layout.moreRelations);
+	}
+
+	//////////////////////////////////////////////////////////////////////
+	// refs
+	//////////////////////////////////////////////////////////////////////
+
+	void addTag (RelationNode node, Ref tag)
+	{
+		Ref[] tags = m_tags.get (node);
+		m_tags.put (node, Utils.arrayAdd (Ref.class, tags == null ? s_emptyRefArray : tags, tag));
+		m_annotations.remove (node);
+	}
+
+	void addBranch (RelationNode node, Ref branch)
+	{
+		Ref[] branches = m_refBranches.get (node);
+		m_refBranches.put (node, Utils.arrayAdd (Ref.class, branches == null ? s_emptyRefArray : branches, branch));
+		m_annotations.remove (node);
+	}
+
+	Ref[] getTags (RelationNode node)
+	{
+		Ref[] tags = m_tags.get (node);
+		return tags == null ? s_emptyRefArray : tags;
+	}
+
+	Ref[] getBranches (RelationNode node)
+	{
+		Ref[] branches = m_refBranches.get (node);
+		return branches == null ? s_emptyRefArray : branches;
+	}
+
+	String getAnnotation (RelationNode node)
+	{
+		String annotation = m_annotations.get (node);
+		if (annotation == null)
+		{
+			Ref[] tags = getTags (node);
+			Ref[] branches = getBranches (node);
+			if (tags.length == 0 && branches.length == 0)
+				return null;
+			annotation = CommitUtils.getAnnotation (tags, branches);
+			m_annotations.put (node, annotation);
+		}
+		return annotation;
+	}
+
+	void clearRefs ()
+	{
+		m_tags.clear ();
+		m_refBranches.clear ();
+		m_annotations.clear ();
+	}
+}
@@ -15,104 +15,336 @@
  */
 package org.yuanheng.jgvt.relation;
 
+import java.io.IOException;
 import java.util.*;
 
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.yuanheng.jgvt.GitRepo;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.yuanheng.jgvt.Debug;
+import org.yuanheng.jgvt.Defaults;
+import org.yuanheng.jgvt.RefSnapshot;
 
 /**
  * @author	Heng Yuan
  */
 public class RelationTree
 {
-	private final Map<ObjectId, RelationNode> m_nodeMap;
+	private final RelationNodeStore m_store;
 	private RelationNode m_startNode;
+	/** The RevWalk used to parse the commit bodies on demand. */
+	private RevWalk m_revWalk;
+	/**
+	 * The commits parsed on demand, in access order.  The commits in the
+	 * tree only have the headers, and are shared by all the threads, so
+	 * the bodies are parsed into private copies instead.
+	 */
+	private final LinkedHashMap<ObjectId, RevCommit> m_bodyCache;
+	/** The refs the tree was built from. */
+	private RefSnapshot m_refSnapshot;
+	/** The commit graph the tree was built from. */
+	private CommitGraphCache m_graph;
+	/** The commit time of the oldest commits in the history window. */
+	private int m_minCommitTime = Integer.MIN_VALUE;
+	/** true if some nodes have parents outside of the history window. */
+	private boolean m_truncated;
+	/** The id of the next branch created outside of an id sequence. */
+	private int m_nextBranchId;
 
 	public RelationTree ()
 	{
-		m_nodeMap = new HashMap<ObjectId, RelationNode> ();
+		m_store = new RelationNodeStore (this);
+		m_bodyCache = createBodyCache ();
+	}
+
+	private static LinkedHashMap<ObjectId, RevCommit> createBodyCache ()
+	{
+		return new LinkedHashMap<ObjectId, RevCommit> (16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -4046381342946036735L;
+
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<ObjectId, RevCommit> eldest)
+			{
+				return size () > Defaults.MAX_COMMIT_BODY_CACHE;
+			}
+		};
+	}
+
+	/**
+	 * Copy this tree, so that the copy can be changed on another thread
+	 * while this tree is being shown.  The nodes, the branches and the
+	 * layout are copied.  The commits, the refs and the commit graph are
+	 * shared.
+	 *
+	 * @return	the copy of this tree.
+	 */
+	public RelationTree copy ()
+	{
+		RelationTree tree = new RelationTree ();
+		m_store.copyTo (tree.m_store);
+		HashMap<RelationBranch, RelationBranch> branchMap = new HashMap<RelationBranch, RelationBranch> ();
+		for (RelationNode node : getNodes ())
+		{
+			RelationBranch branch = node.getRelationBranch ();
+			if (branch == null)
+				continue;
+			RelationBranch branchCopy = branchMap.get (branch);
+			if (branchCopy == null)
+			{
+				branchCopy = new RelationBranch (branch,
+					tree.m_store.getNode (branch.getFirst ().getIndex ()),
+					tree.m_store.getNode (branch.getLast ().getIndex ()));
+				branchMap.put (branch, branchCopy);
+			}
+			tree.m_store.setRelationBranch (node.getIndex (), branchCopy, node.getBranchPosition ());
+		}
+		if (m_startNode != null)
+			tree.m_startNode = tree.m_store.getNode (m_startNode.getIndex ());
+		tree.m_revWalk = m_revWalk;
+		tree.m_refSnapshot = m_refSnapshot;
+		tree.m_graph = m_graph;
+		tree.m_minCommitTime = m_minCommitTime;
+		tree.m_truncated = m_truncated;
+		tree.m_nextBranchId = m_nextBranchId;
+		return tree;
 	}
 
 	public int size ()
 	{
-		return m_nodeMap.size ();
+		return m_store.size ();
 	}
 
-	public void clear ()
+	RelationNodeStore getStore ()
 	{
-		m_nodeMap.clear ();
+		return m_store;
 	}
 
-	private RelationNode getNode (RevCommit commit, GitRepo gitRepo) throws GitAPIException
+	public void clear ()
 	{
-		ObjectId commitId = commit.getId ();
-		RelationNode node = m_nodeMap.get (commitId);
-		if (node == null)
-		{
-			node = new RelationNode (commit);
-			m_nodeMap.put (commit.getId (), node);
+		m_store.clear ();
+		m_nextBranchId = 0;
+	}
 
-			node.addTag (gitRepo.getTagMap ().get (commitId));
-			node.addBranch (gitRepo.getBranchMap ().get (commitId));
-		}
-		return node;
+	/**
+	 * Add nodes from the commit graph cache to the tree.  The commit bodies
+	 * are not parsed until they are needed.  Nodes already in the tree
+	 * are kept as is.
+	 *
+	 * @param	graph
+	 * 			the commit graph
+	 * @param	revWalk
+	 * 			the RevWalk that created the commits in the graph.
+	 * @param	refs
+	 * 			the refs to label the new nodes with.
+	 * @return	the newly added nodes.
+	 */
+	public List<RelationNode> addNodes (CommitGraphCache graph, RevWalk revWalk, RefSnapshot refs)
+	{
+		return addNodes (graph, revWalk, refs, m_minCommitTime);
 	}
 
 	/**
-	 * Add nodes to the tree.
+	 * Add the nodes from the commit graph cache that are not older than
+	 * the specified commit time.  The nodes whose parents are older are
+	 * marked as truncated.  If the tree is already truncated, lowering the
+	 * commit time extends the history window, and the truncated nodes are
+	 * linked to their parents now in the tree.
 	 *
-	 * @param	commitLogs
-	 *			a list of git commits
-	 * @param	gitRepo
-	 * 			the git repo
-	 * @throws	GitAPIException
-	 * 			in case of git error
+	 * @param	graph
+	 * 			the commit graph
+	 * @param	revWalk
+	 * 			the RevWalk that created the commits in the graph.
+	 * @param	refs
+	 * 			the refs to label the new nodes with.
+	 * @param	minCommitTime
+	 * 			the commit time of the oldest commits to be added.
+	 * @return	the newly added nodes.
 	 */
-	public void addNodes (Iterable<RevCommit> commitLogs, GitRepo gitRepo) throws GitAPIException
+	public List<RelationNode> addNodes (CommitGraphCache graph, RevWalk revWalk, RefSnapshot refs, int minCommitTime)
 	{
-		for (RevCommit commit : commitLogs)
-		{
-			RelationNode node = getNode (commit, gitRepo);
+		m_revWalk = revWalk;
+		m_refSnapshot = refs;
+		m_graph = graph;
+		m_minCommitTime = minCommitTime;
 
-			for (RevCommit parentCommit : commit.getParents ())
+		Map<ObjectId, Ref> tagMap = refs.getTagMap ();
+		Map<ObjectId, Ref> branchMap = refs.getBranchMap ();
+
+		int size = graph.size ();
+		RelationNode[] nodes = new RelationNode[size];
+		boolean[] added = new boolean[size];
+		ArrayList<RelationNode> newNodes = new ArrayList<RelationNode> ();
+		for (int i = 0; i < size; ++i)
+		{
+			if (graph.getCommitTime (i) < minCommitTime)
+				continue;
+			RevCommit commit = graph.getCommit (i);
+			RelationNode node = m_store.getNode (commit);
+			if (node == null)
 			{
-				RelationNode parentNode = getNode (parentCommit, gitRepo);
+				node = m_store.add (commit, graph.getCommitTime (i), graph.isMergePullRequest (i));
 
+				node.addTag (tagMap.get (commit));
+				node.addBranch (branchMap.get (commit));
+				added[i] = true;
+				newNodes.add (node);
+			}
+			nodes[i] = node;
+		}
+
+		HashSet<RelationNode> parentNodes = new HashSet<RelationNode> ();
+		for (int i = 0; i < size; ++i)
+		{
+			RelationNode node = nodes[i];
+			if (node == null ||
+				!added[i] && !node.isTruncated ())
+				continue;
+			// the parents are linked in order, so that a parent outside
+			// of the history window never shifts the other parents.
+			boolean truncated = false;
+			int parentCount = graph.getParentCount (i);
+			for (int j = node.getParentCount (); j < parentCount; ++j)
+			{
+				RelationNode parentNode = nodes[graph.getParent (i, j)];
+				if (parentNode == null)
+				{
+					truncated = true;
+					break;
+				}
 				node.addParent (parentNode);
+				parentNodes.add (parentNode);
+			}
+			m_store.setTruncated (node.getIndex (), truncated);
+		}
+		m_truncated = hasTruncatedNodes ();
+		m_store.buildChildren ();
+
+		if (newNodes.size () == m_store.size ())
+		{
+			sortChildren ();
+		}
+		else
+		{
+			// only the parents of the new nodes got new children.
+			for (RelationNode node : parentNodes)
+			{
+				node.sortChildren (RelationNode.sortByDateComparator);
 			}
 		}
+		return newNodes;
+	}
+
+	/**
+	 * Move the tag and branch labels to the current ref locations.
+	 *
+	 * @param	refs
+	 * 			the current refs
+	 */
+	public void updateRefs (RefSnapshot refs)
+	{
+		m_refSnapshot = refs;
+		m_store.clearRefs ();
+		for (Map.Entry<ObjectId, Ref> entry : refs.getTagMap ().entrySet ())
+		{
+			RelationNode node = m_store.getNode (entry.getKey ());
+			if (node != null)
+				node.addTag (entry.getValue ());
+		}
+		for (Map.Entry<ObjectId, Ref> entry : refs.getBranchMap ().entrySet ())
+		{
+			RelationNode node = m_store.getNode (entry.getKey ());
+			if (node != null)
+				node.addBranch (entry.getValue ());
+		}
+	}
+
+	private boolean hasTruncatedNodes ()
+	{
+		for (RelationNode node : getNodes ())
+		{
+			if (node.isTruncated ())
+				return true;
+		}
+		return false;
+	}
 
-		// sort the children
+	private void sortChildren ()
+	{
 		for (RelationNode node : getNodes ())
 		{
-			RelationNode[] children = node.getChildren ();
-			if (children.length > 1)
+			node.sortChildren (RelationNode.sortByDateComparator);
+		}
+	}
+
+	/**
+	 * Parse a copy of a commit with its body.  The shared commit is not
+	 * modified, since other threads may be reading it.  Only the most
+	 * recently used {@link Defaults#MAX_COMMIT_BODY_CACHE} copies are
+	 * kept in memory.
+	 *
+	 * @param	commit
+	 * 			the commit without the body.
+	 * @return	the parsed copy of the commit.  The commit itself if it
+	 * 			cannot be parsed.
+	 */
+	RevCommit parseBody (RevCommit commit)
+	{
+		synchronized (m_bodyCache)
+		{
+			RevCommit parsed = m_bodyCache.get (commit);
+			if (parsed != null)
+				return parsed;
+		}
+		if (m_revWalk == null)
+			return commit;
+		RevCommit parsed;
+		synchronized (m_revWalk)
+		{
+			try
 			{
-				Arrays.sort (children, RelationNode.sortByDateComparator);
+				byte[] raw = m_revWalk.getObjectReader ().open (commit, Constants.OBJ_COMMIT).getCachedBytes ();
+				// parsing with m_revWalk would set the body of the commit
+				// in it.
+				parsed = RevCommit.parse (raw);
+			}
+			catch (IOException ex)
+			{
+				Debug.printStackTrace (ex);
+				return commit;
+			}
+			finally
+			{
+				m_revWalk.close ();
 			}
 		}
+		synchronized (m_bodyCache)
+		{
+			m_bodyCache.put (commit, parsed);
+		}
+		return parsed;
 	}
 
 	public RelationNode getNode (ObjectId id)
 	{
-		return m_nodeMap.get (id);
+		return m_store.getNode (id);
 	}
 
 	public RelationNode getNode (RevCommit commit)
 	{
-		return m_nodeMap.get (commit.getId ());
+		return m_store.getNode (commit);
 	}
 
 	public Collection<RelationNode> getNodes ()
 	{
-		return m_nodeMap.values ();
+		return m_store.getNodes ();
 	}
 
 	public void resetVisit ()
 	{
-		for (RelationNode node : m_nodeMap.values ())
+		for (RelationNode node : getNodes ())
 		{
 			node.resetVisit ();
 		}
@@ -122,9 +354,9 @@ public class RelationTree
 	{
 		ArrayList<RelationNode> rootNodes = new ArrayList<RelationNode> ();
 
-		for (RelationNode node : m_nodeMap.values ())
+		for (RelationNode node : getNodes ())
 		{
-			if (node.getParents ().length == 0)
+			if (node.getParentCount () == 0)
 				rootNodes.add (node);
 		}
 		return rootNodes;
@@ -134,9 +366,9 @@ public class RelationTree
 	{
 		ArrayList<RelationNode> rootNodes = new ArrayList<RelationNode> ();
 
-		for (RelationNode node : m_nodeMap.values ())
+		for (RelationNode node : getNodes ())
 		{
-			if (node.getChildren ().length == 0)
+			if (node.getChildCount () == 0)
 				rootNodes.add (node);
 		}
 		return rootNodes;
@@ -158,6 +390,88 @@ public class RelationTree
 		return branchSet;
 	}
 
+	/**
+	 * Get the RevWalk that created the commits in this tree.
+	 *
+	 * @return	the RevWalk.  null if the tree is empty.
+	 */
+	public RevWalk getRevWalk ()
+	{
+		return m_revWalk;
+	}
+
+	/**
+	 * Get the commit graph the tree was built from.
+	 *
+	 * @return	the commit graph.  null if the tree is empty.
+	 */
+	public CommitGraphCache getCommitGraph ()
+	{
+		return m_graph;
+	}
+
+	/**
+	 * Get the commit time of the oldest commits in the history window.
+	 *
+	 * @return	the commit time.  Integer.MIN_VALUE if the history is not
+	 * 			limited.
+	 */
+	public int getMinCommitTime ()
+	{
+		return m_minCommitTime;
+	}
+
+	/**
+	 * Check if some commits are outside of the history window.
+	 *
+	 * @return	true if the tree has truncated nodes.
+	 */
+	public boolean isTruncated ()
+	{
+		return m_truncated;
+	}
+
+	/**
+	 * Get the refs the tree was built from.
+	 *
+	 * @return	the ref snapshot.  null if the tree is empty.
+	 */
+	public RefSnapshot getRefSnapshot ()
+	{
+		return m_refSnapshot;
+	}
+
+	/**
+	 * Create the id of a new branch in this tree.
+	 *
+	 * @return	the branch id.
+	 */
+	synchronized int createBranchId ()
+	{
+		return m_nextBranchId++;
+	}
+
+	/**
+	 * @return	the id of the next branch created outside of an id
+	 * 			sequence.
+	 */
+	synchronized int getNextBranchId ()
+	{
+		return m_nextBranchId;
+	}
+
+	/**
+	 * Make sure the branches created outside of an id sequence have ids
+	 * not smaller than the specified id.
+	 *
+	 * @param	id
+	 * 			the smallest id to create.
+	 */
+	synchronized void reserveBranchIds (int id)
+	{
+		m_nextBranchId = Math.max (m_nextBranchId, id);
+	}
+
 	public RelationNode getStartNode ()
 	{
 		return m_startNode;
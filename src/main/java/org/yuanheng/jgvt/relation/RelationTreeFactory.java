@@ -17,14 +17,27 @@ package org.yuanheng.jgvt.relation;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
-import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.yuanheng.jgvt.Debug;
+import org.yuanheng.jgvt.Defaults;
 import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RefSnapshot;
+import org.yuanheng.jgvt.relation.discovery.DiscoveryUtils;
 
 /**
  * @author	Heng Yuan
@@ -41,6 +54,11 @@ public class RelationTreeFactory
 
 	private final GitRepo m_gitRepo;
 	private final List<String> m_importantBranchNames;
+	private ProgressMonitor m_monitor = NullProgressMonitor.INSTANCE;
+	private int m_maxCount = Integer.MAX_VALUE;
+	private int m_since = Integer.MIN_VALUE;
+	private String m_path;
+	private BuildStatistics m_stats = new BuildStatistics ();
 
 	public RelationTreeFactory (GitRepo gitRepo, List<String> importantBranchNames)
 	{
@@ -48,14 +66,99 @@ public class RelationTreeFactory
 		m_importantBranchNames = importantBranchNames;
 	}
 
-	private static List<RelationNode> getImportantNodes (RelationTree tree, List<String> importantBranches, GitRepo gitRepo) throws GitAPIException
+	/**
+	 * Set the monitor for the progress of the tree generation.  If the
+	 * monitor is cancelled, the generation stops with a
+	 * {@link CancellationException}.
+	 *
+	 * @param	monitor
+	 * 			the progress monitor
+	 */
+	public void setProgressMonitor (ProgressMonitor monitor)
+	{
+		m_monitor = monitor;
+	}
+
+	/**
+	 * Limit the history loaded from the commit graph cache.  The commits
+	 * at the window boundary become truncated roots.
+	 *
+	 * @param	maxCount
+	 * 			the maximum number of the most recent commits to load.
+	 * @param	since
+	 * 			the commit time of the oldest commits to load.
+	 */
+	public void setHistoryWindow (int maxCount, int since)
+	{
+		m_maxCount = maxCount;
+		m_since = since;
+	}
+
+	/**
+	 * Limit the tree to the commits that changed a path.
+	 *
+	 * @param	path
+	 * 			the path relative to the repository root.  null for all the
+	 * 			commits.
+	 */
+	public void setPath (String path)
+	{
+		m_path = path;
+	}
+
+	/**
+	 * Set the statistics that record the phases of the tree generation.
+	 *
+	 * @param	stats
+	 * 			the build statistics
+	 */
+	public void setStatistics (BuildStatistics stats)
+	{
+		m_stats = stats;
+	}
+
+	private void checkCancelled ()
+	{
+		if (m_monitor.isCancelled ())
+			throw new CancellationException ();
+	}
+
+	/**
+	 * Get the commit time of the most recent commits.
+	 *
+	 * @param	graph
+	 * 			the commit graph
+	 * @param	count
+	 * 			the number of recent commits
+	 * @param	maxTime
+	 * 			only the commits older than this time are counted.
+	 * @return	the commit time of the oldest of the recent commits.
+	 * 			Integer.MIN_VALUE if there are not that many commits.
+	 */
+	private static int getRecentCommitTime (CommitGraphCache graph, int count, int maxTime)
+	{
+		int[] times = new int[graph.size ()];
+		int size = 0;
+		for (int i = 0; i < times.length; ++i)
+		{
+			int time = graph.getCommitTime (i);
+			if (time < maxTime)
+				times[size++] = time;
+		}
+		if (size <= count)
+			return Integer.MIN_VALUE;
+		Arrays.sort (times, 0, size);
+		return times[size - count];
+	}
+
+	private static List<RelationNode> getImportantNodes (RelationTree tree, List<String> importantBranches)
 	{
 		ArrayList<RelationNode> nodes = new ArrayList<RelationNode> ();
 
 		if (importantBranches.size () == 0)
 			return nodes;
 
-		List<Ref> branches = gitRepo.getAllBranches ();
+		List<Ref> branches = tree.getRefSnapshot ().getBranches ();
 		for (int i = 0; i < importantBranches.size (); ++i)
 		{
 			Pattern p = Pattern.compile (importantBranches.get (i));
@@ -66,13 +169,10 @@ public class RelationTreeFactory
 					if (p.matcher (name).matches ())
 					{
 						RelationNode node = tree.getNode (ref.getObjectId ());
-						if (node.getWeight () > i)
+						if (node != null && node.getWeight () > i)
 						{
 							node.setWeight (i);
-							if (node != null)
-							{
-								nodes.add (node);
-							}
+							nodes.add (node);
 						}
 					}
 				}
@@ -91,36 +191,484 @@ public class RelationTreeFactory
 		return nodes;
 	}
 
-	public RelationTree generateTree (Iterable<RevCommit> commitLogs, RelationEditList editList, BranchLog log) throws GitAPIException, IOException
+	/**
+	 * Generate the tree of all the commits using the on-disk commit graph
+	 * cache.  Only the commits not already in the cache are read from the
+	 * repository.
+	 *
+	 * @param	editList
+	 * 			the user edits
+	 * @param	log
+	 * 			the branch discovery log
+	 * @return	the relation tree
+	 * @throws	IOException
+	 * 			in case of I/O error
+	 */
+	public RelationTree generateTree (RelationEditList editList, BranchLog log) throws IOException
 	{
-		RelationTree tree = new RelationTree ();
+		return generateTree (editList, log, null);
+	}
+
+	/**
+	 * Generate the tree of all the commits using the on-disk commit graph
+	 * cache.  If the repository has more than
+	 * {@link Defaults#RECENT_COMMIT_COUNT} commits, a tree of the most
+	 * recent commits is generated first so that it can be shown while the
+	 * whole tree is being generated.
+	 *
+	 * @param	editList
+	 * 			the user edits
+	 * @param	log
+	 * 			the branch discovery log
+	 * @param	recentTreeConsumer
+	 * 			the consumer of the tree of the recent commits.  It can be
+	 * 			null.
+	 * @return	the relation tree
+	 * @throws	IOException
+	 * 			in case of I/O error
+	 * @throws	CancellationException
+	 * 			if the progress monitor is cancelled.
+	 */
+	public RelationTree generateTree (RelationEditList editList, BranchLog log, Consumer<RelationTree> recentTreeConsumer) throws IOException
+	{
+		BuildStatistics.Phase phase = m_stats.begin ("ref snapshot");
+		RefSnapshot refs = m_gitRepo.getRefSnapshot ();
+		m_stats.end (phase);
+
+		// the tree keeps the RevWalk to parse the commit bodies on demand.
+		// Closing it only releases the resources of its reader, which are
+		// acquired again when the RevWalk is used.
+		try (RevWalk revWalk = m_gitRepo.createRevWalk ())
+		{
+			phase = m_stats.begin ("read commits");
+			m_monitor.beginTask ("Reading commits", ProgressMonitor.UNKNOWN);
+			CommitGraphCache graph = CommitGraphCache.load (m_gitRepo, refs, revWalk, m_monitor);
+			m_monitor.endTask ();
+			m_stats.end (phase);
+			checkCancelled ();
+			if (m_path != null)
+			{
+				phase = m_stats.begin ("file history");
+				graph = FileHistory.filter (m_gitRepo, graph, m_path, m_monitor);
+				m_stats.end (phase);
+			}
+
+			phase = m_stats.begin ("addNodes");
+			int minCommitTime = Math.max (m_since, getRecentCommitTime (graph, m_maxCount, Integer.MAX_VALUE));
+			RelationTree tree = new RelationTree ();
+			tree.addNodes (graph, revWalk, refs, minCommitTime);
+			m_stats.end (phase, tree);
+
+			// reuse the saved layout of the same repository state.
+			phase = m_stats.begin ("load layout");
+			byte[] layoutKey = LayoutCache.computeKey (refs, editList, m_importantBranchNames, minCommitTime, m_path);
+			boolean loaded = tree.size () > 0 && LayoutCache.load (m_gitRepo, layoutKey, tree, log);
+			m_stats.end (phase, loaded ? tree : null);
+			if (loaded)
+			{
+				return tree;
+			}
+
+			if (recentTreeConsumer != null)
+			{
+				int recentCommitTime = getRecentCommitTime (graph, Defaults.RECENT_COMMIT_COUNT, Integer.MAX_VALUE);
+				if (recentCommitTime > minCommitTime)
+				{
+					phase = m_stats.begin ("recent tree");
+					RelationTree recentTree = new RelationTree ();
+					recentTree.addNodes (graph, revWalk, refs, recentCommitTime);
+					inferTree (recentTree, editList, new BranchLog (), null);
+					m_stats.end (phase, recentTree);
+					recentTreeConsumer.accept (recentTree);
+				}
+			}
 
-		// First pass to construct the node graph to construct basic node
-		// relationship.
-		tree.addNodes (commitLogs, m_gitRepo);
+			inferTree (tree, editList, log, m_stats);
+			if (tree.size () > 0)
+			{
+				phase = m_stats.begin ("save layout");
+				LayoutCache.save (m_gitRepo, layoutKey, tree, log);
+				m_stats.end (phase);
+			}
+			return tree;
+		}
+	}
 
+	/**
+	 * Discover and lay out the branches of a tree.
+	 *
+	 * @param	stats
+	 * 			the build statistics.  null to not record the phases.
+	 */
+	private RelationTree inferTree (RelationTree tree, RelationEditList editList, BranchLog log, BuildStatistics stats)
+	{
 		if (tree.getNodes ().size () == 0)
 		{
 			return tree;
 		}
+		if (stats == null)
+		{
+			stats = new BuildStatistics ();
+		}
 
-		List<RelationNode> importantNodes = getImportantNodes (tree, m_importantBranchNames, m_gitRepo);
-		RelationNode startNode;
-		if (importantNodes.size () > 0)
+		m_monitor.beginTask ("Discovering branches", ProgressMonitor.UNKNOWN);
+		BuildStatistics.Phase phase = stats.begin ("important nodes");
+		tree.setStartNode (findStartNode (tree));
+		stats.end (phase);
+
+		phase = stats.begin ("partition");
+		List<List<RelationNode>> components = BranchDiscoveryAlgorithm.partition (tree, Defaults.PARALLEL_DISCOVERY_MIN_NODES);
+		stats.end (phase);
+
+		if (components == null)
 		{
-			startNode = importantNodes.get (0);
+			phase = stats.begin ("discoverBranches");
+			BranchDiscoveryAlgorithm.discoverBranches (tree, editList);
+			stats.end (phase, tree);
+
+			phase = stats.begin ("mergeBranches");
+			BranchDiscoveryAlgorithm.mergeBranches (tree, log, stats);
+			stats.end (phase, tree);
 		}
 		else
 		{
-			// use the starting node as the dummy start node.
-			startNode = Collections.min (tree.getNodes ());
+			phase = stats.begin ("discoverBranches (" + components.size () + " components)");
+			BranchDiscoveryAlgorithm.inferBranches (tree, components, editList, log);
+			stats.end (phase, tree);
 		}
-		tree.setStartNode (startNode);
-		BranchDiscoveryAlgorithm.inferBranches (tree, editList, log);
+		m_monitor.endTask ();
+		checkCancelled ();
 
 		// Third pass to layout the branches
+		m_monitor.beginTask ("Laying out branches", ProgressMonitor.UNKNOWN);
+		phase = stats.begin ("layoutBranches");
 		BranchLayoutAlgorithm.layoutBranches (tree);
+		stats.end (phase);
+		m_monitor.endTask ();
+		checkCancelled ();
 
 		return tree;
 	}
+
+	/**
+	 * Find the commit that {@link #findStartNode(RelationTree)} would
+	 * return for the tree updated with the commit graph, without modifying
+	 * the tree.
+	 *
+	 * @param	graph
+	 * 			the commit graph of the current refs.
+	 * @param	indexMap
+	 * 			the indexes of the commits in the graph that would be in
+	 * 			the updated tree.
+	 * @param	refs
+	 * 			the current refs
+	 * @return	the index of the commit in the graph.
+	 */
+	private int findStartCommit (CommitGraphCache graph, HashMap<ObjectId, Integer> indexMap, RefSnapshot refs)
+	{
+		List<Ref> branches = refs.getBranches ();
+		for (String name : m_importantBranchNames)
+		{
+			Pattern p = Pattern.compile (name);
+			int startIndex = -1;
+			for (Ref ref : branches)
+			{
+				if (!p.matcher (ref.getName ()).matches ())
+					continue;
+				Integer index = indexMap.get (ref.getObjectId ());
+				if (index == null)
+					continue;
+				// same order as RelationNode.sortByWeightComparator
+				if (startIndex < 0 ||
+					graph.getCommitTime (index) > graph.getCommitTime (startIndex) ||
+					graph.getCommitTime (index) == graph.getCommitTime (startIndex) &&
+					graph.getCommit (index).compareTo (graph.getCommit (startIndex)) < 0)
+				{
+					startIndex = index;
+				}
+			}
+			if (startIndex >= 0)
+				return startIndex;
+		}
+		int startIndex = -1;
+		for (int index : indexMap.values ())
+		{
+			if (startIndex < 0 ||
+				graph.getCommit (index).compareTo (graph.getCommit (startIndex)) < 0)
+			{
+				startIndex = index;
+			}
+		}
+		return startIndex;
+	}
+
+	private RelationNode findStartNode (RelationTree tree)
+	{
+		List<RelationNode> importantNodes = getImportantNodes (tree, m_importantBranchNames);
+		if (importantNodes.size () > 0)
+		{
+			return importantNodes.get (0);
+		}
+		// use the starting node as the dummy start node.
+		return Collections.min (tree.getNodes ());
+	}
+
+	/**
+	 * Update a tree generated from the commit graph cache with the commits
+	 * reachable from the refs that moved since.  Only the new commits are
+	 * walked, and only the new branches and their neighbors are passed to
+	 * the branch discovery.
+	 * <p>
+	 * The update is not possible if commits were removed (e.g. a branch
+	 * was deleted or rewound), or if the main branch did not simply move
+	 * forward.  The caller should then generate a new tree.
+	 *
+	 * @param	tree
+	 * 			the tree generated by {@link #generateTree(RelationEditList, BranchLog)}.
+	 * @param	editList
+	 * 			the user edits
+	 * @param	log
+	 * 			the branch discovery log
+	 * @return	the nodes laid out again or with moved refs.  null if the
+	 * 			tree needs to be generated again.
+	 * @throws	IOException
+	 * 			in case of I/O error
+	 */
+	public List<RelationNode> updateTree (RelationTree tree, RelationEditList editList, BranchLog log) throws IOException
+	{
+		if (tree.getRevWalk () == null || tree.size () == 0)
+		{
+			return null;
+		}
+		RefSnapshot refs = m_gitRepo.getRefSnapshot ();
+		if (!refs.hasChanged (tree.getRefSnapshot ()))
+		{
+			return new ArrayList<RelationNode> ();
+		}
+		return updateTree (tree, loadUpdate (tree, refs), refs, editList, log);
+	}
+
+	/**
+	 * Read the commit graph for updating a tree.  This step does not
+	 * modify the tree, so it can be done in the background while the tree
+	 * is being shown.
+	 *
+	 * @param	tree
+	 * 			the tree generated by {@link #generateTree(RelationEditList, BranchLog)}.
+	 * @param	refs
+	 * 			the current refs
+	 * @return	the commit graph of the current refs.  null if the tree
+	 * 			cannot be updated.
+	 * @throws	IOException
+	 * 			in case of I/O error
+	 * @throws	CancellationException
+	 * 			if the progress monitor is cancelled.
+	 */
+	public CommitGraphCache loadUpdate (RelationTree tree, RefSnapshot refs) throws IOException
+	{
+		RevWalk revWalk = tree.getRevWalk ();
+		if (revWalk == null || tree.size () == 0)
+		{
+			return null;
+		}
+		Debug.println ("refs changed: " + refs.getChangedRefs (tree.getRefSnapshot ()));
+
+		BuildStatistics.Phase phase = m_stats.begin ("read commits");
+		m_monitor.beginTask ("Reading commits", ProgressMonitor.UNKNOWN);
+		CommitGraphCache graph;
+		synchronized (revWalk)
+		{
+			try
+			{
+				graph = CommitGraphCache.load (m_gitRepo, refs, revWalk, m_monitor);
+			}
+			finally
+			{
+				revWalk.close ();
+			}
+		}
+		m_monitor.endTask ();
+		m_stats.end (phase);
+		return graph;
+	}
+
+	/**
+	 * Update a tree with the commit graph read by
+	 * {@link #loadUpdate(RelationTree, RefSnapshot)}.
+	 *
+	 * @param	tree
+	 * 			the tree to be updated.
+	 * @param	graph
+	 * 			the commit graph of the current refs.  It can be null.
+	 * @param	refs
+	 * 			the current refs
+	 * @param	editList
+	 * 			the user edits
+	 * @param	log
+	 * 			the branch discovery log
+	 * @return	the nodes laid out again or with moved refs.  Only their
+	 * 			vertices need to be updated.  null if the tree needs to be
+	 * 			generated again.
+	 */
+	public List<RelationNode> updateTree (RelationTree tree, CommitGraphCache graph, RefSnapshot refs, RelationEditList editList, BranchLog log)
+	{
+		if (graph == null)
+		{
+			return null;
+		}
+		if (!refs.hasChanged (tree.getRefSnapshot ()))
+		{
+			return new ArrayList<RelationNode> ();
+		}
+
+		// decide whether the tree can be updated before modifying it, so
+		// that the tree is intact when it has to be generated again.
+		BuildStatistics.Phase phase = m_stats.begin ("important nodes");
+		int oldCount = 0;
+		int minCommitTime = tree.getMinCommitTime ();
+		HashMap<ObjectId, Integer> indexMap = new HashMap<ObjectId, Integer> ();
+		for (int i = 0; i < graph.size (); ++i)
+		{
+			if (tree.getNode (graph.getCommit (i)) != null)
+				++oldCount;
+			if (graph.getCommitTime (i) >= minCommitTime ||
+				tree.getNode (graph.getCommit (i)) != null)
+			{
+				indexMap.put (graph.getCommit (i), i);
+			}
+		}
+		if (oldCount != tree.size ())
+		{
+			m_stats.end (phase);
+			Debug.println ("commits removed, regenerate the tree");
+			return null;
+		}
+
+		// the main branch has to be either unchanged or moved forward.
+		RelationNode oldStartNode = tree.getStartNode ();
+		int startIndex = findStartCommit (graph, indexMap, refs);
+		m_stats.end (phase);
+		if (!graph.getCommit (startIndex).equals (oldStartNode.getId ()))
+		{
+			int index = startIndex;
+			while (!graph.getCommit (index).equals (oldStartNode.getId ()))
+			{
+				if (tree.getNode (graph.getCommit (index)) != null ||
+					graph.getParentCount (index) == 0 ||
+					!indexMap.containsKey (graph.getCommit (graph.getParent (index, 0))))
+				{
+					Debug.println ("main branch moved, regenerate the tree");
+					return null;
+				}
+				index = graph.getParent (index, 0);
+			}
+			if (!DiscoveryUtils.isLastInBranch (oldStartNode))
+			{
+				Debug.println ("main branch moved, regenerate the tree");
+				return null;
+			}
+		}
+
+		phase = m_stats.begin ("addNodes");
+		RefSnapshot oldRefs = tree.getRefSnapshot ();
+		List<RelationNode> newNodes = tree.addNodes (graph, tree.getRevWalk (), refs);
+		RelationBranch[] oldBranches = BranchLayoutAlgorithm.getNodeBranches (tree);
+		tree.updateRefs (refs);
+		for (RelationNode node : tree.getNodes ())
+		{
+			node.setWeight (Integer.MAX_VALUE);
+		}
+		tree.setStartNode (findStartNode (tree));
+		m_stats.end (phase, tree);
+		Debug.println ("new commits: " + newNodes.size ());
+
+		if (newNodes.size () > 0)
+		{
+			phase = m_stats.begin ("inferBranches");
+			BranchDiscoveryAlgorithm.inferBranches (tree, newNodes, editList, log, m_stats);
+			m_stats.end (phase, tree);
+		}
+
+		// only lay out the new branches and the branches they changed.
+		phase = m_stats.begin ("layoutBranches");
+		Set<RelationBranch> changedBranches = BranchLayoutAlgorithm.getChangedBranches (tree, oldBranches);
+		LinkedHashSet<RelationNode> nodes = new LinkedHashSet<RelationNode> (BranchLayoutAlgorithm.layoutBranches (tree, changedBranches));
+		m_stats.end (phase);
+		for (String name : refs.getChangedRefs (oldRefs))
+		{
+			addNode (tree, oldRefs == null ? null : oldRefs.getTips ().get (name), nodes);
+			addNode (tree, refs.getTips ().get (name), nodes);
+		}
+		return new ArrayList<RelationNode> (nodes);
+	}
+
+	private static void addNode (RelationTree tree, ObjectId id, Set<RelationNode> nodes)
+	{
+		RelationNode node = (id == null) ? null : tree.getNode (id);
+		if (node != null)
+			nodes.add (node);
+	}
+
+	/**
+	 * Extend the history window of a truncated tree with older commits.
+	 * The new nodes are added to the tree, and only their branches and
+	 * the branches of the formerly truncated nodes are searched for
+	 * merges.  Only the branches that changed are laid out again.
+	 *
+	 * @param	tree
+	 * 			the tree generated by {@link #generateTree(RelationEditList, BranchLog)}.
+	 * @param	count
+	 * 			the number of older commits to add.
+	 * @param	editList
+	 * 			the user edits
+	 * @param	log
+	 * 			the branch discovery log
+	 * @return	the nodes laid out again, the new nodes and the formerly
+	 * 			truncated nodes that gained parents.  Only their vertices
+	 * 			need to be updated.  null if no older commits were added.
+	 */
+	public List<RelationNode> extendTree (RelationTree tree, int count, RelationEditList editList, BranchLog log)
+	{
+		CommitGraphCache graph = tree.getCommitGraph ();
+		if (graph == null || !tree.isTruncated ())
+		{
+			return null;
+		}
+		HashMap<RelationNode, Integer> truncatedNodes = new HashMap<RelationNode, Integer> ();
+		for (RelationNode node : tree.getNodes ())
+		{
+			if (node.isTruncated ())
+				truncatedNodes.put (node, node.getParentCount ());
+		}
+
+		// the window can be extended past the since date.
+		BuildStatistics.Phase phase = m_stats.begin ("addNodes");
+		int minCommitTime = getRecentCommitTime (graph, count, tree.getMinCommitTime ());
+		List<RelationNode> newNodes = tree.addNodes (graph, tree.getRevWalk (), tree.getRefSnapshot (), minCommitTime);
+		RelationBranch[] oldBranches = BranchLayoutAlgorithm.getNodeBranches (tree);
+		m_stats.end (phase, tree);
+		Debug.println ("history extended: " + newNodes.size () + " commits");
+		if (newNodes.size () == 0)
+		{
+			return null;
+		}
+		phase = m_stats.begin ("inferBranches");
+		BranchDiscoveryAlgorithm.extendBranches (tree, newNodes, editList, log, m_stats);
+		m_stats.end (phase, tree);
+
+		// the main branch gained the older commits, so the branches
+		// anchored at it follow it down.  The other branches keep their
+		// places.
+		phase = m_stats.begin ("layoutBranches");
+		Set<RelationBranch> changedBranches = BranchLayoutAlgorithm.getChangedBranches (tree, oldBranches);
+		LinkedHashSet<RelationNode> nodes = new LinkedHashSet<RelationNode> (BranchLayoutAlgorithm.layoutBranches (tree, changedBranches));
+		m_stats.end (phase);
+		nodes.addAll (newNodes);
+		for (Map.Entry<RelationNode, Integer> entry : truncatedNodes.entrySet ())
+		{
+			if (entry.getKey ().getParentCount () != entry.getValue ())
+				nodes.add (entry.getKey ());
+		}
+		return new ArrayList<RelationNode> (nodes);
+	}
 }
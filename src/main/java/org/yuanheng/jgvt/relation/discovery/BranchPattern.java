@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation.discovery;
+
+import org.yuanheng.jgvt.relation.RelationBranch;
+import org.yuanheng.jgvt.relation.RelationNode;
+
+/**
+ * The local pattern of the branch ends that a discovery algorithm needs
+ * before it can merge a branch.  An algorithm is only given the branches
+ * matching its pattern.
+ *
+ * @author	Heng Yuan
+ */
+public enum BranchPattern
+{
+	/** The first node has a single parent. */
+	FIRST_SINGLE_PARENT,
+	/** The first node is a merge of two parents. */
+	FIRST_TWO_PARENTS,
+	/** The last node has children. */
+	LAST_CHILDREN,
+	/** The last node has two children. */
+	LAST_TWO_CHILDREN,
+	/** The last node has more than two children. */
+	LAST_MANY_CHILDREN;
+
+	public int getMask ()
+	{
+		return 1 << ordinal ();
+	}
+
+	/**
+	 * Get the patterns a branch currently matches.
+	 *
+	 * @param	branch
+	 * 			a non-empty branch
+	 * @return	the masks of the matching patterns.
+	 */
+	public static int getMask (RelationBranch branch)
+	{
+		int mask = 0;
+		RelationNode firstNode = branch.getFirst ();
+		if (firstNode.getParentCount () == 1)
+			mask |= FIRST_SINGLE_PARENT.getMask ();
+		else if (firstNode.getParentCount () == 2)
+			mask |= FIRST_TWO_PARENTS.getMask ();
+
+		int childCount = branch.getLast ().getChildCount ();
+		if (childCount > 0)
+			mask |= LAST_CHILDREN.getMask ();
+		if (childCount == 2)
+			mask |= LAST_TWO_CHILDREN.getMask ();
+		else if (childCount > 2)
+			mask |= LAST_MANY_CHILDREN.getMask ();
+		return mask;
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation.discovery;
+
+import java.util.*;
+
+import org.yuanheng.jgvt.relation.RelationBranch;
+
+/**
+ * The branches to be searched in a merge iteration, indexed by the
+ * patterns they match.
+ * <p>
+ * The branches keep the order of the collection they were taken from, so
+ * an algorithm given the view of its pattern visits the matching branches
+ * in the same order as a scan of the whole collection would.  A branch
+ * that absorbs another branch is added to the check set, which updates
+ * its patterns.  The views look up the next branch lazily, so an absorber
+ * that starts matching a pattern is still visited by an algorithm whose
+ * scan has not passed it yet.
+ *
+ * @author	Heng Yuan
+ */
+public class BranchWorklist
+{
+	private class PatternView extends AbstractSet<RelationBranch>
+	{
+		private final BitSet m_bits;
+
+		public PatternView (BitSet bits)
+		{
+			m_bits = bits;
+		}
+
+		@Override
+		public Iterator<RelationBranch> iterator ()
+		{
+			return new Iterator<RelationBranch> ()
+			{
+				private int m_index = -1;
+
+				@Override
+				public boolean hasNext ()
+				{
+					return m_bits.nextSetBit (m_index + 1) >= 0;
+				}
+
+				@Override
+				public RelationBranch next ()
+				{
+					int index = m_bits.nextSetBit (m_index + 1);
+					if (index < 0)
+						throw new NoSuchElementException ();
+					m_index = index;
+					return m_branches.get (index);
+				}
+			};
+		}
+
+		@Override
+		public boolean contains (Object o)
+		{
+			Integer index = m_indexMap.get (o);
+			return index != null && m_bits.get (index);
+		}
+
+		@Override
+		public int size ()
+		{
+			return m_bits.cardinality ();
+		}
+	}
+
+	private class CheckSet extends AbstractSet<RelationBranch>
+	{
+		private final Set<RelationBranch> m_checkBranches;
+
+		public CheckSet (Set<RelationBranch> checkBranches)
+		{
+			m_checkBranches = checkBranches;
+		}
+
+		@Override
+		public boolean add (RelationBranch branch)
+		{
+			update (branch);
+			return m_checkBranches.add (branch);
+		}
+
+		@Override
+		public Iterator<RelationBranch> iterator ()
+		{
+			return m_checkBranches.iterator ();
+		}
+
+		@Override
+		public boolean contains (Object o)
+		{
+			return m_checkBranches.contains (o);
+		}
+
+		@Override
+		public int size ()
+		{
+			return m_checkBranches.size ();
+		}
+	}
+
+	private final ArrayList<RelationBranch> m_branches;
+	private final HashMap<RelationBranch, Integer> m_indexMap;
+	private final int[] m_masks;
+	private final BitSet[] m_patternSets;
+
+	/**
+	 * @param	branches
+	 * 			the branches to be searched, in the order to search them.
+	 */
+	public BranchWorklist (Collection<RelationBranch> branches)
+	{
+		m_branches = new ArrayList<RelationBranch> (branches);
+		m_indexMap = new HashMap<RelationBranch, Integer> (m_branches.size () * 2);
+		m_masks = new int[m_branches.size ()];
+		m_patternSets = new BitSet[BranchPattern.values ().length];
+		for (int i = 0; i < m_patternSets.length; ++i)
+		{
+			m_patternSets[i] = new BitSet (m_branches.size ());
+		}
+		for (int i = 0; i < m_branches.size (); ++i)
+		{
+			RelationBranch branch = m_branches.get (i);
+			m_indexMap.put (branch, i);
+			setMask (i, branch.size () == 0 ? 0 : BranchPattern.getMask (branch));
+		}
+	}
+
+	private void setMask (int index, int mask)
+	{
+		m_masks[index] = mask;
+		for (BranchPattern pattern : BranchPattern.values ())
+		{
+			m_patternSets[pattern.ordinal ()].set (index, (mask & pattern.getMask ()) != 0);
+		}
+	}
+
+	/**
+	 * Update the patterns of a branch after it has absorbed another branch.
+	 *
+	 * @param	branch
+	 * 			the branch modified.
+	 */
+	public void update (RelationBranch branch)
+	{
+		Integer index = m_indexMap.get (branch);
+		if (index == null)
+			return;
+		int mask = branch.size () == 0 ? 0 : BranchPattern.getMask (branch);
+		if (mask != m_masks[index])
+			setMask (index, mask);
+	}
+
+	/**
+	 * @return	the number of the branches in the worklist.
+	 */
+	public int size ()
+	{
+		return m_branches.size ();
+	}
+
+	/**
+	 * Get the branches currently matching a pattern.
+	 *
+	 * @param	pattern
+	 * 			the pattern
+	 * @return	a live view of the matching branches.
+	 */
+	public Set<RelationBranch> getBranches (BranchPattern pattern)
+	{
+		return new PatternView (m_patternSets[pattern.ordinal ()]);
+	}
+
+	/**
+	 * Wrap the set collecting the modified branches, so that the patterns
+	 * of the modified branches are updated as they are added.
+	 *
+	 * @param	checkBranches
+	 * 			the set of the modified branches
+	 * @return	a set that adds to checkBranches.
+	 */
+	public Set<RelationBranch> getCheckSet (Set<RelationBranch> checkBranches)
+	{
+		return new CheckSet (checkBranches);
+	}
+}
@@ -34,6 +34,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class DiamondMergeLeftParentAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -43,20 +49,20 @@ class DiamondMergeLeftParentAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length != 2)
+			if (firstNode.getParentCount () != 2)
 				continue;
-			RelationNode leftParent = firstNode.getParents ()[0];
-			RelationNode rightParent = firstNode.getParents ()[1];
-			if (leftParent.getChildren ().length == 1 &&
-				rightParent.getChildren ().length == 1)
+			RelationNode leftParent = firstNode.getParent (0);
+			RelationNode rightParent = firstNode.getParent (1);
+			if (leftParent.getChildCount () == 1 &&
+				rightParent.getChildCount () == 1)
 			{
 				RelationNode leftFirst = leftParent.getRelationBranch ().getFirst ();
-				if (leftFirst.getParents ().length != 1)
+				if (leftFirst.getParentCount () != 1)
 					continue;
 				RelationNode rightFirst = leftParent.getRelationBranch ().getFirst ();
-				if (rightFirst.getParents ().length != 1)
+				if (rightFirst.getParentCount () != 1)
 					continue;
-				if (leftFirst.getParents ()[0] == rightFirst.getParents ()[0])
+				if (leftFirst.getParent (0) == rightFirst.getParent (0))
 				{
 					branch.mergeParent (leftParent.getRelationBranch ());
 
@@ -32,6 +32,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class DiamondSwapParentsTwoLongChainAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -42,26 +48,26 @@ class DiamondSwapParentsTwoLongChainAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length != 2)
+			if (firstNode.getParentCount () != 2)
 				continue;
 
-			RelationNode leftParent = firstNode.getParents ()[0];
+			RelationNode leftParent = firstNode.getParent (0);
 			RelationBranch leftParentBranch = leftParent.getRelationBranch ();
-			RelationNode rightParent = firstNode.getParents ()[1];
+			RelationNode rightParent = firstNode.getParent (1);
 			RelationBranch rightParentBranch = rightParent.getRelationBranch ();
 
 			if (leftParent != leftParentBranch.getLast () ||
 				rightParent != rightParentBranch.getLast () ||
-				leftParent.getChildren ().length != 2 ||
-				rightParent.getChildren ().length != 1)
+				leftParent.getChildCount () != 2 ||
+				rightParent.getChildCount () != 1)
 				continue;
 
 			RelationNode leftParentFirst = leftParentBranch.getFirst ();
 			RelationNode rightParentFirst = rightParentBranch.getFirst ();
 
-			if (leftParentFirst.getParents ().length != 1 ||
-				rightParentFirst.getParents ().length != 1 ||
-				leftParentFirst.getParents ()[0] != rightParentFirst.getParents ()[0])
+			if (leftParentFirst.getParentCount () != 1 ||
+				rightParentFirst.getParentCount () != 1 ||
+				leftParentFirst.getParent (0) != rightParentFirst.getParent (0))
 				continue;
 
 			branch.mergeParent (rightParentBranch);
@@ -25,5 +25,11 @@ import org.yuanheng.jgvt.relation.RelationBranch;
  */
 public interface DiscoveryAlgorithm
 {
+	/**
+	 * @return	the pattern a branch has to match for this algorithm to
+	 * 			merge it.
+	 */
+	public BranchPattern getPattern ();
+
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log);
 }
@@ -38,7 +38,7 @@ public class DiscoveryUtils
 	 */
 	public static boolean isMergePullRequest(RelationNode node)
 	{
-		return node.getParents ().length == 2 && node.getCommit ().getFullMessage ().startsWith ("Merge pull request");
+		return node.getParentCount () == 2 && node.isMergePullRequest ();
 	}
 
 	/**
@@ -58,8 +58,8 @@ public class DiscoveryUtils
 	public static boolean isSideBranch (RelationBranch parent, RelationBranch child)
 	{
 		RelationNode firstNode = child.getFirst ();
-		return (firstNode.getParents ().length == 1) &&
-			   (firstNode.getParents ()[0].getRelationBranch () == parent);
+		return (firstNode.getParentCount () == 1) &&
+			   (firstNode.getParent (0).getRelationBranch () == parent);
 	}
 
 	public static boolean isFirstInBranch (RelationNode node)
@@ -81,8 +81,8 @@ public class DiscoveryUtils
 	public static boolean isMergeTo (RelationBranch branchFrom, RelationBranch branchTo)
 	{
 		RelationNode lastNode = branchFrom.getLast ();
-		return lastNode.getChildren ().length == 1 &&
-			   lastNode.getChildren ()[0].getRelationBranch () == branchTo;
+		return lastNode.getChildCount () == 1 &&
+			   lastNode.getChild (0).getRelationBranch () == branchTo;
 	}
 
 	/**
@@ -99,8 +99,9 @@ public class DiscoveryUtils
 			return null;
 
 		RelationNode toJoin = null;
-		for (RelationNode child : node.getChildren ())
+		for (int i = 0; i < node.getChildCount (); ++i)
 		{
+			RelationNode child = node.getChild (i);
 			if (isFirstInBranch (child))
 			{
 				if (toJoin == null)
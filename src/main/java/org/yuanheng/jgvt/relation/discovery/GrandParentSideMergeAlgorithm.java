@@ -34,6 +34,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class GrandParentSideMergeAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -43,24 +49,24 @@ class GrandParentSideMergeAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length != 2)
+			if (firstNode.getParentCount () != 2)
 				continue;
 
-			RelationNode rightParent = firstNode.getParents ()[1];
-			if (rightParent.getChildren ().length != 1)
+			RelationNode rightParent = firstNode.getParent (1);
+			if (rightParent.getChildCount () != 1)
 				continue;
 			RelationBranch rightParentBranch = rightParent.getRelationBranch ();
 			RelationNode rightParentFirst = rightParentBranch.getFirst ();
-			if (rightParentFirst.getParents ().length != 1)
+			if (rightParentFirst.getParentCount () != 1)
 				continue;
 
-			RelationNode leftParent = firstNode.getParents ()[0];
+			RelationNode leftParent = firstNode.getParent (0);
 			RelationBranch leftParentBranch = leftParent.getRelationBranch ();
 			if (leftParent != leftParentBranch.getLast ())
 				continue;
 			RelationNode leftParentFirst = leftParentBranch.getFirst ();
-			if (leftParentFirst.getParents ().length > 1 &&
-				leftParentFirst.getParents ()[0] == rightParentFirst.getParents ()[0])
+			if (leftParentFirst.getParentCount () > 1 &&
+				leftParentFirst.getParent (0) == rightParentFirst.getParent (0))
 			{
 				branch.mergeParent (leftParentBranch);
 
@@ -32,6 +32,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class MergeOutMergeInAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -41,11 +47,11 @@ class MergeOutMergeInAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length != 2)
+			if (firstNode.getParentCount () != 2)
 				continue;
 
-			RelationNode leftParent = firstNode.getParents ()[0];
-			RelationNode rightParent = firstNode.getParents ()[1];
+			RelationNode leftParent = firstNode.getParent (0);
+			RelationNode rightParent = firstNode.getParent (1);
 			RelationBranch leftParentBranch = leftParent.getRelationBranch ();
 			RelationBranch rightParentBranch = rightParent.getRelationBranch ();
 
@@ -58,8 +64,9 @@ class MergeOutMergeInAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			boolean hasMergeToRight = false;
-			for (RelationNode child : leftParent.getChildren ())
+			for (int i = 0; i < leftParent.getChildCount (); ++i)
 			{
+				RelationNode child = leftParent.getChild (i);
 				if (child.getRelationBranch () == rightParentBranch)
 				{
 					hasMergeToRight = true;
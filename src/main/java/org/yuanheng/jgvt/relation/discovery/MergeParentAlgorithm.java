@@ -34,6 +34,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class MergeParentAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -45,12 +51,12 @@ class MergeParentAlgorithm implements DiscoveryAlgorithm
 			RelationNode firstNode = branch.getFirst ();
 			RelationNode lastNode = branch.getLast ();
 
-			if (firstNode.getParents ().length == 2 &&
-				lastNode.getChildren ().length == 1)
+			if (firstNode.getParentCount () == 2 &&
+				lastNode.getChildCount () == 1)
 			{
-				RelationNode leftParent = firstNode.getParents ()[0];
+				RelationNode leftParent = firstNode.getParent (0);
 				RelationBranch leftParentBranch = leftParent.getRelationBranch ();
-				RelationNode rightParent = firstNode.getParents ()[1];
+				RelationNode rightParent = firstNode.getParent (1);
 				RelationBranch rightParentBranch = rightParent.getRelationBranch ();
 
 				if (!Main.pref.getLeftOnly () &&
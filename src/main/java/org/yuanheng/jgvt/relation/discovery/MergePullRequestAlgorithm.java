@@ -32,6 +32,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class MergePullRequestAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -41,10 +47,10 @@ class MergePullRequestAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length == 2)
+			if (firstNode.getParentCount () == 2)
 			{
-				RelationNode leftParent = firstNode.getParents ()[0];
-				RelationNode rightParent = firstNode.getParents ()[1];
+				RelationNode leftParent = firstNode.getParent (0);
+				RelationNode rightParent = firstNode.getParent (1);
 
 				if (DiscoveryUtils.isLastInBranch (leftParent) &&
 					DiscoveryUtils.isLastInBranch (rightParent))
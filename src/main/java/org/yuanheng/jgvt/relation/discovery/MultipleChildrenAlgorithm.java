@@ -32,6 +32,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class MultipleChildrenAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.LAST_MANY_CHILDREN;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -43,34 +49,35 @@ class MultipleChildrenAlgorithm implements DiscoveryAlgorithm
 
 			RelationNode lastNode = branch.getLast ();
 
-			if (lastNode.getChildren ().length > 2)
+			if (lastNode.getChildCount () > 2)
 			{
 				childBranchMap.clear ();
-				for (RelationNode child : lastNode.getChildren ())
+				for (int i = 0; i < lastNode.getChildCount (); ++i)
 				{
+					RelationNode child = lastNode.getChild (i);
 					// Only consider all first in branch cases.
 					// Otherwise, sometimes things can get screwed up.
 					if (!DiscoveryUtils.isFirstInBranch (child))
 						break;
 					childBranchMap.put (child.getRelationBranch (), 0);
 				}
-				if (childBranchMap.size () != lastNode.getChildren ().length)
+				if (childBranchMap.size () != lastNode.getChildCount ())
 				{
 					childBranchMap.clear ();
 					continue;
 				}
-				int halfCount = lastNode.getChildren ().length / 2;
+				int halfCount = lastNode.getChildCount () / 2;
 DoneSearch:
 				for (RelationBranch childBranch : childBranchMap.keySet ())
 				{
 					RelationNode childLastNode = childBranch.getLast ();
-					if (childLastNode.getChildren ().length == 0)
+					if (childLastNode.getChildCount () == 0)
 					{
 						continue;
 					}
-					if (childLastNode.getChildren ().length == 1)
+					if (childLastNode.getChildCount () == 1)
 					{
-						RelationBranch toMergeChildBranch = childLastNode.getChildren ()[0].getRelationBranch ();
+						RelationBranch toMergeChildBranch = childLastNode.getChild (0).getRelationBranch ();
 						Integer value = childBranchMap.get (toMergeChildBranch);
 						if (value == null)
 						{
@@ -33,6 +33,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class ParallelParentsAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.LAST_TWO_CHILDREN;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -42,11 +48,11 @@ class ParallelParentsAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode lastNode = branch.getLast ();
-			if (lastNode.getChildren ().length != 2)
+			if (lastNode.getChildCount () != 2)
 				continue;
 
-			RelationNode leftChild = lastNode.getChildren ()[0];
-			RelationNode rightChild = lastNode.getChildren ()[1];
+			RelationNode leftChild = lastNode.getChild (0);
+			RelationNode rightChild = lastNode.getChild (1);
 
 			RelationBranch leftChildBranch = leftChild.getRelationBranch ();
 			RelationBranch rightChildBranch = rightChild.getRelationBranch ();
@@ -54,20 +60,20 @@ class ParallelParentsAlgorithm implements DiscoveryAlgorithm
 			if (DiscoveryUtils.isFirstInBranch (leftChild) &&
 				DiscoveryUtils.isFirstInBranch (rightChild))
 			{
-				if (rightChild.getParents ().length == 1 &&
-					leftChild.getParents ().length == 2 &&
-					leftChild.getParents ()[1] == lastNode &&
-					DiscoveryUtils.isLastInBranch (leftChild.getParents ()[0]))
+				if (rightChild.getParentCount () == 1 &&
+					leftChild.getParentCount () == 2 &&
+					leftChild.getParent (1) == lastNode &&
+					DiscoveryUtils.isLastInBranch (leftChild.getParent (0)))
 				{
 					branch.mergeChild (rightChildBranch);
 
 					log.log (lastNode, "PP right", iteration);
 					checkBranches.add (branch);
 				}
-				else if (leftChild.getParents ().length == 1 &&
-						 rightChild.getParents ().length == 2 &&
-						 rightChild.getParents ()[1] == lastNode &&
-						 DiscoveryUtils.isLastInBranch (rightChild.getParents ()[0]))
+				else if (leftChild.getParentCount () == 1 &&
+						 rightChild.getParentCount () == 2 &&
+						 rightChild.getParent (1) == lastNode &&
+						 DiscoveryUtils.isLastInBranch (rightChild.getParent (0)))
 				{
 					branch.mergeChild (leftChildBranch);
 
@@ -33,6 +33,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class ParentSideBranchParentAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -42,17 +48,17 @@ class ParentSideBranchParentAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length != 2)
+			if (firstNode.getParentCount () != 2)
 				continue;
 
-			RelationNode leftParent = firstNode.getParents ()[0];
-			RelationNode rightParent = firstNode.getParents ()[1];
+			RelationNode leftParent = firstNode.getParent (0);
+			RelationNode rightParent = firstNode.getParent (1);
 			RelationBranch leftParentBranch = leftParent.getRelationBranch ();
 			RelationBranch rightParentBranch = rightParent.getRelationBranch ();
 
 			if (!DiscoveryUtils.isLastInBranch (rightParent))
 			{
-				if (leftParent.getChildren ().length == 1 ||
+				if (leftParent.getChildCount () == 1 ||
 					DiscoveryUtils.hasSingleJoinChild (leftParent) == firstNode)
 				{
 					branch.mergeParent (leftParentBranch);
@@ -64,7 +70,7 @@ class ParentSideBranchParentAlgorithm implements DiscoveryAlgorithm
 			else if (!Main.pref.getLeftOnly () &&
 					 !DiscoveryUtils.isLastInBranch (leftParent))
 			{
-				if (rightParent.getChildren ().length == 1 ||
+				if (rightParent.getChildCount () == 1 ||
 					DiscoveryUtils.hasSingleJoinChild (rightParent) == firstNode)
 				{
 					branch.mergeParent (rightParentBranch);
@@ -33,6 +33,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class RepeatMergeAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.LAST_TWO_CHILDREN;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -43,25 +49,25 @@ class RepeatMergeAlgorithm implements DiscoveryAlgorithm
 
 			RelationNode lastNode = branch.getLast ();
 
-			if (lastNode.getChildren ().length == 2)
+			if (lastNode.getChildCount () == 2)
 			{
-				RelationBranch leftChildBranch = lastNode.getChildren ()[0].getRelationBranch ();
-				RelationBranch rightChildBranch = lastNode.getChildren ()[1].getRelationBranch ();
+				RelationBranch leftChildBranch = lastNode.getChild (0).getRelationBranch ();
+				RelationBranch rightChildBranch = lastNode.getChild (1).getRelationBranch ();
 
 				if (branch == leftChildBranch ||
 					branch == rightChildBranch ||
 					leftChildBranch == rightChildBranch)
 					continue;
 
-				RelationNode leftNode = lastNode.getChildren ()[0];
-				RelationNode rightNode = lastNode.getChildren ()[1];
+				RelationNode leftNode = lastNode.getChild (0);
+				RelationNode rightNode = lastNode.getChild (1);
 
 				// now check if leftBranch merges to rightBranch or
 				// vice versa
 				RelationNode leftLast = leftChildBranch.getLast ();
 				if (DiscoveryUtils.isFirstInBranch (leftNode) &&
-					leftLast.getChildren ().length == 1 &&
-					leftLast.getChildren ()[0].getRelationBranch () == rightChildBranch &&
+					leftLast.getChildCount () == 1 &&
+					leftLast.getChild (0).getRelationBranch () == rightChildBranch &&
 					!DiscoveryUtils.isFirstInBranch (rightNode))
 				{
 					branch.mergeChild (leftChildBranch);
@@ -73,8 +79,8 @@ class RepeatMergeAlgorithm implements DiscoveryAlgorithm
 
 				RelationNode rightLast = rightChildBranch.getLast ();
 				if (DiscoveryUtils.isFirstInBranch (rightNode) &&
-					rightLast.getChildren ().length == 1 &&
-					rightLast.getChildren ()[0].getRelationBranch () == leftChildBranch &&
+					rightLast.getChildCount () == 1 &&
+					rightLast.getChild (0).getRelationBranch () == leftChildBranch &&
 					!DiscoveryUtils.isFirstInBranch (leftNode))
 				{
 					branch.mergeChild (rightChildBranch);
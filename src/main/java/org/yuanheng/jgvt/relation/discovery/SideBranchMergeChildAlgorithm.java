@@ -35,6 +35,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class SideBranchMergeChildAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -44,21 +50,21 @@ class SideBranchMergeChildAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length == 2)
+			if (firstNode.getParentCount () == 2)
 			{
-				RelationNode leftParent = firstNode.getParents ()[0];
+				RelationNode leftParent = firstNode.getParent (0);
 				RelationBranch leftParentBranch = leftParent.getRelationBranch ();
-				RelationNode rightParent = firstNode.getParents ()[1];
+				RelationNode rightParent = firstNode.getParent (1);
 				RelationBranch rightParentBranch = rightParent.getRelationBranch ();
 
-				if (leftParent.getChildren ().length == 1 &&
+				if (leftParent.getChildCount () == 1 &&
 					DiscoveryUtils.isLastInBranch (leftParent) &&
-					rightParent.getChildren ().length == 1 &&
+					rightParent.getChildCount () == 1 &&
 					DiscoveryUtils.isLastInBranch (rightParent))
 				{
 					if (DiscoveryUtils.isSideBranch (leftParentBranch, rightParentBranch))
 					{
-						if (DiscoveryUtils.isMiddleInBranch (rightParentBranch.getFirst ().getParents ()[0]))
+						if (DiscoveryUtils.isMiddleInBranch (rightParentBranch.getFirst ().getParent (0)))
 						{
 							branch.mergeParent (leftParentBranch);
 
@@ -69,7 +75,7 @@ class SideBranchMergeChildAlgorithm implements DiscoveryAlgorithm
 					else if (!Main.pref.getLeftOnly () &&
 							 DiscoveryUtils.isSideBranch (rightParentBranch, leftParentBranch))
 					{
-						if (DiscoveryUtils.isMiddleInBranch (leftParentBranch.getFirst ().getParents ()[0]))
+						if (DiscoveryUtils.isMiddleInBranch (leftParentBranch.getFirst ().getParent (0)))
 						{
 							branch.mergeParent (rightParentBranch);
 
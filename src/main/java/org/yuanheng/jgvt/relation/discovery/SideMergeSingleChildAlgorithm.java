@@ -31,6 +31,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class SideMergeSingleChildAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_TWO_PARENTS;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -40,11 +46,11 @@ class SideMergeSingleChildAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length == 2)
+			if (firstNode.getParentCount () == 2)
 			{
-				RelationNode leftParent = firstNode.getParents ()[0];
-				RelationNode rightParent = firstNode.getParents ()[1];
-				if (leftParent.getChildren ().length == 1 &&
+				RelationNode leftParent = firstNode.getParent (0);
+				RelationNode rightParent = firstNode.getParent (1);
+				if (leftParent.getChildCount () == 1 &&
 					DiscoveryUtils.isLastInBranch (leftParent) &&
 					!DiscoveryUtils.isLastInBranch (rightParent))
 				{
@@ -53,7 +59,7 @@ class SideMergeSingleChildAlgorithm implements DiscoveryAlgorithm
 					log.log (firstNode, "SM1C right", iteration);
 					checkBranches.add (branch);
 				}
-				else if (rightParent.getChildren ().length == 1 &&
+				else if (rightParent.getChildCount () == 1 &&
 						DiscoveryUtils.isLastInBranch (rightParent) &&
 						 !DiscoveryUtils.isLastInBranch (leftParent))
 				{
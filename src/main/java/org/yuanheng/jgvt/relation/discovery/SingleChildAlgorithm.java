@@ -29,6 +29,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class SingleChildAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_SINGLE_PARENT;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -38,11 +44,11 @@ class SingleChildAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length == 1)
+			if (firstNode.getParentCount () == 1)
 			{
-				RelationNode parent = firstNode.getParents ()[0];
+				RelationNode parent = firstNode.getParent (0);
 				if (parent.getRelationBranch () != branch &&
-					parent.getChildren ().length == 1)
+					parent.getChildCount () == 1)
 				{
 					// this node is the only child of the parent node,
 					// and the parent is in a different branch.
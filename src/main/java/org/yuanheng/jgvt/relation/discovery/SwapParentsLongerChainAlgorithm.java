@@ -33,6 +33,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class SwapParentsLongerChainAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.FIRST_SINGLE_PARENT;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -43,16 +49,16 @@ class SwapParentsLongerChainAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode firstNode = branch.getFirst ();
-			if (firstNode.getParents ().length != 1)
+			if (firstNode.getParentCount () != 1)
 				continue;
-			RelationNode secondNode = branch.getOrderedList ().get (1);
-			if (secondNode.getParents ().length != 2)
+			RelationNode secondNode = branch.getNext (firstNode);
+			if (secondNode.getParentCount () != 2)
 				continue;
 
-			RelationBranch parentBranch = firstNode.getParents ()[0].getRelationBranch ();
-			if (secondNode.getParents ()[1].getRelationBranch () != parentBranch)
+			RelationBranch parentBranch = firstNode.getParent (0).getRelationBranch ();
+			if (secondNode.getParent (1).getRelationBranch () != parentBranch)
 				continue;
-			if (parentBranch.getLast () != secondNode.getParents ()[1])
+			if (parentBranch.getLast () != secondNode.getParent (1))
 				continue;
 
 			// the first node is in a branch by itself
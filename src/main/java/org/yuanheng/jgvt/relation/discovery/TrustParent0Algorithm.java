@@ -30,6 +30,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class TrustParent0Algorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.LAST_CHILDREN;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -41,11 +47,12 @@ class TrustParent0Algorithm implements DiscoveryAlgorithm
 			RelationNode lastNode = branch.getLast ();
 
 			RelationNode foundChildNode = null;
-			for (RelationNode childNode : lastNode.getChildren ())
+			for (int i = 0; i < lastNode.getChildCount (); ++i)
 			{
+				RelationNode childNode = lastNode.getChild (i);
 				if (!DiscoveryUtils.isFirstInBranch (childNode))
 					continue;
-				if (childNode.getParents ()[0] != lastNode)
+				if (childNode.getParent (0) != lastNode)
 					continue;
 
 				if (foundChildNode == null)
@@ -30,6 +30,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class TwoChildrenAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.LAST_TWO_CHILDREN;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -40,14 +46,14 @@ class TwoChildrenAlgorithm implements DiscoveryAlgorithm
 
 			RelationNode lastNode = branch.getLast ();
 
-			if (lastNode.getChildren ().length == 2)
+			if (lastNode.getChildCount () == 2)
 			{
-				RelationNode leftChildNode = lastNode.getChildren ()[0];
+				RelationNode leftChildNode = lastNode.getChild (0);
 				// make sure the left child is the first node of the child branch
 				if (!DiscoveryUtils.isFirstInBranch (leftChildNode))
 					continue;
 
-				RelationNode rightChildNode = lastNode.getChildren ()[1];
+				RelationNode rightChildNode = lastNode.getChild (1);
 				// make sure the right child is the first node of the child branch
 				if (!DiscoveryUtils.isFirstInBranch(rightChildNode))
 					continue;
@@ -58,8 +64,8 @@ class TwoChildrenAlgorithm implements DiscoveryAlgorithm
 				// now check if leftBranch merges to rightBranch or
 				// vice versa
 				RelationNode leftLast = leftChildBranch.getLast ();
-				if (leftLast.getChildren ().length == 1 &&
-					leftLast.getChildren ()[0].getRelationBranch () == rightChildBranch)
+				if (leftLast.getChildCount () == 1 &&
+					leftLast.getChild (0).getRelationBranch () == rightChildBranch)
 				{
 					branch.mergeChild (rightChildBranch);
 
@@ -69,8 +75,8 @@ class TwoChildrenAlgorithm implements DiscoveryAlgorithm
 				}
 
 				RelationNode rightLast = rightChildBranch.getLast ();
-				if (rightLast.getChildren ().length == 1 &&
-					rightLast.getChildren ()[0].getRelationBranch () == leftChildBranch)
+				if (rightLast.getChildCount () == 1 &&
+					rightLast.getChild (0).getRelationBranch () == leftChildBranch)
 				{
 					branch.mergeChild (leftChildBranch);
 
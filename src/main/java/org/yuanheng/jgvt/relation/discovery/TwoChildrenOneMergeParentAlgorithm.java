@@ -33,6 +33,12 @@ import org.yuanheng.jgvt.relation.RelationNode;
  */
 class TwoChildrenOneMergeParentAlgorithm implements DiscoveryAlgorithm
 {
+	@Override
+	public BranchPattern getPattern ()
+	{
+		return BranchPattern.LAST_TWO_CHILDREN;
+	}
+
 	@Override
 	public void discover (Set<RelationBranch> branches, Set<RelationBranch> checkBranches, int iteration, BranchLog log)
 	{
@@ -42,15 +48,15 @@ class TwoChildrenOneMergeParentAlgorithm implements DiscoveryAlgorithm
 				continue;
 
 			RelationNode lastNode = branch.getLast ();
-			if (lastNode.getChildren ().length != 2)
+			if (lastNode.getChildCount () != 2)
 				continue;
 
-			RelationNode leftChild = lastNode.getChildren ()[0];
-			RelationNode rightChild = lastNode.getChildren ()[1];
+			RelationNode leftChild = lastNode.getChild (0);
+			RelationNode rightChild = lastNode.getChild (1);
 			RelationBranch leftChildBranch = leftChild.getRelationBranch ();
 			RelationBranch rightChildBranch = rightChild.getRelationBranch ();
 
-			if (leftChild.getParents ().length == 1 &&
+			if (leftChild.getParentCount () == 1 &&
 				DiscoveryUtils.isFirstInBranch (leftChild) &&
 				!DiscoveryUtils.isFirstInBranch (rightChild))
 			{
@@ -59,7 +65,7 @@ class TwoChildrenOneMergeParentAlgorithm implements DiscoveryAlgorithm
 				log.log (lastNode, "TCOMP left", iteration);
 				checkBranches.add (branch);
 			}
-			else if (rightChild.getParents ().length == 1 &&
+			else if (rightChild.getParentCount () == 1 &&
 					 DiscoveryUtils.isFirstInBranch (rightChild) &&
 					 !DiscoveryUtils.isFirstInBranch (leftChild))
 			{
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
+
+/**
+ * Creates a temporary repository with commits made directly from the
+ * object database, so that the tests control the parents, the times and
+ * the files of each commit.
+ *
+ * @author	Heng Yuan
+ */
+public class RepoBuilder implements AutoCloseable
+{
+	private final static int START_TIME = 1560000000;
+
+	private final File m_dir;
+	private final Repository m_repo;
+	private int m_time = START_TIME;
+
+	public RepoBuilder () throws Exception
+	{
+		m_dir = Files.createTempDirectory ("jgvt").toFile ();
+		Git git = Git.init ().setDirectory (m_dir).call ();
+		m_repo = git.getRepository ();
+	}
+
+	public File getDir ()
+	{
+		return m_dir;
+	}
+
+	public Repository getRepo ()
+	{
+		return m_repo;
+	}
+
+	/**
+	 * Create a commit without files.
+	 */
+	public ObjectId commit (String message, ObjectId... parents) throws IOException
+	{
+		return commit (message, new TreeMap<String, String> (), parents);
+	}
+
+	/**
+	 * Create a commit with the files given.  Each commit is one minute
+	 * after the previous one.
+	 *
+	 * @param	message
+	 * 			the commit message
+	 * @param	files
+	 * 			a map of the paths to the contents of the files
+	 * @param	parents
+	 * 			the parent commits
+	 * @return	the commit id
+	 */
+	public ObjectId commit (String message, Map<String, String> files, ObjectId... parents) throws IOException
+	{
+		try (ObjectInserter inserter = m_repo.newObjectInserter ())
+		{
+			DirCache dirCache = DirCache.newInCore ();
+			DirCacheBuilder builder = dirCache.builder ();
+			for (Map.Entry<String, String> entry : new TreeMap<String, String> (files).entrySet ())
+			{
+				DirCacheEntry dirEntry = new DirCacheEntry (entry.getKey ());
+				dirEntry.setFileMode (FileMode.REGULAR_FILE);
+				dirEntry.setObjectId (inserter.insert (Constants.OBJ_BLOB, entry.getValue ().getBytes (StandardCharsets.UTF_8)));
+				builder.add (dirEntry);
+			}
+			builder.finish ();
+
+			m_time += 60;
+			PersonIdent ident = new PersonIdent ("jgvt", "jgvt@example.com", m_time * 1000L, 0);
+			CommitBuilder commit = new CommitBuilder ();
+			commit.setTreeId (dirCache.writeTree (inserter));
+			commit.setParentIds (parents);
+			commit.setAuthor (ident);
+			commit.setCommitter (ident);
+			commit.setMessage (message);
+			ObjectId id = inserter.insert (commit);
+			inserter.flush ();
+			return id;
+		}
+	}
+
+	/**
+	 * Create or move a branch.
+	 */
+	public void branch (String name, ObjectId id) throws IOException
+	{
+		updateRef (Constants.R_HEADS + name, id);
+	}
+
+	/**
+	 * Create an annotated tag.
+	 */
+	public void tag (String name, ObjectId id) throws IOException
+	{
+		ObjectId tagId;
+		try (ObjectInserter inserter = m_repo.newObjectInserter ())
+		{
+			TagBuilder tag = new TagBuilder ();
+			tag.setObjectId (id, Constants.OBJ_COMMIT);
+			tag.setTag (name);
+			tag.setTagger (new PersonIdent ("jgvt", "jgvt@example.com", m_time * 1000L, 0));
+			tag.setMessage (name);
+			tagId = inserter.insert (tag);
+			inserter.flush ();
+		}
+		updateRef (Constants.R_TAGS + name, tagId);
+	}
+
+	/**
+	 * Delete a ref.
+	 */
+	public void delete (String refName) throws IOException
+	{
+		RefUpdate update = m_repo.updateRef (refName);
+		update.setForceUpdate (true);
+		update.delete ();
+	}
+
+	private void updateRef (String refName, ObjectId id) throws IOException
+	{
+		RefUpdate update = m_repo.updateRef (refName);
+		update.setNewObjectId (id);
+		update.setForceUpdate (true);
+		update.update ();
+	}
+
+	@Override
+	public void close () throws IOException
+	{
+		m_repo.close ();
+		deleteAll (m_dir);
+	}
+
+	private static void deleteAll (File file)
+	{
+		File[] files = file.listFiles ();
+		if (files != null)
+		{
+			for (File f : files)
+				deleteAll (f);
+		}
+		file.delete ();
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestChangeCache
+{
+	private static ObjectId id (int n)
+	{
+		return ObjectId.fromString (String.format ("%040x", n));
+	}
+
+	private static List<ChangeInfo> changes (int count)
+	{
+		ArrayList<ChangeInfo> changes = new ArrayList<ChangeInfo> ();
+		for (int i = 0; i < count; ++i)
+			changes.add (new ChangeInfo (null));
+		return changes;
+	}
+
+	@Test
+	public void testGet () throws Exception
+	{
+		ChangeCache cache = new ChangeCache (100);
+		List<ChangeInfo> changes = changes (2);
+		cache.put (id (1), id (2), changes, false);
+		Assert.assertSame (changes, cache.get (id (1), id (2)));
+		Assert.assertTrue (cache.contains (id (1), id (2)));
+		// the changes from another parent.
+		Assert.assertNull (cache.get (id (1), id (3)));
+		Assert.assertNull (cache.get (id (1), null));
+
+		// a root commit.
+		List<ChangeInfo> rootChanges = changes (1);
+		cache.put (id (2), null, rootChanges, false);
+		Assert.assertSame (rootChanges, cache.get (id (2), null));
+	}
+
+	@Test
+	public void testEviction () throws Exception
+	{
+		ChangeCache cache = new ChangeCache (10);
+		cache.put (id (1), null, changes (4), false);
+		cache.put (id (2), null, changes (4), false);
+		// an empty list counts as 1 file.
+		cache.put (id (3), null, Collections.<ChangeInfo>emptyList (), false);
+		Assert.assertTrue (cache.contains (id (1), null));
+
+		// id (1) is used, so id (2) is the least recently used.
+		Assert.assertNotNull (cache.get (id (1), null));
+		cache.put (id (4), null, changes (2), false);
+		Assert.assertTrue (cache.contains (id (1), null));
+		Assert.assertFalse (cache.contains (id (2), null));
+		Assert.assertTrue (cache.contains (id (3), null));
+		Assert.assertTrue (cache.contains (id (4), null));
+
+		// an entry larger than the cache is still kept by itself.
+		cache.put (id (5), null, changes (20), false);
+		Assert.assertTrue (cache.contains (id (5), null));
+		Assert.assertFalse (cache.contains (id (1), null));
+		Assert.assertFalse (cache.contains (id (4), null));
+
+		// replacing an entry does not count its old files.
+		cache = new ChangeCache (10);
+		cache.put (id (1), null, changes (6), false);
+		cache.put (id (2), null, changes (4), false);
+		cache.put (id (1), null, changes (6), false);
+		Assert.assertTrue (cache.contains (id (1), null));
+		Assert.assertTrue (cache.contains (id (2), null));
+	}
+
+	@Test
+	public void testStats () throws Exception
+	{
+		ChangeCache cache = new ChangeCache (100);
+		cache.put (id (1), null, changes (1), true);
+		cache.put (id (2), null, changes (1), false);
+		Assert.assertNull (cache.request (id (3), null));
+		Assert.assertNotNull (cache.request (id (1), null));
+		Assert.assertNotNull (cache.request (id (1), null));
+		Assert.assertNotNull (cache.request (id (2), null));
+		// get () is not a request.
+		Assert.assertNotNull (cache.get (id (2), null));
+		Assert.assertEquals ("requests=4 hits=3 (75%) prefetches=1 prefetch hits=1 cached commits=2 cached files=2", cache.getStats ());
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestController
+{
+	/**
+	 * Each controller registers its own build statistics, and unregisters
+	 * them when it is closed.
+	 */
+	@Test
+	public void testMBeans () throws Exception
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer ();
+		Controller c1 = new Controller ();
+		Controller c2 = new Controller ();
+		ObjectName name1 = c1.getBuildStatisticsName ();
+		ObjectName name2 = c2.getBuildStatisticsName ();
+		Assert.assertNotNull (name1);
+		Assert.assertNotNull (name2);
+		Assert.assertNotEquals (name1, name2);
+		Assert.assertTrue (server.isRegistered (name1));
+		Assert.assertTrue (server.isRegistered (name2));
+		Assert.assertEquals (0, server.getAttribute (name2, "NodeCount"));
+
+		c1.close ();
+		Assert.assertFalse (server.isRegistered (name1));
+		Assert.assertTrue (server.isRegistered (name2));
+		c2.close ();
+		Assert.assertFalse (server.isRegistered (name2));
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestDiffEngine
+{
+	private static TreeMap<String, String> files (String... pathContents)
+	{
+		TreeMap<String, String> files = new TreeMap<String, String> ();
+		for (int i = 0; i < pathContents.length; i += 2)
+			files.put (pathContents[i], pathContents[i + 1]);
+		return files;
+	}
+
+	private static RevTree getTree (RepoBuilder builder, ObjectId id) throws Exception
+	{
+		try (RevWalk revWalk = new RevWalk (builder.getRepo ()))
+		{
+			return revWalk.parseCommit (id).getTree ();
+		}
+	}
+
+	/**
+	 * @return	a summary of each change in the form of type:+added-deleted,
+	 * 			keyed by the path.
+	 */
+	private static TreeMap<String, String> summarize (List<ChangeInfo> changes)
+	{
+		TreeMap<String, String> map = new TreeMap<String, String> ();
+		for (ChangeInfo info : changes)
+		{
+			DiffEntry entry = info.getDiffEntry ();
+			String path = entry.getChangeType () == DiffEntry.ChangeType.DELETE ? entry.getOldPath () : entry.getNewPath ();
+			map.put (path, entry.getChangeType () + ":+" + info.getAdded () + "-" + info.getDeleted ());
+		}
+		return map;
+	}
+
+	@Test
+	public void testCountLines () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1", files ("a.txt", "1\n2\n3\n", "b.txt", "x\n", "bin.dat", "\0\1\2"));
+			ObjectId c2 = builder.commit ("c2", files ("a.txt", "1\nTWO\n3\n4\n5\n", "c.txt", "new\nfile\n", "bin.dat", "\0\3"), c1);
+
+			try (DiffEngine engine = new DiffEngine (builder.getRepo ()))
+			{
+				TreeMap<String, String> expected = files (
+					"a.txt", "ADD:+3-0",
+					"b.txt", "ADD:+1-0",
+					"bin.dat", "ADD:+0-0");
+				Assert.assertEquals (expected, summarize (engine.getChanges (null, getTree (builder, c1))));
+
+				expected = files (
+					"a.txt", "MODIFY:+3-1",
+					"b.txt", "DELETE:+0-1",
+					"bin.dat", "MODIFY:+0-0",
+					"c.txt", "ADD:+2-0");
+				Assert.assertEquals (expected, summarize (engine.getChanges (getTree (builder, c1), getTree (builder, c2))));
+			}
+		}
+	}
+
+	@Test
+	public void testRenameLimit () throws Exception
+	{
+		String content = "line 1\nline 2\nline 3\nline 4\n";
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1", files ("a.txt", content));
+			ObjectId c2 = builder.commit ("c2", files ("b.txt", content + "line 5\n"), c1);
+			RevTree t1 = getTree (builder, c1);
+			RevTree t2 = getTree (builder, c2);
+
+			try (DiffEngine engine = new DiffEngine (builder.getRepo ()))
+			{
+				Assert.assertEquals (files ("b.txt", "RENAME:+1-0"), summarize (engine.getChanges (t1, t2)));
+				engine.setRenameLimit (0);
+				Assert.assertEquals (files ("a.txt", "DELETE:+0-4", "b.txt", "ADD:+5-0"), summarize (engine.getChanges (t1, t2)));
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentDiffs () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ArrayList<RevTree> trees = new ArrayList<RevTree> ();
+			ObjectId parent = null;
+			StringBuilder content = new StringBuilder ();
+			for (int i = 0; i < 10; ++i)
+			{
+				content.append ("line ").append (i).append ('\n');
+				ObjectId id = parent == null ?
+					builder.commit ("c" + i, files ("a.txt", content.toString (), "f" + i, "x\n")) :
+					builder.commit ("c" + i, files ("a.txt", content.toString (), "f" + i, "x\n"), parent);
+				trees.add (getTree (builder, id));
+				parent = id;
+			}
+
+			try (DiffEngine engine = new DiffEngine (builder.getRepo ()))
+			{
+				ArrayList<TreeMap<String, String>> expected = new ArrayList<TreeMap<String, String>> ();
+				for (int i = 1; i < trees.size (); ++i)
+					expected.add (summarize (engine.getChanges (trees.get (i - 1), trees.get (i))));
+
+				// the pooled readers and formatters are not shared by the
+				// threads.
+				ExecutorService executor = Executors.newFixedThreadPool (8);
+				try
+				{
+					ArrayList<Future<TreeMap<String, String>>> futures = new ArrayList<Future<TreeMap<String, String>>> ();
+					for (int k = 0; k < 20; ++k)
+					{
+						for (int i = 1; i < trees.size (); ++i)
+						{
+							RevTree t1 = trees.get (i - 1);
+							RevTree t2 = trees.get (i);
+							futures.add (executor.submit (() -> summarize (engine.getChanges (t1, t2))));
+						}
+					}
+					for (int n = 0; n < futures.size (); ++n)
+						Assert.assertEquals (expected.get (n % expected.size ()), futures.get (n).get ());
+				}
+				finally
+				{
+					executor.shutdown ();
+				}
+			}
+		}
+	}
+}
@@ -16,12 +16,20 @@
 package org.yuanheng.jgvt;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 import org.eclipse.jgit.api.LogCommand;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.Assert;
 import org.junit.Test;
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.RelationEditList;
+import org.yuanheng.jgvt.relation.RelationNode;
+import org.yuanheng.jgvt.relation.RelationTree;
+import org.yuanheng.jgvt.relation.RelationTreeFactory;
 
 /**
  * @author Heng Yuan
@@ -47,6 +55,55 @@ public class TestGitRepo
 		gitRepo.close ();
 	}
 
+	/**
+	 * The changes of the neighbors prefetched for a selected commit are
+	 * cache hits when the neighbors are selected.
+	 */
+	@Test
+	public void testPrefetchChanges () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId[] ids = new ObjectId[5];
+			for (int i = 0; i < ids.length; ++i)
+				ids[i] = builder.commit ("c" + i, Collections.singletonMap ("a.txt", "" + i), i == 0 ? new ObjectId[0] : new ObjectId[] { ids[i - 1] });
+			builder.branch ("master", ids[4]);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+				ChangeCacheMBean stats = gitRepo.getChangeCacheStatistics ();
+
+				// the next and the previous commits first.
+				RelationNode node = tree.getNode (ids[2]);
+				List<ObjectId> prefetchIds = Controller.getPrefetchIds (node, 2);
+				Assert.assertEquals (2, prefetchIds.size ());
+				Assert.assertTrue (prefetchIds.contains (ids[1]));
+				Assert.assertTrue (prefetchIds.contains (ids[3]));
+
+				// the selected commit is a miss.
+				Assert.assertNull (gitRepo.getCachedChanges (node.getCommit ()));
+				gitRepo.getChanges (node.getCommit ());
+				for (ObjectId id : prefetchIds)
+					gitRepo.prefetchChanges (id);
+				Assert.assertEquals (2, stats.getPrefetches ());
+
+				List<?> changes = gitRepo.getCachedChanges (tree.getNode (ids[3]).getCommit ());
+				Assert.assertNotNull (changes);
+				Assert.assertEquals (1, changes.size ());
+				Assert.assertEquals (2, stats.getRequests ());
+				Assert.assertEquals (1, stats.getHits ());
+				Assert.assertEquals (1, stats.getMisses ());
+				Assert.assertEquals (1, stats.getPrefetchHits ());
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
 	private void printRevCommit (RevCommit c)
 	{
 //		PersonIdent authorIdent = c.getAuthorIdent();
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestRefSnapshot
+{
+	@Test
+	public void testCreate () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId c2 = builder.commit ("c2", c1);
+			builder.branch ("master", c2);
+			builder.branch ("a", c1);
+			builder.tag ("v1", c1);
+
+			RefSnapshot refs = RefSnapshot.create (builder.getRepo ().getRefDatabase ());
+			Assert.assertEquals (c2, refs.getTips ().get ("refs/heads/master"));
+			Assert.assertEquals (c1, refs.getTips ().get ("refs/heads/a"));
+			// the annotated tag is peeled to the commit.
+			Assert.assertEquals (c1, refs.getTips ().get ("refs/tags/v1"));
+
+			Assert.assertEquals (2, refs.getBranches ().size ());
+			Assert.assertEquals ("refs/heads/a", refs.getBranches ().get (0).getName ());
+			Assert.assertEquals ("refs/heads/master", refs.getBranches ().get (1).getName ());
+			Assert.assertEquals (1, refs.getTags ().size ());
+
+			Ref tag = refs.getTagMap ().get (c1);
+			Assert.assertEquals ("refs/tags/v1", tag.getName ());
+			Assert.assertEquals (c1, RefSnapshot.getPeeledId (tag));
+			Assert.assertNotEquals (c1, tag.getObjectId ());
+			Assert.assertEquals ("refs/heads/master", refs.getBranchMap ().get (c2).getName ());
+			Assert.assertNull (refs.getBranchMap ().get (ObjectId.zeroId ()));
+		}
+	}
+
+	@Test
+	public void testChangedRefs () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId c2 = builder.commit ("c2", c1);
+			builder.branch ("master", c1);
+			builder.branch ("a", c1);
+			builder.branch ("b", c1);
+
+			RefSnapshot oldRefs = RefSnapshot.create (builder.getRepo ().getRefDatabase ());
+			Assert.assertFalse (RefSnapshot.create (builder.getRepo ().getRefDatabase ()).hasChanged (oldRefs));
+			Assert.assertTrue (oldRefs.hasChanged (null));
+			Assert.assertEquals (oldRefs.getTips ().keySet (), oldRefs.getChangedRefs (null));
+
+			builder.branch ("a", c2);
+			builder.delete ("refs/heads/b");
+			builder.branch ("c", c2);
+			RefSnapshot refs = RefSnapshot.create (builder.getRepo ().getRefDatabase ());
+			Assert.assertTrue (refs.hasChanged (oldRefs));
+			Assert.assertEquals (new TreeSet<String> (Arrays.asList ("refs/heads/a", "refs/heads/b", "refs/heads/c")), refs.getChangedRefs (oldRefs));
+
+			// the snapshot does not change with the repository.
+			Assert.assertEquals (c1, oldRefs.getTips ().get ("refs/heads/a"));
+			Assert.assertEquals (c1, oldRefs.getTips ().get ("refs/heads/b"));
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.export;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.Defaults;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RepoBuilder;
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.RelationEditList;
+import org.yuanheng.jgvt.relation.RelationNode;
+import org.yuanheng.jgvt.relation.RelationTree;
+import org.yuanheng.jgvt.relation.RelationTreeFactory;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestJsonExporter
+{
+	private static List<ObjectId> createHistory (RepoBuilder builder, int branches) throws Exception
+	{
+		ArrayList<ObjectId> ids = new ArrayList<ObjectId> ();
+		ObjectId head = builder.commit ("c0");
+		ids.add (head);
+		for (int i = 0; i < branches; ++i)
+		{
+			ObjectId side = builder.commit ("side " + i, head);
+			ObjectId main = builder.commit ("main " + i, head);
+			head = builder.commit ("Merge pull request #" + i, main, side);
+			ids.add (side);
+			ids.add (main);
+			ids.add (head);
+		}
+		builder.branch ("master", head);
+		return ids;
+	}
+
+	/**
+	 * Build the tree without the saved layout, and export it.
+	 */
+	private static String export (RepoBuilder builder, List<Integer> branchIds) throws Exception
+	{
+		GitRepo gitRepo = new GitRepo (builder.getDir ());
+		try
+		{
+			new File (new File (gitRepo.getGitDir (), Defaults.GIT_DIR_JGVT_DIR), Defaults.JGVT_LAYOUT).delete ();
+			RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+			RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+			for (RelationNode node : tree.getNodes ())
+				branchIds.add (node.getRelationBranch ().getId ());
+
+			File file = File.createTempFile ("jgvt", ".json");
+			try
+			{
+				new JsonExporter ().save (file, tree);
+				return new String (Files.readAllBytes (file.toPath ()), StandardCharsets.UTF_8);
+			}
+			finally
+			{
+				file.delete ();
+			}
+		}
+		finally
+		{
+			gitRepo.close ();
+		}
+	}
+
+	@Test
+	public void testSave () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			List<ObjectId> ids = createHistory (builder, 3);
+			String json = export (builder, new ArrayList<Integer> ());
+			Assert.assertTrue (json.startsWith ("{"));
+			for (ObjectId id : ids)
+				Assert.assertTrue (json.contains ("{ \"id\": \"" + id.name () + "\""));
+			Assert.assertTrue (json.contains ("\"relation\": \"MERGE\""));
+			Assert.assertTrue (json.contains ("\"branches\": ["));
+		}
+	}
+
+	@Test
+	public void testDeterministic () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ();
+			 RepoBuilder other = new RepoBuilder ())
+		{
+			createHistory (builder, 5);
+			createHistory (other, 8);
+
+			// the trees built in between do not change the output.
+			ArrayList<Integer> branchIds = new ArrayList<Integer> ();
+			String json = export (builder, branchIds);
+			export (other, new ArrayList<Integer> ());
+			ArrayList<Integer> branchIds2 = new ArrayList<Integer> ();
+			String json2 = export (builder, branchIds2);
+			Assert.assertEquals (json, json2);
+			Assert.assertEquals (branchIds, branchIds2);
+		}
+	}
+}
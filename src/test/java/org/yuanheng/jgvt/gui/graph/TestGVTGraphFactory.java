@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.gui.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.Main;
+import org.yuanheng.jgvt.RepoBuilder;
+import org.yuanheng.jgvt.relation.BranchLog;
+import org.yuanheng.jgvt.relation.RelationEditList;
+import org.yuanheng.jgvt.relation.RelationNode;
+import org.yuanheng.jgvt.relation.RelationTree;
+import org.yuanheng.jgvt.relation.RelationTreeFactory;
+
+import com.mxgraph.model.mxGeometry;
+import com.mxgraph.model.mxIGraphModel;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestGVTGraphFactory
+{
+	/**
+	 * Create a master branch with a side branch merged back, and a tag
+	 * which splits a run of commits.
+	 */
+	private static void createHistory (RepoBuilder builder) throws Exception
+	{
+		ObjectId head = builder.commit ("c0");
+		ObjectId fork = null;
+		for (int i = 1; i < 12; ++i)
+		{
+			head = builder.commit ("c" + i, head);
+			if (i == 3)
+				fork = head;
+			if (i == 7)
+				builder.tag ("v1", head);
+		}
+		ObjectId side = fork;
+		for (int i = 0; i < 5; ++i)
+			side = builder.commit ("s" + i, side);
+		head = builder.commit ("Merge branch 'side'", head, side);
+		for (int i = 12; i < 16; ++i)
+			head = builder.commit ("c" + i, head);
+		builder.branch ("master", head);
+	}
+
+	private static String getName (GVTTree tree, mxIGraphModel model, Object vertex)
+	{
+		GVTVertex v = (GVTVertex) model.getValue (vertex);
+		RelationNode[] run = tree.getRun (v);
+		String name = tree.getNode (v).getId ().name ();
+		return run == null ? name : name + "+" + run.length;
+	}
+
+	/**
+	 * @return	the vertices with their bounds, and the edges with their
+	 * 			styles, sorted.
+	 */
+	private static List<String> getCells (GVTGraph graph)
+	{
+		GVTTree tree = graph.getTree ();
+		mxIGraphModel model = graph.getModel ();
+		ArrayList<String> cells = new ArrayList<String> ();
+		for (Object vertex : graph.getChildVertices (graph.getDefaultParent ()))
+		{
+			mxGeometry geometry = model.getGeometry (vertex);
+			cells.add (getName (tree, model, vertex) + " " + geometry.getX () + "," + geometry.getY () + " " + geometry.getWidth () + "x" + geometry.getHeight ());
+		}
+		for (Object edge : graph.getChildEdges (graph.getDefaultParent ()))
+		{
+			cells.add (getName (tree, model, model.getTerminal (edge, true)) + " -> " + getName (tree, model, model.getTerminal (edge, false)) + " " + model.getStyle (edge));
+		}
+		Collections.sort (cells);
+		return cells;
+	}
+
+	private static double getHeight (GVTGraph graph)
+	{
+		double height = 0;
+		for (Object vertex : graph.getChildVertices (graph.getDefaultParent ()))
+		{
+			mxGeometry geometry = graph.getModel ().getGeometry (vertex);
+			height = Math.max (height, geometry.getY () + geometry.getHeight ());
+		}
+		return height;
+	}
+
+	@Test
+	public void testExpand () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory treeFactory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree relTree = treeFactory.generateTree (new RelationEditList (), new BranchLog ());
+
+				GVTGraph graph = new GVTGraph ();
+				GVTGraphFactory factory = new GVTGraphFactory (graph);
+				factory.updateGraphModel (relTree, false);
+				Assert.assertFalse (graph.getTree ().hasRuns ());
+				List<String> cells = getCells (graph);
+				int vertexCount = graph.getChildVertices (graph.getDefaultParent ()).length;
+				int edgeCount = graph.getChildEdges (graph.getDefaultParent ()).length;
+				Assert.assertEquals (relTree.size (), vertexCount);
+
+				graph = new GVTGraph ();
+				factory = new GVTGraphFactory (graph);
+				factory.updateGraphModel (relTree, true);
+				GVTTree tree = graph.getTree ();
+				Assert.assertTrue (tree.hasRuns ());
+				Assert.assertEquals (relTree.size (), tree.getNodeCount ());
+
+				// a run takes the place of its commits, and the edges inside.
+				ArrayList<RelationNode[]> runs = new ArrayList<RelationNode[]> ();
+				int collapsed = 0;
+				for (RelationNode node : relTree.getNodes ())
+				{
+					RelationNode[] run = tree.getRun (node);
+					if (run != null && run[0] == node)
+					{
+						runs.add (run);
+						collapsed += run.length - 1;
+					}
+				}
+				Assert.assertTrue (runs.size () > 1);
+				Assert.assertEquals (vertexCount - collapsed, graph.getChildVertices (graph.getDefaultParent ()).length);
+				Assert.assertEquals (edgeCount - collapsed, graph.getChildEdges (graph.getDefaultParent ()).length);
+				for (RelationNode[] run : runs)
+				{
+					Assert.assertTrue (run.length >= 3);
+					for (RelationNode node : run)
+					{
+						Assert.assertEquals (0, node.getTags ().length);
+						Assert.assertEquals (0, node.getBranches ().length);
+					}
+				}
+
+				// a vertex of a single commit is not expanded.
+				RelationNode start = relTree.getStartNode ();
+				Assert.assertNull (tree.getRun (start));
+				Assert.assertNull (factory.expand (tree.getVertex (start)));
+
+				// expand the runs from the last.
+				Collections.reverse (runs);
+				for (RelationNode[] run : runs)
+				{
+					Object vertex = factory.expand (tree.getVertex (run[run.length - 1]));
+					Assert.assertNotNull (vertex);
+					Assert.assertSame (tree.getVertex (run[0]), vertex);
+					Assert.assertNull (tree.getRun (run[0]));
+				}
+				Assert.assertFalse (tree.hasRuns ());
+				Assert.assertEquals (vertexCount, graph.getChildVertices (graph.getDefaultParent ()).length);
+				Assert.assertEquals (edgeCount, graph.getChildEdges (graph.getDefaultParent ()).length);
+				Assert.assertEquals (cells, getCells (graph));
+
+				// the expanded runs stay expanded.
+				factory.updateGraphModel (relTree, true);
+				Assert.assertFalse (graph.getTree ().hasRuns ());
+				Assert.assertEquals (cells, getCells (graph));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	/**
+	 * Update the graph of a tree with the nodes laid out again by an update
+	 * of a copy of the tree.
+	 */
+	@Test
+	public void testUpdateTree () throws Exception
+	{
+		boolean collapseCommits = Main.pref.getCollapseCommits ();
+		Main.pref.setCollapseCommits (true);
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory treeFactory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree relTree = treeFactory.generateTree (new RelationEditList (), new BranchLog ());
+				GVTGraph graph = new GVTGraph ();
+				GVTGraphFactory factory = new GVTGraphFactory (graph);
+				factory.updateGraphModel (relTree);
+				GVTTree tree = graph.getTree ();
+				Assert.assertTrue (tree.hasRuns ());
+
+				// master moves forward, and a new branch is forked.
+				ObjectId head = relTree.getStartNode ().getId ();
+				ObjectId fork = head;
+				for (int i = 16; i < 20; ++i)
+					head = builder.commit ("c" + i, head);
+				builder.branch ("master", head);
+				ObjectId side = builder.commit ("t0", fork);
+				side = builder.commit ("t1", side);
+				builder.branch ("topic", side);
+
+				RelationTree copy = relTree.copy ();
+				List<RelationNode> nodes = treeFactory.updateTree (copy, new RelationEditList (), new BranchLog ());
+				Assert.assertNotNull (nodes);
+				Assert.assertTrue (nodes.size () < copy.size ());
+				factory.updateGraphModel (copy, nodes);
+				// the graph model is updated, not created again.
+				Assert.assertSame (tree, graph.getTree ());
+				Assert.assertEquals (copy.size (), tree.getNodeCount ());
+				// the vertices are of the nodes of the copy.
+				for (RelationNode node : tree.getNodes ())
+					Assert.assertSame (copy.getNode (node.getId ()), node);
+				List<String> cells = getCells (graph);
+
+				GVTGraph newGraph = new GVTGraph ();
+				new GVTGraphFactory (newGraph).updateGraphModel (copy);
+				Assert.assertEquals (getCells (newGraph), cells);
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+		finally
+		{
+			Main.pref.setCollapseCommits (collapseCommits);
+		}
+	}
+
+	/**
+	 * Update the graph of a tree with the nodes laid out again by extending
+	 * the history window of a copy of the tree.  The merge gains an edge to
+	 * its second parent, whose vertex is already in the graph, with and
+	 * without the collapsed runs.
+	 */
+	@Test
+	public void testExtendTree () throws Exception
+	{
+		boolean collapseCommits = Main.pref.getCollapseCommits ();
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				for (boolean collapse : new boolean[] { false, true })
+				{
+					Main.pref.setCollapseCommits (collapse);
+					RelationTreeFactory treeFactory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+					treeFactory.setHistoryWindow (8, Integer.MIN_VALUE);
+					RelationTree relTree = treeFactory.generateTree (new RelationEditList (), new BranchLog ());
+					Assert.assertTrue (relTree.isTruncated ());
+					GVTGraph graph = new GVTGraph ();
+					GVTGraphFactory factory = new GVTGraphFactory (graph);
+					factory.updateGraphModel (relTree);
+					GVTTree tree = graph.getTree ();
+
+					RelationTree copy = relTree.copy ();
+					List<RelationNode> nodes = treeFactory.extendTree (copy, 3, new RelationEditList (), new BranchLog ());
+					Assert.assertNotNull (nodes);
+					Assert.assertEquals (11, copy.size ());
+					factory.updateGraphModel (copy, nodes);
+					Assert.assertSame (tree, graph.getTree ());
+					Assert.assertEquals (copy.size (), tree.getNodeCount ());
+
+					GVTGraph newGraph = new GVTGraph ();
+					new GVTGraphFactory (newGraph).updateGraphModel (copy);
+					Assert.assertEquals (getCells (newGraph), getCells (graph));
+				}
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+		finally
+		{
+			Main.pref.setCollapseCommits (collapseCommits);
+		}
+	}
+
+	@Test
+	public void testCompactRows () throws Exception
+	{
+		boolean compactRows = Main.pref.getCompactRows ();
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory treeFactory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree relTree = treeFactory.generateTree (new RelationEditList (), new BranchLog ());
+
+				GVTGraph graph = new GVTGraph ();
+				GVTGraphFactory factory = new GVTGraphFactory (graph);
+				factory.updateGraphModel (relTree, false);
+				List<String> cells = getCells (graph);
+
+				graph = new GVTGraph ();
+				factory = new GVTGraphFactory (graph);
+				factory.updateGraphModel (relTree, true);
+				Assert.assertNull (graph.getTree ().getRows ());
+				double height = getHeight (graph);
+
+				Main.pref.setCompactRows (true);
+				graph = new GVTGraph ();
+				factory = new GVTGraphFactory (graph);
+				factory.updateGraphModel (relTree, true);
+				GVTTree tree = graph.getTree ();
+				Assert.assertNotNull (tree.getRows ());
+				Assert.assertTrue (getHeight (graph) < height);
+
+				// the vertices in a column do not overlap, and the edges
+				// still go down.
+				mxIGraphModel model = graph.getModel ();
+				Object[] vertices = graph.getChildVertices (graph.getDefaultParent ());
+				for (Object v1 : vertices)
+				{
+					mxGeometry g1 = model.getGeometry (v1);
+					for (Object v2 : vertices)
+					{
+						mxGeometry g2 = model.getGeometry (v2);
+						if (v1 == v2 || g1.getX () != g2.getX ())
+							continue;
+						Assert.assertTrue (g1.getY () + g1.getHeight () < g2.getY () ||
+							g2.getY () + g2.getHeight () < g1.getY ());
+					}
+				}
+				for (Object edge : graph.getChildEdges (graph.getDefaultParent ()))
+				{
+					mxGeometry source = model.getGeometry (model.getTerminal (edge, true));
+					mxGeometry target = model.getGeometry (model.getTerminal (edge, false));
+					Assert.assertTrue (source.getY () + source.getHeight () < target.getY ());
+				}
+
+				// the rows of the expanded runs are restored.
+				for (RelationNode node : relTree.getNodes ())
+				{
+					RelationNode[] run = tree.getRun (node);
+					if (run != null && run[0] == node)
+						factory.expand (tree.getVertex (node));
+				}
+				Assert.assertFalse (tree.hasRuns ());
+				Assert.assertEquals (cells, getCells (graph));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+		finally
+		{
+			Main.pref.setCompactRows (compactRows);
+		}
+	}
+}
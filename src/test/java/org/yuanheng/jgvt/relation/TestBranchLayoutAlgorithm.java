@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.util.*;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RepoBuilder;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestBranchLayoutAlgorithm
+{
+	/**
+	 * Create a random history, where each commit is a child or a merge of
+	 * the recent commits.
+	 */
+	private static void createHistory (RepoBuilder builder, int size) throws Exception
+	{
+		Random random = new Random (3);
+		ArrayList<ObjectId> ids = new ArrayList<ObjectId> ();
+		ids.add (builder.commit ("c0"));
+		for (int i = 1; i < size; ++i)
+		{
+			int window = Math.min (ids.size (), 8);
+			ObjectId parent = ids.get (ids.size () - 1 - random.nextInt (window));
+			ObjectId other = ids.get (ids.size () - 1 - random.nextInt (window));
+			if (other != parent && random.nextInt (4) == 0)
+				ids.add (builder.commit ("m" + i, parent, other));
+			else
+				ids.add (builder.commit ("c" + i, parent));
+		}
+		builder.branch ("master", ids.get (ids.size () - 1));
+	}
+
+	private static String getRelations (RelationNode node)
+	{
+		StringBuilder builder = new StringBuilder ();
+		for (RelationNode parent : node.getParents ())
+			builder.append (node.getRelation (parent)).append (' ');
+		return builder.toString ();
+	}
+
+	/**
+	 * Check that no two nodes share a cell, and the nodes of each branch are
+	 * in consecutive rows of a column.
+	 */
+	private static void checkLayout (RelationTree tree)
+	{
+		HashSet<Long> cells = new HashSet<Long> ();
+		for (RelationNode node : tree.getNodes ())
+		{
+			Assert.assertTrue (node.getY () >= 0);
+			Assert.assertTrue (cells.add (((long) node.getX () << 32) | node.getY ()));
+			RelationBranch branch = node.getRelationBranch ();
+			RelationNode first = branch.getFirst ();
+			Assert.assertEquals (first.getX (), node.getX ());
+			Assert.assertEquals (first.getY () + branch.indexOf (node), node.getY ());
+		}
+	}
+
+	@Test
+	public void testJoin () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder, 150);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				BranchLog log = new BranchLog ();
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), log);
+
+				ArrayList<RelationNode> candidates = new ArrayList<RelationNode> ();
+				for (RelationNode node : tree.getNodes ())
+				{
+					if (node.canJoinParentBranch () != null)
+						candidates.add (node);
+				}
+				Collections.sort (candidates);
+
+				int joins = 0;
+				for (RelationNode node : candidates)
+				{
+					RelationNode[] parents = node.canJoinParentBranch ();
+					if (parents == null)
+						continue;
+					++joins;
+					HashMap<RelationNode, String> oldPositions = new HashMap<RelationNode, String> ();
+					for (RelationNode n : tree.getNodes ())
+						oldPositions.put (n, n.getX () + "," + n.getY ());
+
+					RelationBranch[] oldBranches = BranchLayoutAlgorithm.getNodeBranches (tree);
+					node.getRelationBranch ().mergeParent (parents[0].getRelationBranch ());
+					BranchDiscoveryAlgorithm.mergeBranches (tree, log);
+					Set<RelationBranch> changedBranches = BranchLayoutAlgorithm.getChangedBranches (tree, oldBranches);
+					Assert.assertTrue (changedBranches.contains (node.getRelationBranch ()));
+					HashSet<RelationNode> nodes = new HashSet<RelationNode> (BranchLayoutAlgorithm.layoutBranches (tree, changedBranches));
+					checkLayout (tree);
+
+					HashMap<RelationNode, Integer> rows = new HashMap<RelationNode, Integer> ();
+					HashMap<RelationNode, String> relations = new HashMap<RelationNode, String> ();
+					for (RelationNode n : tree.getNodes ())
+					{
+						String position = n.getX () + "," + n.getY ();
+						rows.put (n, n.getY ());
+						relations.put (n, getRelations (n));
+						// the other nodes are kept where they were.
+						if (!nodes.contains (n))
+							Assert.assertEquals (oldPositions.get (n), position);
+					}
+
+					// the full layout has the same rows and relations.  The columns
+					// are not compared, since the other branches keep theirs.
+					BranchLayoutAlgorithm.layoutBranches (tree);
+					checkLayout (tree);
+					for (RelationNode n : tree.getNodes ())
+					{
+						Assert.assertEquals (relations.get (n), getRelations (n));
+						Assert.assertEquals (rows.get (n).intValue (), n.getY ());
+					}
+				}
+				Assert.assertTrue (joins >= 2);
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RepoBuilder;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestBuildStatistics
+{
+	@Test
+	public void testPhases () throws Exception
+	{
+		BuildStatistics stats = new BuildStatistics ();
+		BuildStatistics.Phase outer = stats.begin ("outer");
+		BuildStatistics.Phase inner = stats.begin ("inner", 1);
+		byte[][] data = new byte[100][];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = new byte[1024];
+		Thread.sleep (2);
+		stats.end (inner);
+		stats.end (outer);
+		BuildStatistics.Phase last = stats.begin ("last");
+		stats.end (last);
+
+		Assert.assertArrayEquals (new String[] { "outer", "inner", "last" }, stats.getPhaseNames ());
+		Assert.assertTrue (inner.time > 0);
+		Assert.assertTrue (outer.time >= inner.time);
+		// the nested phases are not counted twice.
+		Assert.assertEquals ((outer.time + last.time) / 1000000.0, stats.getTotalTime (), 1e-9);
+		if (inner.allocated >= 0)
+		{
+			Assert.assertTrue (inner.allocated >= data.length * 1024);
+			Assert.assertTrue (outer.allocated >= inner.allocated);
+		}
+
+		// no phase counted the nodes.
+		Assert.assertEquals (0, stats.getNodeCount ());
+		Assert.assertEquals (0, stats.getBranchCount ());
+
+		String report = stats.toString ();
+		Assert.assertTrue (report.contains ("outer"));
+		Assert.assertTrue (report.contains ("  inner"));
+		Assert.assertTrue (report.contains ("total"));
+
+		BuildStatistics stats2 = new BuildStatistics ();
+		stats2.addAll (stats);
+		Assert.assertEquals (3, stats2.getPhases ().size ());
+		stats2.clear ();
+		Assert.assertEquals (0, stats2.getPhases ().size ());
+		Assert.assertEquals (3, stats.getPhases ().size ());
+	}
+
+	@Test
+	public void testBuild () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId c2 = builder.commit ("c2", c1);
+			ObjectId b1 = builder.commit ("b1", c1);
+			builder.branch ("master", builder.commit ("merge", c2, b1));
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				BuildStatistics stats = new BuildStatistics ();
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				factory.setStatistics (stats);
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+
+				List<String> names = Arrays.asList (stats.getPhaseNames ());
+				Assert.assertTrue (names.contains ("read commits"));
+				Assert.assertTrue (names.contains ("addNodes"));
+				Assert.assertTrue (names.contains ("save layout"));
+				Assert.assertEquals (tree.size (), stats.getNodeCount ());
+				Assert.assertEquals (tree.getBranchSet ().size (), stats.getBranchCount ());
+				Assert.assertEquals (names.size (), stats.getTimes ().length);
+				Assert.assertEquals (names.size (), stats.getAllocatedBytes ().length);
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.Defaults;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RepoBuilder;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestCommitGraphCache
+{
+	private static CommitGraphCache load (GitRepo gitRepo) throws Exception
+	{
+		return CommitGraphCache.load (gitRepo, gitRepo.getRefSnapshot (), gitRepo.createRevWalk (), NullProgressMonitor.INSTANCE);
+	}
+
+	private static int indexOf (CommitGraphCache cache, ObjectId id)
+	{
+		for (int i = 0; i < cache.size (); ++i)
+		{
+			if (cache.getCommit (i).equals (id))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Check the cache against the commits parsed from the repository.
+	 */
+	private static void checkGraph (GitRepo gitRepo, CommitGraphCache cache) throws Exception
+	{
+		RevWalk revWalk = gitRepo.createRevWalk ();
+		for (int i = 0; i < cache.size (); ++i)
+		{
+			RevCommit commit = revWalk.parseCommit (cache.getCommit (i));
+			Assert.assertEquals (commit.getCommitTime (), cache.getCommitTime (i));
+			Assert.assertEquals (commit.getParentCount (), cache.getParentCount (i));
+			for (int j = 0; j < commit.getParentCount (); ++j)
+			{
+				Assert.assertEquals (commit.getParent (j), cache.getCommit (cache.getParent (i, j)));
+			}
+		}
+		revWalk.close ();
+	}
+
+	@Test
+	public void testRoundTrip () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId c2 = builder.commit ("c2", c1);
+			ObjectId b1 = builder.commit ("b1", c1);
+			ObjectId m1 = builder.commit ("Merge pull request #1 from b", c2, b1);
+			builder.branch ("master", m1);
+			builder.branch ("b", b1);
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				Assert.assertEquals (-1, CommitGraphCache.readSize (gitRepo.getGitDir ()));
+				CommitGraphCache cache = load (gitRepo);
+				Assert.assertEquals (4, cache.size ());
+				Assert.assertEquals (4, CommitGraphCache.readSize (gitRepo.getGitDir ()));
+				checkGraph (gitRepo, cache);
+
+				// the refs did not move, so the cache is read back.
+				CommitGraphCache cache2 = load (gitRepo);
+				Assert.assertEquals (cache.size (), cache2.size ());
+				Assert.assertEquals (cache.getRefTips (), cache2.getRefTips ());
+				for (int i = 0; i < cache.size (); ++i)
+				{
+					Assert.assertEquals (cache.getCommit (i), cache2.getCommit (i));
+					Assert.assertEquals (cache.getCommitTime (i), cache2.getCommitTime (i));
+					Assert.assertEquals (cache.isMergePullRequest (i), cache2.isMergePullRequest (i));
+					Assert.assertEquals (cache.getParentCount (i), cache2.getParentCount (i));
+					for (int j = 0; j < cache.getParentCount (i); ++j)
+						Assert.assertEquals (cache.getParent (i, j), cache2.getParent (i, j));
+				}
+				Assert.assertTrue (cache2.isMergePullRequest (indexOf (cache2, m1)));
+				Assert.assertFalse (cache2.isMergePullRequest (indexOf (cache2, c2)));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testOctopusMerge () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId a = builder.commit ("a", c1);
+			ObjectId b = builder.commit ("b", c1);
+			ObjectId c = builder.commit ("c", c1);
+			ObjectId m1 = builder.commit ("octopus", b, c, a);
+			builder.branch ("master", m1);
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				load (gitRepo);
+				CommitGraphCache cache = load (gitRepo);
+				checkGraph (gitRepo, cache);
+
+				int index = indexOf (cache, m1);
+				Assert.assertEquals (3, cache.getParentCount (index));
+				Assert.assertEquals (b, cache.getCommit (cache.getParent (index, 0)));
+				Assert.assertEquals (c, cache.getCommit (cache.getParent (index, 1)));
+				Assert.assertEquals (a, cache.getCommit (cache.getParent (index, 2)));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testUpdate () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId c2 = builder.commit ("c2", c1);
+			builder.branch ("master", c2);
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				Assert.assertEquals (2, load (gitRepo).size ());
+
+				// new commits of the moved refs are added.
+				ObjectId b1 = builder.commit ("b1", c1);
+				ObjectId b2 = builder.commit ("b2", b1);
+				builder.branch ("b", b2);
+				CommitGraphCache cache = load (gitRepo);
+				Assert.assertEquals (4, cache.size ());
+				Assert.assertTrue (indexOf (cache, b2) >= 0);
+				checkGraph (gitRepo, cache);
+
+				// commits no longer reachable are dropped.
+				builder.delete ("refs/heads/b");
+				cache = load (gitRepo);
+				Assert.assertEquals (2, cache.size ());
+				Assert.assertEquals (-1, indexOf (cache, b1));
+				checkGraph (gitRepo, cache);
+
+				HashMap<String, ObjectId> tips = new HashMap<String, ObjectId> ();
+				tips.put ("HEAD", c2);
+				tips.put ("refs/heads/master", c2);
+				Assert.assertEquals (tips, cache.getRefTips ());
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	/**
+	 * A cache with bad counts is walked again instead of failing the load.
+	 */
+	@Test
+	public void testCorrupted () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId c2 = builder.commit ("c2", c1);
+			ObjectId b1 = builder.commit ("b1", c1);
+			builder.branch ("master", builder.commit ("m1", c2, b1));
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				Assert.assertEquals (4, load (gitRepo).size ());
+				File file = new File (new File (gitRepo.getGitDir (), Defaults.GIT_DIR_JGVT_DIR), Defaults.JGVT_COMMIT_GRAPH);
+
+				// the commit count, and the parent count which is too small,
+				// negative or too large.
+				long[][] corruptions = { { 8, -1 }, { 12, 1 }, { 12, -1 }, { 12, Integer.MAX_VALUE } };
+				for (long[] corruption : corruptions)
+				{
+					try (RandomAccessFile raf = new RandomAccessFile (file, "rw"))
+					{
+						raf.seek (corruption[0]);
+						raf.writeInt ((int) corruption[1]);
+					}
+					CommitGraphCache cache = load (gitRepo);
+					Assert.assertEquals (4, cache.size ());
+					checkGraph (gitRepo, cache);
+				}
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	/**
+	 * The RevWalk kept by a tree is used for every update, and keeps no
+	 * commit bodies.
+	 */
+	@Test
+	public void testSharedRevWalk () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1");
+			ObjectId c2 = builder.commit ("c2", c1);
+			ObjectId b1 = builder.commit ("b1", c1);
+			ObjectId m1 = builder.commit ("Merge pull request #1 from b", b1, c2);
+			builder.branch ("master", c2);
+			builder.branch ("b", m1);
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			RevWalk revWalk = gitRepo.createRevWalk ();
+			try
+			{
+				CommitGraphCache cache = CommitGraphCache.load (gitRepo, gitRepo.getRefSnapshot (), revWalk, NullProgressMonitor.INSTANCE);
+				Assert.assertEquals (4, cache.size ());
+				Assert.assertTrue (cache.isMergePullRequest (indexOf (cache, m1)));
+				for (int i = 0; i < cache.size (); ++i)
+					Assert.assertNull (cache.getCommit (i).getRawBuffer ());
+
+				// the commits walked before are walked again.
+				builder.delete ("refs/heads/b");
+				cache = CommitGraphCache.load (gitRepo, gitRepo.getRefSnapshot (), revWalk, NullProgressMonitor.INSTANCE);
+				Assert.assertEquals (2, cache.size ());
+				builder.branch ("b", m1);
+				cache = CommitGraphCache.load (gitRepo, gitRepo.getRefSnapshot (), revWalk, NullProgressMonitor.INSTANCE);
+				Assert.assertEquals (4, cache.size ());
+				Assert.assertTrue (cache.isMergePullRequest (indexOf (cache, m1)));
+				Assert.assertFalse (cache.isMergePullRequest (indexOf (cache, b1)));
+				for (int i = 0; i < cache.size (); ++i)
+					Assert.assertNull (cache.getCommit (i).getRawBuffer ());
+				checkGraph (gitRepo, cache);
+			}
+			finally
+			{
+				revWalk.close ();
+				gitRepo.close ();
+			}
+		}
+	}
+}
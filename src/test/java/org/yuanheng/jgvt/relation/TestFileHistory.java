@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RepoBuilder;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestFileHistory
+{
+	private static Map<String, String> files (String... pathContents)
+	{
+		TreeMap<String, String> files = new TreeMap<String, String> ();
+		for (int i = 0; i < pathContents.length; i += 2)
+			files.put (pathContents[i], pathContents[i + 1]);
+		return files;
+	}
+
+	/**
+	 * @return	a map of the commits in the graph to their parents.
+	 */
+	private static Map<ObjectId, List<ObjectId>> getParents (CommitGraphCache graph)
+	{
+		HashMap<ObjectId, List<ObjectId>> map = new HashMap<ObjectId, List<ObjectId>> ();
+		for (int i = 0; i < graph.size (); ++i)
+		{
+			ArrayList<ObjectId> parents = new ArrayList<ObjectId> ();
+			for (int j = 0; j < graph.getParentCount (i); ++j)
+				parents.add (graph.getCommit (graph.getParent (i, j)).copy ());
+			map.put (graph.getCommit (i).copy (), parents);
+		}
+		return map;
+	}
+
+	@Test
+	public void testMightChange () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1", files ("dir/a.txt", "a", "b.txt", "b"));
+			ObjectId c2 = builder.commit ("c2", files ("dir/a.txt", "a", "b.txt", "b2"), c1);
+			ObjectId c3 = builder.commit ("c3", files ("dir/a.txt", "a3", "b.txt", "b2"), c2);
+			builder.branch ("master", c3);
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				CommitGraphCache graph = CommitGraphCache.load (gitRepo, gitRepo.getRefSnapshot (), gitRepo.createRevWalk (), NullProgressMonitor.INSTANCE);
+				for (int pass = 0; pass < 2; ++pass)
+				{
+					// the 2nd pass reads the saved index.
+					ChangedPathIndex index = ChangedPathIndex.load (gitRepo, graph, NullProgressMonitor.INSTANCE);
+					Assert.assertTrue (index.mightChange (c1, "dir/a.txt"));
+					Assert.assertTrue (index.mightChange (c1, "dir"));
+					Assert.assertTrue (index.mightChange (c1, "b.txt"));
+					Assert.assertTrue (index.mightChange (c2, "b.txt"));
+					Assert.assertFalse (index.mightChange (c2, "dir/a.txt"));
+					Assert.assertFalse (index.mightChange (c2, "dir"));
+					Assert.assertTrue (index.mightChange (c3, "dir/a.txt"));
+					Assert.assertTrue (index.mightChange (c3, "dir"));
+					Assert.assertFalse (index.mightChange (c3, "b.txt"));
+					// commits not indexed might change anything.
+					Assert.assertTrue (index.mightChange (ObjectId.zeroId (), "b.txt"));
+				}
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testFilter () throws Exception
+	{
+		String content = "line 1\nline 2\nline 3\nline 4\nline 5\n";
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId c1 = builder.commit ("c1", files ("a.txt", content, "b.txt", "b"));
+			ObjectId c2 = builder.commit ("c2", files ("a.txt", content, "b.txt", "b2"), c1);
+			ObjectId c3 = builder.commit ("c3", files ("a.txt", content + "c3\n", "b.txt", "b2"), c2);
+			ObjectId s1 = builder.commit ("s1", files ("a.txt", "s1\n" + content, "b.txt", "b"), c1);
+			ObjectId m1 = builder.commit ("m1", files ("a.txt", "s1\n" + content + "c3\n", "b.txt", "b2"), c3, s1);
+			// a merge that takes the file of the first parent.
+			ObjectId s2 = builder.commit ("s2", files ("a.txt", content, "b.txt", "b3"), c1);
+			ObjectId m2 = builder.commit ("m2", files ("a.txt", "s1\n" + content + "c3\n", "b.txt", "b3"), m1, s2);
+			ObjectId c4 = builder.commit ("c4", files ("r.txt", "s1\n" + content + "c3\n", "b.txt", "b3"), m2);
+			ObjectId c5 = builder.commit ("c5", files ("r.txt", "s1\n" + content + "c5\n", "b.txt", "b3"), c4);
+			builder.branch ("master", c5);
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				CommitGraphCache graph = CommitGraphCache.load (gitRepo, gitRepo.getRefSnapshot (), gitRepo.createRevWalk (), NullProgressMonitor.INSTANCE);
+
+				// the history continues with a.txt before the rename.
+				Map<ObjectId, List<ObjectId>> history = getParents (FileHistory.filter (gitRepo, graph, "r.txt", NullProgressMonitor.INSTANCE));
+				Assert.assertEquals (6, history.size ());
+				Assert.assertEquals (Arrays.asList (c4), history.get (c5));
+				Assert.assertEquals (Arrays.asList (m1), history.get (c4));
+				Assert.assertEquals (Arrays.asList (c3, s1), history.get (m1));
+				Assert.assertEquals (Arrays.asList (c1), history.get (c3));
+				Assert.assertEquals (Arrays.asList (c1), history.get (s1));
+				Assert.assertEquals (Arrays.asList (), history.get (c1));
+
+				// m2 took b.txt from s2, so only s2 is followed.
+				history = getParents (FileHistory.filter (gitRepo, graph, "b.txt", NullProgressMonitor.INSTANCE));
+				Assert.assertEquals (2, history.size ());
+				Assert.assertEquals (Arrays.asList (c1), history.get (s2));
+				Assert.assertEquals (Arrays.asList (), history.get (c1));
+
+				history = getParents (FileHistory.filter (gitRepo, graph, "none.txt", NullProgressMonitor.INSTANCE));
+				Assert.assertEquals (0, history.size ());
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+}
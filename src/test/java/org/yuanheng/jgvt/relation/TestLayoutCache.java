@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.Defaults;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RefSnapshot;
+import org.yuanheng.jgvt.RepoBuilder;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestLayoutCache
+{
+	/**
+	 * Create a history with side branches, a criss-cross merge and an
+	 * octopus merge.
+	 */
+	private static void createHistory (RepoBuilder builder) throws Exception
+	{
+		ObjectId c1 = builder.commit ("c1");
+		ObjectId c2 = builder.commit ("c2", c1);
+		ObjectId a1 = builder.commit ("a1", c1);
+		ObjectId a2 = builder.commit ("a2", a1);
+		ObjectId b1 = builder.commit ("b1", c2);
+		ObjectId m1 = builder.commit ("Merge pull request #1 from a", c2, a2);
+		ObjectId m2 = builder.commit ("Merge branch 'master' into b", b1, c2);
+		ObjectId c3 = builder.commit ("c3", m1);
+		ObjectId d1 = builder.commit ("d1", c2);
+		ObjectId e1 = builder.commit ("e1", c2);
+		ObjectId m3 = builder.commit ("octopus", c3, d1, e1, m2);
+		ObjectId c4 = builder.commit ("c4", m3);
+		builder.branch ("master", c4);
+		builder.branch ("b", m2);
+		builder.tag ("v1", c3);
+	}
+
+	private static String dump (RelationTree tree)
+	{
+		StringBuilder builder = new StringBuilder ();
+		RelationNodeStore store = tree.getStore ();
+		for (int i = 0; i < store.size (); ++i)
+		{
+			RelationNode node = store.getNode (i);
+			builder.append (node.getId ().getName ()).append (" x=").append (node.getX ()).append (" y=").append (node.getY ());
+			RelationBranch branch = node.getRelationBranch ();
+			if (branch != null)
+			{
+				LayoutInfo info = branch.getLayoutInfo ();
+				builder.append (" branch=").append (branch.getId ()).append (':').append (branch.getFirst ().getIndex ());
+				builder.append (':').append (info.getWeight ()).append (':').append (info.getX ()).append (':').append (info.getY ());
+			}
+			for (RelationNode parent : node.getParents ())
+				builder.append (" p=").append (parent.getIndex ()).append (':').append (node.getRelation (parent));
+			for (RelationNode child : node.getChildren ())
+				builder.append (" c=").append (child.getIndex ());
+			builder.append ('\n');
+		}
+		builder.append ("start=").append (tree.getStartNode () == null ? -1 : tree.getStartNode ().getIndex ());
+		return builder.toString ();
+	}
+
+	private static String dump (BranchLog log)
+	{
+		StringBuilder builder = new StringBuilder ();
+		for (int i = 0; i < log.size (); ++i)
+		{
+			BranchLog.BranchLogEntry entry = log.get (i);
+			builder.append (entry.node.getIndex ()).append (' ').append (entry.algorithm).append (' ').append (entry.iteration).append ('\n');
+		}
+		builder.append ("iterations=").append (log.getIterations ());
+		return builder.toString ();
+	}
+
+	/**
+	 * The nodes of a tree before the branch discovery, and the key of its
+	 * layout.
+	 */
+	private static class Nodes
+	{
+		RelationTree tree = new RelationTree ();
+		byte[] key;
+
+		Nodes (GitRepo gitRepo, RelationEditList editList, int minCommitTime) throws Exception
+		{
+			RefSnapshot refs = gitRepo.getRefSnapshot ();
+			RevWalk revWalk = gitRepo.createRevWalk ();
+			CommitGraphCache graph = CommitGraphCache.load (gitRepo, refs, revWalk, NullProgressMonitor.INSTANCE);
+			tree.addNodes (graph, revWalk, refs, minCommitTime);
+			key = LayoutCache.computeKey (refs, editList, RelationTreeFactory.getDefaultImportantBranchNames (), minCommitTime, null);
+		}
+
+		boolean isUnchanged ()
+		{
+			for (RelationNode node : tree.getNodes ())
+			{
+				if (node.getRelationBranch () != null || node.getX () != -1)
+					return false;
+			}
+			return tree.getStartNode () == null;
+		}
+	}
+
+	@Test
+	public void testRoundTrip () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				BranchLog log = new BranchLog ();
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), log);
+
+				Nodes nodes = new Nodes (gitRepo, new RelationEditList (), tree.getMinCommitTime ());
+				BranchLog log2 = new BranchLog ();
+				Assert.assertTrue (LayoutCache.load (gitRepo, nodes.key, nodes.tree, log2));
+				Assert.assertEquals (dump (tree), dump (nodes.tree));
+				Assert.assertEquals (dump (log), dump (log2));
+
+				// the new branches do not reuse the saved ids.
+				int maxId = -1;
+				for (RelationNode node : tree.getNodes ())
+					maxId = Math.max (maxId, node.getRelationBranch ().getId ());
+				Assert.assertTrue (nodes.tree.getNextBranchId () > maxId);
+
+				// the generated tree is the same with the saved layout.
+				Assert.assertEquals (dump (tree), dump (factory.generateTree (new RelationEditList (), new BranchLog ())));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testStaleKey () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+
+				// a user edit
+				RelationEditList editList = new RelationEditList ();
+				editList.add (tree.getStartNode ().getId (), 0);
+				Nodes nodes = new Nodes (gitRepo, editList, tree.getMinCommitTime ());
+				Assert.assertFalse (LayoutCache.load (gitRepo, nodes.key, nodes.tree, new BranchLog ()));
+				Assert.assertTrue (nodes.isUnchanged ());
+
+				// a different history window
+				nodes = new Nodes (gitRepo, new RelationEditList (), tree.getMinCommitTime () + 1);
+				Assert.assertFalse (LayoutCache.load (gitRepo, nodes.key, nodes.tree, new BranchLog ()));
+				Assert.assertTrue (nodes.isUnchanged ());
+
+				// a moved ref
+				builder.branch ("b", tree.getStartNode ().getId ());
+				nodes = new Nodes (gitRepo, new RelationEditList (), tree.getMinCommitTime ());
+				Assert.assertFalse (LayoutCache.load (gitRepo, nodes.key, nodes.tree, new BranchLog ()));
+				Assert.assertTrue (nodes.isUnchanged ());
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testCorruptData () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				BranchLog log = new BranchLog ();
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), log);
+				int size = tree.size ();
+				File file = new File (new File (gitRepo.getGitDir (), Defaults.GIT_DIR_JGVT_DIR), Defaults.JGVT_LAYOUT);
+				byte[] data = Files.readAllBytes (file.toPath ());
+
+				// the header, the key, the size and the commit ids.
+				int nodeStart = 4 + 4 + 20 + 4 + size * 20;
+				// the node count and the 1st parents of the layout.
+				int parentStart = nodeStart + 4;
+				// the start node, the branch count, the branches and the
+				// branch index of each node are before the log.
+				int branchCount = 0;
+				for (RelationNode node : tree.getNodes ())
+				{
+					if (node.getRelationBranch ().getFirst () == node)
+						++branchCount;
+				}
+				Assert.assertTrue (branchCount > 1);
+				int logStart = data.length - 4 - 4;
+				for (int i = 0; i < log.size (); ++i)
+					logStart -= 4 + 4 + 2 + log.get (i).algorithm.length ();
+				int indexStart = logStart - size * 4;
+				int branchStart = indexStart - branchCount * 16;
+				Assert.assertEquals (size, ByteBuffer.wrap (data, nodeStart, 4).getInt ());
+				Assert.assertEquals (branchCount, ByteBuffer.wrap (data, branchStart - 4, 4).getInt ());
+				Assert.assertEquals (log.size (), ByteBuffer.wrap (data, logStart, 4).getInt ());
+
+				byte[][] corruptions = new byte[][] {
+					// truncated
+					Arrays.copyOf (data, 6),
+					Arrays.copyOf (data, nodeStart),
+					Arrays.copyOf (data, parentStart + 10),
+					Arrays.copyOf (data, branchStart + 3),
+					Arrays.copyOf (data, logStart + 5),
+					// a different commit id
+					flip (data, nodeStart - 1, 1),
+					// a parent out of range
+					set (data, parentStart, size + 1),
+					// a different 2nd parent of the 2nd node
+					set (data, parentStart + 4 * 2 * 1 + 4, 0),
+					// a branch index out of range
+					set (data, indexStart, branchCount),
+					// all the nodes in one branch, which is not a chain
+					set (data, indexStart, size, 0),
+					// a log entry of a node out of range
+					set (data, logStart + 4, size),
+				};
+				for (int i = 0; i < corruptions.length; ++i)
+				{
+					Files.write (file.toPath (), corruptions[i]);
+					Nodes nodes = new Nodes (gitRepo, new RelationEditList (), tree.getMinCommitTime ());
+					BranchLog log2 = new BranchLog ();
+					Assert.assertFalse ("corruption " + i, LayoutCache.load (gitRepo, nodes.key, nodes.tree, log2));
+					Assert.assertTrue ("corruption " + i, nodes.isUnchanged ());
+					Assert.assertEquals (0, log2.size ());
+				}
+
+				// the layout is computed again.
+				Assert.assertEquals (dump (tree), dump (factory.generateTree (new RelationEditList (), new BranchLog ())));
+				Nodes nodes = new Nodes (gitRepo, new RelationEditList (), tree.getMinCommitTime ());
+				Assert.assertTrue (LayoutCache.load (gitRepo, nodes.key, nodes.tree, new BranchLog ()));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	private static byte[] flip (byte[] data, int offset, int mask)
+	{
+		byte[] copy = data.clone ();
+		copy[offset] ^= mask;
+		return copy;
+	}
+
+	private static byte[] set (byte[] data, int offset, int value)
+	{
+		return set (data, offset, 1, value);
+	}
+
+	/**
+	 * Set consecutive ints to a value.
+	 */
+	private static byte[] set (byte[] data, int offset, int count, int value)
+	{
+		byte[] copy = data.clone ();
+		for (int i = offset; i < offset + count * 4; i += 4)
+		{
+			copy[i] = (byte)(value >>> 24);
+			copy[i + 1] = (byte)(value >>> 16);
+			copy[i + 2] = (byte)(value >>> 8);
+			copy[i + 3] = (byte)value;
+		}
+		return copy;
+	}
+}
@@ -15,6 +15,8 @@
  */
 package org.yuanheng.jgvt.relation;
 
+import java.util.Random;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.yuanheng.jgvt.relation.LayoutMatrix;
@@ -65,4 +67,86 @@ public class TestLayoutMatrix
 		}
 	}
 
+	@Test
+	public void testFreeColumn () throws Exception
+	{
+		LayoutMatrix matrix = new LayoutMatrix ();
+		Assert.assertEquals (3, matrix.getFreeColumn (3, 0, 100));
+		matrix.take (3, 10, 20);
+		matrix.take (4, 0, 10);
+		matrix.take (5, 20, 20);
+		Assert.assertEquals (3, matrix.getFreeColumn (3, 0, 9));
+		Assert.assertEquals (5, matrix.getFreeColumn (3, 10, 10));
+		Assert.assertEquals (6, matrix.getFreeColumn (3, 5, 30));
+		Assert.assertEquals (3, matrix.getFreeColumn (3, 21, 300));
+
+		// compare against checking each row of each column.
+		Random random = new Random (0);
+		matrix = new LayoutMatrix ();
+		boolean[][] taken = new boolean[1100][300];
+		for (int i = 0; i < 1000; ++i)
+		{
+			int y1 = random.nextInt (300);
+			int y2 = y1 + random.nextInt (300 - y1);
+			int x = random.nextInt (50);
+			int expected = x;
+ExitCheck:
+			for (;; ++expected)
+			{
+				for (int y = y1; y <= y2; ++y)
+				{
+					if (taken[expected][y])
+						continue ExitCheck;
+				}
+				break;
+			}
+			Assert.assertEquals (expected, matrix.getFreeColumn (x, y1, y2));
+			if (random.nextBoolean ())
+			{
+				matrix.take (expected, y1, y2);
+				for (int y = y1; y <= y2; ++y)
+					taken[expected][y] = true;
+			}
+		}
+	}
+
+	@Test
+	public void testFree () throws Exception
+	{
+		LayoutMatrix matrix = new LayoutMatrix ();
+		matrix.take (3, 10, 20);
+		matrix.free (3, 12, 14);
+		Assert.assertFalse (matrix.isTaken (3, 12, 14));
+		Assert.assertTrue (matrix.isTaken (3, 10, 11));
+		Assert.assertTrue (matrix.isTaken (3, 15, 20));
+		Assert.assertEquals (3, matrix.getFreeColumn (3, 12, 14));
+		matrix.free (3, 0, 100);
+		Assert.assertFalse (matrix.isTaken (3, 0, 100));
+
+		// compare against checking each row of each column.
+		Random random = new Random (0);
+		matrix = new LayoutMatrix ();
+		boolean[][] taken = new boolean[10][300];
+		for (int i = 0; i < 2000; ++i)
+		{
+			int y1 = random.nextInt (300);
+			int y2 = y1 + random.nextInt (Math.min (50, 300 - y1));
+			int x = random.nextInt (10);
+			boolean take = random.nextBoolean ();
+			if (take)
+				matrix.take (x, y1, y2);
+			else
+				matrix.free (x, y1, y2);
+			for (int y = y1; y <= y2; ++y)
+				taken[x][y] = take;
+			for (int checkX = 0; checkX < 10; ++checkX)
+			{
+				int y = random.nextInt (300);
+				boolean expected = false;
+				for (int checkY = y; checkY < Math.min (300, y + 20); ++checkY)
+					expected |= taken[checkX][checkY];
+				Assert.assertEquals (expected, matrix.isTaken (checkX, y, Math.min (299, y + 19)));
+			}
+		}
+	}
 }
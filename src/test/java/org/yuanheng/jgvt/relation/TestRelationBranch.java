@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestRelationBranch
+{
+	/**
+	 * Create a chain of nodes, each being the only child of the previous
+	 * node.
+	 */
+	private static RelationNode[] createChain (RelationNodeStore store, int size)
+	{
+		RevWalk revWalk = new RevWalk ((ObjectReader) null);
+		RelationNode[] nodes = new RelationNode[size];
+		for (int i = 0; i < size; ++i)
+		{
+			ObjectId id = ObjectId.fromString (String.format ("%040x", i + 1));
+			nodes[i] = store.add (revWalk.lookupCommit (id), 1000 + i, false);
+			if (i > 0)
+				nodes[i].addParent (nodes[i - 1]);
+		}
+		store.buildChildren ();
+		return nodes;
+	}
+
+	/**
+	 * Check that the nodes of a branch are found in the branch at their
+	 * places.
+	 */
+	private static void checkBranch (RelationBranch branch, List<RelationNode> nodes)
+	{
+		Assert.assertEquals (nodes.size (), branch.size ());
+		Assert.assertSame (nodes.get (0), branch.getFirst ());
+		Assert.assertSame (nodes.get (nodes.size () - 1), branch.getLast ());
+		for (int i = 0; i < nodes.size (); ++i)
+		{
+			RelationNode node = nodes.get (i);
+			Assert.assertSame (branch, node.getRelationBranch ());
+			Assert.assertTrue (branch.has (node));
+			Assert.assertEquals (i, branch.indexOf (node));
+		}
+		Assert.assertEquals (nodes, branch.getOrderedList ());
+	}
+
+	@Test
+	public void testMergeOffsets () throws Exception
+	{
+		Random random = new Random (1);
+		for (int trial = 0; trial < 50; ++trial)
+		{
+			RelationNodeStore store = new RelationNodeStore (new RelationTree ());
+			RelationNode[] nodes = createChain (store, 40);
+
+			// the branches, in the order of the chain, and their nodes.
+			ArrayList<RelationBranch> branches = new ArrayList<RelationBranch> ();
+			ArrayList<List<RelationNode>> branchNodes = new ArrayList<List<RelationNode>> ();
+			for (RelationNode node : nodes)
+			{
+				branches.add (new RelationBranch (node));
+				ArrayList<RelationNode> list = new ArrayList<RelationNode> ();
+				list.add (node);
+				branchNodes.add (list);
+			}
+
+			while (branches.size () > 1)
+			{
+				int i = random.nextInt (branches.size () - 1);
+				RelationBranch parent = branches.get (i);
+				RelationBranch child = branches.get (i + 1);
+				List<RelationNode> list = branchNodes.get (i);
+				list.addAll (branchNodes.remove (i + 1));
+				RelationBranch absorbed;
+				if (random.nextBoolean ())
+				{
+					child.mergeParent (parent);
+					branches.set (i, child);
+					absorbed = parent;
+				}
+				else
+				{
+					parent.mergeChild (child);
+					absorbed = child;
+				}
+				branches.remove (i + 1);
+				Assert.assertEquals (0, absorbed.size ());
+				Assert.assertFalse (absorbed.has (list.get (0)));
+
+				for (int k = 0; k < branches.size (); ++k)
+					checkBranch (branches.get (k), branchNodes.get (k));
+			}
+		}
+	}
+
+	@Test
+	public void testAddRemoveAfterMerge () throws Exception
+	{
+		RelationNodeStore store = new RelationNodeStore (new RelationTree ());
+		RelationNode[] nodes = createChain (store, 8);
+		RelationBranch a = new RelationBranch (nodes[2]);
+		a.add (nodes[3]);
+		RelationBranch b = new RelationBranch (nodes[4]);
+		b.add (nodes[5]);
+		b.add (nodes[6]);
+
+		// the merged branch grows at either end.
+		b.mergeParent (a);
+		b.add (nodes[1]);
+		b.add (nodes[7]);
+		checkBranch (b, Arrays.asList (nodes).subList (1, 8));
+
+		b.remove (nodes[1]);
+		b.remove (nodes[7]);
+		Assert.assertNull (nodes[1].getRelationBranch ());
+		checkBranch (b, Arrays.asList (nodes).subList (2, 7));
+
+		// a node moves from the end of one branch to another.
+		RelationBranch c = new RelationBranch (nodes[1]);
+		c.add (nodes[2]);
+		checkBranch (c, Arrays.asList (nodes).subList (1, 3));
+		checkBranch (b, Arrays.asList (nodes).subList (3, 7));
+	}
+
+	@Test
+	public void testMergeSecondParent () throws Exception
+	{
+		RelationNodeStore store = new RelationNodeStore (new RelationTree ());
+		RelationNode[] nodes = createChain (store, 3);
+		RevWalk revWalk = new RevWalk ((ObjectReader) null);
+		RelationNode side = store.add (revWalk.lookupCommit (ObjectId.fromString (String.format ("%040x", 100))), 2000, false);
+		side.addParent (nodes[0]);
+		RelationNode merge = store.add (revWalk.lookupCommit (ObjectId.fromString (String.format ("%040x", 101))), 2001, false);
+		merge.addParent (nodes[2]);
+		merge.addParent (side);
+		store.buildChildren ();
+
+		// the merge follows its 2nd parent, which becomes the 1st parent.
+		RelationBranch sideBranch = new RelationBranch (nodes[0]);
+		sideBranch.add (side);
+		RelationBranch mergeBranch = new RelationBranch (merge);
+		mergeBranch.mergeParent (sideBranch);
+		Assert.assertSame (side, merge.getParent (0));
+		Assert.assertSame (nodes[2], merge.getParent (1));
+		checkBranch (mergeBranch, Arrays.asList (nodes[0], side, merge));
+
+		// the merge is not a child of the last node of the other branch.
+		RelationBranch other = new RelationBranch (nodes[1]);
+		try
+		{
+			other.mergeChild (mergeBranch);
+			Assert.fail ();
+		}
+		catch (RuntimeException ex)
+		{
+			Assert.assertEquals ("Incorrect merge", ex.getMessage ());
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestRelationNodeStore
+{
+	/**
+	 * Create the nodes a, b, c, d and e.  b, c and d are the children of a,
+	 * and e is an octopus merge of d, b and c.
+	 */
+	private static RelationNode[] createNodes (RelationNodeStore store)
+	{
+		RevWalk revWalk = new RevWalk ((ObjectReader) null);
+		RelationNode[] nodes = new RelationNode[5];
+		for (int i = 0; i < nodes.length; ++i)
+		{
+			ObjectId id = ObjectId.fromString (String.format ("%040x", i + 1));
+			nodes[i] = store.add (revWalk.lookupCommit (id), 1000 + i, false);
+		}
+		nodes[1].addParent (nodes[0]);
+		nodes[2].addParent (nodes[0]);
+		nodes[3].addParent (nodes[0]);
+		nodes[4].addParent (nodes[3]);
+		nodes[4].addParent (nodes[1]);
+		nodes[4].addParent (nodes[2]);
+		store.buildChildren ();
+		return nodes;
+	}
+
+	@Test
+	public void testOctopusMerge () throws Exception
+	{
+		RelationNodeStore store = new RelationNodeStore (new RelationTree ());
+		RelationNode[] nodes = createNodes (store);
+		RelationNode merge = nodes[4];
+
+		Assert.assertEquals (3, merge.getParentCount ());
+		Assert.assertSame (nodes[3], merge.getParent (0));
+		Assert.assertSame (nodes[1], merge.getParent (1));
+		Assert.assertSame (nodes[2], merge.getParent (2));
+		Assert.assertEquals (2, store.indexOfParent (merge.getIndex (), nodes[2]));
+
+		Assert.assertEquals (3, nodes[0].getChildCount ());
+		for (int i = 1; i < 4; ++i)
+		{
+			Assert.assertEquals (1, nodes[i].getChildCount ());
+			Assert.assertSame (merge, nodes[i].getChild (0));
+		}
+
+		// the relations of the parents after the first 2 are kept apart.
+		Assert.assertEquals (RelationType.CHILD, merge.getRelation (nodes[3]));
+		Assert.assertEquals (RelationType.MERGE, merge.getRelation (nodes[2]));
+		merge.setRelation (nodes[2], RelationType.BRANCH);
+		merge.setRelation (nodes[1], RelationType.CHILD);
+		Assert.assertEquals (RelationType.BRANCH, merge.getRelation (nodes[2]));
+		Assert.assertEquals (RelationType.CHILD, merge.getRelation (nodes[1]));
+		Assert.assertEquals (RelationType.CHILD, merge.getRelation (nodes[3]));
+
+		// a node that is not a parent.
+		Assert.assertEquals (-1, store.indexOfParent (merge.getIndex (), nodes[0]));
+	}
+
+	@Test
+	public void testSwapParentOrder () throws Exception
+	{
+		RelationNodeStore store = new RelationNodeStore (new RelationTree ());
+		RelationNode[] nodes = createNodes (store);
+		RelationNode node = store.add (new RevWalk ((ObjectReader) null).lookupCommit (ObjectId.fromString (String.format ("%040x", 100))), 2000, true);
+		node.addParent (nodes[1]);
+		node.addParent (nodes[2]);
+		node.setRelation (nodes[2], RelationType.BRANCH);
+		node.swapParentOrder ();
+		Assert.assertSame (nodes[2], node.getParent (0));
+		Assert.assertSame (nodes[1], node.getParent (1));
+		Assert.assertEquals (RelationType.BRANCH, node.getRelation (nodes[2]));
+		Assert.assertTrue (node.isMergePullRequest ());
+	}
+
+	private static byte[] writeLayout (RelationNodeStore store) throws Exception
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream ();
+		DataOutputStream dos = new DataOutputStream (bos);
+		store.writeLayout (dos);
+		dos.close ();
+		return bos.toByteArray ();
+	}
+
+	@Test
+	public void testLayoutRoundTrip () throws Exception
+	{
+		RelationNodeStore store = new RelationNodeStore (new RelationTree ());
+		RelationNode[] nodes = createNodes (store);
+		for (int i = 0; i < nodes.length; ++i)
+		{
+			nodes[i].setX (i % 3);
+			nodes[i].setY (nodes.length - i);
+			nodes[i].setWeight (i * 10);
+		}
+		nodes[4].setRelation (nodes[1], RelationType.BRANCH);
+		nodes[4].setRelation (nodes[2], RelationType.CHILD);
+		nodes[0].setNthChild (nodes[3], 0);
+		byte[] data = writeLayout (store);
+
+		RelationNodeStore store2 = new RelationNodeStore (new RelationTree ());
+		RelationNode[] nodes2 = createNodes (store2);
+		RelationNodeStore.Layout layout = store2.readLayout (ByteBuffer.wrap (data));
+		Assert.assertNotNull (layout);
+		// nothing is changed until the layout is applied.
+		Assert.assertEquals (-1, nodes2[0].getX ());
+		store2.applyLayout (layout);
+
+		for (int i = 0; i < nodes.length; ++i)
+		{
+			Assert.assertEquals (nodes[i].getX (), nodes2[i].getX ());
+			Assert.assertEquals (nodes[i].getY (), nodes2[i].getY ());
+			Assert.assertEquals (nodes[i].getWeight (), nodes2[i].getWeight ());
+			Assert.assertEquals (nodes[i].getParentCount (), nodes2[i].getParentCount ());
+			for (int j = 0; j < nodes[i].getParentCount (); ++j)
+			{
+				Assert.assertEquals (nodes[i].getParent (j).getIndex (), nodes2[i].getParent (j).getIndex ());
+				Assert.assertEquals (nodes[i].getRelation (nodes[i].getParent (j)), nodes2[i].getRelation (nodes2[i].getParent (j)));
+			}
+			Assert.assertEquals (nodes[i].getChildCount (), nodes2[i].getChildCount ());
+			for (int j = 0; j < nodes[i].getChildCount (); ++j)
+				Assert.assertEquals (nodes[i].getChild (j).getIndex (), nodes2[i].getChild (j).getIndex ());
+		}
+		Assert.assertSame (nodes2[3], nodes2[0].getChild (0));
+	}
+
+	@Test
+	public void testLayoutMismatch () throws Exception
+	{
+		RelationNodeStore store = new RelationNodeStore (new RelationTree ());
+		createNodes (store);
+		byte[] data = writeLayout (store);
+
+		// truncated data.
+		for (int length : new int[] { 0, 3, 8, data.length / 2, data.length - 1 })
+		{
+			RelationNodeStore store2 = new RelationNodeStore (new RelationTree ());
+			createNodes (store2);
+			Assert.assertNull (store2.readLayout (ByteBuffer.wrap (data, 0, length)));
+		}
+
+		// different parents.
+		RelationNodeStore store3 = new RelationNodeStore (new RelationTree ());
+		RelationNode[] nodes3 = createNodes (store3);
+		RelationNode node = store3.add (new RevWalk ((ObjectReader) null).lookupCommit (ObjectId.fromString (String.format ("%040x", 100))), 2000, false);
+		node.addParent (nodes3[4]);
+		store3.buildChildren ();
+		Assert.assertNull (store3.readLayout (ByteBuffer.wrap (data)));
+
+		// a bad relation type.
+		RelationNodeStore store4 = new RelationNodeStore (new RelationTree ());
+		createNodes (store4);
+		byte[] bad = data.clone ();
+		bad[4 + 5 * 2 * 4] = 100;
+		Assert.assertNull (store4.readLayout (ByteBuffer.wrap (bad)));
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RepoBuilder;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestRelationTree
+{
+	@Test
+	public void testCommitBody () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			HashMap<ObjectId, String> messages = new HashMap<ObjectId, String> ();
+			ObjectId c1 = builder.commit ("first\n\nbody of the first commit");
+			messages.put (c1, "first\n\nbody of the first commit");
+			ObjectId c2 = builder.commit ("second", c1);
+			messages.put (c2, "second");
+			ObjectId b1 = builder.commit ("side", c1);
+			messages.put (b1, "side");
+			ObjectId m1 = builder.commit ("merge", c2, b1);
+			messages.put (m1, "merge");
+			builder.branch ("master", m1);
+
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+				Assert.assertEquals (messages.size (), tree.size ());
+				for (Map.Entry<ObjectId, String> entry : messages.entrySet ())
+				{
+					RelationNode node = tree.getNode (entry.getKey ());
+					RevCommit commit = node.getCommit ();
+					Assert.assertEquals (entry.getValue (), commit.getFullMessage ());
+					Assert.assertEquals ("jgvt", commit.getAuthorIdent ().getName ());
+					// the parsed body is cached.
+					Assert.assertSame (commit, node.getCommit ());
+				}
+
+				// the copy parses the bodies on its own.
+				RelationTree copy = tree.copy ();
+				RelationNode node = copy.getNode (m1);
+				Assert.assertEquals ("merge", node.getCommit ().getFullMessage ());
+				Assert.assertEquals (2, node.getCommit ().getParentCount ());
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+}
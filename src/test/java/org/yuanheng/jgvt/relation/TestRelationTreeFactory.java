@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RepoBuilder;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestRelationTreeFactory
+{
+	/**
+	 * The commits of a master branch, and of a feature branch forked from
+	 * the 4th commit.
+	 */
+	private static ObjectId[] createHistory (RepoBuilder builder) throws Exception
+	{
+		ObjectId[] ids = new ObjectId[14];
+		ids[0] = builder.commit ("c0");
+		for (int i = 1; i < 10; ++i)
+			ids[i] = builder.commit ("c" + i, ids[i - 1]);
+		ids[10] = builder.commit ("f0", ids[3]);
+		for (int i = 11; i < 14; ++i)
+			ids[i] = builder.commit ("f" + (i - 10), ids[i - 1]);
+		builder.branch ("master", ids[9]);
+		builder.branch ("feature", ids[13]);
+		return ids;
+	}
+
+	/**
+	 * Check that no two nodes share a cell, and the nodes of each branch are
+	 * in consecutive rows of a column.
+	 */
+	private static void checkLayout (RelationTree tree)
+	{
+		HashSet<Long> cells = new HashSet<Long> ();
+		for (RelationNode node : tree.getNodes ())
+		{
+			Assert.assertTrue (node.getY () >= 0);
+			Assert.assertTrue (cells.add (((long) node.getX () << 32) | node.getY ()));
+			RelationBranch branch = node.getRelationBranch ();
+			RelationNode first = branch.getFirst ();
+			Assert.assertEquals (first.getX (), node.getX ());
+			Assert.assertEquals (first.getY () + branch.indexOf (node), node.getY ());
+		}
+	}
+
+	private static HashMap<ObjectId, String> getPositions (RelationTree tree)
+	{
+		HashMap<ObjectId, String> positions = new HashMap<ObjectId, String> ();
+		for (RelationNode node : tree.getNodes ())
+			positions.put (node.getId (), node.getX () + "," + node.getY ());
+		return positions;
+	}
+
+	/**
+	 * @return	the first commit of the branch and the row of each commit.
+	 */
+	private static HashMap<ObjectId, String> getRows (RelationTree tree)
+	{
+		HashMap<ObjectId, String> rows = new HashMap<ObjectId, String> ();
+		for (RelationNode node : tree.getNodes ())
+			rows.put (node.getId (), node.getRelationBranch ().getFirst ().getId ().name () + " " + node.getY ());
+		return rows;
+	}
+
+	/**
+	 * Update a tree, and check that only the nodes returned moved, and the
+	 * tree has the branches and the rows of a new tree.
+	 */
+	private static List<RelationNode> update (GitRepo gitRepo, RelationTree tree) throws Exception
+	{
+		HashMap<ObjectId, String> positions = getPositions (tree);
+		RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+		List<RelationNode> nodes = factory.updateTree (tree, new RelationEditList (), new BranchLog ());
+		Assert.assertNotNull (nodes);
+		checkLayout (tree);
+		for (RelationNode node : tree.getNodes ())
+		{
+			if (!nodes.contains (node))
+				Assert.assertEquals (positions.get (node.getId ()), node.getX () + "," + node.getY ());
+		}
+
+		RelationTree newTree = factory.generateTree (new RelationEditList (), new BranchLog ());
+		Assert.assertEquals (newTree.size (), tree.size ());
+		Assert.assertEquals (newTree.getStartNode ().getId (), tree.getStartNode ().getId ());
+		Assert.assertEquals (getRows (newTree), getRows (tree));
+		return nodes;
+	}
+
+	/**
+	 * Extend the history window of a tree, and check that only the nodes
+	 * returned moved, and the tree has the branches and the rows of a new
+	 * tree of the same window.
+	 */
+	private static List<RelationNode> extend (GitRepo gitRepo, RelationTree tree, int count) throws Exception
+	{
+		HashMap<ObjectId, String> positions = getPositions (tree);
+		HashMap<ObjectId, Integer> parentCounts = new HashMap<ObjectId, Integer> ();
+		for (RelationNode node : tree.getNodes ())
+			parentCounts.put (node.getId (), node.getParentCount ());
+		int size = tree.size ();
+		RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+		List<RelationNode> nodes = factory.extendTree (tree, count, new RelationEditList (), new BranchLog ());
+		Assert.assertNotNull (nodes);
+		Assert.assertEquals (size + count, tree.size ());
+		checkLayout (tree);
+		for (RelationNode node : tree.getNodes ())
+		{
+			Integer parentCount = parentCounts.get (node.getId ());
+			if (parentCount == null || parentCount != node.getParentCount ())
+				Assert.assertTrue (nodes.contains (node));
+			else if (!nodes.contains (node))
+				Assert.assertEquals (positions.get (node.getId ()), node.getX () + "," + node.getY ());
+		}
+
+		factory.setHistoryWindow (tree.size (), Integer.MIN_VALUE);
+		RelationTree newTree = factory.generateTree (new RelationEditList (), new BranchLog ());
+		Assert.assertEquals (newTree.size (), tree.size ());
+		Assert.assertEquals (newTree.isTruncated (), tree.isTruncated ());
+		Assert.assertEquals (getRows (newTree), getRows (tree));
+		return nodes;
+	}
+
+	@Test
+	public void testUpdateBranch () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId[] ids = createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+
+				// the refs did not move.
+				Assert.assertEquals (0, factory.updateTree (tree, new RelationEditList (), new BranchLog ()).size ());
+
+				ObjectId id = builder.commit ("f4", ids[13]);
+				builder.branch ("feature", id);
+				List<RelationNode> nodes = update (gitRepo, tree);
+				RelationNode node = tree.getNode (id);
+				Assert.assertTrue (nodes.contains (node));
+				// the old tip lost its branch.
+				Assert.assertTrue (nodes.contains (tree.getNode (ids[13])));
+				Assert.assertSame (tree.getNode (ids[13]).getRelationBranch (), node.getRelationBranch ());
+				// the master branch is not laid out again.
+				Assert.assertFalse (nodes.contains (tree.getNode (ids[5])));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testUpdateMainBranch () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId[] ids = createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+
+				// merge the feature branch, and move forward.
+				ObjectId merge = builder.commit ("Merge branch 'feature'", ids[9], ids[13]);
+				ObjectId id = builder.commit ("c11", merge);
+				builder.branch ("master", id);
+				List<RelationNode> nodes = update (gitRepo, tree);
+				RelationNode node = tree.getNode (id);
+				Assert.assertSame (node, tree.getStartNode ());
+				Assert.assertTrue (nodes.contains (node));
+				Assert.assertTrue (nodes.contains (tree.getNode (merge)));
+				Assert.assertSame (tree.getNode (ids[0]).getRelationBranch (), node.getRelationBranch ());
+				Assert.assertEquals (RelationType.MERGE, tree.getNode (merge).getRelation (tree.getNode (ids[13])));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	@Test
+	public void testUpdateRemoved () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId[] ids = createHistory (builder);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+				HashMap<ObjectId, String> positions = getPositions (tree);
+
+				// the feature branch is rewound, so the tree has to be
+				// generated again, and it is left intact.
+				builder.commit ("f2'", ids[11]);
+				builder.branch ("feature", ids[11]);
+				Assert.assertNull (factory.updateTree (tree, new RelationEditList (), new BranchLog ()));
+				Assert.assertEquals (14, tree.size ());
+				Assert.assertEquals (positions, getPositions (tree));
+
+				// the master branch is rewound.
+				builder.branch ("feature", ids[13]);
+				builder.branch ("master", ids[7]);
+				Assert.assertNull (factory.updateTree (tree, new RelationEditList (), new BranchLog ()));
+				Assert.assertEquals (positions, getPositions (tree));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+
+	/**
+	 * Extend the history window past the fork of a branch and past the
+	 * first parent of a merge, whose second parent is already in the tree.
+	 */
+	@Test
+	public void testExtendTree () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			ObjectId[] ids = new ObjectId[8];
+			ids[0] = builder.commit ("c0");
+			ids[2] = builder.commit ("s0", ids[0]);
+			ids[1] = builder.commit ("c1", ids[0]);
+			ids[3] = builder.commit ("s1", ids[2]);
+			ids[4] = builder.commit ("s2", ids[3]);
+			ids[5] = builder.commit ("Merge branch 'side'", ids[1], ids[4]);
+			ids[6] = builder.commit ("c3", ids[5]);
+			ids[7] = builder.commit ("c4", ids[6]);
+			builder.branch ("master", ids[7]);
+			builder.branch ("side", ids[4]);
+			GitRepo gitRepo = new GitRepo (builder.getDir ());
+			try
+			{
+				RelationTreeFactory factory = new RelationTreeFactory (gitRepo, RelationTreeFactory.getDefaultImportantBranchNames ());
+				factory.setHistoryWindow (5, Integer.MIN_VALUE);
+				RelationTree tree = factory.generateTree (new RelationEditList (), new BranchLog ());
+				Assert.assertEquals (5, tree.size ());
+				Assert.assertTrue (tree.isTruncated ());
+				RelationNode merge = tree.getNode (ids[5]);
+				// the parents after a missing parent are not linked.
+				Assert.assertTrue (merge.isTruncated ());
+				Assert.assertEquals (0, merge.getParentCount ());
+				Assert.assertTrue (tree.getNode (ids[3]).isTruncated ());
+
+				// the merge gains both parents.
+				List<RelationNode> nodes = extend (gitRepo, tree, 1);
+				Assert.assertFalse (merge.isTruncated ());
+				Assert.assertEquals (2, merge.getParentCount ());
+				Assert.assertSame (tree.getNode (ids[4]), merge.getParent (1));
+				Assert.assertTrue (nodes.contains (merge));
+				Assert.assertTrue (tree.getNode (ids[3]).isTruncated ());
+				Assert.assertTrue (tree.isTruncated ());
+
+				// the side branch gains its fork.
+				extend (gitRepo, tree, 2);
+				Assert.assertFalse (tree.isTruncated ());
+				Assert.assertSame (tree.getNode (ids[0]), tree.getNode (ids[2]).getParent (0));
+				Assert.assertSame (tree.getNode (ids[7]).getRelationBranch (), tree.getNode (ids[0]).getRelationBranch ());
+
+				// nothing is left to add.
+				Assert.assertNull (factory.extendTree (tree, 2, new RelationEditList (), new BranchLog ()));
+			}
+			finally
+			{
+				gitRepo.close ();
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2019 Heng Yuan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yuanheng.jgvt.relation.discovery;
+
+import java.util.*;
+
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Assert;
+import org.junit.Test;
+import org.yuanheng.jgvt.GitRepo;
+import org.yuanheng.jgvt.RefSnapshot;
+import org.yuanheng.jgvt.RepoBuilder;
+import org.yuanheng.jgvt.relation.CommitGraphCache;
+import org.yuanheng.jgvt.relation.RelationBranch;
+import org.yuanheng.jgvt.relation.RelationTree;
+
+/**
+ * @author	Heng Yuan
+ */
+public class TestBranchWorklist
+{
+	private static List<RelationBranch> list (Iterable<RelationBranch> branches)
+	{
+		ArrayList<RelationBranch> list = new ArrayList<RelationBranch> ();
+		for (RelationBranch branch : branches)
+			list.add (branch);
+		return list;
+	}
+
+	/**
+	 * Create c1 - c2 - c3 - m - c4 and c1 - a1 - m, and put each node in a
+	 * branch of its own.
+	 *
+	 * @return	the branches of c1, c2, c3, a1, m and c4, in the order.
+	 */
+	private static List<RelationBranch> createBranches (RepoBuilder builder) throws Exception
+	{
+		ObjectId c1 = builder.commit ("c1");
+		ObjectId c2 = builder.commit ("c2", c1);
+		ObjectId c3 = builder.commit ("c3", c2);
+		ObjectId a1 = builder.commit ("a1", c1);
+		ObjectId m = builder.commit ("m", c3, a1);
+		ObjectId c4 = builder.commit ("c4", m);
+		builder.branch ("master", c4);
+
+		GitRepo gitRepo = new GitRepo (builder.getDir ());
+		try
+		{
+			RefSnapshot refs = gitRepo.getRefSnapshot ();
+			RevWalk revWalk = gitRepo.createRevWalk ();
+			CommitGraphCache graph = CommitGraphCache.load (gitRepo, refs, revWalk, NullProgressMonitor.INSTANCE);
+			RelationTree tree = new RelationTree ();
+			tree.addNodes (graph, revWalk, refs);
+
+			ArrayList<RelationBranch> branches = new ArrayList<RelationBranch> ();
+			for (ObjectId id : new ObjectId[] { c1, c2, c3, a1, m, c4 })
+				branches.add (new RelationBranch (tree.getNode (id)));
+			return branches;
+		}
+		finally
+		{
+			gitRepo.close ();
+		}
+	}
+
+	@Test
+	public void testPatterns () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			List<RelationBranch> b = createBranches (builder);
+			BranchWorklist worklist = new BranchWorklist (b);
+			Assert.assertEquals (6, worklist.size ());
+
+			Assert.assertEquals (Arrays.asList (b.get (1), b.get (2), b.get (3), b.get (5)), list (worklist.getBranches (BranchPattern.FIRST_SINGLE_PARENT)));
+			Assert.assertEquals (Arrays.asList (b.get (4)), list (worklist.getBranches (BranchPattern.FIRST_TWO_PARENTS)));
+			Assert.assertEquals (b.subList (0, 5), list (worklist.getBranches (BranchPattern.LAST_CHILDREN)));
+			Assert.assertEquals (Arrays.asList (b.get (0)), list (worklist.getBranches (BranchPattern.LAST_TWO_CHILDREN)));
+			Assert.assertEquals (0, worklist.getBranches (BranchPattern.LAST_MANY_CHILDREN).size ());
+
+			Set<RelationBranch> view = worklist.getBranches (BranchPattern.FIRST_SINGLE_PARENT);
+			Assert.assertEquals (4, view.size ());
+			Assert.assertTrue (view.contains (b.get (5)));
+			Assert.assertFalse (view.contains (b.get (0)));
+
+			// the branches in reverse order are visited in reverse order.
+			ArrayList<RelationBranch> reversed = new ArrayList<RelationBranch> (b);
+			Collections.reverse (reversed);
+			worklist = new BranchWorklist (reversed);
+			Assert.assertEquals (Arrays.asList (b.get (5), b.get (3), b.get (2), b.get (1)), list (worklist.getBranches (BranchPattern.FIRST_SINGLE_PARENT)));
+		}
+	}
+
+	@Test
+	public void testUpdate () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			List<RelationBranch> b = createBranches (builder);
+			BranchWorklist worklist = new BranchWorklist (b);
+			Set<RelationBranch> view = worklist.getBranches (BranchPattern.LAST_CHILDREN);
+
+			// c2 absorbs c3.  The absorbed branch is updated by itself.
+			HashSet<RelationBranch> checkBranches = new HashSet<RelationBranch> ();
+			Set<RelationBranch> checkSet = worklist.getCheckSet (checkBranches);
+			b.get (1).mergeChild (b.get (2));
+			Assert.assertTrue (checkSet.add (b.get (1)));
+			Assert.assertFalse (checkSet.add (b.get (1)));
+			worklist.update (b.get (2));
+			Assert.assertEquals (Collections.singleton (b.get (1)), checkBranches);
+			Assert.assertTrue (checkSet.contains (b.get (1)));
+			Assert.assertEquals (1, checkSet.size ());
+			Assert.assertEquals (Arrays.asList (b.get (0), b.get (1), b.get (3), b.get (4)), list (view));
+			Assert.assertFalse (worklist.getBranches (BranchPattern.FIRST_SINGLE_PARENT).contains (b.get (2)));
+
+			// m absorbs c4, and no longer has children.
+			b.get (4).mergeChild (b.get (5));
+			checkSet.add (b.get (4));
+			worklist.update (b.get (5));
+			Assert.assertEquals (Arrays.asList (b.get (0), b.get (1), b.get (3)), list (view));
+			Assert.assertEquals (Arrays.asList (b.get (1), b.get (3)), list (worklist.getBranches (BranchPattern.FIRST_SINGLE_PARENT)));
+			Assert.assertEquals (Arrays.asList (b.get (4)), list (worklist.getBranches (BranchPattern.FIRST_TWO_PARENTS)));
+
+			// a branch not in the worklist is ignored.
+			worklist = new BranchWorklist (b.subList (0, 2));
+			worklist.update (b.get (4));
+			Assert.assertEquals (0, worklist.getBranches (BranchPattern.FIRST_TWO_PARENTS).size ());
+		}
+	}
+
+	@Test
+	public void testLazyIteration () throws Exception
+	{
+		try (RepoBuilder builder = new RepoBuilder ())
+		{
+			List<RelationBranch> b = createBranches (builder);
+			BranchWorklist worklist = new BranchWorklist (b);
+			Set<RelationBranch> checkSet = worklist.getCheckSet (new HashSet<RelationBranch> ());
+
+			Iterator<RelationBranch> it = worklist.getBranches (BranchPattern.FIRST_TWO_PARENTS).iterator ();
+			Assert.assertTrue (it.hasNext ());
+			Assert.assertSame (b.get (4), it.next ());
+
+			// c4, which is after m, absorbs m and starts matching the pattern.
+			b.get (5).mergeParent (b.get (4));
+			checkSet.add (b.get (5));
+			worklist.update (b.get (4));
+			Assert.assertTrue (it.hasNext ());
+			Assert.assertSame (b.get (5), it.next ());
+			Assert.assertFalse (it.hasNext ());
+			try
+			{
+				it.next ();
+				Assert.fail ();
+			}
+			catch (NoSuchElementException ex)
+			{
+			}
+
+			// a branch before the scan position is not visited again.
+			it = worklist.getBranches (BranchPattern.FIRST_SINGLE_PARENT).iterator ();
+			Assert.assertSame (b.get (1), it.next ());
+			Assert.assertSame (b.get (2), it.next ());
+			b.get (0).mergeChild (b.get (3));
+			checkSet.add (b.get (0));
+			worklist.update (b.get (3));
+			Assert.assertFalse (it.hasNext ());
+		}
+	}
+}